@@ -0,0 +1,79 @@
+#!/usr/bin/python
+
+readme = """A fake GTFS feed for the benchmarks, laid over the OSM extract used in the graph builder tests
+(src/test/resources/org/opentripplanner/graph_builder/module/osm/map.osm.pbf, west of Poznan).
+
+The feed describes two transit routes named EW and NS, crossing at a shared stop X.
+Route EW runs west to east along latitude 52.380, route NS runs north to south along longitude 16.858.
+Each route has five stops about 550 to 900 meters apart, and each stop is 3 minutes from the previous one.
+Both routes run in both directions every 10 minutes from 05:00 until 23:00, every day of the week from
+01-JAN-2015 through 31-DEC-2025. Trip IDs are the route name, the direction and the zero-padded first
+departure time, e.g. EW0-0730. This gives well over the minimum number of trips for Timetable to build its
+per-stop departure and arrival indexes.
+"""
+
+# zipfile has no way to add file-like buffers, so we write from strings.
+from zipfile import ZipFile
+gtfs = ZipFile('src/main/resources/org/opentripplanner/benchmark/gtfs.zip', mode='w')
+
+agency_rows = """agency_id,agency_name,agency_url,agency_timezone
+BENCH,Benchmark Transit,http://www.test.com,Europe/Warsaw
+"""
+gtfs.writestr('agency.txt', agency_rows)
+calendar_rows = """service_id,monday,tuesday,wednesday,thursday,friday,saturday,sunday,start_date,end_date
+ALL,1,1,1,1,1,1,1,20150101,20251231
+"""
+gtfs.writestr('calendar.txt', calendar_rows)
+
+from io import StringIO
+import csv
+routes_file = StringIO()
+stops_file = StringIO()
+routes = csv.writer(routes_file)
+routes.writerow(['route_id', 'route_short_name', 'route_long_name', 'route_type'])
+stops = csv.writer(stops_file)
+stops.writerow(['stop_id', 'stop_name', 'stop_lat', 'stop_lon'])
+
+route_stops = {
+    'EW' : [('W2', 52.380, 16.842), ('W1', 52.380, 16.850), ('X', 52.380, 16.858),
+            ('E1', 52.380, 16.866), ('E2', 52.380, 16.874)],
+    'NS' : [('N2', 52.396, 16.858), ('N1', 52.388, 16.858), ('X', 52.380, 16.858),
+            ('S1', 52.372, 16.858), ('S2', 52.364, 16.858)],
+}
+written = set()
+for route in ['EW', 'NS'] :
+    routes.writerow((route, route, route, 3)) # bus
+    for (stop_id, lat, lon) in route_stops[route] :
+        if stop_id not in written :
+            stops.writerow((stop_id, stop_id, '%.6f' % lat, '%.6f' % lon))
+            written.add(stop_id)
+
+gtfs.writestr('routes.txt', routes_file.getvalue())
+gtfs.writestr('stops.txt', stops_file.getvalue())
+
+def tstr(m):
+    return '%02d:%02d:00' % (m // 60, m % 60)
+
+trips_file = StringIO()
+trips = csv.writer(trips_file)
+trips.writerow(('route_id', 'service_id', 'trip_id', 'direction_id'))
+
+stop_times_file = StringIO()
+stop_times = csv.writer(stop_times_file)
+stop_times.writerow(('trip_id', 'arrival_time', 'departure_time', 'stop_id', 'stop_sequence'))
+
+for route in ['EW', 'NS'] :
+    for direction in [0, 1] :
+        stop_list = route_stops[route] if direction == 0 else list(reversed(route_stops[route]))
+        for start in range(5 * 60, 23 * 60 + 1, 10) :
+            trip_id = '%s%d-%s' % (route, direction, tstr(start)[0:5].replace(':', ''))
+            trips.writerow((route, 'ALL', trip_id, direction))
+            t = start
+            for seq, (stop_id, lat, lon) in enumerate(stop_list) :
+                stop_times.writerow((trip_id, tstr(t), tstr(t), stop_id, seq))
+                t += 3
+
+gtfs.writestr('trips.txt', trips_file.getvalue())
+gtfs.writestr('stop_times.txt', stop_times_file.getvalue())
+gtfs.writestr('README', readme)
+gtfs.close()
@@ -0,0 +1,151 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.benchmark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import org.opentripplanner.graph_builder.GraphBuilder;
+import org.opentripplanner.routing.core.RoutingRequest;
+import org.opentripplanner.routing.core.TraverseModeSet;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.graph.Vertex;
+import org.opentripplanner.routing.impl.DefaultStreetVertexIndexFactory;
+import org.opentripplanner.routing.vertextype.IntersectionVertex;
+import org.opentripplanner.standalone.CommandLineParameters;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The graph shared by all the benchmarks. It is built once per JVM, with the same graph builder modules as a
+ * normal build, from the OSM extract used in the OSM graph builder tests and a small GTFS feed laid over it
+ * (see generateGtfs.py). Building takes a few seconds and happens in the benchmark setup, so it is never measured.
+ *
+ * Everything that depends on chance (the choice of origins and destinations) uses a fixed seed so that runs can be
+ * compared with each other.
+ */
+public class BenchmarkGraph {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BenchmarkGraph.class);
+
+    /** A Monday within the validity period of the benchmark feed. */
+    public static final String DATE = "2015-06-01";
+
+    public static final String TIME = "08:00";
+
+    public static final long SEED = 42;
+
+    /** The stop where the two routes of the benchmark feed cross. */
+    public static final double TRANSFER_LAT = 52.380, TRANSFER_LON = 16.858;
+
+    /** The ends of the two routes of the benchmark feed. */
+    public static final double WEST_LAT = 52.380, WEST_LON = 16.842;
+
+    public static final double SOUTH_LAT = 52.364, SOUTH_LON = 16.858;
+
+    private static final String[] INPUTS = { "map.osm.pbf", "gtfs.zip" };
+
+    private static Graph graph;
+
+    public static synchronized Graph getGraph() {
+        if (graph == null) {
+            graph = build();
+        }
+        return graph;
+    }
+
+    private static Graph build() {
+        Path dir = null;
+        try {
+            dir = Files.createTempDirectory("otp-benchmark");
+            for (String input : INPUTS) {
+                try (InputStream in = BenchmarkGraph.class.getResourceAsStream(input)) {
+                    if (in == null) {
+                        throw new IllegalStateException("Benchmark input " + input + " is not on the classpath.");
+                    }
+                    Files.copy(in, dir.resolve(input));
+                }
+            }
+            CommandLineParameters params = new CommandLineParameters();
+            params.build = dir.toFile();
+            params.inMemory = true;
+            GraphBuilder graphBuilder = GraphBuilder.forDirectory(params, params.build);
+            graphBuilder.run();
+            Graph graph = graphBuilder.getGraph();
+            graph.index(new DefaultStreetVertexIndexFactory());
+            LOG.info("Built benchmark graph with {} vertices and {} edges.", graph.countVertices(),
+                    graph.countEdges());
+            return graph;
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        } finally {
+            if (dir != null) {
+                delete(dir);
+            }
+        }
+    }
+
+    private static void delete(Path dir) {
+        try {
+            for (String input : INPUTS) {
+                Files.deleteIfExists(dir.resolve(input));
+            }
+            Files.deleteIfExists(dir);
+        } catch (IOException e) {
+            LOG.warn("Could not remove temporary directory {}", dir);
+        }
+    }
+
+    /** @return the street intersections of the graph, in a stable order. */
+    public static List<IntersectionVertex> getIntersections(Graph graph) {
+        List<IntersectionVertex> intersections = new ArrayList<IntersectionVertex>();
+        for (Vertex v : graph.getVertices()) {
+            if (v instanceof IntersectionVertex) {
+                intersections.add((IntersectionVertex) v);
+            }
+        }
+        Collections.sort(intersections, new Comparator<Vertex>() {
+            @Override
+            public int compare(Vertex v1, Vertex v2) {
+                return v1.getLabel().compareTo(v2.getLabel());
+            }
+        });
+        return intersections;
+    }
+
+    /** @return n random street intersections, the same ones on every run. */
+    public static IntersectionVertex[] randomIntersections(Graph graph, int n, Random random) {
+        List<IntersectionVertex> intersections = getIntersections(graph);
+        IntersectionVertex[] ret = new IntersectionVertex[n];
+        for (int i = 0; i < n; i++) {
+            ret[i] = intersections.get(random.nextInt(intersections.size()));
+        }
+        return ret;
+    }
+
+    /** @return a request departing at the benchmark date and time, without a routing context. */
+    public static RoutingRequest makeRequest(Graph graph, TraverseModeSet modes) {
+        RoutingRequest request = new RoutingRequest(modes);
+        request.setDateTime(DATE, TIME, graph.getTimeZone());
+        return request;
+    }
+
+}
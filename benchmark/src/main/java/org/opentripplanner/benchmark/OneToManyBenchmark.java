@@ -0,0 +1,101 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.opentripplanner.analyst.TimeSurface;
+import org.opentripplanner.common.model.GenericLocation;
+import org.opentripplanner.profile.RaptorRouter;
+import org.opentripplanner.routing.algorithm.EarliestArrivalSearch;
+import org.opentripplanner.routing.core.RoutingRequest;
+import org.opentripplanner.routing.core.TraverseMode;
+import org.opentripplanner.routing.core.TraverseModeSet;
+import org.opentripplanner.routing.graph.Graph;
+
+/**
+ * One-to-many searches from random origins around the benchmark feed, making a TimeSurface as SurfaceResource does,
+ * either with a full EarliestArrivalSearch over the graph or with a RaptorRouter.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class OneToManyBenchmark {
+
+    private static final int ORIGINS = 16;
+
+    /** The bounding box of the benchmark feed, with a margin of a few hundred meters. */
+    private static final double MIN_LAT = 52.361, MAX_LAT = 52.399, MIN_LON = 16.838, MAX_LON = 16.878;
+
+    @Param({ "EarliestArrivalSearch", "RaptorRouter" })
+    public String router;
+
+    private Graph graph;
+
+    private GenericLocation[] origins;
+
+    private int origin = 0;
+
+    @Setup
+    public void setup() {
+        graph = BenchmarkGraph.getGraph();
+        Random random = new Random(BenchmarkGraph.SEED);
+        origins = new GenericLocation[ORIGINS];
+        for (int i = 0; i < ORIGINS; i++) {
+            double lat = MIN_LAT + random.nextDouble() * (MAX_LAT - MIN_LAT);
+            double lon = MIN_LON + random.nextDouble() * (MAX_LON - MIN_LON);
+            origins[i] = new GenericLocation(lat, lon);
+        }
+        // Build the flattened timetables and stop trees outside of the measurement
+        graph.index.getStopTreeCache();
+        search();
+    }
+
+    @Benchmark
+    public TimeSurface search() {
+        RoutingRequest request = BenchmarkGraph.makeRequest(graph,
+                new TraverseModeSet(TraverseMode.WALK, TraverseMode.TRANSIT));
+        request.batch = true;
+        request.from = origins[origin];
+        origin = (origin + 1) % ORIGINS;
+        request.setRoutingContext(graph);
+        try {
+            if (router.equals("RaptorRouter")) {
+                RaptorRouter raptorRouter = new RaptorRouter(graph, request);
+                raptorRouter.maxDuration = 60 * 60;
+                raptorRouter.route();
+                TimeSurface surface = raptorRouter.makeSurface();
+                surface.makeSampleGridWithoutSPT();
+                return surface;
+            } else {
+                request.indexedShortestPathTree = true;
+                EarliestArrivalSearch search = new EarliestArrivalSearch();
+                search.maxDuration = 60 * 60;
+                return new TimeSurface(search.getShortestPathTree(request));
+            }
+        } finally {
+            request.cleanup();
+        }
+    }
+
+}
@@ -0,0 +1,91 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.opentripplanner.common.pqueue.BinHeap;
+import org.opentripplanner.common.pqueue.IndexedFourAryHeap;
+import org.opentripplanner.common.pqueue.OTPPriorityQueue;
+import org.opentripplanner.common.pqueue.OTPPriorityQueueFactory;
+import org.opentripplanner.common.pqueue.RadixHeap;
+
+/**
+ * The priority queues on their own, under the load of a simulated Dijkstra search: each element extracted causes
+ * three insertions with keys a random number of seconds later, until a given number of elements have been
+ * extracted. BinHeap is the default queue in AStar, the others can be swapped in with AStar.setQueueFactory.
+ * No graph is needed, so this one also runs quickly on a laptop.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PriorityQueueBenchmark {
+
+    private static final int DEGREE = 3;
+
+    @Param({ "BinHeap", "IndexedFourAryHeap", "RadixHeap" })
+    public String queue;
+
+    @Param({ "1000", "100000" })
+    public int extractions;
+
+    private OTPPriorityQueueFactory factory;
+
+    /** Edge weights in seconds, one per insertion. */
+    private int[] weights;
+
+    @Setup
+    public void setup() {
+        if (queue.equals("BinHeap")) {
+            factory = BinHeap.FACTORY;
+        } else if (queue.equals("IndexedFourAryHeap")) {
+            factory = IndexedFourAryHeap.FACTORY;
+        } else if (queue.equals("RadixHeap")) {
+            factory = RadixHeap.FACTORY;
+        } else {
+            throw new IllegalArgumentException("Unknown queue " + queue);
+        }
+        Random random = new Random(BenchmarkGraph.SEED);
+        weights = new int[extractions * DEGREE];
+        for (int i = 0; i < weights.length; i++) {
+            weights[i] = 1 + random.nextInt(600);
+        }
+    }
+
+    @Benchmark
+    public double search() {
+        OTPPriorityQueue<Integer> pq = factory.create(1000);
+        pq.insert(0, 0);
+        int w = 0;
+        double key = 0;
+        for (int i = 0; i < extractions && !pq.empty(); i++) {
+            key = pq.peek_min_key();
+            Integer element = pq.extract_min();
+            for (int d = 0; d < DEGREE; d++) {
+                pq.insert(element + d, key + weights[w++]);
+            }
+        }
+        return key;
+    }
+
+}
@@ -0,0 +1,93 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.joda.time.LocalDate;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.opentripplanner.profile.Option;
+import org.opentripplanner.profile.ProfileRequest;
+import org.opentripplanner.profile.ProfileResponse;
+import org.opentripplanner.profile.ProfileRouter;
+import org.opentripplanner.routing.core.TraverseMode;
+import org.opentripplanner.routing.core.TraverseModeSet;
+import org.opentripplanner.routing.graph.Graph;
+
+/**
+ * A ProfileRouter search for the morning peak, from the west end of one route of the benchmark feed to the south end
+ * of the other, with the defaults of the profile API. In analyst mode the travel times are also propagated out to
+ * the street network, which is what the analyst profile requests do.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ProfileRouterBenchmark {
+
+    @Param({ "false", "true" })
+    public boolean analyst;
+
+    private Graph graph;
+
+    private ProfileRequest request;
+
+    @Setup
+    public void setup() {
+        graph = BenchmarkGraph.getGraph();
+        // Same defaults as ProfileResource
+        request = new ProfileRequest();
+        request.fromLat = BenchmarkGraph.WEST_LAT;
+        request.fromLon = BenchmarkGraph.WEST_LON;
+        request.toLat = BenchmarkGraph.SOUTH_LAT;
+        request.toLon = BenchmarkGraph.SOUTH_LON;
+        request.fromTime = 7 * 60 * 60;
+        request.toTime = 9 * 60 * 60;
+        request.walkSpeed = 1.4f;
+        request.bikeSpeed = 4.1f;
+        request.carSpeed = 20;
+        request.date = new LocalDate(BenchmarkGraph.DATE);
+        request.orderBy = Option.SortOrder.AVG;
+        request.limit = 10;
+        request.accessModes = new TraverseModeSet(TraverseMode.WALK, TraverseMode.BICYCLE);
+        request.egressModes = new TraverseModeSet(TraverseMode.WALK);
+        request.directModes = new TraverseModeSet(TraverseMode.WALK, TraverseMode.BICYCLE);
+        request.transitModes = new TraverseModeSet(TraverseMode.TRANSIT);
+        request.analyst = analyst;
+        request.streetTime = 90;
+        request.maxWalkTime = 15;
+        request.maxBikeTime = 20;
+        request.maxCarTime = 30;
+        request.minBikeTime = 1;
+        request.minCarTime = 1;
+        request.suboptimalMinutes = 5;
+    }
+
+    @Benchmark
+    public ProfileResponse route() {
+        ProfileRouter router = new ProfileRouter(graph, request.clone());
+        try {
+            return router.route();
+        } finally {
+            router.cleanup();
+        }
+    }
+
+}
@@ -0,0 +1,96 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.benchmark;
+
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.opentripplanner.analyst.PointFeature;
+import org.opentripplanner.analyst.PointSet;
+import org.opentripplanner.analyst.SampleSet;
+import org.opentripplanner.analyst.TimeSurface;
+import org.opentripplanner.common.geometry.GeometryUtils;
+import org.opentripplanner.common.model.GenericLocation;
+import org.opentripplanner.routing.algorithm.EarliestArrivalSearch;
+import org.opentripplanner.routing.core.RoutingRequest;
+import org.opentripplanner.routing.core.TraverseMode;
+import org.opentripplanner.routing.core.TraverseModeSet;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.spt.ShortestPathTree;
+
+import com.vividsolutions.jts.geom.Coordinate;
+
+/**
+ * SampleSet.eval, which finds the travel time to each point of a point set from a time surface. The points form a
+ * regular grid over the benchmark OSM extract, and the time surface is an hour of walking and transit from the stop
+ * where the two routes of the benchmark feed cross, made as in SurfaceResource.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SampleSetBenchmark {
+
+    /** The bounds of the benchmark OSM extract. */
+    private static final double MIN_LAT = 52.359, MAX_LAT = 52.401, MIN_LON = 16.839, MAX_LON = 16.881;
+
+    /** The number of points along each side of the grid. */
+    @Param({ "32", "128" })
+    public int side;
+
+    private SampleSet sampleSet;
+
+    private TimeSurface surface;
+
+    @Setup
+    public void setup() throws Exception {
+        Graph graph = BenchmarkGraph.getGraph();
+        PointSet pointSet = new PointSet(side * side);
+        for (int y = 0; y < side; y++) {
+            for (int x = 0; x < side; x++) {
+                double lat = MIN_LAT + (MAX_LAT - MIN_LAT) * y / (side - 1);
+                double lon = MIN_LON + (MAX_LON - MIN_LON) * x / (side - 1);
+                PointFeature feature = new PointFeature(x + "," + y, GeometryUtils.getGeometryFactory()
+                        .createPoint(new Coordinate(lon, lat)), new HashMap<String, Integer>());
+                pointSet.addFeature(feature, y * side + x);
+            }
+        }
+        sampleSet = new SampleSet(pointSet, graph.getSampleFactory());
+
+        RoutingRequest request = BenchmarkGraph.makeRequest(graph,
+                new TraverseModeSet(TraverseMode.WALK, TraverseMode.TRANSIT));
+        request.batch = true;
+        request.indexedShortestPathTree = true;
+        request.from = new GenericLocation(BenchmarkGraph.TRANSFER_LAT, BenchmarkGraph.TRANSFER_LON);
+        request.setRoutingContext(graph);
+        EarliestArrivalSearch search = new EarliestArrivalSearch();
+        search.maxDuration = 60 * 60;
+        ShortestPathTree spt = search.getShortestPathTree(request);
+        request.cleanup();
+        surface = new TimeSurface(spt);
+    }
+
+    @Benchmark
+    public int[] eval() {
+        return sampleSet.eval(surface);
+    }
+
+}
@@ -0,0 +1,80 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.opentripplanner.common.model.GenericLocation;
+import org.opentripplanner.routing.core.TraversalRequirements;
+import org.opentripplanner.routing.core.TraverseMode;
+import org.opentripplanner.routing.core.TraverseModeSet;
+import org.opentripplanner.routing.impl.CandidateEdgeBundle;
+import org.opentripplanner.routing.services.StreetVertexIndexService;
+
+/**
+ * StreetVertexIndexServiceImpl.getClosestEdges for random points within the bounds of the benchmark OSM extract.
+ * This is how the origin and destination of every request are linked into the street network.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class StreetIndexBenchmark {
+
+    private static final int POINTS = 1024;
+
+    /** The bounds of the benchmark OSM extract. */
+    private static final double MIN_LAT = 52.359, MAX_LAT = 52.401, MIN_LON = 16.839, MAX_LON = 16.881;
+
+    @Param({ "WALK", "CAR" })
+    public TraverseMode mode;
+
+    private StreetVertexIndexService index;
+
+    private TraversalRequirements requirements;
+
+    private GenericLocation[] locations;
+
+    private int point = 0;
+
+    @Setup
+    public void setup() {
+        index = BenchmarkGraph.getGraph().streetIndex;
+        requirements = new TraversalRequirements(BenchmarkGraph.makeRequest(BenchmarkGraph.getGraph(),
+                new TraverseModeSet(mode)));
+        Random random = new Random(BenchmarkGraph.SEED);
+        locations = new GenericLocation[POINTS];
+        for (int i = 0; i < POINTS; i++) {
+            double lat = MIN_LAT + random.nextDouble() * (MAX_LAT - MIN_LAT);
+            double lon = MIN_LON + random.nextDouble() * (MAX_LON - MIN_LON);
+            locations[i] = new GenericLocation(lat, lon);
+        }
+    }
+
+    @Benchmark
+    public CandidateEdgeBundle getClosestEdges() {
+        GenericLocation location = locations[point];
+        point = (point + 1) % POINTS;
+        return index.getClosestEdges(location, requirements);
+    }
+
+}
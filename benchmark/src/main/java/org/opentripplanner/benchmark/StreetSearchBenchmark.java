@@ -0,0 +1,75 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.opentripplanner.routing.algorithm.AStar;
+import org.opentripplanner.routing.core.RoutingRequest;
+import org.opentripplanner.routing.core.TraverseMode;
+import org.opentripplanner.routing.core.TraverseModeSet;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.spt.ShortestPathTree;
+import org.opentripplanner.routing.vertextype.IntersectionVertex;
+
+/**
+ * Point to point AStar searches on the street network alone, between random pairs of intersections. Each invocation
+ * searches for the next pair, so that the result is an average over many different trip lengths.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class StreetSearchBenchmark {
+
+    private static final int PAIRS = 256;
+
+    @Param({ "WALK", "BICYCLE", "CAR" })
+    public TraverseMode mode;
+
+    private Graph graph;
+
+    private IntersectionVertex[] origins, destinations;
+
+    private int pair = 0;
+
+    @Setup
+    public void setup() {
+        graph = BenchmarkGraph.getGraph();
+        Random random = new Random(BenchmarkGraph.SEED);
+        origins = BenchmarkGraph.randomIntersections(graph, PAIRS, random);
+        destinations = BenchmarkGraph.randomIntersections(graph, PAIRS, random);
+    }
+
+    @Benchmark
+    public ShortestPathTree search() {
+        RoutingRequest request = BenchmarkGraph.makeRequest(graph, new TraverseModeSet(mode));
+        request.setRoutingContext(graph, origins[pair], destinations[pair]);
+        pair = (pair + 1) % PAIRS;
+        try {
+            return new AStar().getShortestPathTree(request);
+        } finally {
+            request.cleanup();
+        }
+    }
+
+}
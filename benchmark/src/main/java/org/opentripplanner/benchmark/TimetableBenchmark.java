@@ -0,0 +1,96 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.benchmark;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.onebusaway.gtfs.model.calendar.ServiceDate;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.opentripplanner.routing.core.RoutingRequest;
+import org.opentripplanner.routing.core.ServiceDay;
+import org.opentripplanner.routing.core.TraverseMode;
+import org.opentripplanner.routing.core.TraverseModeSet;
+import org.opentripplanner.routing.edgetype.Timetable;
+import org.opentripplanner.routing.edgetype.TripPattern;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.trippattern.TripTimes;
+import org.opentripplanner.routing.vertextype.TransitStop;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Timetable.getNextTrip at one stop of a pattern of the benchmark feed, which has a trip every 10 minutes from
+ * early morning until late evening. The search time steps through the whole service day from one invocation to the
+ * next, including times before the first and after the last trip.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TimetableBenchmark {
+
+    /** Seconds between consecutive search times. Not a multiple of the headway, so the waits vary. */
+    private static final int STEP = 7 * 60;
+
+    @Param({ "true", "false" })
+    public boolean boarding;
+
+    private Timetable timetable;
+
+    private ServiceDay serviceDay;
+
+    private int stopIndex;
+
+    private org.opentripplanner.routing.core.State[] states;
+
+    private int search = 0;
+
+    @Setup
+    public void setup() {
+        Graph graph = BenchmarkGraph.getGraph();
+        List<String> patternIds = Lists.newArrayList(graph.index.patternForId.keySet());
+        Collections.sort(patternIds);
+        TripPattern pattern = graph.index.patternForId.get(patternIds.get(0));
+        timetable = pattern.scheduledTimetable;
+        // Board at the first stop of the pattern, or alight at the last one.
+        stopIndex = boarding ? 0 : pattern.getStops().size() - 1;
+        TransitStop stop = graph.index.stopVertexForStop.get(pattern.getStop(stopIndex));
+
+        String agencyId = pattern.route.getAgency().getId();
+        serviceDay = new ServiceDay(graph, new ServiceDate(2015, 6, 1), graph.getCalendarService(), agencyId);
+        RoutingRequest request = BenchmarkGraph.makeRequest(graph,
+                new TraverseModeSet(TraverseMode.WALK, TraverseMode.TRANSIT));
+        long midnight = serviceDay.time(0);
+        states = new org.opentripplanner.routing.core.State[24 * 60 * 60 / STEP];
+        for (int i = 0; i < states.length; i++) {
+            states[i] = new org.opentripplanner.routing.core.State(stop, midnight + i * STEP, request);
+        }
+    }
+
+    @Benchmark
+    public TripTimes getNextTrip() {
+        org.opentripplanner.routing.core.State s0 = states[search];
+        search = (search + 1) % states.length;
+        return timetable.getNextTrip(s0, serviceDay, stopIndex, boarding);
+    }
+
+}
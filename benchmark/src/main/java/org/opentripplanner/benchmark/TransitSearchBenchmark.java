@@ -0,0 +1,91 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.opentripplanner.common.model.GenericLocation;
+import org.opentripplanner.routing.algorithm.AStar;
+import org.opentripplanner.routing.core.RoutingRequest;
+import org.opentripplanner.routing.core.TraverseMode;
+import org.opentripplanner.routing.core.TraverseModeSet;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.spt.ShortestPathTree;
+
+/**
+ * Point to point AStar searches using walking and transit, between random coordinates around the benchmark feed.
+ * Linking the origin and destination into the street network is part of what is measured, as it is for every
+ * trip planning request. The departure time moves around within the hour from one invocation to the next so that
+ * the waits at the stops vary.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TransitSearchBenchmark {
+
+    private static final int PAIRS = 64;
+
+    /** The bounding box of the benchmark feed, with a margin of a few hundred meters. */
+    private static final double MIN_LAT = 52.361, MAX_LAT = 52.399, MIN_LON = 16.838, MAX_LON = 16.878;
+
+    private Graph graph;
+
+    private GenericLocation[] origins, destinations;
+
+    private int pair = 0;
+
+    @Setup
+    public void setup() {
+        graph = BenchmarkGraph.getGraph();
+        Random random = new Random(BenchmarkGraph.SEED);
+        origins = new GenericLocation[PAIRS];
+        destinations = new GenericLocation[PAIRS];
+        for (int i = 0; i < PAIRS; i++) {
+            origins[i] = randomLocation(random);
+            destinations[i] = randomLocation(random);
+        }
+    }
+
+    private static GenericLocation randomLocation(Random random) {
+        double lat = MIN_LAT + random.nextDouble() * (MAX_LAT - MIN_LAT);
+        double lon = MIN_LON + random.nextDouble() * (MAX_LON - MIN_LON);
+        return new GenericLocation(lat, lon);
+    }
+
+    @Benchmark
+    public ShortestPathTree search() {
+        RoutingRequest request = BenchmarkGraph.makeRequest(graph,
+                new TraverseModeSet(TraverseMode.WALK, TraverseMode.TRANSIT));
+        request.dateTime += (pair * 7 % 60) * 60;
+        request.setMaxWalkDistance(2000);
+        request.from = origins[pair];
+        request.to = destinations[pair];
+        pair = (pair + 1) % PAIRS;
+        request.setRoutingContext(graph);
+        try {
+            return new AStar().getShortestPathTree(request);
+        } finally {
+            request.cleanup();
+        }
+    }
+
+}
@@ -439,7 +439,11 @@ public class PointSet implements Serializable{
     public SampleSet getSampleSet(Graph g) {	
         if (g == null)
             return null;
-        SampleSet sampleSet = new SampleSet(this, g.getSampleFactory());
+        SampleSet sampleSet = this.samples.get(g.routerId);
+        // Reuse the samples unless the graph was reloaded since they were made
+        if (sampleSet != null && sampleSet.sampleFactory == g.getSampleFactory())
+            return sampleSet;
+        sampleSet = new SampleSet(this, g.getSampleFactory());
         this.samples.put(g.routerId, sampleSet);
         return sampleSet;
     }
@@ -2,18 +2,22 @@ package org.opentripplanner.analyst;
 
 import org.opentripplanner.analyst.core.Sample;
 import org.opentripplanner.analyst.request.SampleFactory;
-import org.opentripplanner.routing.graph.Vertex;
 
 /**
  * We never use samples in isolation, so let's store them as a column store.
+ * Vertices are stored by index, so that a whole set can be evaluated against the vertex-indexed array of a
+ * TimeSurface without hash lookups.
  */
 public class SampleSet {
 
     public final PointSet pset;
 
-    /* Vertices at the two ends of a road, one per sample. */
-    Vertex[] v0s;
-    Vertex[] v1s;
+    /** The factory the samples were made with, which belongs to a single graph. */
+    final SampleFactory sampleFactory;
+
+    /* Indexes of the vertices at the two ends of a road, one per sample, or -1 if the point is not linked. */
+    int[] v0s;
+    int[] v1s;
 
     /* Distances to the vertices at the two ends of a road, one per sample. */
     float[] d0s;
@@ -21,19 +25,23 @@ public class SampleSet {
 
     public SampleSet (PointSet pset, SampleFactory sfac) {
         this.pset = pset;
-        v0s = new Vertex[pset.capacity];
-        v1s = new Vertex[pset.capacity];
+        this.sampleFactory = sfac;
+        v0s = new int[pset.capacity];
+        v1s = new int[pset.capacity];
         d0s = new float[pset.capacity];
         d1s = new float[pset.capacity];
+        Sample[] samples = sfac.getSamples(pset.lons, pset.lats);
         for (int i = 0; i < pset.capacity; i++) {
-            Sample sample = sfac.getSample(pset.lons[i], pset.lats[i]);
+            Sample sample = samples[i];
             if (sample == null) {
+                v0s[i] = -1;
+                v1s[i] = -1;
                 d0s[i] = Float.NaN;
                 d1s[i] = Float.NaN;
                 continue;
             }
-            v0s[i] = sample.v0;
-            v1s[i] = sample.v1;
+            v0s[i] = sample.v0 == null ? -1 : sample.v0.getIndex();
+            v1s[i] = sample.v1 == null ? -1 : sample.v1.getIndex();
             d0s[i] = sample.t0; // TODO time not distance in samples
             d1s[i] = sample.t1; // TODO time not distance in samples
         }
@@ -41,18 +49,21 @@ public class SampleSet {
 
     public int[] eval (TimeSurface surf) {
         final float WALK_SPEED = 1.3f;
+        int[] times = surf.getTimesByVertexIndex();
         int[] ret = new int[pset.capacity];
         for (int i = 0; i < pset.capacity; i++) {
             int m0 = Integer.MAX_VALUE;
             int m1 = Integer.MAX_VALUE;
-            if (v0s[i] != null) {
-                int s0 = surf.getTime(v0s[i]);
+            int v0 = v0s[i];
+            if (v0 >= 0 && v0 < times.length) {
+                int s0 = times[v0];
                 if (s0 != TimeSurface.UNREACHABLE) {
                     m0 = (int) (s0 + d0s[i] / WALK_SPEED);
                 }
             }
-            if (v1s[i] != null) {
-                int s1 = surf.getTime(v1s[i]);
+            int v1 = v1s[i];
+            if (v1 >= 0 && v1 < times.length) {
+                int s1 = times[v1];
                 if (s1 != TimeSurface.UNREACHABLE) {
                     m1 = (int) (s1 + d1s[i] / WALK_SPEED);
                 }
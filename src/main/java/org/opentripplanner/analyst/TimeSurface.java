@@ -1,9 +1,6 @@
 package org.opentripplanner.analyst;
 
 import com.vividsolutions.jts.geom.Coordinate;
-import gnu.trove.iterator.TObjectIntIterator;
-import gnu.trove.map.TObjectIntMap;
-import gnu.trove.map.hash.TObjectIntHashMap;
 import org.apache.commons.math3.util.FastMath;
 import org.opentripplanner.analyst.request.SampleGridRenderer;
 import org.opentripplanner.analyst.request.SampleGridRenderer.WTWD;
@@ -12,6 +9,7 @@ import org.opentripplanner.common.model.GenericLocation;
 import org.opentripplanner.profile.AnalystProfileRouterPrototype;
 import org.opentripplanner.profile.ProfileRequest;
 import org.opentripplanner.profile.ProfileRouter;
+import org.opentripplanner.profile.RaptorRouter;
 import org.opentripplanner.profile.TimeRange;
 import org.opentripplanner.routing.core.State;
 import org.opentripplanner.routing.graph.Vertex;
@@ -23,6 +21,10 @@ import org.slf4j.LoggerFactory;
 
 import java.awt.font.NumericShaper;
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 
 import static org.apache.commons.math3.util.FastMath.max;
@@ -31,8 +33,8 @@ import static org.apache.commons.math3.util.FastMath.toRadians;
 
 /**
  * A travel time surface. Timing information from the leaves of a ShortestPathTree.
- * In Portland, one timesurface takes roughly one MB of memory and is also about that size as JSON.
- * However it is proportionate to the graph size not the time cutoff.
+ * The times are kept in an array indexed by vertex index, so one timesurface takes four bytes per vertex in the graph
+ * plus a reference per reached vertex. It is proportionate to the graph size not the time cutoff.
  */
 public class TimeSurface implements Serializable {
 
@@ -42,7 +44,6 @@ public class TimeSurface implements Serializable {
 
     public final String routerId;
     public final int id;
-    public final TObjectIntMap<Vertex> times = new TObjectIntHashMap<Vertex>(500000, 0.5f, UNREACHABLE);
     public final double lat, lon;
     public int cutoffMinutes;
     public long dateTime;
@@ -50,6 +51,16 @@ public class TimeSurface implements Serializable {
     public SparseMatrixZSampleGrid<WTWD> sampleGrid; // another representation on a regular grid with a triangulation
     public String description;
 
+    /**
+     * The time to each vertex indexed by vertex index, or UNREACHABLE. This is the main storage of the surface, so
+     * that sample sets are evaluated with array reads instead of hash lookups and without building anything per
+     * evaluation. It is made as large as the graph when the surface is created, and grows if vertices are added.
+     */
+    private int[] times = makeUnreachableTimes(Vertex.getMaxIndex());
+
+    /** The vertices that have a time, in the order they were first given one, to iterate over the times. */
+    private final List<Vertex> reachedVertices = new ArrayList<Vertex>();
+
     public TimeSurface(ShortestPathTree spt) {
 
         params = spt.getOptions().parameters;
@@ -65,10 +76,10 @@ public class TimeSurface implements Serializable {
         for (State state : spt.getAllStates()) {
             Vertex vertex = state.getVertex();
             if (vertex instanceof StreetVertex || vertex instanceof TransitStop) {
-                int existing = times.get(vertex);
+                int existing = getTime(vertex);
                 int t = (int) state.getActiveTime();
                 if (existing == UNREACHABLE || existing > t) {
-                    times.put(vertex, t);
+                    setTime(vertex, t);
                 }
             }
         }
@@ -107,6 +118,17 @@ public class TimeSurface implements Serializable {
         cutoffMinutes = profileRouter.MAX_DURATION / 60;
     }
 
+    /** Make an empty timesurface for the results of a RaptorRouter, see RaptorRouter.makeSurface. */
+    public TimeSurface (RaptorRouter raptorRouter) {
+        GenericLocation from = raptorRouter.request.from;
+        lon = from.lng;
+        lat = from.lat;
+        id = makeUniqueId();
+        dateTime = raptorRouter.request.dateTime;
+        routerId = raptorRouter.graph.routerId;
+        cutoffMinutes = raptorRouter.maxDuration / 60;
+    }
+
     public static TimeSurface.RangeSet makeSurfaces (AnalystProfileRouterPrototype profileRouter) {
         TimeSurface minSurface = new TimeSurface(profileRouter);
         TimeSurface avgSurface = new TimeSurface(profileRouter);
@@ -114,9 +136,9 @@ public class TimeSurface implements Serializable {
         for (Map.Entry<Vertex, TimeRange> vtr : profileRouter.propagatedTimes.entrySet()) {
             Vertex v = vtr.getKey();
             TimeRange tr = vtr.getValue();
-            minSurface.times.put(v, tr.min);
-            avgSurface.times.put(v, tr.avg);
-            maxSurface.times.put(v, tr.max);
+            minSurface.setTime(v, tr.min);
+            avgSurface.setTime(v, tr.avg);
+            maxSurface.setTime(v, tr.max);
         }
         RangeSet result = new RangeSet();
         minSurface.description = "Travel times assuming best luck (never waiting for a transfer).";
@@ -136,7 +158,42 @@ public class TimeSurface implements Serializable {
     }
 
     public int getTime(Vertex v) {
-        return times.get(v);
+        int index = v.getIndex();
+        return index < times.length ? times[index] : UNREACHABLE;
+    }
+
+    /** Set the time to the given vertex, replacing any time it already had. */
+    public void setTime(Vertex v, int time) {
+        int index = v.getIndex();
+        if (index >= times.length) {
+            int[] grown = makeUnreachableTimes(Math.max(Vertex.getMaxIndex(), index + 1));
+            System.arraycopy(times, 0, grown, 0, times.length);
+            times = grown;
+        }
+        if (times[index] == UNREACHABLE) {
+            reachedVertices.add(v);
+        }
+        times[index] = time;
+    }
+
+    /** @return the vertices that have a time, in the order they were first given one. */
+    public List<Vertex> getReachedVertices() {
+        return Collections.unmodifiableList(reachedVertices);
+    }
+
+    /**
+     * @return the time to each vertex indexed by vertex index, or UNREACHABLE. This is the surface's own storage
+     *         rather than a copy, so it must not be modified. It is shorter than Vertex.getMaxIndex() if vertices were
+     *         added to the graph after the surface was made, and those vertices are unreachable.
+     */
+    public int[] getTimesByVertexIndex() {
+        return times;
+    }
+
+    private static int[] makeUnreachableTimes(int size) {
+        int[] times = new int[size];
+        Arrays.fill(times, UNREACHABLE);
+        return times;
     }
 
     private synchronized int makeUniqueId() {
@@ -179,15 +236,13 @@ public class TimeSurface implements Serializable {
         final double cosLat = FastMath.cos(toRadians(coordinateOrigin.y));
         double dY = Math.toDegrees(gridSizeMeters / SphericalDistanceLibrary.RADIUS_OF_EARTH_IN_M);
         double dX = dY / cosLat;
-        sampleGrid = new SparseMatrixZSampleGrid<WTWD>(16, this.times.size(), dX, dY, coordinateOrigin);
+        sampleGrid = new SparseMatrixZSampleGrid<WTWD>(16, reachedVertices.size(), dX, dY, coordinateOrigin);
         AccumulativeGridSampler.AccumulativeMetric<WTWD> metric = new SampleGridRenderer.WTWDAccumulativeMetric(cosLat, D0, V0, gridSizeMeters);
         AccumulativeGridSampler<WTWD> sampler = new AccumulativeGridSampler<WTWD>(sampleGrid, metric);
         // Iterate over every vertex in this timesurface, adding it to the ZSampleGrid
         // TODO propagation along street geometries could happen at this stage, rather than when the SPT is still available.
-        for (TObjectIntIterator<Vertex> iter = times.iterator(); iter.hasNext(); ) {
-            iter.advance();
-            Vertex vertex = iter.key();
-            int time = iter.value();
+        for (Vertex vertex : reachedVertices) {
+            int time = times[vertex.getIndex()];
             WTWD z = new WTWD();
             z.w = 1.0;
             z.d = 0.0;
@@ -193,6 +193,7 @@ public class BatchProcessor {
         }
         GenericLocation latLon = new GenericLocation(i.lat, i.lon);
         req.batch = true;
+        req.indexedShortestPathTree = true;
         if (req.arriveBy)
             req.to = latLon;
         else
@@ -248,6 +249,9 @@ public class BatchProcessor {
                 ShortestPathTree spt = new AStar().getShortestPathTree(req);
                 // ResultSet should be a local to avoid memory leak
                 ResultSet results = ResultSet.forTravelTimes(destinations, spt);
+                if (spt != null) {
+                    spt.release();
+                }
                 req.cleanup();
                 switch (mode) {
                 case ACCUMULATE:
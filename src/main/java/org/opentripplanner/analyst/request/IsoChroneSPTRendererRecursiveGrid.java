@@ -70,6 +70,7 @@ public class IsoChroneSPTRendererRecursiveGrid implements IsoChroneSPTRenderer {
         sptRequest.worstTime = (sptRequest.dateTime
                 + (sptRequest.arriveBy ? -isoChroneRequest.maxCutoffSec : isoChroneRequest.maxCutoffSec));
         sptRequest.batch = true;
+        sptRequest.indexedShortestPathTree = true;
         sptRequest.setRoutingContext(graph);
         // TODO handle different path dominance conditions
         final ShortestPathTree spt = new AStar().getShortestPathTree(sptRequest);
@@ -109,6 +110,7 @@ public class IsoChroneSPTRendererRecursiveGrid implements IsoChroneSPTRenderer {
                 isochrone.debugGeometry = isolineBuilder.getDebugGeometry();
             isochrones.add(isochrone);
         }
+        spt.release();
         long t2 = System.currentTimeMillis();
         LOG.info("Computed SPT in {}msec, {} isochrones in {}msec", (int) (t1 - t0),
                 isochrones.size(), (int) (t2 - t1));
@@ -13,7 +13,12 @@
 
 package org.opentripplanner.analyst.request;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.opentripplanner.analyst.core.GeometryIndex;
 import org.opentripplanner.analyst.core.Sample;
@@ -30,6 +35,9 @@ import com.vividsolutions.jts.geom.LineString;
 
 public class SampleFactory implements SampleSource {
 
+    /** The number of points linked together by one thread in getSamples. */
+    private static final int BATCH_SIZE = 10000;
+
     public SampleFactory(GeometryIndex index) {
         this.index = index;
         this.setSearchRadiusM(200);
@@ -60,6 +68,46 @@ public class SampleFactory implements SampleSource {
         return findClosest(edges, c, xscale);
     }
 
+    /**
+     * Link many points to the street network. Large sets of points are linked in batches on all processors, since
+     * lookups in the spatial index are read-only and each point is linked independently.
+     *
+     * @return the sample for each point, or null for points that are too far from any street.
+     */
+    public Sample[] getSamples(final double[] lons, final double[] lats) {
+        final Sample[] samples = new Sample[lons.length];
+        if (lons.length <= BATCH_SIZE) {
+            for (int i = 0; i < lons.length; i++) {
+                samples[i] = getSample(lons[i], lats[i]);
+            }
+            return samples;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        List<Future<?>> futures = new ArrayList<Future<?>>();
+        for (int start = 0; start < lons.length; start += BATCH_SIZE) {
+            final int from = start;
+            final int to = Math.min(start + BATCH_SIZE, lons.length);
+            futures.add(executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = from; i < to; i++) {
+                        samples[i] = getSample(lons[i], lats[i]);
+                    }
+                }
+            }));
+        }
+        try {
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException | ExecutionException e) {
+            throw new RuntimeException("Could not link points to the street network.", e);
+        } finally {
+            executor.shutdownNow();
+        }
+        return samples;
+    }
+
     /**
      * DistanceToPoint.computeDistance() uses a LineSegment, which has a closestPoint method.
      * That finds the true distance every time rather than once the closest segment is known, 
@@ -130,6 +130,13 @@ public abstract class RoutingResource {
     @QueryParam("waitAtBeginningFactor")
     protected Double waitAtBeginningFactor;
 
+    /**
+     * A multiplier for how bad the time spent turning at intersections is. Defaults to 1. Street searches that give
+     * turns no weight (0) can use contraction hierarchies, when the graph has them.
+     */
+    @QueryParam("turnReluctance")
+    protected Double turnReluctance;
+
     /** The user's walking speed in meters/second. Defaults to approximately 3 MPH. */
     @QueryParam("walkSpeed")
     protected Double walkSpeed;
@@ -420,6 +427,9 @@ public abstract class RoutingResource {
         if (waitAtBeginningFactor != null)
             request.setWaitAtBeginningFactor(waitAtBeginningFactor);
 
+        if (turnReluctance != null)
+            request.setTurnReluctance(turnReluctance);
+
         if (walkSpeed != null)
             request.walkSpeed = walkSpeed;
 
@@ -81,6 +81,26 @@ public abstract class GraphPathToTripPlanConverter {
      * Generates a TripPlan from a set of paths
      */
     public static TripPlan generatePlan(List<GraphPath> paths, RoutingRequest request) {
+        TripPlan plan = generateEmptyPlan(paths, request);
+        for (GraphPath path : paths) {
+            plan.addItinerary(generatePlanItinerary(path, plan, request));
+        }
+        request.rctx.debugOutput.finishedRendering();
+        return plan;
+    }
+
+    /**
+     * Generates a TripPlan with the origin, destination and date of a set of paths, but without any itineraries.
+     * Together with generatePlanItinerary this allows handling one itinerary at a time, see StreamingPlanResponse.
+     * The paths are checked up front, so a plan that cannot be generated fails here rather than halfway through.
+     */
+    public static TripPlan generateEmptyPlan(List<GraphPath> paths, RoutingRequest request) {
+
+        for (GraphPath path : paths) {
+            if (path.states.size() < 2) {
+                throw new TrivialPathException();
+            }
+        }
 
         GraphPath exemplar = paths.get(0);
         Vertex tripStartVertex = exemplar.getStartVertex();
@@ -101,30 +121,28 @@ public abstract class GraphPathToTripPlanConverter {
         from.orig = request.from.name;
         to.orig = request.to.name;
 
-        TripPlan plan = new TripPlan(from, to, request.getDateTime());
+        return new TripPlan(from, to, request.getDateTime());
+    }
 
-        for (GraphPath path : paths) {
-            Itinerary itinerary = generateItinerary(path, request.showIntermediateStops);
-            itinerary = adjustItinerary(request, itinerary);
-            plan.addItinerary(itinerary);
-        }
-        if (plan != null) {
-            for (Itinerary i : plan.itinerary) {
-                /* Communicate the fact that the only way we were able to get a response was by removing a slope limit. */
-                i.tooSloped = request.rctx.slopeRestrictionRemoved;
-                /* fix up from/to on first/last legs */
-                if (i.legs.size() == 0) {
-                    LOG.warn("itinerary has no legs");
-                    continue;
-                }
-                Leg firstLeg = i.legs.get(0);
-                firstLeg.from.orig = plan.from.orig;
-                Leg lastLeg = i.legs.get(i.legs.size() - 1);
-                lastLeg.to.orig = plan.to.orig;
-            }
+    /**
+     * Generates the itinerary for one of the paths of a plan, as it appears in the plan returned by generatePlan.
+     * @param plan the plan made by generateEmptyPlan for all the paths.
+     */
+    public static Itinerary generatePlanItinerary(GraphPath path, TripPlan plan, RoutingRequest request) {
+        Itinerary itinerary = generateItinerary(path, request.showIntermediateStops);
+        itinerary = adjustItinerary(request, itinerary);
+        /* Communicate the fact that the only way we were able to get a response was by removing a slope limit. */
+        itinerary.tooSloped = request.rctx.slopeRestrictionRemoved;
+        /* fix up from/to on first/last legs */
+        if (itinerary.legs.size() == 0) {
+            LOG.warn("itinerary has no legs");
+            return itinerary;
         }
-        request.rctx.debugOutput.finishedRendering();
-        return plan;
+        Leg firstLeg = itinerary.legs.get(0);
+        firstLeg.from.orig = plan.from.orig;
+        Leg lastLeg = itinerary.legs.get(itinerary.legs.size() - 1);
+        lastLeg.to.orig = plan.to.orig;
+        return itinerary;
     }
 
     /**
@@ -48,6 +48,8 @@ import org.opentripplanner.analyst.request.IsoChroneRequest;
 import org.opentripplanner.api.common.RoutingResource;
 import org.opentripplanner.common.model.GenericLocation;
 import org.opentripplanner.routing.core.RoutingRequest;
+import org.opentripplanner.standalone.AdmissionControl;
+import org.opentripplanner.standalone.Admitted;
 import org.opentripplanner.standalone.Router;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -66,6 +68,7 @@ import com.vividsolutions.jts.geom.MultiPolygon;
  * 
  * @author laurent
  */
+@Admitted(AdmissionControl.Endpoint.ANALYST)
 @Path("/routers/{routerId}/isochrone")
 public class LIsochrone extends RoutingResource {
 
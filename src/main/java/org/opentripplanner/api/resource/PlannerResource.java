@@ -17,8 +17,10 @@ import static org.opentripplanner.api.resource.ServerInfo.Q;
 import javax.ws.rs.GET;
 import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
+import javax.ws.rs.container.ContainerRequestContext;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.StreamingOutput;
 import javax.ws.rs.core.UriInfo;
 
 import org.opentripplanner.api.common.RoutingResource;
@@ -27,6 +29,8 @@ import org.opentripplanner.api.model.error.PlannerError;
 import org.opentripplanner.routing.core.RoutingRequest;
 import org.opentripplanner.routing.impl.GraphPathFinder;
 import org.opentripplanner.routing.spt.GraphPath;
+import org.opentripplanner.standalone.AdmissionControl;
+import org.opentripplanner.standalone.Admitted;
 import org.opentripplanner.standalone.OTPServer;
 import org.opentripplanner.standalone.Router;
 import org.slf4j.Logger;
@@ -42,6 +46,7 @@ import java.util.*;
  * In order for inheritance to work, the REST resources are request-scoped (constructed at each request)
  * rather than singleton-scoped (a single instance existing for the lifetime of the OTP server).
  */
+@Admitted(AdmissionControl.Endpoint.PLAN)
 @Path("routers/{routerId}/plan") // final element needed here rather than on method to distinguish from routers API
 public class PlannerResource extends RoutingResource {
 
@@ -52,7 +57,8 @@ public class PlannerResource extends RoutingResource {
     // Jersey uses @Context to inject internal types and @InjectParam or @Resource for DI objects.
     @GET
     @Produces({ MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML + Q, MediaType.TEXT_XML + Q })
-    public Response plan(@Context OTPServer otpServer, @Context UriInfo uriInfo) {
+    public Response plan(@Context OTPServer otpServer, @Context UriInfo uriInfo,
+            @Context ContainerRequestContext requestContext) {
 
         /*
          * TODO: add Lang / Locale parameter, and thus get localized content (Messages & more...)
@@ -71,19 +77,14 @@ public class PlannerResource extends RoutingResource {
             request = super.buildRequest();
 
             /* Find some good GraphPaths through the OTP Graph. */
-            Router router = otpServer.getRouter(request.routerId);
-            GraphPathFinder gpFinder = new GraphPathFinder(router); // we could also get a persistent router-scoped GraphPathFinder but there's no setup cost here
-            List<GraphPath> paths = gpFinder.graphPathFinderEntryPoint(request);
+            List<GraphPath> paths = findPaths(otpServer, request, requestContext);
 
             /* Convert the internal GraphPaths to a TripPlan object that is included in an OTP web service Response. */
             TripPlan plan = GraphPathToTripPlanConverter.generatePlan(paths, request);
             response.setPlan(plan);
 
         } catch (Exception e) {
-            PlannerError error = new PlannerError(e);
-            if(!PlannerError.isPlanningError(e.getClass()))
-                LOG.warn("Error while planning path: ", e);
-            response.setError(error);
+            setError(response, e);
         } finally {
             if (request != null) {
                 if (request.rctx != null) {
@@ -95,4 +96,49 @@ public class PlannerResource extends RoutingResource {
         return response;
     }
 
+    /**
+     * The same trip plan as JSON, with the itineraries generated and written out one at a time after this method
+     * returns, see StreamingPlanResponse, which also cleans up the routing request. This is opt-in: clients asking for
+     * many itineraries can use it to get the first bytes sooner, and the server never holds all of them at once.
+     */
+    @GET
+    @Path("stream")
+    @Produces(MediaType.APPLICATION_JSON)
+    public StreamingOutput planStream(@Context OTPServer otpServer, @Context UriInfo uriInfo,
+            @Context ContainerRequestContext requestContext) {
+
+        Response response = new Response(uriInfo);
+        RoutingRequest request = null;
+        List<GraphPath> paths = null;
+        TripPlan plan = null;
+        try {
+            request = super.buildRequest();
+            paths = findPaths(otpServer, request, requestContext);
+            // This also rejects the paths the converter cannot handle, before anything is written.
+            plan = GraphPathToTripPlanConverter.generateEmptyPlan(paths, request);
+        } catch (Exception e) {
+            setError(response, e);
+        }
+        if (request != null && request.rctx != null) {
+            response.debugOutput = request.rctx.debugOutput;
+        }
+        return new StreamingPlanResponse(response, request, plan, paths);
+    }
+
+    private static List<GraphPath> findPaths(OTPServer otpServer, RoutingRequest request,
+            ContainerRequestContext requestContext) {
+        Router router = otpServer.getRouter(request.routerId);
+        GraphPathFinder gpFinder = new GraphPathFinder(router); // we could also get a persistent router-scoped GraphPathFinder but there's no setup cost here
+        // Give up searching once the client would have given up waiting for the response.
+        gpFinder.searchAbortTime = AdmissionControl.getDeadline(requestContext);
+        return gpFinder.graphPathFinderEntryPoint(request);
+    }
+
+    static void setError(Response response, Exception e) {
+        PlannerError error = new PlannerError(e);
+        if(!PlannerError.isPlanningError(e.getClass()))
+            LOG.warn("Error while planning path: ", e);
+        response.setError(error);
+    }
+
 }
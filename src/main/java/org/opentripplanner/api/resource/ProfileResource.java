@@ -9,6 +9,7 @@ import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
+import javax.ws.rs.container.ContainerRequestContext;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
@@ -24,6 +25,8 @@ import org.opentripplanner.api.param.YearMonthDay;
 import org.opentripplanner.profile.*;
 import org.opentripplanner.routing.core.TraverseModeSet;
 import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.standalone.AdmissionControl;
+import org.opentripplanner.standalone.Admitted;
 import org.opentripplanner.standalone.OTPServer;
 import org.opentripplanner.standalone.Router;
 
@@ -34,6 +37,7 @@ import org.slf4j.LoggerFactory;
  * A Jersey resource class which exposes OTP profile routing functionality as a web service.
  *
  */
+@Admitted(AdmissionControl.Endpoint.PROFILE)
 @Path("routers/{routerId}/profile")
 public class ProfileResource {
 
@@ -41,6 +45,9 @@ public class ProfileResource {
     private Graph graph;
     private SurfaceCache surfaceCache;
 
+    @Context
+    private ContainerRequestContext requestContext;
+
     public ProfileResource (@Context OTPServer otpServer, @PathParam("routerId") String routerId) {
         Router router = otpServer.getRouter(routerId);
         graph = router.graph;
@@ -71,7 +78,8 @@ public class ProfileResource {
             @QueryParam("accessModes")  @DefaultValue("WALK,BICYCLE") TraverseModeSet accessModes,
             @QueryParam("egressModes")  @DefaultValue("WALK")         TraverseModeSet egressModes,
             @QueryParam("directModes")  @DefaultValue("WALK,BICYCLE") TraverseModeSet directModes,
-            @QueryParam("transitModes") @DefaultValue("TRANSIT")      TraverseModeSet transitModes)
+            @QueryParam("transitModes") @DefaultValue("TRANSIT")      TraverseModeSet transitModes,
+            @QueryParam("percentile")   Integer percentile) // analyst: also make a surface for this percentile
             throws Exception {
 
         QueryParameter.checkRangeInclusive(limit, 0, Integer.MAX_VALUE);
@@ -85,6 +93,7 @@ public class ProfileResource {
         QueryParameter.checkRangeInclusive(minBikeTime, 0, maxBikeTime);
         QueryParameter.checkRangeInclusive(minCarTime,  0, maxCarTime);
         QueryParameter.checkRangeInclusive(suboptimalMinutes, 0, 30);
+        if (percentile != null) QueryParameter.checkRangeInclusive(percentile, 0, 100);
 
         ProfileRequest req = new ProfileRequest();
         req.fromLat      = from.lat;
@@ -120,14 +129,28 @@ public class ProfileResource {
                 LOG.error ("You must run OTP with the --analyst option to enable spatial analysis features.");
             }
             TimeSurface.RangeSet result;
+            TimeSurface percentileSurface = null;
 
-            if (graph.hasFrequencyService && ! graph.hasScheduledService) {
+            if (RangeRaptorRouter.accepts(graph, req)) {
+                /* Find exact travel times for every departure minute with range RAPTOR, when only walking. */
+                RangeRaptorRouter router = new RangeRaptorRouter(graph, req);
+                try {
+                    router.route();
+                    result = router.makeSurfaces();
+                    if (percentile != null) {
+                        percentileSurface = router.makePercentileSurface(percentile);
+                    }
+                } finally {
+                    router.cleanup();
+                }
+            } else if (graph.hasFrequencyService && ! graph.hasScheduledService) {
                 /* Use the new prototype profile-analyst for frequency-only cases. */
                 AnalystProfileRouterPrototype router = new AnalystProfileRouterPrototype(graph, req);
                 result = router.route();
             } else {
                 /* Use the Modeify profile router for the general case. */
                 ProfileRouter router = new ProfileRouter(graph, req);
+                router.searchAbortTime = AdmissionControl.getDeadline(requestContext);
                 try {
                     router.route();
                     result = router.timeSurfaceRangeSet;
@@ -139,9 +162,13 @@ public class ProfileResource {
             idForSurface.put("min", surfaceCache.add(result.min)); // requires analyst mode turned on
             idForSurface.put("avg", surfaceCache.add(result.avg));
             idForSurface.put("max", surfaceCache.add(result.max));
+            if (percentileSurface != null) {
+                idForSurface.put("p" + percentile, surfaceCache.add(percentileSurface));
+            }
             return Response.status(Status.OK).entity(idForSurface).build();
         } else {
             ProfileRouter router = new ProfileRouter(graph, req);
+            router.searchAbortTime = AdmissionControl.getDeadline(requestContext);
             try {
                 ProfileResponse response = router.route();
                 return Response.status(Status.OK).entity(response).build();
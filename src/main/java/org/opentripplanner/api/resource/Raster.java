@@ -32,9 +32,12 @@ import org.opentripplanner.api.parameter.IsoTimeParameter;
 import org.opentripplanner.api.parameter.Layer;
 import org.opentripplanner.api.parameter.MIMEImageFormat;
 import org.opentripplanner.api.parameter.Style;
+import org.opentripplanner.standalone.AdmissionControl;
+import org.opentripplanner.standalone.Admitted;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+@Admitted(AdmissionControl.Endpoint.ANALYST)
 @Path("/routers/{routerId}/analyst/raster")
 public class Raster {
     
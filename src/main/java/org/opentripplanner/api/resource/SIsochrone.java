@@ -36,6 +36,8 @@ import org.opentripplanner.routing.edgetype.StreetEdge;
 import org.opentripplanner.routing.graph.Edge;
 import org.opentripplanner.routing.location.StreetLocation;
 import org.opentripplanner.routing.spt.ShortestPathTree;
+import org.opentripplanner.standalone.AdmissionControl;
+import org.opentripplanner.standalone.Admitted;
 import org.opentripplanner.standalone.Router;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -54,6 +56,7 @@ import com.vividsolutions.jts.linearref.LengthIndexedLine;
  * This is the original Isochrone class provided by Stefan Steineger.
  * Another implementation has been provided by Laurent Grégoire (isochrone2).
  */
+@Admitted(AdmissionControl.Endpoint.ANALYST)
 @Path("/routers/{routerId}/isochroneOld")
 @XmlRootElement
 public class SIsochrone extends RoutingResource {
@@ -0,0 +1,49 @@
+package org.opentripplanner.api.resource;
+
+import org.opentripplanner.standalone.OTPServer;
+import org.opentripplanner.standalone.Router;
+import org.opentripplanner.util.monitoring.SearchMetrics;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+/**
+ * Report statistics about the searches run on a router via a web service: for each query class, the number of
+ * searches and timeouts, and histograms of search time, heuristic initialization time, vertices visited, states
+ * created, priority queue size and shortest path tree size. All the search algorithms of the router are covered, not
+ * only AStar, each under its own query classes. The counters of search workspace reuse are included with
+ * the statistics of all query classes.
+ */
+@Path("/routers/{routerId}/metrics")
+@Produces(MediaType.APPLICATION_JSON)
+public class SearchMetricsResource {
+
+    Router router;
+
+    public SearchMetricsResource (@Context OTPServer otpServer, @PathParam("routerId") String routerId) {
+        router = otpServer.getRouter(routerId);
+    }
+
+    /** Return the statistics of all query classes. */
+    @GET
+    public Response getMetrics () {
+        return Response.status(Response.Status.OK).entity(router.graph.getSearchMetrics()).build();
+    }
+
+    /** Return the statistics of a single query class, such as street, transit or raptor. See SearchMetrics. */
+    @GET
+    @Path("/{queryClass}")
+    public Response getMetrics (@PathParam("queryClass") String queryClass) {
+        SearchMetrics.QueryClass metrics = router.graph.getSearchMetrics().getQueryClasses().get(queryClass);
+        if (metrics == null) {
+            return Response.status(Response.Status.NOT_FOUND).entity("No searches of that class.").build();
+        }
+        return Response.status(Response.Status.OK).entity(metrics).build();
+    }
+
+}
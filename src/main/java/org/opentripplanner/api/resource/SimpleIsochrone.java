@@ -61,6 +61,8 @@ import org.opentripplanner.routing.spt.ShortestPathTree;
 import org.opentripplanner.routing.vertextype.IntersectionVertex;
 import org.opentripplanner.routing.vertextype.StreetVertex;
 import org.opentripplanner.routing.vertextype.TransitStop;
+import org.opentripplanner.standalone.AdmissionControl;
+import org.opentripplanner.standalone.Admitted;
 import org.opentripplanner.standalone.Router;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -90,6 +92,7 @@ import com.vividsolutions.jts.geom.Point;
  * occurs). Putting "@Setter" on all the parameters would allow resource classes to be used outside
  * Jersey.
  */
+@Admitted(AdmissionControl.Endpoint.ANALYST)
 @Path("/routers/{routerId}/simpleIsochrone")
 public class SimpleIsochrone extends RoutingResource {
     
@@ -0,0 +1,128 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.api.resource;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+import javax.ws.rs.core.StreamingOutput;
+
+import org.opentripplanner.api.model.JSONObjectMapperProvider;
+import org.opentripplanner.api.model.TripPlan;
+import org.opentripplanner.routing.core.RoutingRequest;
+import org.opentripplanner.routing.spt.GraphPath;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+
+/**
+ * Writes a trip planner Response as JSON while the itineraries are generated from the paths found, instead of building
+ * the whole TripPlan first and handing it to Jersey. Each itinerary is still generated in full, with its legs, walk
+ * steps, geometries and elevation profiles, and serialized to a buffer with the ObjectMapper Jersey uses, but only one
+ * of them is held at a time. The output is the same as that of the complete Response.
+ *
+ * Errors found while planning, including paths the converter rejects, are reported by PlannerResource without a plan,
+ * as usual. Once the plan has started, an itinerary that unexpectedly cannot be generated ends it early and the error
+ * follows it, so the response remains valid JSON.
+ *
+ * This takes over the routing request: its routing context is cleaned up once the response is written.
+ */
+public class StreamingPlanResponse implements StreamingOutput {
+
+    private static final ObjectMapper MAPPER = new JSONObjectMapperProvider().getContext(Response.class);
+
+    private final Response response;
+
+    private final RoutingRequest request;
+
+    private final TripPlan plan;
+
+    private final List<GraphPath> paths;
+
+    /**
+     * @param response the request parameters, error and debug output to write around the plan.
+     * @param request the routing request, or null if it could not be built.
+     * @param plan the plan without itineraries made by GraphPathToTripPlanConverter.generateEmptyPlan, or null if
+     *             there is none.
+     * @param paths the paths to write as the itineraries of the plan.
+     */
+    public StreamingPlanResponse(Response response, RoutingRequest request, TripPlan plan, List<GraphPath> paths) {
+        this.response = response;
+        this.request = request;
+        this.plan = plan;
+        this.paths = paths;
+    }
+
+    @Override
+    public void write(OutputStream output) throws IOException {
+        try {
+            JsonGenerator jgen = MAPPER.getFactory().createGenerator(output, JsonEncoding.UTF8);
+            jgen.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            // Same order and null handling as the serialization of the Response class.
+            jgen.writeStartObject(); {
+                jgen.writeObjectField("requestParameters", response.requestParameters);
+                if (plan != null) {
+                    writePlan(jgen);
+                }
+                if (response.getError() != null) {
+                    jgen.writeObjectField("error", response.getError());
+                }
+                if (response.debugOutput != null) {
+                    jgen.writeObjectField("debugOutput", response.debugOutput);
+                }
+            }
+            jgen.writeEndObject();
+            jgen.close();
+        } finally {
+            if (request != null) {
+                request.cleanup();
+            }
+        }
+    }
+
+    private void writePlan(JsonGenerator jgen) throws IOException {
+        jgen.writeObjectFieldStart("plan"); {
+            if (plan.date != null) {
+                jgen.writeObjectField("date", plan.date);
+            }
+            if (plan.from != null) {
+                jgen.writeObjectField("from", plan.from);
+            }
+            if (plan.to != null) {
+                jgen.writeObjectField("to", plan.to);
+            }
+            jgen.writeArrayFieldStart("itineraries"); {
+                for (GraphPath path : paths) {
+                    TokenBuffer itinerary = new TokenBuffer(MAPPER, false);
+                    try {
+                        MAPPER.writeValue(itinerary,
+                                GraphPathToTripPlanConverter.generatePlanItinerary(path, plan, request));
+                    } catch (RuntimeException | JsonProcessingException e) {
+                        PlannerResource.setError(response, e);
+                        break;
+                    }
+                    itinerary.serialize(jgen);
+                }
+            }
+            jgen.writeEndArray();
+        }
+        jgen.writeEndObject();
+        request.rctx.debugOutput.finishedRendering();
+    }
+
+}
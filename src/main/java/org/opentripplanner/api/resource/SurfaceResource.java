@@ -20,9 +20,12 @@ import org.opentripplanner.api.parameter.Layer;
 import org.opentripplanner.api.parameter.MIMEImageFormat;
 import org.opentripplanner.api.parameter.Style;
 import org.opentripplanner.common.geometry.DelaunayIsolineBuilder;
+import org.opentripplanner.profile.RaptorRouter;
 import org.opentripplanner.routing.algorithm.EarliestArrivalSearch;
 import org.opentripplanner.routing.core.RoutingRequest;
 import org.opentripplanner.routing.spt.ShortestPathTree;
+import org.opentripplanner.standalone.AdmissionControl;
+import org.opentripplanner.standalone.Admitted;
 import org.opentripplanner.standalone.Router;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -57,18 +60,40 @@ public class SurfaceResource extends RoutingResource {
     @Context
     UriInfo uriInfo;
 
+    /**
+     * Create a travel time surface from the origin of the request. With raptor=true transit requests are answered
+     * with a RaptorRouter, which is much faster than a full search over the graph but only finds the earliest
+     * arrival with at most a few rides, and no vehicle or bike rental on the way.
+     */
+    @Admitted(AdmissionControl.Endpoint.ANALYST)
     @POST
     public Response createSurface(@QueryParam("cutoffMinutes") 
     @DefaultValue("90") int cutoffMinutes,
-    @QueryParam("routerId") String routerId) {
+    @QueryParam("routerId") String routerId,
+    @QueryParam("raptor") @DefaultValue("false") boolean raptor) {
 
         // Build the request
         try {
             RoutingRequest req = buildRequest(); // batch must be true
+            req.indexedShortestPathTree = true;
            
             // routerId is optional -- select default graph if not set
             Router router = otpServer.getRouter(routerId);
             req.setRoutingContext(router.graph);
+
+            if (raptor && req.modes.isTransit()) {
+                RaptorRouter raptorRouter = new RaptorRouter(router.graph, req);
+                raptorRouter.maxDuration = 60 * cutoffMinutes;
+                TimeSurface surface;
+                try {
+                    raptorRouter.route();
+                    surface = raptorRouter.makeSurface();
+                } finally {
+                    req.cleanup();
+                }
+                surface.makeSampleGridWithoutSPT();
+                return cacheSurface(surface, cutoffMinutes);
+            }
         	
             EarliestArrivalSearch sptService = new EarliestArrivalSearch();
             sptService.maxDuration = (60 * cutoffMinutes);
@@ -76,14 +101,9 @@ public class SurfaceResource extends RoutingResource {
             req.cleanup();
             if (spt != null) {
                 TimeSurface surface = new TimeSurface(spt);
-                surface.params = Maps.newHashMap();
-                for (Map.Entry<String, List<String>> e : uriInfo.getQueryParameters().entrySet()) {
-                    // include only the first instance of each query parameter
-                    surface.params.put(e.getKey(), e.getValue().get(0));
-                }
-                surface.cutoffMinutes = cutoffMinutes;
-                otpServer.surfaceCache.add(surface);
-                return Response.ok().entity(new TimeSurfaceShort(surface)).build(); // .created(URI)
+                // The surface holds its own copy of the times, let the next search reuse the arrays of the tree.
+                spt.release();
+                return cacheSurface(surface, cutoffMinutes);
             } else {
                 return Response.noContent().entity("NO SPT").build();
             }
@@ -93,6 +113,17 @@ public class SurfaceResource extends RoutingResource {
 
     }
 
+    private Response cacheSurface(TimeSurface surface, int cutoffMinutes) {
+        surface.params = Maps.newHashMap();
+        for (Map.Entry<String, List<String>> e : uriInfo.getQueryParameters().entrySet()) {
+            // include only the first instance of each query parameter
+            surface.params.put(e.getKey(), e.getValue().get(0));
+        }
+        surface.cutoffMinutes = cutoffMinutes;
+        otpServer.surfaceCache.add(surface);
+        return Response.ok().entity(new TimeSurfaceShort(surface)).build(); // .created(URI)
+    }
+
     /** List all the available surfaces. */
     @GET
     public Response getTimeSurfaceList () {
@@ -109,6 +140,7 @@ public class SurfaceResource extends RoutingResource {
     }
 
     /** Evaluate a surface at all the points in a PointSet. */
+    @Admitted(AdmissionControl.Endpoint.ANALYST)
     @GET @Path("/{surfaceId}/indicator")
     public Response getIndicator (@PathParam("surfaceId") Integer surfaceId,
                                   @QueryParam("targets")  String  targetPointSetId,
@@ -137,6 +169,7 @@ public class SurfaceResource extends RoutingResource {
     }
 
     /** Create vector isochrones for a surface. */
+    @Admitted(AdmissionControl.Endpoint.ANALYST)
     @GET @Path("/{surfaceId}/isochrone")
     public Response getIsochrone (
             @PathParam("surfaceId") Integer surfaceId,
@@ -32,6 +32,8 @@ import org.opentripplanner.api.parameter.MIMEImageFormat;
 import org.opentripplanner.api.parameter.Style;
 import org.opentripplanner.api.parameter.StyleList;
 import org.opentripplanner.routing.core.RoutingRequest;
+import org.opentripplanner.standalone.AdmissionControl;
+import org.opentripplanner.standalone.Admitted;
 import org.opentripplanner.standalone.Router;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -44,6 +46,7 @@ import org.slf4j.LoggerFactory;
  * The basic idea is to create a surface for a "batch" or one-to-many OTP search, then using the returned ID
  * fetch the tiles from a URL under that surface ID.
  */
+@Admitted(AdmissionControl.Endpoint.ANALYST)
 @Path("/routers/{routerId}/analyst/tile/{z}/{x}/{y}.png")
 public class TileService extends RoutingResource {
     
@@ -29,6 +29,8 @@ import org.opentripplanner.common.geometry.ZSampleGrid;
 import org.opentripplanner.common.geometry.ZSampleGrid.ZSamplePoint;
 import org.opentripplanner.common.model.GenericLocation;
 import org.opentripplanner.routing.core.RoutingRequest;
+import org.opentripplanner.standalone.AdmissionControl;
+import org.opentripplanner.standalone.Admitted;
 import org.opentripplanner.standalone.Router;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -51,6 +53,7 @@ import ar.com.hjg.pngj.chunks.PngChunkTextVar;
  * 
  * @author laurent
  */
+@Admitted(AdmissionControl.Endpoint.ANALYST)
 @Path("/routers/{routerId}/timegrid")
 public class TimeGridWs extends RoutingResource {
 
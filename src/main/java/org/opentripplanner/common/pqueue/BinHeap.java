@@ -15,14 +15,26 @@ package org.opentripplanner.common.pqueue;
 
 import java.util.Arrays;
 
-public class BinHeap<T> {
+/**
+ * A plain binary heap. Elements are not identified, so the same element may be inserted several times and
+ * there is no decrease-key operation (rekey is a linear scan).
+ */
+public class BinHeap<T> implements OTPPriorityQueue<T> {
     
     private static final double GROW_FACTOR = 2.0;
+
+    public static final OTPPriorityQueueFactory FACTORY = new OTPPriorityQueueFactory() {
+        @Override
+        public <T> OTPPriorityQueue<T> create(int initialCapacity) {
+            return new BinHeap<T>(initialCapacity);
+        }
+    };
     
     private double[] prio;
     private T[] elem;
     private int size; 
     private int capacity;
+    private int maxSize; // high water mark since the last clear(), used to release references in O(touched)
     
     public BinHeap() {
     	this(1000);
@@ -38,14 +50,22 @@ public class BinHeap<T> {
         prio[0] = Double.NEGATIVE_INFINITY;    // set sentinel
     }
     
+    @Override
     public int size() {
     	return size;
     }
+
+    @Override
+    public int getCapacity() {
+        return capacity;
+    }
     
+    @Override
     public boolean empty() {
     	return size <= 0;
     }
 
+    @Override
     public double peek_min_key() {
     	if (size > 0) 
     		return prio[1];
@@ -53,6 +73,7 @@ public class BinHeap<T> {
     		throw new IllegalStateException("An empty queue does not have a minimum key.");
    	}
     
+    @Override
     public T peek_min() {
     	if (size > 0)
     		return elem[1];
@@ -60,6 +81,7 @@ public class BinHeap<T> {
     		return null;
     }
     
+    @Override
     public void insert_or_dec_key(T e, double p) {
     	throw new UnsupportedOperationException("BinHeap has no decrease key operation.");
     }
@@ -117,11 +139,26 @@ public class BinHeap<T> {
     	size=0;
     } 
 
+    /**
+     * Empties the queue and releases references to all elements it has held since the last clear, so that a queue
+     * can be kept and reused across searches without retaining their states. Runs in time proportional to the
+     * largest number of elements held at once, not to the capacity of the queue.
+     */
+    @Override
+    public void clear() {
+        Arrays.fill(elem, 1, Math.min(maxSize, capacity) + 1, null);
+        size = 0;
+        maxSize = 0;
+    }
+
+    @Override
     public void insert(T e, double p) {
         int i;
         size += 1;
         if (size > capacity) 
         	resize((int) (capacity * GROW_FACTOR));
+        if (size > maxSize)
+            maxSize = size;
         for (i = size; prio[i/2] > p; i /= 2) {
             elem[i] = elem[i/2];
             prio[i] = prio[i/2];
@@ -130,6 +167,7 @@ public class BinHeap<T> {
         prio[i] = p;
     }    
     
+    @Override
     public T extract_min() {
         int    i, child;
         T      minElem  = elem[1];
@@ -0,0 +1,49 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.common.pqueue;
+
+/**
+ * A min-priority queue of elements with double-precision keys, as used by the shortest path searches.
+ * Implementations trade generality for speed in different ways, see BinHeap, IndexedFourAryHeap and RadixHeap.
+ */
+public interface OTPPriorityQueue<T> {
+
+    boolean empty();
+
+    int size();
+
+    /** @return the number of elements this queue can hold before it needs to grow its internal storage. */
+    int getCapacity();
+
+    /** @return the smallest key in the queue. Throws IllegalStateException if the queue is empty. */
+    double peek_min_key();
+
+    /** @return the element with the smallest key, or null if the queue is empty. */
+    T peek_min();
+
+    void insert(T e, double p);
+
+    /**
+     * Insert the element, or if it is already in the queue lower its key to p when p is smaller than its current key.
+     * Implementations that cannot identify elements throw UnsupportedOperationException.
+     */
+    void insert_or_dec_key(T e, double p);
+
+    /** Remove and return the element with the smallest key, or null if the queue is empty. */
+    T extract_min();
+
+    /** Empty the queue, releasing references to any elements it has held. */
+    void clear();
+
+}
@@ -11,22 +11,14 @@
  You should have received a copy of the GNU General Public License
  along with this program.  If not, see <http://www.gnu.org/licenses/>. */
 
-package org.opentripplanner.util.monitoring;
+package org.opentripplanner.common.pqueue;
 
-
-/** 
- * A singleton factory for getting a monitoring store.
- * @author novalis
- *
+/**
+ * Creates priority queues, allowing searches to be configured with different queue implementations.
+ * Each implementation provides an instance in a static FACTORY field.
  */
-public class MonitoringStoreFactory {
+public interface OTPPriorityQueueFactory {
 
-    private static MonitoringStore store;
+    <T> OTPPriorityQueue<T> create(int initialCapacity);
 
-    public static synchronized MonitoringStore getStore() {
-        if (store == null) {
-            store = new MonitoringStore();
-        }
-        return store;
-    }
 }
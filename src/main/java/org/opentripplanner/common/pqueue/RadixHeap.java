@@ -0,0 +1,240 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.common.pqueue;
+
+import gnu.trove.map.hash.TIntLongHashMap;
+
+import java.util.Arrays;
+
+/**
+ * A monotone radix heap for integer keys, such as the whole seconds used as keys in earliest-arrival searches.
+ * Keys are truncated to longs on insertion.
+ *
+ * Elements are kept in 65 buckets according to the highest bit in which their key differs from the last key
+ * extracted. Insertion is constant time, and each element is moved between buckets at most 64 times over its life
+ * in the queue, without any of the comparisons and swaps of a binary heap.
+ *
+ * This only works for monotone searches, where no key inserted is smaller than the last key extracted, which is
+ * the case for Dijkstra searches with non-negative edge weights. A key smaller than the last one extracted is
+ * treated as equal to it, so the element will be the next one out rather than corrupting the queue.
+ *
+ * As with IndexedFourAryHeap, a heap constructed with an Indexer supports a true decrease-key operation: the bucket
+ * and slot of each element are tracked in a hash map keyed on its index, and an element whose key is lowered is
+ * moved to the bucket for its new key. Without an Indexer there is no decrease-key operation.
+ */
+public class RadixHeap<T> implements OTPPriorityQueue<T> {
+
+    private static final int N_BUCKETS = 65;
+
+    private static final int INITIAL_BUCKET_SIZE = 16;
+
+    public static final OTPPriorityQueueFactory FACTORY = new OTPPriorityQueueFactory() {
+        @Override
+        public <T> OTPPriorityQueue<T> create(int initialCapacity) {
+            return new RadixHeap<T>(null);
+        }
+    };
+
+    private final IndexedFourAryHeap.Indexer<? super T> indexer;
+
+    /**
+     * Bucket (high 32 bits) and slot (low 32 bits) of each element currently in the queue, keyed on its index.
+     * Null when there is no indexer.
+     */
+    private final TIntLongHashMap positions;
+
+    private final long[][] keys = new long[N_BUCKETS][];
+
+    private final Object[][] elems = new Object[N_BUCKETS][];
+
+    private final int[] sizes = new int[N_BUCKETS];
+
+    /** The last key extracted. All keys in bucket 0 are equal to this value. */
+    private long last = Long.MIN_VALUE;
+
+    private int size = 0;
+
+    public RadixHeap() {
+        this(null);
+    }
+
+    public RadixHeap(IndexedFourAryHeap.Indexer<? super T> indexer) {
+        this.indexer = indexer;
+        this.positions = indexer == null ? null : new TIntLongHashMap(INITIAL_BUCKET_SIZE, 0.5f, -1, -1);
+    }
+
+    @Override
+    public boolean empty() {
+        return size <= 0;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int getCapacity() {
+        int capacity = 0;
+        for (Object[] bucket : elems) {
+            if (bucket != null)
+                capacity += bucket.length;
+        }
+        return capacity;
+    }
+
+    @Override
+    public double peek_min_key() {
+        if (size <= 0)
+            throw new IllegalStateException("An empty queue does not have a minimum key.");
+        fillBucketZero();
+        return last;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T peek_min() {
+        if (size <= 0)
+            return null;
+        fillBucketZero();
+        return (T) elems[0][sizes[0] - 1];
+    }
+
+    /** In an indexed heap, this is the same as insert_or_dec_key. */
+    @Override
+    public void insert(T e, double p) {
+        if (indexer != null) {
+            insert_or_dec_key(e, p);
+            return;
+        }
+        long key = (long) p;
+        if (key < last)
+            key = last;
+        add(bucketFor(key), e, key);
+        size += 1;
+    }
+
+    @Override
+    public void insert_or_dec_key(T e, double p) {
+        if (indexer == null)
+            throw new UnsupportedOperationException("A radix heap without an Indexer has no decrease key operation.");
+        long key = (long) p;
+        if (key < last)
+            key = last;
+        long position = positions.get(indexer.getIndex(e));
+        if (position < 0) {
+            add(bucketFor(key), e, key);
+            size += 1;
+        } else {
+            int b = (int) (position >>> 32);
+            int i = (int) position;
+            if (key < keys[b][i]) {
+                remove(b, i);
+                add(bucketFor(key), e, key);
+            }
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T extract_min() {
+        if (size <= 0)
+            return null;
+        fillBucketZero();
+        int n = --sizes[0];
+        T e = (T) elems[0][n];
+        elems[0][n] = null;
+        if (positions != null)
+            positions.remove(indexer.getIndex(e));
+        size -= 1;
+        return e;
+    }
+
+    @Override
+    public void clear() {
+        for (int b = 0; b < N_BUCKETS; b++) {
+            if (sizes[b] > 0) {
+                Arrays.fill(elems[b], 0, sizes[b], null);
+                sizes[b] = 0;
+            }
+        }
+        if (positions != null)
+            positions.clear();
+        last = Long.MIN_VALUE;
+        size = 0;
+    }
+
+    private int bucketFor(long key) {
+        return key == last ? 0 : 64 - Long.numberOfLeadingZeros(key ^ last);
+    }
+
+    private void add(int b, Object e, long key) {
+        if (elems[b] == null) {
+            elems[b] = new Object[INITIAL_BUCKET_SIZE];
+            keys[b] = new long[INITIAL_BUCKET_SIZE];
+        } else if (sizes[b] == elems[b].length) {
+            elems[b] = Arrays.copyOf(elems[b], sizes[b] * 2);
+            keys[b] = Arrays.copyOf(keys[b], sizes[b] * 2);
+        }
+        elems[b][sizes[b]] = e;
+        keys[b][sizes[b]] = key;
+        track(b, sizes[b]);
+        sizes[b] += 1;
+    }
+
+    /** Remove the element in slot i of bucket b by moving the last element of the bucket into its place. */
+    private void remove(int b, int i) {
+        int n = --sizes[b];
+        if (i < n) {
+            elems[b][i] = elems[b][n];
+            keys[b][i] = keys[b][n];
+            track(b, i);
+        }
+        elems[b][n] = null;
+    }
+
+    /** Record the position of the element in slot i of bucket b, if this heap is indexed. */
+    @SuppressWarnings("unchecked")
+    private void track(int b, int i) {
+        if (positions != null)
+            positions.put(indexer.getIndex((T) elems[b][i]), ((long) b << 32) | i);
+    }
+
+    /**
+     * If bucket 0 is empty, find the first non-empty bucket, make its smallest key the new last key and redistribute
+     * its elements. They all land in lower buckets, and at least one of them in bucket 0. The queue must not be empty.
+     */
+    private void fillBucketZero() {
+        if (sizes[0] > 0)
+            return;
+        int b = 1;
+        while (sizes[b] == 0)
+            b++;
+        long[] bucketKeys = keys[b];
+        Object[] bucketElems = elems[b];
+        int n = sizes[b];
+        long min = bucketKeys[0];
+        for (int i = 1; i < n; i++) {
+            if (bucketKeys[i] < min)
+                min = bucketKeys[i];
+        }
+        last = min;
+        sizes[b] = 0;
+        for (int i = 0; i < n; i++) {
+            add(bucketFor(bucketKeys[i]), bucketElems[i], bucketKeys[i]);
+            bucketElems[i] = null;
+        }
+    }
+
+}
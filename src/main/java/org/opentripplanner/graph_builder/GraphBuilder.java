@@ -37,6 +37,7 @@ import org.opentripplanner.graph_builder.services.GraphBuilderModule;
 import org.opentripplanner.graph_builder.services.ned.ElevationGridCoverageFactory;
 import org.opentripplanner.openstreetmap.impl.AnyFileBasedOpenStreetMapProviderImpl;
 import org.opentripplanner.openstreetmap.services.OpenStreetMapProvider;
+import org.opentripplanner.profile.StopTreeCache;
 import org.opentripplanner.reflect.ReflectionLibrary;
 import org.opentripplanner.routing.core.RoutingRequest;
 import org.opentripplanner.routing.graph.Graph;
@@ -77,6 +78,9 @@ public class GraphBuilder implements Runnable {
     /** Should the graph be serialized to disk after being created or not? */
     public boolean serializeGraph = true;
 
+    /** Save the graph in the compact format (see Graph.saveCompact) rather than with Java serialization. */
+    public boolean compactGraphFormat = false;
+
     public void addGraphBuilder(GraphBuilderModule loader) {
         _graphBuilderModules.add(loader);
     }
@@ -151,13 +155,26 @@ public class GraphBuilder implements Runnable {
         }
         
         HashMap<Class<?>, Object> extra = new HashMap<Class<?>, Object>();
-        for (GraphBuilderModule load : _graphBuilderModules)
-            load.buildGraph(graph, extra);
+        GraphBuilderModuleScheduler scheduler = new GraphBuilderModuleScheduler(_graphBuilderModules);
+        scheduler.run(graph, extra);
 
         graph.summarizeBuilderAnnotations();
         if (serializeGraph) {
             try {
-                graph.save(graphFile);
+                if (compactGraphFormat) {
+                    graph.saveCompact(graphFile);
+                } else {
+                    graph.save(graphFile);
+                }
+                File stopTreeFile = new File(graphFile.getParentFile(), StopTreeCache.FILENAME);
+                if (graph.stopTreeCache != null) {
+                    graph.stopTreeCache.write(stopTreeFile);
+                } else if (stopTreeFile.exists()) {
+                    // Left by an earlier build, it does not belong to this graph.
+                    LOG.info("Deleting stop tree file {} from an earlier build.", stopTreeFile);
+                    if (!stopTreeFile.delete())
+                        LOG.warn("Could not delete stop tree file {}.", stopTreeFile);
+                }
             } catch (Exception ex) {
                 throw new IllegalStateException(ex);
             }
@@ -166,6 +183,7 @@ public class GraphBuilder implements Runnable {
         }
 
         long endTime = System.currentTimeMillis();
+        scheduler.logDurations();
         LOG.info(String.format("Graph building took %.1f minutes.", (endTime - startTime) / 1000 / 60.0));
     }
 
@@ -279,11 +297,18 @@ public class GraphBuilder implements Runnable {
             GraphBuilderModule elevationBuilder = new ElevationModule(gcf);
             graphBuilder.addGraphBuilder(elevationBuilder);
         }
+        if ( hasOSM && !builderParams.contractionHierarchies.isEmpty()) {
+            graphBuilder.addGraphBuilder(new ContractionHierarchyModule(builderParams.contractionHierarchies));
+        }
+        if ( hasOSM && hasGTFS && builderParams.stopTrees) {
+            graphBuilder.addGraphBuilder(new StopTreeModule());
+        }
         graphBuilder.addGraphBuilder(new EmbedConfig(builderConfig, routerConfig));
         if (builderParams.htmlAnnotations) {
             graphBuilder.addGraphBuilder(new AnnotationsToHTML(new File(params.build, "report.html")));
         }
         graphBuilder.serializeGraph = ( ! params.inMemory ) || params.preFlight;
+        graphBuilder.compactGraphFormat = params.compactGraph;
         return graphBuilder;
     }
 
@@ -0,0 +1,152 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.graph_builder;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.opentripplanner.graph_builder.services.ConcurrentGraphBuilderModule;
+import org.opentripplanner.graph_builder.services.GraphBuilderModule;
+import org.opentripplanner.routing.graph.Graph;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs the modules of a GraphBuilder in the order they were added, except that modules implementing
+ * ConcurrentGraphBuilderModule are run at the same time as the other such modules around them. Each module waits
+ * for all the modules before it that may modify the graph, and for the concurrent modules before it that provide
+ * one of its prerequisites. A module that may modify the graph waits for all the modules before it, and is run on
+ * the calling thread, so a list of ordinary modules runs exactly as it would one after the other.
+ *
+ * The time each module took is recorded and can be logged when the build is done.
+ */
+class GraphBuilderModuleScheduler {
+
+    private static final Logger LOG = LoggerFactory.getLogger(GraphBuilderModuleScheduler.class);
+
+    private final List<GraphBuilderModule> modules;
+
+    /** For each module, the indexes of the modules before it that must finish before it can start. */
+    private final List<List<Integer>> waitFor = new ArrayList<List<Integer>>();
+
+    /** The wall clock time each module took in milliseconds. */
+    final long[] durations;
+
+    GraphBuilderModuleScheduler(List<GraphBuilderModule> modules) {
+        this.modules = modules;
+        for (int i = 0; i < modules.size(); i++) {
+            List<Integer> before = new ArrayList<Integer>();
+            for (int j = 0; j < i; j++) {
+                if (mustWait(modules.get(i), modules.get(j))) {
+                    before.add(j);
+                }
+            }
+            waitFor.add(before);
+        }
+        durations = new long[modules.size()];
+    }
+
+    /** @return true if the given module must wait for the given earlier module to finish before it starts. */
+    private static boolean mustWait(GraphBuilderModule module, GraphBuilderModule earlier) {
+        if (!(module instanceof ConcurrentGraphBuilderModule) || !(earlier instanceof ConcurrentGraphBuilderModule)) {
+            return true;
+        }
+        List<String> provided = ((ConcurrentGraphBuilderModule) earlier).provides();
+        return !Collections.disjoint(provided, ((ConcurrentGraphBuilderModule) module).getPrerequisites());
+    }
+
+    /** Run all the modules on the given graph, rethrowing the first exception thrown by any of them. */
+    void run(Graph graph, HashMap<Class<?>, Object> extra) {
+        int n = modules.size();
+        boolean[] started = new boolean[n];
+        boolean[] finished = new boolean[n];
+        int nFinished = 0;
+        int nRunning = 0;
+        ExecutorService executor = Executors.newCachedThreadPool();
+        CompletionService<Integer> completion = new ExecutorCompletionService<Integer>(executor);
+        try {
+            while (nFinished < n) {
+                for (int i = 0; i < n; i++) {
+                    if (started[i] || !isReady(i, finished)) continue;
+                    started[i] = true;
+                    if (modules.get(i) instanceof ConcurrentGraphBuilderModule) {
+                        completion.submit(makeTask(i, graph, extra));
+                        nRunning += 1;
+                    } else {
+                        // Everything before it is finished and everything after it waits for it.
+                        runModule(i, graph, extra);
+                        finished[i] = true;
+                        nFinished += 1;
+                    }
+                }
+                if (nRunning > 0) {
+                    int i = completion.take().get();
+                    finished[i] = true;
+                    nFinished += 1;
+                    nRunning -= 1;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while building the graph.", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new RuntimeException(cause);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private boolean isReady(int i, boolean[] finished) {
+        for (int j : waitFor.get(i)) {
+            if (!finished[j]) return false;
+        }
+        return true;
+    }
+
+    private Callable<Integer> makeTask(final int i, final Graph graph, final HashMap<Class<?>, Object> extra) {
+        return new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                runModule(i, graph, extra);
+                return i;
+            }
+        };
+    }
+
+    private void runModule(int i, Graph graph, HashMap<Class<?>, Object> extra) {
+        long startTime = System.currentTimeMillis();
+        modules.get(i).buildGraph(graph, extra);
+        durations[i] = System.currentTimeMillis() - startTime;
+    }
+
+    /** Log the time taken by each module, in the order they were added. */
+    void logDurations() {
+        for (int i = 0; i < modules.size(); i++) {
+            LOG.info(String.format("%s took %.1f seconds.", modules.get(i).getClass().getSimpleName(),
+                    durations[i] / 1000.0));
+        }
+    }
+
+}
@@ -22,7 +22,7 @@ import org.opentripplanner.common.geometry.SphericalDistanceLibrary;
 import org.opentripplanner.graph_builder.annotation.BogusEdgeGeometry;
 import org.opentripplanner.graph_builder.annotation.BogusVertexGeometry;
 import org.opentripplanner.graph_builder.annotation.VertexShapeError;
-import org.opentripplanner.graph_builder.services.GraphBuilderModule;
+import org.opentripplanner.graph_builder.services.ConcurrentGraphBuilderModule;
 import org.opentripplanner.routing.edgetype.HopEdge;
 import org.opentripplanner.routing.graph.Edge;
 import org.opentripplanner.routing.graph.Graph;
@@ -39,7 +39,7 @@ import com.vividsolutions.jts.geom.Geometry;
  * This is mainly good for debugging, but probably worth keeping on for production
  * because the cost is small compared to the pain of debugging.
  */
-public class CheckGeometryModule implements GraphBuilderModule {
+public class CheckGeometryModule implements ConcurrentGraphBuilderModule {
 
     /** An set of ids which identifies what stages this graph builder provides (i.e. streets, elevation, transit) */
     public List<String> provides() {
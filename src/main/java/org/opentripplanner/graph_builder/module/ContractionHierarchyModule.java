@@ -0,0 +1,118 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.graph_builder.module;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.opentripplanner.graph_builder.services.ConcurrentGraphBuilderModule;
+import org.opentripplanner.routing.contraction.ContractionHierarchy;
+import org.opentripplanner.routing.contraction.ContractionHierarchySet;
+import org.opentripplanner.routing.core.OptimizeType;
+import org.opentripplanner.routing.core.TraverseMode;
+import org.opentripplanner.routing.graph.Graph;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Builds contraction hierarchies over the street network for car and bicycle routing, and stores them in the graph
+ * as a ContractionHierarchySet, where GraphPathFinder finds them. This must run once the street network is complete,
+ * including elevation data, but can run alongside other modules that only read the graph.
+ *
+ * Each profile is given as MODE or MODE:OPTIMIZE, e.g. "CAR" or "BICYCLE:SAFE". The optimization type defaults to
+ * QUICK. TRIANGLE is not supported since its weights depend on parameters of the request. A hierarchy is only used
+ * by requests that weigh streets with the default parameters of its profile. Turn costs depend on the previous edge
+ * and cannot be part of the hierarchy, so its paths are the shortest ones ignoring turns.
+ */
+public class ContractionHierarchyModule implements ConcurrentGraphBuilderModule {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ContractionHierarchyModule.class);
+
+    private final List<TraverseMode> modes = new ArrayList<TraverseMode>();
+
+    private final List<OptimizeType> optimizeTypes = new ArrayList<OptimizeType>();
+
+    public ContractionHierarchyModule(List<String> profiles) {
+        for (String profile : profiles) {
+            addProfile(profile);
+        }
+    }
+
+    public void addProfile(String profile) {
+        String[] parts = profile.trim().toUpperCase().split(":");
+        modes.add(TraverseMode.valueOf(parts[0]));
+        optimizeTypes.add(parts.length > 1 ? OptimizeType.valueOf(parts[1]) : OptimizeType.QUICK);
+    }
+
+    public List<String> provides() {
+        return Arrays.asList("contraction hierarchies");
+    }
+
+    public List<String> getPrerequisites() {
+        return Arrays.asList("streets");
+    }
+
+    /** Build the hierarchies of all profiles at the same time, since each only reads the street network. */
+    @Override
+    public void buildGraph(final Graph graph, HashMap<Class<?>, Object> extra) {
+        int nThreads = Math.min(modes.size(), Runtime.getRuntime().availableProcessors());
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, nThreads));
+        List<Future<ContractionHierarchy>> futures = new ArrayList<Future<ContractionHierarchy>>();
+        for (int i = 0; i < modes.size(); i++) {
+            final TraverseMode mode = modes.get(i);
+            final OptimizeType optimize = optimizeTypes.get(i);
+            futures.add(executor.submit(new Callable<ContractionHierarchy>() {
+                @Override
+                public ContractionHierarchy call() {
+                    LOG.info("Building {} {} contraction hierarchy...", mode, optimize);
+                    return ContractionHierarchy.build(graph, mode, optimize);
+                }
+            }));
+        }
+        ContractionHierarchySet set = new ContractionHierarchySet();
+        try {
+            for (Future<ContractionHierarchy> future : futures) {
+                set.add(future.get());
+            }
+        } catch (InterruptedException | ExecutionException e) {
+            throw new RuntimeException("Could not build contraction hierarchies.", e);
+        } finally {
+            executor.shutdownNow();
+        }
+        graph.putService(ContractionHierarchySet.class, set);
+    }
+
+    @Override
+    public void checkInputs() {
+        for (int i = 0; i < modes.size(); i++) {
+            TraverseMode mode = modes.get(i);
+            OptimizeType optimize = optimizeTypes.get(i);
+            if (mode != TraverseMode.CAR && mode != TraverseMode.BICYCLE) {
+                throw new IllegalArgumentException("Contraction hierarchies are only built for CAR and BICYCLE, not "
+                        + mode);
+            }
+            if (optimize == OptimizeType.TRIANGLE || optimize == OptimizeType.TRANSFERS) {
+                throw new IllegalArgumentException("Contraction hierarchies cannot be built for " + optimize);
+            }
+        }
+    }
+
+}
@@ -14,6 +14,10 @@
 package org.opentripplanner.graph_builder.module;
 
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 import com.google.common.collect.Iterables;
 import org.opentripplanner.graph_builder.annotation.StopNotLinkedForTransfers;
@@ -22,6 +26,8 @@ import org.opentripplanner.routing.edgetype.*;
 import org.opentripplanner.routing.graph.Edge;
 import org.opentripplanner.routing.graph.Graph;
 import org.opentripplanner.routing.graph.GraphIndex;
+import org.opentripplanner.routing.impl.StreetVertexIndexServiceImpl;
+import org.opentripplanner.routing.services.StreetVertexIndexService;
 import org.opentripplanner.routing.vertextype.TransitStop;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -31,7 +37,8 @@ import org.slf4j.LoggerFactory;
  * routing in long-distance mode.
  *
  * It will use the street network if OSM data has already been loaded into the graph.
- * Otherwise it will use straight-line distance between stops.
+ * Otherwise it will use straight-line distance between stops. The searches from the stops run in parallel, each
+ * bounded by maxDuration.
  *
  * TODO make tests for this that are sensitive to the presence of trip patterns
  */
@@ -41,6 +48,9 @@ public class DirectTransferGenerator implements GraphBuilderModule {
 
     int maxDuration = 60 * 10;
 
+    /** The number of stops to search from at the same time. */
+    int nThreads = Runtime.getRuntime().availableProcessors();
+
     public List<String> provides() {
         return Arrays.asList("linking");
     }
@@ -50,7 +60,7 @@ public class DirectTransferGenerator implements GraphBuilderModule {
     }
 
     @Override
-    public void buildGraph(Graph graph, HashMap<Class<?>, Object> extra) {
+    public void buildGraph(final Graph graph, HashMap<Class<?>, Object> extra) {
 
         /* Initialize graph index which is needed by the nearby stop finder. */
         if (graph.index == null) {
@@ -58,52 +68,97 @@ public class DirectTransferGenerator implements GraphBuilderModule {
         }
 
         /* The linker will use streets if they are available, or straight-line distance otherwise. */
-        NearbyStopFinder nearbyStopFinder = new NearbyStopFinder(graph, maxDuration);
-        if (nearbyStopFinder.useStreets) {
+        final boolean useStreets = graph.hasStreets;
+        if (useStreets) {
             LOG.info("Creating direct transfer edges between stops using the street network from OSM...");
         } else {
             LOG.info("Creating direct transfer edges between stops using straight line distance (not streets)...");
         }
 
-        int nTransfersTotal = 0;
-        int nLinkableStops = 0;
-
+        /* Skip stops that are entrances to stations or whose entrances are coded separately */
+        List<TransitStop> stops = new ArrayList<TransitStop>();
         for (TransitStop ts0 : Iterables.filter(graph.getVertices(), TransitStop.class)) {
+            if (ts0.isStreetLinkable()) stops.add(ts0);
+        }
 
-            /* Skip stops that are entrances to stations or whose entrances are coded separately */
-            if (!ts0.isStreetLinkable()) continue;
-            nLinkableStops += 1;
-            LOG.debug("Linking stop '{}' {}", ts0.getStop(), ts0);
-
-            /* Determine the set of stops that are already reachable via other pathways or transfers */
-            Set<TransitStop> pathwayDestinations = new HashSet<TransitStop>();
-            for (Edge e : ts0.getOutgoing()) {
-                if (e instanceof PathwayEdge || e instanceof SimpleTransfer) {
-                    if (e.getToVertex() instanceof TransitStop) {
-                        TransitStop to = (TransitStop) e.getToVertex();
-                        pathwayDestinations.add(to);
-                    }
-                }
+        /*
+         * Search from all stops in parallel without changing the graph. Each worker thread gets its own stop finder,
+         * since the search state it holds cannot be shared, but the spatial index used without streets is read-only
+         * and built only once. The transfer edges are added at the end on this thread.
+         */
+        final StreetVertexIndexService streetIndex = useStreets ? null : new StreetVertexIndexServiceImpl(graph);
+        final ThreadLocal<NearbyStopFinder> nearbyStopFinders = new ThreadLocal<NearbyStopFinder>() {
+            @Override
+            protected NearbyStopFinder initialValue() {
+                return useStreets ? new NearbyStopFinder(graph, maxDuration, true)
+                        : new NearbyStopFinder(graph, maxDuration, streetIndex);
             }
+        };
+        List<Callable<List<NearbyStopFinder.StopAtDistance>>> tasks =
+                new ArrayList<Callable<List<NearbyStopFinder.StopAtDistance>>>(stops.size());
+        for (final TransitStop ts0 : stops) {
+            tasks.add(new Callable<List<NearbyStopFinder.StopAtDistance>>() {
+                @Override
+                public List<NearbyStopFinder.StopAtDistance> call() {
+                    return findTransfers(ts0, nearbyStopFinders.get());
+                }
+            });
+        }
+        ForkJoinPool pool = new ForkJoinPool(nThreads);
+        List<Future<List<NearbyStopFinder.StopAtDistance>>> results;
+        try {
+            results = pool.invokeAll(tasks);
+        } finally {
+            pool.shutdown();
+        }
 
-            /* Make transfers to each nearby stop that is the closest stop on some trip pattern. */
-            int n = 0;
-            for (NearbyStopFinder.StopAtDistance sd : nearbyStopFinder.findNearbyStopsConsideringPatterns(ts0)) {
-                /* Skip the origin stop, loop transfers are not needed. */
-                if (sd.tstop == ts0 || pathwayDestinations.contains(sd.tstop)) continue;
+        int nTransfersTotal = 0;
+        for (int i = 0; i < stops.size(); i++) {
+            TransitStop ts0 = stops.get(i);
+            List<NearbyStopFinder.StopAtDistance> transfers;
+            try {
+                transfers = results.get(i).get();
+            } catch (InterruptedException | ExecutionException e) {
+                throw new RuntimeException("Could not find the stops near " + ts0, e);
+            }
+            for (NearbyStopFinder.StopAtDistance sd : transfers) {
                 new SimpleTransfer(ts0, sd.tstop, sd.dist, sd.geom);
-                n += 1;
             }
-            LOG.debug("Linked stop {} to {} nearby stops on other patterns.", ts0.getStop(), n);
-            if (n == 0) {
+            LOG.debug("Linked stop {} to {} nearby stops on other patterns.", ts0.getStop(), transfers.size());
+            if (transfers.isEmpty()) {
                 LOG.debug(graph.addBuilderAnnotation(new StopNotLinkedForTransfers(ts0)));
             }
-            nTransfersTotal += n;
+            nTransfersTotal += transfers.size();
         }
-        LOG.info("Done connecting stops to one another. Created a total of {} transfers from {} stops.", nTransfersTotal, nLinkableStops);
+        LOG.info("Done connecting stops to one another. Created a total of {} transfers from {} stops.", nTransfersTotal, stops.size());
         graph.hasDirectTransfers = true;
     }
 
+    /** @return the nearby stops to make transfers to from the given stop, one for each nearby trip pattern. */
+    private static List<NearbyStopFinder.StopAtDistance> findTransfers(TransitStop ts0, NearbyStopFinder nearbyStopFinder) {
+        LOG.debug("Linking stop '{}' {}", ts0.getStop(), ts0);
+
+        /* Determine the set of stops that are already reachable via other pathways or transfers */
+        Set<TransitStop> pathwayDestinations = new HashSet<TransitStop>();
+        for (Edge e : ts0.getOutgoing()) {
+            if (e instanceof PathwayEdge || e instanceof SimpleTransfer) {
+                if (e.getToVertex() instanceof TransitStop) {
+                    TransitStop to = (TransitStop) e.getToVertex();
+                    pathwayDestinations.add(to);
+                }
+            }
+        }
+
+        /* Make transfers to each nearby stop that is the closest stop on some trip pattern. */
+        List<NearbyStopFinder.StopAtDistance> transfers = new ArrayList<NearbyStopFinder.StopAtDistance>();
+        for (NearbyStopFinder.StopAtDistance sd : nearbyStopFinder.findNearbyStopsConsideringPatterns(ts0)) {
+            /* Skip the origin stop, loop transfers are not needed. */
+            if (sd.tstop == ts0 || pathwayDestinations.contains(sd.tstop)) continue;
+            transfers.add(sd);
+        }
+        return transfers;
+    }
+
     @Override
     public void checkInputs() {
         // No inputs
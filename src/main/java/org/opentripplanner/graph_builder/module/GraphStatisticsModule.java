@@ -19,7 +19,7 @@ import java.util.HashMap;
 import java.util.List;
 
 import org.opentripplanner.common.geometry.SphericalDistanceLibrary;
-import org.opentripplanner.graph_builder.services.GraphBuilderModule;
+import org.opentripplanner.graph_builder.services.ConcurrentGraphBuilderModule;
 import org.opentripplanner.routing.graph.Edge;
 import org.opentripplanner.routing.graph.Graph;
 import org.opentripplanner.routing.graph.Vertex;
@@ -36,7 +36,7 @@ import com.vividsolutions.jts.geom.LineString;
  * Print statistics on geometry and edge/vertices data for a graph (number of geometry, average
  * number of points, size distribution, edge names size, etc...)
  */
-public class GraphStatisticsModule implements GraphBuilderModule {
+public class GraphStatisticsModule implements ConcurrentGraphBuilderModule {
 
     /**
      * An set of ids which identifies what stages this graph builder provides (i.e. streets,
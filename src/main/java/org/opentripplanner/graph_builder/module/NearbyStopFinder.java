@@ -83,6 +83,17 @@ public class NearbyStopFinder {
         }
     }
 
+    /**
+     * Construct a NearbyStopFinder that uses straight-line distance, finding stops with the given spatial index. The
+     * index is only read, so it can be shared by the finders of several threads.
+     */
+    public NearbyStopFinder(Graph graph, double radius, StreetVertexIndexService streetIndex) {
+        this.graph = graph;
+        this.useStreets = false;
+        this.radius = radius;
+        this.streetIndex = streetIndex;
+    }
+
     /**
      * Find all unique nearby stops that are the closest stop on some trip pattern.
      * Note that the result will include the origin vertex if it is an instance of TransitStop.
@@ -0,0 +1,52 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.graph_builder.module;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import org.opentripplanner.graph_builder.services.ConcurrentGraphBuilderModule;
+import org.opentripplanner.profile.StopTreeCache;
+import org.opentripplanner.routing.graph.Graph;
+
+/**
+ * Finds the walking distances from every transit stop to the street vertices around it, which analyst searches use
+ * to propagate travel times from stops out to the streets, and keeps them in the graph so the graph builder can
+ * write them to a file next to the graph. The server maps that file rather than searching from every stop when it
+ * starts. This must run once the stops are linked to the street network.
+ */
+public class StopTreeModule implements ConcurrentGraphBuilderModule {
+
+    public int timeCutoffMinutes = StopTreeCache.DEFAULT_TIME_CUTOFF_MINUTES;
+
+    public List<String> provides() {
+        return Arrays.asList("stop trees");
+    }
+
+    public List<String> getPrerequisites() {
+        return Arrays.asList("street to transit");
+    }
+
+    @Override
+    public void buildGraph(Graph graph, HashMap<Class<?>, Object> extra) {
+        graph.stopTreeCache = StopTreeCache.build(graph, timeCutoffMinutes);
+    }
+
+    @Override
+    public void checkInputs() {
+        // No inputs
+    }
+
+}
@@ -15,12 +15,22 @@ package org.opentripplanner.graph_builder.module.ned;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.media.jai.InterpolationBilinear;
+import javax.media.jai.JAI;
 
 import org.geotools.coverage.grid.GridCoverage2D;
 import org.geotools.coverage.grid.Interpolator2D;
@@ -33,6 +43,7 @@ import org.opentripplanner.graph_builder.annotation.ElevationFlattened;
 import org.opentripplanner.graph_builder.module.extra_elevation_data.ElevationPoint;
 import org.opentripplanner.graph_builder.services.GraphBuilderModule;
 import org.opentripplanner.graph_builder.services.ned.ElevationGridCoverageFactory;
+import org.opentripplanner.routing.core.MortonVertexComparator;
 import org.opentripplanner.routing.edgetype.StreetEdge;
 import org.opentripplanner.routing.edgetype.StreetWithElevationEdge;
 import org.opentripplanner.routing.graph.Edge;
@@ -53,6 +64,9 @@ import com.vividsolutions.jts.geom.Geometry;
  * where each (x,y) pair represents one sample, with the x-coord representing the distance along
  * the edge measured from the start, and the y-coord representing the sampled elevation at that
  * point (both in meters).
+ *
+ * Edges are sampled on all processors in spatially sorted batches, so that the raster tiles they need are read once
+ * and reused from the tile cache rather than loading whole rasters into memory.
  */
 public class ElevationModule implements GraphBuilderModule {
     private static final Logger log = LoggerFactory.getLogger(ElevationModule.class);
@@ -61,6 +75,18 @@ public class ElevationModule implements GraphBuilderModule {
 
     private Coverage coverage;
 
+    /** The number of edges sampled together by one thread. */
+    int batchSize = 1000;
+
+    /** The number of threads sampling edges, when the coverage can be copied for each of them. */
+    int nThreads = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * The memory in megabytes available to the JAI cache of decoded raster tiles, which evicts the least recently
+     * used tiles when it is full. The rasters themselves are read from disk a tile at a time as they are needed.
+     */
+    private int tileCacheMegabytes = 256;
+
     /**
      * The distance between samples in meters. Defaults to 10m, the approximate resolution of 1/3
      * arc-second NED data.
@@ -89,9 +115,14 @@ public class ElevationModule implements GraphBuilderModule {
         distanceBetweenSamplesM = distance;
     }
 
+    public void setTileCacheMegabytes(int megabytes) {
+        tileCacheMegabytes = megabytes;
+    }
+
     @Override
     public void buildGraph(Graph graph, HashMap<Class<?>, Object> extra) {
         gridCoverageFactory.setGraph(graph);
+        JAI.getDefaultInstance().getTileCache().setMemoryCapacity(tileCacheMegabytes * 1024L * 1024L);
         Coverage gridCov = gridCoverageFactory.getGridCoverage();
 
         // If gridCov is a GridCoverage2D, apply a bilinear interpolator. Otherwise, just use the
@@ -100,29 +131,107 @@ public class ElevationModule implements GraphBuilderModule {
         coverage = (gridCov instanceof GridCoverage2D) ? Interpolator2D.create(
                 (GridCoverage2D) gridCov, new InterpolationBilinear()) : gridCov;
         log.info("setting street elevation profiles from NED data...");
-        List<StreetEdge> edgesWithElevation = new ArrayList<StreetEdge>();
-        int nProcessed = 0;
-        int nTotal = graph.countEdges();
+        List<StreetWithElevationEdge> edges = new ArrayList<StreetWithElevationEdge>();
         for (Vertex gv : graph.getVertices()) {
             for (Edge ee : gv.getOutgoing()) {
                 if (ee instanceof StreetWithElevationEdge) {
-                    StreetWithElevationEdge edgeWithElevation = (StreetWithElevationEdge) ee;
-                    processEdge(graph, edgeWithElevation);
-                    if (edgeWithElevation.getElevationProfile() != null && !edgeWithElevation.isElevationFlattened()) {
-                        edgesWithElevation.add(edgeWithElevation);
-                    }
-                    nProcessed += 1;
-                    if (nProcessed % 50000 == 0)
-                        log.info("set elevation on {}/{} edges", nProcessed, nTotal);
+                    edges.add((StreetWithElevationEdge) ee);
                 }
             }
         }
+        sampleEdges(graph, edges, gridCov);
+
+        // Keep the order of the graph, which decides how ties are broken when assigning missing elevations.
+        List<StreetEdge> edgesWithElevation = new ArrayList<StreetEdge>();
+        for (StreetWithElevationEdge edgeWithElevation : edges) {
+            if (edgeWithElevation.getElevationProfile() != null && !edgeWithElevation.isElevationFlattened()) {
+                edgesWithElevation.add(edgeWithElevation);
+            }
+        }
 
         @SuppressWarnings("unchecked")
         HashMap<Vertex, Double> extraElevation = (HashMap<Vertex, Double>) extra.get(ElevationPoint.class);
         assignMissingElevations(graph, edgesWithElevation, extraElevation);
     }
 
+    /**
+     * Sample the elevation profiles of the given edges on all processors. The edges are sorted along a Morton curve
+     * and cut into batches, so the edges of a batch are close together and need only a few raster tiles, which stay
+     * in the tile cache while the batch is processed. Each thread evaluates elevations with its own copy of the
+     * coverage, since the GeoTools interpolators are not threadsafe. Coverages that cannot be copied are sampled on
+     * a single thread. The edges that had to be flattened are annotated once all batches are done, in the order of the
+     * given list, so the annotations do not depend on how the batches were scheduled.
+     */
+    private void sampleEdges(final Graph graph, List<StreetWithElevationEdge> edges, final Coverage gridCov) {
+        if (edges.isEmpty()) {
+            return;
+        }
+        List<Vertex> fromVertices = new ArrayList<Vertex>(edges.size());
+        for (StreetWithElevationEdge edge : edges) {
+            fromVertices.add(edge.getFromVertex());
+        }
+        final MortonVertexComparator mortonComparator = new MortonVertexComparator(fromVertices);
+        List<StreetWithElevationEdge> sorted = new ArrayList<StreetWithElevationEdge>(edges);
+        Collections.sort(sorted, new Comparator<StreetWithElevationEdge>() {
+            @Override
+            public int compare(StreetWithElevationEdge e0, StreetWithElevationEdge e1) {
+                return mortonComparator.compare(e0.getFromVertex(), e1.getFromVertex());
+            }
+        });
+
+        final boolean copyable = gridCov instanceof GridCoverage2D || gridCov instanceof UnifiedGridCoverage;
+        final ThreadLocal<Coverage> coverages = new ThreadLocal<Coverage>() {
+            @Override
+            protected Coverage initialValue() {
+                if (gridCov instanceof GridCoverage2D) {
+                    return Interpolator2D.create((GridCoverage2D) gridCov, new InterpolationBilinear());
+                }
+                if (gridCov instanceof UnifiedGridCoverage) {
+                    return ((UnifiedGridCoverage) gridCov).copy();
+                }
+                return coverage;
+            }
+        };
+        final int nTotal = sorted.size();
+        final AtomicInteger nProcessed = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(copyable ? nThreads : 1);
+        List<Future<List<StreetWithElevationEdge>>> futures = new ArrayList<Future<List<StreetWithElevationEdge>>>();
+        for (int start = 0; start < nTotal; start += batchSize) {
+            final List<StreetWithElevationEdge> batch = sorted.subList(start, Math.min(start + batchSize, nTotal));
+            futures.add(executor.submit(new Callable<List<StreetWithElevationEdge>>() {
+                @Override
+                public List<StreetWithElevationEdge> call() {
+                    Coverage threadCoverage = coverages.get();
+                    List<StreetWithElevationEdge> flattened = new ArrayList<StreetWithElevationEdge>();
+                    for (StreetWithElevationEdge edge : batch) {
+                        if (processEdge(edge, threadCoverage)) {
+                            flattened.add(edge);
+                        }
+                        int n = nProcessed.incrementAndGet();
+                        if (n % 50000 == 0)
+                            log.info("set elevation on {}/{} edges", n, nTotal);
+                    }
+                    return flattened;
+                }
+            }));
+        }
+        Set<StreetWithElevationEdge> flattened = new HashSet<StreetWithElevationEdge>();
+        try {
+            for (Future<List<StreetWithElevationEdge>> future : futures) {
+                flattened.addAll(future.get());
+            }
+        } catch (InterruptedException | ExecutionException e) {
+            throw new RuntimeException("Could not sample elevation profiles.", e);
+        } finally {
+            executor.shutdownNow();
+        }
+        for (StreetWithElevationEdge edge : edges) {
+            if (flattened.contains(edge)) {
+                log.trace(graph.addBuilderAnnotation(new ElevationFlattened(edge)));
+            }
+        }
+    }
+
     class ElevationRepairState {
         /* This uses an intuitionist approach to elevation inspection */
         public StreetEdge backEdge;
@@ -322,11 +431,12 @@ public class ElevationModule implements GraphBuilderModule {
      * Processes a single street edge, creating and assigning the elevation profile.
      * 
      * @param ee the street edge
-     * @param graph the graph (used only for error handling)
+     * @param coverage the coverage to sample, which must not be used by another thread at the same time
+     * @return whether the edge was too steep and had to be flattened
      */
-    private void processEdge(Graph graph, StreetWithElevationEdge ee) {
+    private boolean processEdge(StreetWithElevationEdge ee, Coverage coverage) {
         if (ee.getElevationProfile() != null) {
-            return; /* already set up */
+            return false; /* already set up */
         }
         Geometry g = ee.getGeometry();
         Coordinate[] coords = g.getCoordinates();
@@ -341,7 +451,7 @@ public class ElevationModule implements GraphBuilderModule {
         }
 
         // initial sample (x = 0)
-        coordList.add(new Coordinate(0, getElevation(coords[0])));
+        coordList.add(new Coordinate(0, getElevation(coverage, coords[0])));
 
         // loop for edge-internal samples
         for (double x = distanceBetweenSamplesM; x < edgeLenM; x += distanceBetweenSamplesM) {
@@ -351,20 +461,18 @@ public class ElevationModule implements GraphBuilderModule {
             }
 
             Coordinate internal = getPointAlongEdge(coords, edgeLenM, x / edgeLenM);
-            coordList.add(new Coordinate(x, getElevation(internal)));
+            coordList.add(new Coordinate(x, getElevation(coverage, internal)));
         }
 
         // final sample (x = edge length)
-        coordList.add(new Coordinate(edgeLenM, getElevation(coords[coords.length - 1])));
+        coordList.add(new Coordinate(edgeLenM, getElevation(coverage, coords[coords.length - 1])));
 
         // construct the PCS
         Coordinate coordArr[] = new Coordinate[coordList.size()];
         PackedCoordinateSequence elevPCS = new PackedCoordinateSequence.Double(
                 coordList.toArray(coordArr));
 
-        if(ee.setElevationProfile(elevPCS, false)) {
-            log.trace(graph.addBuilderAnnotation(new ElevationFlattened(ee)));
-        }
+        return ee.setElevationProfile(elevPCS, false);
     }
 
     /**
@@ -418,8 +526,8 @@ public class ElevationModule implements GraphBuilderModule {
      * @param c the coordinate (NAD83)
      * @return elevation in meters
      */
-    private double getElevation(Coordinate c) {
-        return getElevation(c.x, c.y);
+    private double getElevation(Coverage coverage, Coordinate c) {
+        return getElevation(coverage, c.x, c.y);
     }
 
     /**
@@ -429,7 +537,7 @@ public class ElevationModule implements GraphBuilderModule {
      * @param y the query latitude (NAD83)
      * @return elevation in meters
      */
-    private double getElevation(double x, double y) {
+    private double getElevation(Coverage coverage, double x, double y) {
         double values[] = new double[1];
         try {
             coverage.evaluate(new DirectPosition2D(x, y), values);
@@ -17,8 +17,11 @@ import java.io.File;
 import java.io.IOException;
 
 import org.geotools.coverage.grid.GridCoverage2D;
+import org.geotools.coverage.grid.io.AbstractGridFormat;
 import org.geotools.gce.geotiff.GeoTiffFormat;
 import org.geotools.gce.geotiff.GeoTiffReader;
+import org.opengis.parameter.GeneralParameterValue;
+import org.opengis.parameter.ParameterValue;
 import org.opentripplanner.graph_builder.services.ned.ElevationGridCoverageFactory;
 import org.opentripplanner.routing.graph.Graph;
 
@@ -27,6 +30,9 @@ import org.opentripplanner.routing.graph.Graph;
  */
 public class GeotiffGridCoverageFactoryImpl implements ElevationGridCoverageFactory {
 
+    /** The width and height in pixels of the tiles the raster is read in. */
+    private static final int TILE_SIZE = 512;
+
     private File path = null;
     private GridCoverage2D coverage;
 
@@ -52,7 +58,13 @@ public class GeotiffGridCoverageFactoryImpl implements ElevationGridCoverageFact
                 throw new RuntimeException("Path not set");
             }
             reader = format.getReader(path);
-            coverage = reader.read(null);
+            // Defer reading until pixels are needed, then decode one tile at a time into the JAI tile cache, rather
+            // than decoding the whole raster up front. Rasters stored in strips are read as square tiles.
+            ParameterValue<Boolean> deferred = AbstractGridFormat.USE_JAI_IMAGEREAD.createValue();
+            deferred.setValue(true);
+            ParameterValue<String> tileSize = AbstractGridFormat.SUGGESTED_TILE_SIZE.createValue();
+            tileSize.setValue(TILE_SIZE + "," + TILE_SIZE);
+            coverage = reader.read(new GeneralParameterValue[] { deferred, tileSize });
         } catch (IOException e) {
             throw new RuntimeException("Error getting coverage automatically. ", e);
         }
@@ -20,11 +20,8 @@ import java.util.List;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 
-import javax.media.jai.InterpolationBilinear;
-
 import com.google.common.io.ByteStreams;
 import org.geotools.coverage.grid.GridCoverage2D;
-import org.geotools.coverage.grid.Interpolator2D;
 import org.opengis.coverage.Coverage;
 import org.opentripplanner.graph_builder.services.ned.ElevationGridCoverageFactory;
 import org.opentripplanner.graph_builder.services.ned.NEDTileSource;
@@ -120,8 +117,7 @@ public class NEDGridCoverageFactoryImpl implements ElevationGridCoverageFactory
             for (File path : paths) {
                 GeotiffGridCoverageFactoryImpl factory = new GeotiffGridCoverageFactoryImpl();
                 factory.setPath(path);
-                GridCoverage2D regionCoverage = Interpolator2D.create(factory.getGridCoverage(),
-                        new InterpolationBilinear());
+                GridCoverage2D regionCoverage = factory.getGridCoverage();
                 if (coverage == null) {
                     coverage = new UnifiedGridCoverage("unified", regionCoverage, datums);
                 } else {
@@ -16,8 +16,11 @@ package org.opentripplanner.graph_builder.module.ned;
 import java.util.ArrayList;
 import java.util.List;
 
+import javax.media.jai.InterpolationBilinear;
+
 import org.geotools.coverage.AbstractCoverage;
 import org.geotools.coverage.grid.GridCoverage2D;
+import org.geotools.coverage.grid.Interpolator2D;
 import org.geotools.geometry.GeneralEnvelope;
 import org.opengis.coverage.CannotEvaluateException;
 import org.opengis.coverage.Coverage;
@@ -42,13 +45,30 @@ public class UnifiedGridCoverage extends AbstractCoverage {
     
     private ArrayList<Coverage> regions;
 
+    /** The coverage of each region before interpolation, kept to make copies of this coverage. */
+    private ArrayList<GridCoverage2D> sources;
+
     private List<VerticalDatum> datums;
 
-    protected UnifiedGridCoverage(CharSequence name, Coverage coverage, List<VerticalDatum> datums) {
+    /** The given coverage is interpolated bilinearly, as are those of any regions added later. */
+    protected UnifiedGridCoverage(CharSequence name, GridCoverage2D coverage, List<VerticalDatum> datums) {
         super(name, coverage);
         regions = new ArrayList<Coverage>();
-        regions.add(coverage);
+        sources = new ArrayList<GridCoverage2D>();
         this.datums = datums;
+        add(coverage);
+    }
+
+    /**
+     * @return a coverage of the same regions with interpolators of its own. The GeoTools interpolators reuse
+     *         internal buffers, so each thread evaluating elevations needs its own copy.
+     */
+    public UnifiedGridCoverage copy() {
+        UnifiedGridCoverage copy = new UnifiedGridCoverage(getName(), sources.get(0), datums);
+        for (int i = 1; i < sources.size(); i++) {
+            copy.add(sources.get(i));
+        }
+        return copy;
     }
 
     @Override
@@ -102,7 +122,8 @@ public class UnifiedGridCoverage extends AbstractCoverage {
     }
 
     public void add(GridCoverage2D regionCoverage) {
-        regions.add(regionCoverage);
+        sources.add(regionCoverage);
+        regions.add(Interpolator2D.create(regionCoverage, new InterpolationBilinear()));
     }
 
 }
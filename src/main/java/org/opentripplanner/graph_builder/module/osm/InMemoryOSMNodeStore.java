@@ -0,0 +1,49 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.graph_builder.module.osm;
+
+import gnu.trove.map.TLongObjectMap;
+import gnu.trove.map.hash.TLongObjectHashMap;
+
+import org.opentripplanner.openstreetmap.model.OSMNode;
+
+/**
+ * Keeps nodes on the heap in a map keyed by primitive longs, which stores its keys in a flat array rather than as one
+ * boxed Long and one map entry per node. This is the default store of OSMDatabase.
+ */
+public class InMemoryOSMNodeStore implements OSMNodeStore {
+
+    private final TLongObjectMap<OSMNode> nodes = new TLongObjectHashMap<OSMNode>();
+
+    @Override
+    public OSMNode get(long id) {
+        return nodes.get(id);
+    }
+
+    @Override
+    public boolean contains(long id) {
+        return nodes.containsKey(id);
+    }
+
+    @Override
+    public void put(OSMNode node) {
+        nodes.put(node.getId(), node);
+    }
+
+    @Override
+    public int size() {
+        return nodes.size();
+    }
+
+}
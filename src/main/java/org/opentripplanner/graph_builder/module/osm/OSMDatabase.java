@@ -24,6 +24,12 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import gnu.trove.list.TLongList;
+import gnu.trove.map.TLongObjectMap;
+import gnu.trove.map.hash.TLongObjectHashMap;
+import gnu.trove.set.TLongSet;
+import gnu.trove.set.hash.TLongHashSet;
+
 import org.opentripplanner.common.RepeatingTimePeriod;
 import org.opentripplanner.common.TurnRestrictionType;
 import org.opentripplanner.common.geometry.GeometryUtils;
@@ -47,7 +53,6 @@ import org.opentripplanner.openstreetmap.services.OpenStreetMapContentHandler;
 import org.opentripplanner.routing.core.TraverseMode;
 import org.opentripplanner.routing.core.TraverseModeSet;
 import org.opentripplanner.routing.edgetype.StreetTraversalPermission;
-import org.opentripplanner.util.MapUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -64,23 +69,27 @@ public class OSMDatabase implements OpenStreetMapContentHandler {
 
     private static Logger LOG = LoggerFactory.getLogger(OSMDatabase.class);
 
-    /* Map of all nodes used in ways/areas keyed by their OSM ID */
-    private Map<Long, OSMNode> nodesById = new HashMap<Long, OSMNode>();
+    /*
+     * All nodes used in ways/areas keyed by their OSM ID. This and the node ID sets below hold an entry for every node
+     * of every kept way, so the store and all the maps and sets keyed by OSM ID use primitive longs rather than boxed
+     * ones to save memory.
+     */
+    private final OSMNodeStore nodesById;
 
     /* Map of all bike-rental nodes, keyed by their OSM ID */
-    private Map<Long, OSMNode> bikeRentalNodes = new HashMap<Long, OSMNode>();
+    private TLongObjectMap<OSMNode> bikeRentalNodes = new TLongObjectHashMap<OSMNode>();
 
     /* Map of all bike parking nodes, keyed by their OSM ID */
-    private Map<Long, OSMNode> bikeParkingNodes = new HashMap<Long, OSMNode>();
+    private TLongObjectMap<OSMNode> bikeParkingNodes = new TLongObjectHashMap<OSMNode>();
 
     /* Map of all non-area ways keyed by their OSM ID */
-    private Map<Long, OSMWay> waysById = new HashMap<Long, OSMWay>();
+    private TLongObjectMap<OSMWay> waysById = new TLongObjectHashMap<OSMWay>();
 
     /* Map of all area ways keyed by their OSM ID */
-    private Map<Long, OSMWay> areaWaysById = new HashMap<Long, OSMWay>();
+    private TLongObjectMap<OSMWay> areaWaysById = new TLongObjectHashMap<OSMWay>();
 
     /* Map of all relations keyed by their OSM ID */
-    private Map<Long, OSMRelation> relationsById = new HashMap<Long, OSMRelation>();
+    private TLongObjectMap<OSMRelation> relationsById = new TLongObjectHashMap<OSMRelation>();
 
     /* All walkable areas */
     private List<Area> walkableAreas = new ArrayList<Area>();
@@ -92,7 +101,7 @@ public class OSMDatabase implements OpenStreetMapContentHandler {
     private List<Area> bikeParkingAreas = new ArrayList<Area>();
 
     /* Map of all area OSMWay for a given node */
-    private Map<Long, Set<OSMWay>> areasForNode = new HashMap<Long, Set<OSMWay>>();
+    private TLongObjectMap<Set<OSMWay>> areasForNode = new TLongObjectHashMap<Set<OSMWay>>();
 
     /* Map of all area OSMWay for a given node */
     private List<OSMWay> singleWayAreas = new ArrayList<OSMWay>();
@@ -100,13 +109,13 @@ public class OSMDatabase implements OpenStreetMapContentHandler {
     private Set<OSMWithTags> processedAreas = new HashSet<OSMWithTags>();
 
     /* Set of area way IDs */
-    private Set<Long> areaWayIds = new HashSet<Long>();
+    private TLongSet areaWayIds = new TLongHashSet();
 
     /* Set of all node IDs of kept ways. Needed to mark which nodes to keep in stage 3. */
-    private Set<Long> waysNodeIds = new HashSet<Long>();
+    private TLongSet waysNodeIds = new TLongHashSet();
 
     /* Set of all node IDs of kept areas. Needed to mark which nodes to keep in stage 3. */
-    private Set<Long> areaNodeIds = new HashSet<Long>();
+    private TLongSet areaNodeIds = new TLongHashSet();
 
     /* Track which vertical level each OSM way belongs to, for building elevators etc. */
     private Map<OSMWithTags, OSMLevel> wayLevels = new HashMap<OSMWithTags, OSMLevel>();
@@ -139,20 +148,30 @@ public class OSMDatabase implements OpenStreetMapContentHandler {
      */
     public boolean noZeroLevels = true;
 
+    /** Create a database keeping its nodes on the heap. */
+    public OSMDatabase() {
+        this(new InMemoryOSMNodeStore());
+    }
+
+    /** Create a database keeping its nodes in the given store, which should be empty. */
+    public OSMDatabase(OSMNodeStore nodeStore) {
+        this.nodesById = nodeStore;
+    }
+
     public OSMNode getNode(Long nodeId) {
         return nodesById.get(nodeId);
     }
 
     public Collection<OSMWay> getWays() {
-        return Collections.unmodifiableCollection(waysById.values());
+        return Collections.unmodifiableCollection(waysById.valueCollection());
     }
 
     public Collection<OSMNode> getBikeRentalNodes() {
-        return Collections.unmodifiableCollection(bikeRentalNodes.values());
+        return Collections.unmodifiableCollection(bikeRentalNodes.valueCollection());
     }
 
     public Collection<OSMNode> getBikeParkingNodes() {
-        return Collections.unmodifiableCollection(bikeParkingNodes.values());
+        return Collections.unmodifiableCollection(bikeParkingNodes.valueCollection());
     }
 
     public Collection<Area> getWalkableAreas() {
@@ -217,10 +236,10 @@ public class OSMDatabase implements OpenStreetMapContentHandler {
                 .isStop()))
             return;
 
-        if (nodesById.containsKey(node.getId()))
+        if (nodesById.contains(node.getId()))
             return;
 
-        nodesById.put(node.getId(), node);
+        nodesById.put(node);
 
         if (nodesById.size() % 100000 == 0)
             LOG.debug("nodes=" + nodesById.size());
@@ -252,8 +271,9 @@ public class OSMDatabase implements OpenStreetMapContentHandler {
                 singleWayAreas.add(way);
                 areaWaysById.put(wayId, way);
                 areaWayIds.add(wayId);
-                for (Long node : way.getNodeRefs()) {
-                    MapUtils.addToMapSet(areasForNode, node, way);
+                TLongList nodeRefs = way.getNodeRefs();
+                for (int i = 0; i < nodeRefs.size(); i++) {
+                    addAreaForNode(nodeRefs.get(i), way);
                 }
             }
             return;
@@ -316,8 +336,8 @@ public class OSMDatabase implements OpenStreetMapContentHandler {
         // only 2 steps -- ways+relations, followed by used nodes.
         // Ways can be tag-filtered in phase 1.
 
-        markNodesForKeeping(waysById.values(), waysNodeIds);
-        markNodesForKeeping(areaWaysById.values(), areaNodeIds);
+        markNodesForKeeping(waysById.valueCollection(), waysNodeIds);
+        markNodesForKeeping(areaWaysById.valueCollection(), areaNodeIds);
     }
 
     /**
@@ -391,7 +411,7 @@ public class OSMDatabase implements OpenStreetMapContentHandler {
 
         // For each way, intersect with areas
         int nCreatedNodes = 0;
-        for (OSMWay way : waysById.values()) {
+        for (OSMWay way : waysById.valueCollection()) {
             OSMLevel wayLevel = getLevelForWay(way);
 
             // For each segment of the way
@@ -576,7 +596,7 @@ public class OSMDatabase implements OpenStreetMapContentHandler {
         node.setId(virtualNodeId);
         virtualNodeId--;
         waysNodeIds.add(node.getId());
-        nodesById.put(node.getId(), node);
+        nodesById.put(node);
         return node;
     }
 
@@ -604,11 +624,20 @@ public class OSMDatabase implements OpenStreetMapContentHandler {
         }
     }
 
-    private void markNodesForKeeping(Collection<OSMWay> osmWays, Set<Long> nodeSet) {
+    private void addAreaForNode(long nodeId, OSMWay way) {
+        Set<OSMWay> areas = areasForNode.get(nodeId);
+        if (areas == null) {
+            areas = new HashSet<OSMWay>();
+            areasForNode.put(nodeId, areas);
+        }
+        areas.add(way);
+    }
+
+    private void markNodesForKeeping(Collection<OSMWay> osmWays, TLongSet nodeSet) {
         for (Iterator<OSMWay> it = osmWays.iterator(); it.hasNext();) {
             OSMWay way = it.next();
             // Since the way is kept, update nodes-with-neighbors
-            List<Long> nodes = way.getNodeRefs();
+            TLongList nodes = way.getNodeRefs();
             if (nodes.size() > 1) {
                 nodeSet.addAll(nodes);
             }
@@ -623,8 +652,9 @@ public class OSMDatabase implements OpenStreetMapContentHandler {
             if (processedAreas.contains(way)) {
                 continue;
             }
-            for (Long nodeRef : way.getNodeRefs()) {
-                if (!nodesById.containsKey(nodeRef)) {
+            TLongList nodeRefs = way.getNodeRefs();
+            for (int i = 0; i < nodeRefs.size(); i++) {
+                if (!nodesById.contains(nodeRefs.get(i))) {
                     continue AREA;
                 }
             }
@@ -648,7 +678,7 @@ public class OSMDatabase implements OpenStreetMapContentHandler {
      * the used ways.
      */
     private void processMultipolygonRelations() {
-        RELATION: for (OSMRelation relation : relationsById.values()) {
+        RELATION: for (OSMRelation relation : relationsById.valueCollection()) {
             if (processedAreas.contains(relation)) {
                 continue;
             }
@@ -666,13 +696,15 @@ public class OSMDatabase implements OpenStreetMapContentHandler {
                     // relation includes way which does not exist in the data. Skip.
                     continue RELATION;
                 }
-                for (Long nodeId : way.getNodeRefs()) {
-                    if (!nodesById.containsKey(nodeId)) {
+                TLongList nodeRefs = way.getNodeRefs();
+                for (int i = 0; i < nodeRefs.size(); i++) {
+                    long nodeId = nodeRefs.get(i);
+                    if (!nodesById.contains(nodeId)) {
                         // this area is missing some nodes, perhaps because it is on
                         // the edge of the region, so we will simply not route on it.
                         continue RELATION;
                     }
-                    MapUtils.addToMapSet(areasForNode, nodeId, way);
+                    addAreaForNode(nodeId, way);
                 }
                 if (role.equals("inner")) {
                     innerWays.add(way);
@@ -743,7 +775,7 @@ public class OSMDatabase implements OpenStreetMapContentHandler {
     private void processRelations() {
         LOG.debug("Processing relations...");
 
-        for (OSMRelation relation : relationsById.values()) {
+        for (OSMRelation relation : relationsById.valueCollection()) {
             if (relation.isTag("type", "restriction")) {
                 processRestriction(relation);
             } else if (relation.isTag("type", "level_map")) {
@@ -922,7 +954,7 @@ public class OSMDatabase implements OpenStreetMapContentHandler {
                     platformArea = relationsById.get(member.getRef());
                 else
                     LOG.warn("Too many areas in relation " + relation.getId());
-            } else if ("node".equals(member.getType()) && nodesById.containsKey(member.getRef())) {
+            } else if ("node".equals(member.getType()) && nodesById.contains(member.getRef())) {
                 platformsNodes.add(nodesById.get(member.getRef()));
             }
         }
@@ -0,0 +1,38 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.graph_builder.module.osm;
+
+import org.opentripplanner.openstreetmap.model.OSMNode;
+
+/**
+ * The storage backend for the nodes of an OSMDatabase, which are by far its most numerous entities. Only the nodes
+ * of the ways and areas kept for routing, and stops, are ever stored.
+ *
+ * Area building and the street builder compare nodes by identity, so a store must return the instance it was given
+ * for an ID every time rather than a copy.
+ */
+public interface OSMNodeStore {
+
+    /** @return the node with the given ID, or null if there is none. */
+    OSMNode get(long id);
+
+    boolean contains(long id);
+
+    /** Store the given node under its ID, replacing any node with the same ID. */
+    void put(OSMNode node);
+
+    /** @return the number of nodes stored. */
+    int size();
+
+}
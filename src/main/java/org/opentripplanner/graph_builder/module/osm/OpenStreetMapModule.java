@@ -13,6 +13,8 @@
 
 package org.opentripplanner.graph_builder.module.osm;
 
+import gnu.trove.list.TLongList;
+
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -538,11 +540,13 @@ public class OpenStreetMapModule implements GraphBuilderModule {
 
                 // handle duplicate nodes in OSM ways
                 // this is a workaround for crappy OSM data quality
-                ArrayList<Long> nodes = new ArrayList<Long>(way.getNodeRefs().size());
+                TLongList nodeRefs = way.getNodeRefs();
+                ArrayList<Long> nodes = new ArrayList<Long>(nodeRefs.size());
                 long last = -1;
                 double lastLat = -1, lastLon = -1;
                 String lastLevel = null;
-                for (long nodeId : way.getNodeRefs()) {
+                for (int n = 0; n < nodeRefs.size(); n++) {
+                    long nodeId = nodeRefs.get(n);
                     OSMNode node = osmdb.getNode(nodeId);
                     if (node == null)
                         continue WAY;
@@ -868,8 +872,9 @@ public class OpenStreetMapModule implements GraphBuilderModule {
         private void initIntersectionNodes() {
             Set<Long> possibleIntersectionNodes = new HashSet<Long>();
             for (OSMWay way : osmdb.getWays()) {
-                List<Long> nodes = way.getNodeRefs();
-                for (long node : nodes) {
+                TLongList nodes = way.getNodeRefs();
+                for (int i = 0; i < nodes.size(); i++) {
+                    long node = nodes.get(i);
                     if (possibleIntersectionNodes.contains(node)) {
                         intersectionNodes.put(node, null);
                     } else {
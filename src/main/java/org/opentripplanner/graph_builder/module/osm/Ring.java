@@ -13,10 +13,11 @@
 
 package org.opentripplanner.graph_builder.module.osm;
 
+import gnu.trove.list.TLongList;
+
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
 
 import org.opentripplanner.common.geometry.GeometryUtils;
 import org.opentripplanner.openstreetmap.model.OSMNode;
@@ -62,11 +63,11 @@ public class Ring {
         geometry = new VLPolygon(vertices);
     }
 
-    public Ring(List<Long> osmNodes, Map<Long, OSMNode> _nodes) {
+    public Ring(TLongList osmNodes, OSMNodeStore _nodes) {
         ArrayList<VLPoint> vertices = new ArrayList<VLPoint>();
         nodes = new ArrayList<OSMNode>(osmNodes.size());
-        for (long nodeId : osmNodes) {
-            OSMNode node = _nodes.get(nodeId);
+        for (int i = 0; i < osmNodes.size(); i++) {
+            OSMNode node = _nodes.get(osmNodes.get(i));
             if (nodes.contains(node)) {
                 // hopefully, this only happens in order to
                 // close polygons
@@ -0,0 +1,32 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.graph_builder.services;
+
+import java.util.List;
+
+/**
+ * A GraphBuilderModule that does not add, remove or modify any vertices or edges, so that the GraphBuilder can run it
+ * at the same time as other such modules. It may still read the graph, add builder annotations and put services in
+ * it, but must not use the extra map shared between modules. Modules that do not implement this interface are run
+ * alone, after all the modules before them and before all the modules after them.
+ */
+public interface ConcurrentGraphBuilderModule extends GraphBuilderModule {
+
+    /** A set of ids which identifies what stages this graph builder provides (i.e. streets, elevation, transit) */
+    public List<String> provides();
+
+    /** A list of ids of stages which must be provided before this stage */
+    public List<String> getPrerequisites();
+
+}
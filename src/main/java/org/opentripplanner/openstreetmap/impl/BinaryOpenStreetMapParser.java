@@ -14,11 +14,12 @@
 package org.opentripplanner.openstreetmap.impl;
 
 import org.opentripplanner.openstreetmap.services.OpenStreetMapContentHandler;
+import org.opentripplanner.openstreetmap.services.OpenStreetMapEntityHandler;
 import org.opentripplanner.openstreetmap.model.*;
 
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import crosby.binary.BinaryParser;
 import crosby.binary.Osmformat;
@@ -29,14 +30,23 @@ import crosby.binary.Osmformat;
  * @since 0.4
  */
 public class BinaryOpenStreetMapParser extends BinaryParser {
-    private OpenStreetMapContentHandler _handler;
+    private OpenStreetMapEntityHandler _handler;
     private boolean _parseWays = true;
     private boolean _parseRelations = true;
     private boolean _parseNodes = true;
-    private Map<String, String> stringTable = new HashMap<String, String>();
+    private ConcurrentMap<String, String> stringTable;
 
     public BinaryOpenStreetMapParser(OpenStreetMapContentHandler handler) {
+        this(handler, new ConcurrentHashMap<String, String>());
+    }
+
+    /**
+     * @param stringTable the strings already seen, which may be shared by parsers decoding blocks of the same file on
+     *        different threads.
+     */
+    BinaryOpenStreetMapParser(OpenStreetMapEntityHandler handler, ConcurrentMap<String, String> stringTable) {
         _handler = handler;
+        this.stringTable = stringTable;
     }
 
     // The strings are already being pulled from a string table in the PBF file,
@@ -44,9 +54,8 @@ public class BinaryOpenStreetMapParser extends BinaryParser {
     // String.intern grinds to a halt on large PBF files (as it did on GTFS import), so 
     // we implement our own. 
     public String internalize(String s) {
-        String fromTable = stringTable.get(s);
+        String fromTable = stringTable.putIfAbsent(s, s);
         if (fromTable == null) {
-            stringTable.put(s, s);
             return s;
         } 
         return fromTable;
@@ -0,0 +1,184 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+
+package org.opentripplanner.openstreetmap.impl;
+
+import org.opentripplanner.openstreetmap.model.OSMNode;
+import org.opentripplanner.openstreetmap.model.OSMRelation;
+import org.opentripplanner.openstreetmap.model.OSMWay;
+import org.opentripplanner.openstreetmap.model.OSMWithTags;
+import org.opentripplanner.openstreetmap.services.OpenStreetMapEntityHandler;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import crosby.binary.Fileformat;
+import crosby.binary.Osmformat;
+
+/**
+ * Reads a PBF file one blob at a time and has worker threads inflate and decode the blobs in parallel. The decoded
+ * entities are handed to the entity handler on the calling thread, in the order they appear in the file, so the
+ * handler sees exactly what a single-threaded parse would give it and need not be threadsafe.
+ *
+ * The number of blobs read ahead of the one being handed to the handler is bounded, so memory use does not depend on
+ * the size of the file.
+ */
+class ParallelBinaryOpenStreetMapReader {
+
+    /** The number of blobs read ahead per worker thread. */
+    private static final int BLOBS_PER_THREAD = 4;
+
+    private final File path;
+
+    private final OpenStreetMapEntityHandler handler;
+
+    /** Shared by the parsers of all blocks, so each distinct tag string is kept once. */
+    private final ConcurrentMap<String, String> stringTable = new ConcurrentHashMap<String, String>();
+
+    int nThreads = Runtime.getRuntime().availableProcessors();
+
+    ParallelBinaryOpenStreetMapReader(File path, OpenStreetMapEntityHandler handler) {
+        this.path = path;
+        this.handler = handler;
+    }
+
+    /** Read the whole file once, passing the kinds of entities asked for to the handler. */
+    void read(final boolean parseRelations, final boolean parseWays, final boolean parseNodes)
+            throws IOException, InterruptedException, ExecutionException {
+        ExecutorService executor = Executors.newFixedThreadPool(nThreads);
+        Deque<Future<DecodedBlock>> pending = new ArrayDeque<Future<DecodedBlock>>();
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(path)))) {
+            for (;;) {
+                final Fileformat.BlobHeader header = readBlobHeader(input);
+                if (header == null) {
+                    break;
+                }
+                final byte[] blob = new byte[header.getDatasize()];
+                input.readFully(blob);
+                if (pending.size() >= nThreads * BLOBS_PER_THREAD) {
+                    pending.removeFirst().get().replay(handler);
+                }
+                pending.addLast(executor.submit(new Callable<DecodedBlock>() {
+                    @Override
+                    public DecodedBlock call() throws Exception {
+                        DecodedBlock block = new DecodedBlock();
+                        BinaryOpenStreetMapParser parser = new BinaryOpenStreetMapParser(block, stringTable);
+                        parser.setParseRelations(parseRelations);
+                        parser.setParseWays(parseWays);
+                        parser.setParseNodes(parseNodes);
+                        if (header.getType().equals("OSMHeader")) {
+                            parser.parse(Osmformat.HeaderBlock.parseFrom(inflate(blob)));
+                        } else if (header.getType().equals("OSMData")) {
+                            parser.parse(Osmformat.PrimitiveBlock.parseFrom(inflate(blob)));
+                        }
+                        return block;
+                    }
+                }));
+            }
+            while (!pending.isEmpty()) {
+                pending.removeFirst().get().replay(handler);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /** @return the header of the next blob in the file, or null at the end of the file. */
+    private static Fileformat.BlobHeader readBlobHeader(DataInputStream input) throws IOException {
+        int headerSize;
+        try {
+            headerSize = input.readInt();
+        } catch (EOFException e) {
+            return null;
+        }
+        byte[] header = new byte[headerSize];
+        input.readFully(header);
+        return Fileformat.BlobHeader.parseFrom(header);
+    }
+
+    /** @return the uncompressed contents of a blob. */
+    private static byte[] inflate(byte[] data) throws IOException {
+        Fileformat.Blob blob = Fileformat.Blob.parseFrom(data);
+        if (blob.hasRaw()) {
+            return blob.getRaw().toByteArray();
+        }
+        if (!blob.hasZlibData()) {
+            throw new IOException("Unsupported compression in PBF blob.");
+        }
+        byte[] inflated = new byte[blob.getRawSize()];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(blob.getZlibData().toByteArray());
+            inflater.inflate(inflated);
+            if (!inflater.finished()) {
+                throw new IOException("Truncated zlib data in PBF blob.");
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt zlib data in PBF blob.", e);
+        } finally {
+            inflater.end();
+        }
+        return inflated;
+    }
+
+    /** The entities decoded from one block, in the order they appear in it. */
+    private static class DecodedBlock implements OpenStreetMapEntityHandler {
+
+        private final List<OSMWithTags> entities = new ArrayList<OSMWithTags>();
+
+        @Override
+        public void addNode(OSMNode node) {
+            entities.add(node);
+        }
+
+        @Override
+        public void addWay(OSMWay way) {
+            entities.add(way);
+        }
+
+        @Override
+        public void addRelation(OSMRelation relation) {
+            entities.add(relation);
+        }
+
+        void replay(OpenStreetMapEntityHandler handler) {
+            for (OSMWithTags entity : entities) {
+                if (entity instanceof OSMNode) {
+                    handler.addNode((OSMNode) entity);
+                } else if (entity instanceof OSMWay) {
+                    handler.addWay((OSMWay) entity);
+                } else {
+                    handler.addRelation((OSMRelation) entity);
+                }
+            }
+        }
+    }
+}
@@ -54,7 +54,7 @@ public class OSMMap implements OpenStreetMapContentHandler {
   public void pruneUnusedNodes() {
     Set<Long> nodes = new HashSet<Long>();
     for (OSMWay way : _ways.values()) {
-      for (long id : way.getNodeRefs())
+      for (long id : way.getNodeRefs().toArray())
         nodes.add(id);
     }
     _nodes.keySet().retainAll(nodes);
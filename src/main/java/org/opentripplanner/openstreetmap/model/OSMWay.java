@@ -16,12 +16,13 @@
 
 package org.opentripplanner.openstreetmap.model;
 
-import java.util.ArrayList;
-import java.util.List;
+import gnu.trove.list.TLongList;
+import gnu.trove.list.array.TLongArrayList;
 
 public class OSMWay extends OSMWithTags {
 
-    private List<Long> _nodes = new ArrayList<Long>();
+    /* The IDs of the nodes of the way in order, as primitive longs since there are many more of them than ways. */
+    private TLongList _nodes = new TLongArrayList();
 
     public void addNodeRef(OSMNodeRef nodeRef) {
         _nodes.add(nodeRef.getRef());
@@ -32,10 +33,10 @@ public class OSMWay extends OSMWithTags {
     }
 
     public void addNodeRef(long nodeRef, int index) {
-        _nodes.add(index, nodeRef);
+        _nodes.insert(index, nodeRef);
     }
 
-    public List<Long> getNodeRefs() {
+    public TLongList getNodeRefs() {
         return _nodes;
     }
 
@@ -15,32 +15,13 @@
 
 package org.opentripplanner.openstreetmap.services;
 
-import org.opentripplanner.openstreetmap.model.OSMNode;
-import org.opentripplanner.openstreetmap.model.OSMRelation;
-import org.opentripplanner.openstreetmap.model.OSMWay;
-
 /**
  * An interface to process/store parsed OpenStreetMap data.
  *
  * @see org.opentripplanner.openstreetmap.services.OpenStreetMapProvider
  */
 
-public interface OpenStreetMapContentHandler {
-
-  /**
-   * Stores a node.
-   */
-  public void addNode(OSMNode node);
-
-  /**
-   * Stores a way.
-   */
-  public void addWay(OSMWay way);
-
-  /**
-   * Stores a relation.
-   */
-  public void addRelation(OSMRelation relation);
+public interface OpenStreetMapContentHandler extends OpenStreetMapEntityHandler {
 
   /**
    * Called after the first phase, when all relations are loaded.
@@ -0,0 +1,250 @@
+package org.opentripplanner.osm;
+
+import gnu.trove.iterator.TLongObjectIterator;
+import gnu.trove.map.TLongObjectMap;
+import gnu.trove.map.hash.TLongObjectHashMap;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.AbstractMap;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import com.google.common.base.Charsets;
+
+/**
+ * Stores OSM nodes as fixed-width records (ID and fixed-point latitude and longitude) in parallel primitive arrays
+ * sorted by ID, so that looking up a node is a binary search and the store holds no object per node. The tags of
+ * the few nodes that have any are kept in a separate map.
+ *
+ * Nodes in PBF files are usually sorted by ID, in which case they are simply appended. Nodes stored out of order
+ * are sorted before the next lookup. Putting a node whose ID is already present replaces it.
+ *
+ * Lookups return a new Node each time, so changing it does not change the store.
+ *
+ * The arrays are indexed by int, so they hold somewhat less than 2^31 nodes. They can be saved to a file and loaded
+ * back as they are, which is how an OSM stored on disk keeps its nodes next to its MapDB file.
+ */
+public class NodeStore {
+
+    /** Identifies the file format, and changes whenever that format does. */
+    private static final int FILE_VERSION = 1;
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    /** The largest array that can be allocated on common JVMs. */
+    private static final int MAX_CAPACITY = Integer.MAX_VALUE - 8;
+
+    private long[] ids = new long[INITIAL_CAPACITY];
+
+    private int[] fixedLats = new int[INITIAL_CAPACITY];
+
+    private int[] fixedLons = new int[INITIAL_CAPACITY];
+
+    private int size = 0;
+
+    /** Whether the records are in strictly increasing ID order. */
+    private volatile boolean sorted = true;
+
+    private final TLongObjectMap<String> tagsForNode = new TLongObjectHashMap<String>();
+
+    public void put(long id, Node node) {
+        if (node.hasNoTags()) {
+            tagsForNode.remove(id);
+        } else {
+            tagsForNode.put(id, node.tags);
+        }
+        if (sorted && size > 0 && ids[size - 1] == id) {
+            fixedLats[size - 1] = node.fixedLat;
+            fixedLons[size - 1] = node.fixedLon;
+            return;
+        }
+        if (size == ids.length) {
+            if (size == MAX_CAPACITY) {
+                throw new IllegalStateException("Too many nodes for one NodeStore.");
+            }
+            int capacity = Math.max(INITIAL_CAPACITY, size + (size >> 1));
+            // Growing by half overflows once the arrays hold more than about 1.4 billion nodes.
+            if (capacity < 0 || capacity > MAX_CAPACITY) {
+                capacity = MAX_CAPACITY;
+            }
+            ids = Arrays.copyOf(ids, capacity);
+            fixedLats = Arrays.copyOf(fixedLats, capacity);
+            fixedLons = Arrays.copyOf(fixedLons, capacity);
+        }
+        if (size > 0 && id < ids[size - 1]) {
+            sorted = false;
+        }
+        ids[size] = id;
+        fixedLats[size] = node.fixedLat;
+        fixedLons[size] = node.fixedLon;
+        size++;
+    }
+
+    /** @return the node with the given ID, or null if there is none. */
+    public Node get(long id) {
+        int i = indexOf(id);
+        return i < 0 ? null : nodeAt(i);
+    }
+
+    public boolean contains(long id) {
+        return indexOf(id) >= 0;
+    }
+
+    /** @return the number of nodes stored. */
+    public int size() {
+        ensureSorted();
+        return size;
+    }
+
+    /** @return the nodes with their IDs in ID order. Nodes must not be put while iterating. */
+    public Iterable<Map.Entry<Long, Node>> entries() {
+        ensureSorted();
+        return new Iterable<Map.Entry<Long, Node>>() {
+            @Override
+            public Iterator<Map.Entry<Long, Node>> iterator() {
+                return new Iterator<Map.Entry<Long, Node>>() {
+                    private int i = 0;
+
+                    @Override
+                    public boolean hasNext() {
+                        return i < size;
+                    }
+
+                    @Override
+                    public Map.Entry<Long, Node> next() {
+                        if (i >= size) {
+                            throw new NoSuchElementException();
+                        }
+                        Map.Entry<Long, Node> entry = new AbstractMap.SimpleImmutableEntry<Long, Node>(ids[i],
+                                nodeAt(i));
+                        i++;
+                        return entry;
+                    }
+
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+        };
+    }
+
+    /** Write the nodes to the given file, replacing its contents, so that they can be loaded back with load(). */
+    public void save(File file) throws IOException {
+        ensureSorted();
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            out.writeInt(FILE_VERSION);
+            out.writeInt(size);
+            for (int i = 0; i < size; i++) {
+                out.writeLong(ids[i]);
+                out.writeInt(fixedLats[i]);
+                out.writeInt(fixedLons[i]);
+            }
+            out.writeInt(tagsForNode.size());
+            for (TLongObjectIterator<String> it = tagsForNode.iterator(); it.hasNext();) {
+                it.advance();
+                // Not writeUTF, which is limited to 64kB.
+                byte[] tags = it.value().getBytes(Charsets.UTF_8);
+                out.writeLong(it.key());
+                out.writeInt(tags.length);
+                out.write(tags);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /** @return a store holding the nodes in a file written by save(). */
+    public static NodeStore load(File file) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            int version = in.readInt();
+            if (version != FILE_VERSION) {
+                throw new IOException("Node file " + file + " has version " + version + ", expected " + FILE_VERSION);
+            }
+            NodeStore store = new NodeStore();
+            int size = in.readInt();
+            store.ids = new long[Math.max(size, INITIAL_CAPACITY)];
+            store.fixedLats = new int[store.ids.length];
+            store.fixedLons = new int[store.ids.length];
+            for (int i = 0; i < size; i++) {
+                store.ids[i] = in.readLong();
+                store.fixedLats[i] = in.readInt();
+                store.fixedLons[i] = in.readInt();
+            }
+            store.size = size;
+            int nTagged = in.readInt();
+            for (int i = 0; i < nTagged; i++) {
+                long id = in.readLong();
+                byte[] tags = new byte[in.readInt()];
+                in.readFully(tags);
+                store.tagsForNode.put(id, new String(tags, Charsets.UTF_8));
+            }
+            return store;
+        } finally {
+            in.close();
+        }
+    }
+
+    /** @return the i-th node in ID order. */
+    private Node nodeAt(int i) {
+        Node node = new Node();
+        node.fixedLat = fixedLats[i];
+        node.fixedLon = fixedLons[i];
+        node.tags = tagsForNode.get(ids[i]);
+        return node;
+    }
+
+    private int indexOf(long id) {
+        ensureSorted();
+        return Arrays.binarySearch(ids, 0, size, id);
+    }
+
+    private void ensureSorted() {
+        if (!sorted) {
+            sort();
+        }
+    }
+
+    /**
+     * Sort the records by ID. The new position of each record is found by binary search in the sorted IDs, so that
+     * no object per record is needed. When an ID was put more than once, the record put last is kept.
+     */
+    private synchronized void sort() {
+        if (sorted) {
+            return;
+        }
+        long[] sortedIds = Arrays.copyOf(ids, size);
+        Arrays.sort(sortedIds);
+        int nUnique = 0;
+        for (int i = 0; i < size; i++) {
+            if (nUnique == 0 || sortedIds[i] != sortedIds[nUnique - 1]) {
+                sortedIds[nUnique++] = sortedIds[i];
+            }
+        }
+        int[] sortedLats = new int[sortedIds.length];
+        int[] sortedLons = new int[sortedIds.length];
+        for (int i = 0; i < size; i++) {
+            int position = Arrays.binarySearch(sortedIds, 0, nUnique, ids[i]);
+            sortedLats[position] = fixedLats[i];
+            sortedLons[position] = fixedLons[i];
+        }
+        ids = sortedIds;
+        fixedLats = sortedLats;
+        fixedLons = sortedLons;
+        size = nUnique;
+        sorted = true;
+    }
+
+}
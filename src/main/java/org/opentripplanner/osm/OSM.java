@@ -5,14 +5,12 @@ import com.google.common.primitives.Longs;
 import com.vividsolutions.jts.geom.Envelope;
 import org.mapdb.DB;
 import org.mapdb.DBMaker;
-import org.mapdb.Fun.Tuple3;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.*;
 import java.util.ArrayList;
 import java.util.Map;
-import java.util.NavigableSet;
 import java.util.zip.GZIPInputStream;
 
 /**
@@ -23,14 +21,21 @@ public class OSM {
 
     private static final Logger LOG = LoggerFactory.getLogger(OSM.class);
 
-    public Map<Long, Node> nodes;
+    /**
+     * Nodes are by far the most numerous entities, so they are always kept in memory as compact records. When this
+     * OSM is stored in a file, commit() saves them to a file of their own next to it.
+     */
+    public NodeStore nodes;
     public Map<Long, Way> ways;
     public Map<Long, Relation> relations;
-    public NavigableSet<Tuple3<Integer, Integer, Long>> index; // (x_tile, y_tile, wayId)
+    public TileIndex index; // (x_tile, y_tile) -> wayIds
 
-    /** The MapDB backing this OSM, if any. */
+    /** The MapDB backing the ways and relations of this OSM, if any. */
     DB db = null; // db.close(); ?
 
+    /** The files the nodes and the tile index are saved to, or null if this OSM is not stored in a file. */
+    private File nodesFile, indexFile;
+
     // Using DB TreeMaps is observed not to be slower than memory.
     // HashMaps are both bigger and slower.
     // It lets you run in 400MB instead of a few GB.
@@ -48,6 +53,8 @@ public class OSM {
             } else {
                 LOG.info("OSM will be stored in file {}.", diskPath);
                 dbMaker = DBMaker.newFileDB(new File(diskPath));
+                nodesFile = new File(diskPath + ".nodes");
+                indexFile = new File(diskPath + ".tiles");
             }
         }
         db = dbMaker
@@ -55,10 +62,40 @@ public class OSM {
             .asyncWriteEnable()
             .compressionEnable()
             .make();
-        nodes = db.getTreeMap("nodes");
         ways = db.getTreeMap("ways");
         relations = db.getTreeMap("relations");
-        index = db.getTreeSet("spatial_index");
+        if (nodesFile != null && nodesFile.exists() && indexFile.exists()) {
+            LOG.info("Loading the nodes and tile index saved with the OSM in file {}.", diskPath);
+            try {
+                nodes = NodeStore.load(nodesFile);
+                index = TileIndex.load(indexFile);
+            } catch (IOException e) {
+                throw new RuntimeException("Could not load the nodes and tile index of the OSM in " + diskPath, e);
+            }
+        } else {
+            if (nodesFile != null && !ways.isEmpty()) {
+                LOG.warn("The OSM in file {} was not committed, its nodes and tile index are missing.", diskPath);
+            }
+            nodes = new NodeStore();
+            index = new TileIndex();
+        }
+    }
+
+    /**
+     * Flush the ways and relations to the MapDB and, if this OSM is stored in a file, save the nodes and the tile
+     * index next to it so that the OSM can be reopened from the same path without parsing it again.
+     */
+    public void commit() {
+        db.commit();
+        if (nodesFile == null) {
+            return;
+        }
+        try {
+            nodes.save(nodesFile);
+            index.save(indexFile);
+        } catch (IOException e) {
+            throw new RuntimeException("Could not save the nodes and tile index of the OSM.", e);
+        }
     }
     
     // boolean filterTags
@@ -82,6 +119,7 @@ public class OSM {
         NodeLoader nl = new NodeLoader(osm, wl.nodesInWays);
         nl.parse(pbfFile);
         LOG.info("Loading relations (which ones?)");
+        osm.commit();
         return osm;
     }
 
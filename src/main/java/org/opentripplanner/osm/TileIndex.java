@@ -0,0 +1,106 @@
+package org.opentripplanner.osm;
+
+import gnu.trove.iterator.TLongObjectIterator;
+import gnu.trove.list.TLongList;
+import gnu.trove.list.array.TLongArrayList;
+import gnu.trove.map.TLongObjectMap;
+import gnu.trove.map.hash.TLongObjectHashMap;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * A spatial index of ways by web mercator tile. The x and y tile numbers are packed into a single long key, and the
+ * IDs of the ways in each tile are kept in a primitive list, so neither keys nor way IDs are boxed.
+ *
+ * The index can be saved to a file and loaded back, so that an OSM stored on disk can be reopened without parsing
+ * its ways again.
+ */
+public class TileIndex {
+
+    /** Identifies the file format, and changes whenever that format does. */
+    private static final int FILE_VERSION = 1;
+
+    private final TLongObjectMap<TLongList> waysForTile = new TLongObjectHashMap<TLongList>();
+
+    public void add(int xtile, int ytile, long wayId) {
+        long key = key(xtile, ytile);
+        TLongList ways = waysForTile.get(key);
+        if (ways == null) {
+            ways = new TLongArrayList(4);
+            waysForTile.put(key, ways);
+        }
+        ways.add(wayId);
+    }
+
+    /** @return the IDs of the ways in all the tiles of the given range, inclusive, ordered by x then y tile. */
+    public TLongList query(int minX, int minY, int maxX, int maxY) {
+        TLongList result = new TLongArrayList();
+        for (int x = minX; x <= maxX; x++) {
+            for (int y = minY; y <= maxY; y++) {
+                TLongList ways = waysForTile.get(key(x, y));
+                if (ways != null) {
+                    result.addAll(ways);
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Write the index to the given file, replacing its contents, so that it can be loaded back with load(). */
+    public void save(File file) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            out.writeInt(FILE_VERSION);
+            out.writeInt(waysForTile.size());
+            for (TLongObjectIterator<TLongList> it = waysForTile.iterator(); it.hasNext();) {
+                it.advance();
+                TLongList ways = it.value();
+                out.writeLong(it.key());
+                out.writeInt(ways.size());
+                for (int i = 0; i < ways.size(); i++) {
+                    out.writeLong(ways.get(i));
+                }
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /** @return an index holding the tiles in a file written by save(). */
+    public static TileIndex load(File file) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            int version = in.readInt();
+            if (version != FILE_VERSION) {
+                throw new IOException("Tile index file " + file + " has version " + version + ", expected "
+                        + FILE_VERSION);
+            }
+            TileIndex index = new TileIndex();
+            int nTiles = in.readInt();
+            for (int t = 0; t < nTiles; t++) {
+                long key = in.readLong();
+                int nWays = in.readInt();
+                TLongList ways = new TLongArrayList(nWays);
+                for (int i = 0; i < nWays; i++) {
+                    ways.add(in.readLong());
+                }
+                index.waysForTile.put(key, ways);
+            }
+            return index;
+        } finally {
+            in.close();
+        }
+    }
+
+    private static long key(int xtile, int ytile) {
+        return ((long) xtile << 32) | (ytile & 0xFFFFFFFFL);
+    }
+
+}
@@ -1,22 +1,23 @@
 package org.opentripplanner.osm;
 
+import gnu.trove.list.TLongList;
 import org.glassfish.grizzly.http.Method;
 import org.glassfish.grizzly.http.server.*;
 import org.glassfish.grizzly.http.util.HttpStatus;
-import org.mapdb.Fun;
-import org.mapdb.Fun.Tuple3;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.io.OutputStream;
 import java.net.BindException;
-import java.util.SortedSet;
 import java.util.zip.GZIPOutputStream;
 
 /**
  * Load OSM data into MapDB and perform bounding box extracts.
  *
+ * Arguments are the path to store the OSM at and the PBF file to load into it. When the PBF file is left out, the
+ * OSM stored at that path by an earlier run is served.
+ *
  * Some useful tools:
  * http://boundingbox.klokantech.com
  * http://www.maptiler.org/google-maps-coordinates-tile-bounds-projection/
@@ -31,8 +32,12 @@ public class VanillaExtract {
 
     public static void main(String[] args) {
 
+        // Without a PBF file, serve the OSM already stored at the given path.
         VexPbfParser parser = new VexPbfParser(args[0]);
-        parser.parse(args[1]);
+        if (args.length > 1) {
+            parser.parse(args[1]);
+            parser.osm.commit();
+        }
 
         LOG.info("Starting VEX HTTP server on port {} of interface {}", PORT, BIND_ADDRESS);
         HttpServer httpServer = new HttpServer();
@@ -96,19 +101,9 @@ public class VanillaExtract {
                 OutputStream zipOut = new GZIPOutputStream(out);
                 OSMTextOutput tout = new OSMTextOutput(zipOut, parser.osm);
 
-                // SortedSet provides one-dimensional ordering and iteration. Tuple3 gives an odometer-like ordering.
-                // Therefore we must vary one of the dimensions "manually". Consider a set containing all the integers
-                // from 00 to 99 at 2-tuples. The range from (1,1) to (2,2) does not contain the four
-                // elements (1,1) (1,2) (2,1) (2,2). It contains the elements (1,1) (1,2) (1,3) (1,4) ... (2,2).
-                for (int x = minX; x <= maxX; x++) {
-                    SortedSet<Tuple3<Integer, Integer, Long>> xSubset = parser.osm.index.subSet(
-                        new Tuple3(x, minY, null  ), true, // inclusive lower bound, null tests lower than anything
-                        new Tuple3(x, maxY, Fun.HI), true  // inclusive upper bound, HI tests higher than anything
-                    );
-                    for (Tuple3<Integer, Integer, Long> item : xSubset) {
-                        long wayId = item.c;
-                        tout.printWay(wayId);
-                    }
+                TLongList wayIds = parser.osm.index.query(minX, minY, maxX, maxY);
+                for (int i = 0; i < wayIds.size(); i++) {
+                    tout.printWay(wayIds.get(i));
                 }
                 zipOut.close(); // necessary to avoid corrupted gzip file
                 response.setStatus(HttpStatus.OK_200);
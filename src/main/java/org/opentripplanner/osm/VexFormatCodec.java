@@ -86,11 +86,11 @@ public class VexFormatCodec {
         vout.writeUInt32NoTag(n);
     }
 
-    /** Note that the MapDB TreeMap is ordered, so we are writing out the nodes in ID order! */
+    /** Note that the NodeStore is ordered, so we are writing out the nodes in ID order! */
     private int writeNodeBlock() throws IOException {
         beginWriteBlock(VEX_NODE);
         int n = 0;
-        for (Map.Entry<Long, Node> entry : osm.nodes.entrySet()) {
+        for (Map.Entry<Long, Node> entry : osm.nodes.entries()) {
             writeNode(entry.getKey(), entry.getValue());
             n++;
         }
@@ -1,7 +1,5 @@
 package org.opentripplanner.osm;
 
-import org.mapdb.Fun.Tuple3;
-
 /**
  * A parser that keeps track of intersections in the file being loaded.
  */
@@ -39,9 +37,7 @@ public class VexPbfParser extends Parser {
             LOG.error("A way referenced a node that was not yet included in the input.");
         } else {
             WebMercatorTile tile = new WebMercatorTile(firstNode.getLat(), firstNode.getLon());
-            // We could also insert using ((float)lat, (float)lon) as a key
-            // but depending on whether MapDB does tree path compression this might take more space
-            osm.index.add(new Tuple3(tile.xtile, tile.ytile, wayId));
+            osm.index.add(tile.xtile, tile.ytile, wayId);
         }
 
         /* Defer to the superclass to store the node in the map. */
@@ -1,7 +1,6 @@
 package org.opentripplanner.profile;
 
 import com.google.common.collect.*;
-import gnu.trove.iterator.TObjectIntIterator;
 import gnu.trove.map.TObjectIntMap;
 import gnu.trove.map.hash.TObjectIntHashMap;
 import org.onebusaway.gtfs.model.Stop;
@@ -24,6 +23,7 @@ import org.opentripplanner.routing.vertextype.TransitStop;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.nio.IntBuffer;
 import java.util.*;
 
 /**
@@ -178,12 +178,12 @@ public class AnalystProfileRouterPrototype {
             // Iterate over street intersections in the vicinity of this particular transit stop.
             // Shift the time range at this transit stop, merging it into that for all reachable street intersections.
             TimeRange rangeAtTransitStop = times.get(stop);
-            TObjectIntMap<Vertex> distanceToVertex = stopTreeCache.getDistancesForStop(tstop);
-            for (TObjectIntIterator<Vertex> iter = distanceToVertex.iterator(); iter.hasNext(); ) {
-                iter.advance();
-                Vertex vertex = iter.key();
+            IntBuffer tree = stopTreeCache.getTree(tstop);
+            for (int i = 0; i < tree.limit(); i += 2) {
+                Vertex vertex = stopTreeCache.getVertex(tree.get(i));
+                if (vertex == null) continue;
                 // distance in meters over walkspeed in meters per second --> seconds
-                int egressWalkTimeSeconds = (int) (iter.value() / request.walkSpeed);
+                int egressWalkTimeSeconds = (int) (tree.get(i + 1) / request.walkSpeed);
                 if (egressWalkTimeSeconds > request.maxWalkTime * 60) {
                     continue;
                 }
@@ -1,8 +1,6 @@
 package org.opentripplanner.profile;
 
 import com.google.common.collect.*;
-import gnu.trove.iterator.TObjectIntIterator;
-import gnu.trove.map.TObjectIntMap;
 import org.onebusaway.gtfs.model.Stop;
 import org.opentripplanner.analyst.TimeSurface;
 import org.opentripplanner.api.resource.SimpleIsochrone;
@@ -23,6 +21,7 @@ import org.opentripplanner.routing.vertextype.TransitStop;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.nio.IntBuffer;
 import java.util.*;
 import java.util.Map.Entry;
 
@@ -54,6 +53,12 @@ public class ProfileRouter {
     public final Graph graph;
     public final ProfileRequest request;
 
+    /**
+     * The time after which the search is abandoned, in milliseconds since the epoch, if it is earlier than TIMEOUT
+     * after the start of the search. Zero means only TIMEOUT applies.
+     */
+    public long searchAbortTime = 0;
+
     public ProfileRouter(Graph graph, ProfileRequest request) {
         this.graph = graph;
         this.request = request;
@@ -108,6 +113,9 @@ public class ProfileRouter {
         // Establish search timeouts
         long searchBeginTime = System.currentTimeMillis();
         long abortTime = searchBeginTime + TIMEOUT * 1000;
+        if (searchAbortTime > 0 && searchAbortTime < abortTime) {
+            abortTime = searchAbortTime;
+        }
 
         // TimeWindow could constructed in the caller, which does have access to the graph index.
         this.window = new TimeWindow(request.fromTime, request.toTime, graph.index.servicesRunning(request.date));
@@ -414,6 +422,7 @@ public class ProfileRouter {
         rr.to = new GenericLocation(request.toLat, request.toLon);
         rr.setArriveBy(dest);
         rr.setRoutingContext(graph);
+        rr.rctx.searchAbortTime = searchAbortTime;
         // Set batch after context, so both origin and dest vertices will be found.
         rr.batch = (true);
         rr.walkSpeed = request.walkSpeed;
@@ -479,6 +488,7 @@ public class ProfileRouter {
         rr.to = new GenericLocation(request.toLat, request.toLon);
         rr.setArriveBy(false);
         rr.setRoutingContext(graph);
+        rr.rctx.searchAbortTime = searchAbortTime;
         // This is not a batch search, it is a point-to-point search with goal direction.
         // Impose a max time to protect against very slow searches.
         int worstElapsedTime = request.streetTime * 60;
@@ -542,31 +552,31 @@ public class ProfileRouter {
                 TransitStop tstop = graph.index.stopVertexForStop.get(stop);
                 // Iterate over street intersections in the vicinity of this particular transit stop.
                 // Shift the time range at this transit stop, merging it into that for all reachable street intersections.
-                TObjectIntMap<Vertex> distanceToVertex = stopTreeCache.getDistancesForStop(tstop);
-                for (TObjectIntIterator<Vertex> iter = distanceToVertex.iterator(); iter.hasNext(); ) {
-                    iter.advance();
-                    Vertex vertex = iter.key();
+                IntBuffer tree = stopTreeCache.getTree(tstop);
+                for (int i = 0; i < tree.limit(); i += 2) {
+                    Vertex vertex = stopTreeCache.getVertex(tree.get(i));
+                    if (vertex == null) continue;
                     // distance in meters over walkspeed in meters per second --> seconds
-                    int egressWalkTimeSeconds = (int) (iter.value() / request.walkSpeed);
+                    int egressWalkTimeSeconds = (int) (tree.get(i + 1) / request.walkSpeed);
                     if (egressWalkTimeSeconds > request.maxWalkTime * 60) {
                         continue;
                     }
                     int propagated_min = lb0 + egressWalkTimeSeconds;
                     int propagated_max = ub0 + egressWalkTimeSeconds;
                     int propagated_avg = (int)(((long) propagated_min + propagated_max) / 2); // FIXME HACK
-                    int existing_min = minSurface.times.get(vertex);
-                    int existing_max = maxSurface.times.get(vertex);
-                    int existing_avg = avgSurface.times.get(vertex);
+                    int existing_min = minSurface.getTime(vertex);
+                    int existing_max = maxSurface.getTime(vertex);
+                    int existing_avg = avgSurface.getTime(vertex);
                     // FIXME this is taking the least lower bound and the least upper bound
                     // which is not necessarily wrong but it's a crude way to perform the combination
                     if (existing_min == TimeSurface.UNREACHABLE || existing_min > propagated_min) {
-                        minSurface.times.put(vertex, propagated_min);
+                        minSurface.setTime(vertex, propagated_min);
                     }
                     if (existing_max == TimeSurface.UNREACHABLE || existing_max > propagated_max) {
-                        maxSurface.times.put(vertex, propagated_max);
+                        maxSurface.setTime(vertex, propagated_max);
                     }
                     if (existing_avg == TimeSurface.UNREACHABLE || existing_avg > propagated_avg) {
-                        avgSurface.times.put(vertex, propagated_avg);
+                        avgSurface.setTime(vertex, propagated_avg);
                     }
                 }
             }
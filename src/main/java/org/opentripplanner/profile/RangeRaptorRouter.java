@@ -0,0 +1,206 @@
+package org.opentripplanner.profile;
+
+import org.joda.time.DateTimeZone;
+import org.opentripplanner.analyst.TimeSurface;
+import org.opentripplanner.common.model.GenericLocation;
+import org.opentripplanner.routing.core.RoutingRequest;
+import org.opentripplanner.routing.core.TraverseMode;
+import org.opentripplanner.routing.core.TraverseModeSet;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.graph.Vertex;
+import org.opentripplanner.util.monitoring.SearchMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Finds the travel time to every vertex for each departure minute of the time window of a ProfileRequest, and
+ * summarizes them as min, average, max and percentile surfaces. This is range RAPTOR: the departure minutes are
+ * searched from the last to the first with the same RaptorRouter, without resetting its arrival times in between,
+ * because a stop reached at some time when leaving later can still be reached at that time when leaving earlier.
+ * Each search only has to improve on the one after it, so the whole window costs a few times a single search rather
+ * than one search per minute.
+ *
+ * Unlike the statistics of ProfileRouter, which are estimated from the headways and running times of the rides,
+ * these are found from actual departures, so waiting times are exact. A vertex that cannot be reached within the
+ * maximum duration from every departure minute only appears in the min surface.
+ *
+ * Access, egress, transfers and direct trips are all on foot, so only requests in which every non-transit mode is
+ * walking can be answered this way, see accepts().
+ *
+ * Create one instance per search. The RoutingContext it makes must be destroyed with cleanup().
+ */
+public class RangeRaptorRouter {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RangeRaptorRouter.class);
+
+    /** The time between two searched departures in seconds. */
+    public static final int STEP = 60;
+
+    public final Graph graph;
+
+    public final ProfileRequest request;
+
+    private final RoutingRequest routingRequest;
+
+    private final RaptorRouter raptor;
+
+    /** The vertices reached from any departure minute, in the order they were first reached. */
+    private final List<Vertex> reachedVertices = new ArrayList<Vertex>();
+
+    /** The position of each vertex in reachedVertices, indexed by vertex index, or -1 if it was never reached. */
+    private int[] slotForVertex;
+
+    /**
+     * The travel time from each departure minute in order to each vertex reached, or UNREACHED. The times to the
+     * vertex at position n of reachedVertices are times[n * nDepartures] to times[(n + 1) * nDepartures - 1].
+     */
+    private int[] times;
+
+    private int nDepartures;
+
+    public RangeRaptorRouter(Graph graph, ProfileRequest request) {
+        this.graph = graph;
+        this.request = request;
+        routingRequest = new RoutingRequest();
+        TraverseModeSet modes = request.transitModes.clone();
+        modes.setWalk(true);
+        routingRequest.modes = modes;
+        routingRequest.walkSpeed = request.walkSpeed;
+        routingRequest.batch = true;
+        routingRequest.from = new GenericLocation(request.fromLat, request.fromLon);
+        // The destination is meaningless in one-to-many searches, but a routing context needs one
+        routingRequest.to = routingRequest.from;
+        DateTimeZone zone = DateTimeZone.forTimeZone(graph.getTimeZone());
+        routingRequest.dateTime = request.date.toDateTimeAtStartOfDay(zone).plusSeconds(request.fromTime)
+                .getMillis() / 1000;
+        routingRequest.setRoutingContext(graph);
+        raptor = new RaptorRouter(graph, routingRequest);
+        raptor.maxWalkTime = request.maxWalkTime * 60;
+        raptor.maxDuration = ProfileRouter.MAX_DURATION;
+    }
+
+    /**
+     * @return whether the given request can be answered by range RAPTOR: the graph has the transfers between stops it
+     *         needs, and the request only walks to, from and between stops.
+     */
+    public static boolean accepts(Graph graph, ProfileRequest request) {
+        return graph.hasDirectTransfers && walkOnly(request.accessModes) && walkOnly(request.egressModes)
+                && walkOnly(request.directModes);
+    }
+
+    private static boolean walkOnly(TraverseModeSet modes) {
+        return modes == null || modes.getNonTransitSet().equals(new TraverseModeSet(TraverseMode.WALK));
+    }
+
+    public void route() {
+        long t0 = System.currentTimeMillis();
+        raptor.findAccessTimes();
+        nDepartures = Math.max(1, (request.toTime - request.fromTime) / STEP);
+        // All the vertices this search can reach exist by now, temporary ones included.
+        int nVertices = Vertex.getMaxIndex();
+        slotForVertex = new int[nVertices];
+        Arrays.fill(slotForVertex, -1);
+        times = new int[0];
+        // The times from one departure, reset after each one by going over the vertices it reached.
+        int[] departureTimes = new int[nVertices];
+        Arrays.fill(departureTimes, RaptorRouter.UNREACHED);
+        List<Vertex> reached = new ArrayList<Vertex>();
+        for (int i = nDepartures - 1; i >= 0; i--) {
+            int departure = request.fromTime + i * STEP;
+            raptor.runRounds(departure);
+            reached.clear();
+            raptor.propagateTravelTimes(departure, departureTimes, reached);
+            for (Vertex vertex : reached) {
+                int index = vertex.getIndex();
+                int slot = slotForVertex[index];
+                if (slot < 0) {
+                    slot = addSlot(vertex);
+                }
+                times[slot * nDepartures + i] = departureTimes[index];
+                departureTimes[index] = RaptorRouter.UNREACHED;
+            }
+        }
+        long searchTime = System.currentTimeMillis() - t0;
+        LOG.debug("Range RAPTOR search over {} departures reaching {} vertices finished in {} msec.", nDepartures,
+                reachedVertices.size(), searchTime);
+        SearchMetrics.QueryClass metrics = graph.getSearchMetrics().forQueryClass("range_raptor");
+        metrics.searches.incrementAndGet();
+        metrics.searchTimeMsec.record(searchTime);
+        metrics.sptVertices.record(reachedVertices.size());
+    }
+
+    /** Give the times to a newly reached vertex a place in the times array, initially UNREACHED. */
+    private int addSlot(Vertex vertex) {
+        int slot = reachedVertices.size();
+        reachedVertices.add(vertex);
+        slotForVertex[vertex.getIndex()] = slot;
+        int end = (slot + 1) * nDepartures;
+        if (end > times.length) {
+            int oldLength = times.length;
+            times = Arrays.copyOf(times, Math.max(end, oldLength + oldLength / 2 + 1024 * nDepartures));
+            Arrays.fill(times, oldLength, times.length, RaptorRouter.UNREACHED);
+        }
+        return slot;
+    }
+
+    /** Copy the times from every departure minute to the vertex at the given position into sorted, and sort them. */
+    private void sortTimes(int slot, int[] sorted) {
+        System.arraycopy(times, slot * nDepartures, sorted, 0, nDepartures);
+        Arrays.sort(sorted);
+    }
+
+    /** @return the min, average and max surfaces over all departure minutes. */
+    public TimeSurface.RangeSet makeSurfaces() {
+        TimeSurface.RangeSet result = new TimeSurface.RangeSet();
+        result.min = raptor.makeEmptySurface();
+        result.avg = raptor.makeEmptySurface();
+        result.max = raptor.makeEmptySurface();
+        int[] sorted = new int[nDepartures];
+        for (int slot = 0; slot < reachedVertices.size(); slot++) {
+            Vertex vertex = reachedVertices.get(slot);
+            sortTimes(slot, sorted);
+            result.min.setTime(vertex, sorted[0]);
+            if (sorted[sorted.length - 1] == RaptorRouter.UNREACHED) continue;
+            long sum = 0;
+            for (int time : sorted) {
+                sum += time;
+            }
+            result.avg.setTime(vertex, (int) (sum / sorted.length));
+            result.max.setTime(vertex, sorted[sorted.length - 1]);
+        }
+        result.min.description = "Travel times when leaving at the best minute of the time window.";
+        result.avg.description = "Travel times averaged over every minute of the time window.";
+        result.max.description = "Travel times when leaving at the worst minute of the time window.";
+        return result;
+    }
+
+    /**
+     * @param percentile between 0 and 100.
+     * @return the travel time to each vertex that is not exceeded when leaving at the given percentage of the
+     *         departure minutes. Vertices that are not reached from enough of them are left out.
+     */
+    public TimeSurface makePercentileSurface(int percentile) {
+        TimeSurface surface = raptor.makeEmptySurface();
+        int[] sorted = new int[nDepartures];
+        int index = Math.max(0, (int) Math.ceil(percentile / 100.0 * nDepartures) - 1);
+        for (int slot = 0; slot < reachedVertices.size(); slot++) {
+            sortTimes(slot, sorted);
+            int time = sorted[index];
+            if (time != RaptorRouter.UNREACHED) {
+                surface.setTime(reachedVertices.get(slot), time);
+            }
+        }
+        surface.description = String.format("Travel times not exceeded for %d%% of the time window.", percentile);
+        return surface;
+    }
+
+    /** Destroy the routing context made for the access search. */
+    public void cleanup() {
+        routingRequest.cleanup();
+    }
+
+}
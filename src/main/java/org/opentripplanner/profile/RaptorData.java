@@ -0,0 +1,197 @@
+package org.opentripplanner.profile;
+
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.TObjectIntMap;
+import gnu.trove.map.hash.TObjectIntHashMap;
+import org.joda.time.LocalDate;
+import org.opentripplanner.routing.edgetype.SimpleTransfer;
+import org.opentripplanner.routing.edgetype.TripPattern;
+import org.opentripplanner.routing.graph.Edge;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.trippattern.FrequencyEntry;
+import org.opentripplanner.routing.trippattern.TripTimes;
+import org.opentripplanner.routing.vertextype.TransitStop;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * The scheduled transit service of a Graph on one day, flattened into int arrays for the round-based search in
+ * RaptorRouter. Stops and patterns are numbered, and each pattern holds the times of the trips running that day in
+ * a single array, sorted by departure from the first stop.
+ *
+ * Trips of the previous day that are still running after midnight are included, with their times shifted back by
+ * a day, so a search shortly after midnight can board them. Frequency-based trips are expanded into one trip per
+ * headway from the start of their frequency entry, so they are treated as if they ran on an exact schedule. Realtime
+ * updates are not taken into account.
+ *
+ * Instances are immutable once built and are shared between searches, see GraphIndex.getRaptorData.
+ */
+public class RaptorData {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RaptorData.class);
+
+    private static final int SECONDS_PER_DAY = 24 * 60 * 60;
+
+    public final LocalDate date;
+
+    /** The stop vertex for each stop index. */
+    public final TransitStop[] stops;
+
+    private final TObjectIntMap<TransitStop> indexForStop;
+
+    /** The pattern for each pattern index. Only patterns with at least one trip on the day are included. */
+    public final TripPattern[] patterns;
+
+    /** For each pattern, the index of the stop at each position along the pattern. */
+    final int[][] stopsForPattern;
+
+    /**
+     * For each pattern, the arrival and departure times of all its trips in seconds since midnight, trip after trip:
+     * the arrival at position p of trip t is at [(t * nStops + p) * 2] and the departure just after it.
+     */
+    final int[][] timesForPattern;
+
+    /** For each pattern, whether no trip overtakes another, so the trips are sorted by departure at every stop. */
+    final boolean[] sortedAtEveryStop;
+
+    /** For each stop, the indexes of the patterns passing through it. */
+    final int[][] patternsForStop;
+
+    /** For each stop, pairs of a target stop index and a walking distance in meters, from the SimpleTransfers. */
+    final int[][] transfersForStop;
+
+    public RaptorData(Graph graph, LocalDate date) {
+        long startTime = System.currentTimeMillis();
+        this.date = date;
+        BitSet servicesRunning = graph.index.servicesRunning(date);
+        BitSet servicesRunningYesterday = graph.index.servicesRunning(date.minusDays(1));
+
+        stops = graph.index.stopVertexForStop.values().toArray(new TransitStop[0]);
+        indexForStop = new TObjectIntHashMap<TransitStop>(stops.length, 0.5f, -1);
+        for (int s = 0; s < stops.length; s++) {
+            indexForStop.put(stops[s], s);
+        }
+
+        List<TripPattern> patternList = new ArrayList<TripPattern>();
+        List<int[]> stopsList = new ArrayList<int[]>();
+        List<int[]> timesList = new ArrayList<int[]>();
+        List<TIntArrayList> patternsForStopList = new ArrayList<TIntArrayList>(stops.length);
+        for (int s = 0; s < stops.length; s++) {
+            patternsForStopList.add(new TIntArrayList(4));
+        }
+        for (TripPattern pattern : graph.index.patternForId.values()) {
+            List<TripTimes> trips = tripsRunning(pattern, servicesRunning, servicesRunningYesterday);
+            if (trips.isEmpty()) continue;
+            int nStops = pattern.getStops().size();
+            int[] patternStops = new int[nStops];
+            for (int p = 0; p < nStops; p++) {
+                int s = indexForStop.get(graph.index.stopVertexForStop.get(pattern.getStop(p)));
+                patternStops[p] = s;
+                patternsForStopList.get(s).add(patternList.size());
+            }
+            int[] times = new int[trips.size() * nStops * 2];
+            int i = 0;
+            for (TripTimes tt : trips) {
+                for (int p = 0; p < nStops; p++) {
+                    times[i++] = tt.getArrivalTime(p);
+                    times[i++] = tt.getDepartureTime(p);
+                }
+            }
+            patternList.add(pattern);
+            stopsList.add(patternStops);
+            timesList.add(times);
+        }
+        patterns = patternList.toArray(new TripPattern[patternList.size()]);
+        stopsForPattern = stopsList.toArray(new int[patterns.length][]);
+        timesForPattern = timesList.toArray(new int[patterns.length][]);
+        sortedAtEveryStop = new boolean[patterns.length];
+        for (int p = 0; p < patterns.length; p++) {
+            sortedAtEveryStop[p] = isSortedAtEveryStop(timesForPattern[p], stopsForPattern[p].length);
+        }
+
+        patternsForStop = new int[stops.length][];
+        transfersForStop = new int[stops.length][];
+        for (int s = 0; s < stops.length; s++) {
+            patternsForStop[s] = patternsForStopList.get(s).toArray();
+            TIntArrayList transfers = new TIntArrayList();
+            for (Edge e : stops[s].getOutgoing()) {
+                if (e instanceof SimpleTransfer) {
+                    int target = indexForStop.get(e.getToVertex());
+                    if (target < 0) continue;
+                    transfers.add(target);
+                    transfers.add((int) ((SimpleTransfer) e).getDistance());
+                }
+            }
+            transfersForStop[s] = transfers.toArray();
+        }
+        LOG.info("Flattened {} patterns and {} stops for {} in {} msec.", patterns.length, stops.length, date,
+                System.currentTimeMillis() - startTime);
+    }
+
+    /** @return the index of the given stop, or -1 if it is not a stop of this graph. */
+    public int getStopIndex(TransitStop stop) {
+        return indexForStop.get(stop);
+    }
+
+    public int getStopCount() {
+        return stops.length;
+    }
+
+    /**
+     * @return the trips of the given pattern running on the day, sorted by departure time. This includes the trips
+     * of the previous day that arrive at their last stop after midnight, shifted back by a day.
+     */
+    private static List<TripTimes> tripsRunning(TripPattern pattern, BitSet servicesRunning,
+            BitSet servicesRunningYesterday) {
+        List<TripTimes> trips = new ArrayList<TripTimes>();
+        int lastStop = pattern.getStops().size() - 1;
+        for (TripTimes tt : pattern.scheduledTimetable.tripTimes) {
+            if (servicesRunning.get(tt.serviceCode)) {
+                trips.add(tt);
+            }
+            if (servicesRunningYesterday.get(tt.serviceCode) && tt.getArrivalTime(lastStop) >= SECONDS_PER_DAY) {
+                trips.add(tt.timeShift(0, tt.getDepartureTime(0) - SECONDS_PER_DAY, true));
+            }
+        }
+        for (FrequencyEntry freq : pattern.scheduledTimetable.frequencyEntries) {
+            boolean today = servicesRunning.get(freq.tripTimes.serviceCode);
+            boolean yesterday = servicesRunningYesterday.get(freq.tripTimes.serviceCode);
+            if (!today && !yesterday) continue;
+            for (int t = freq.startTime; t < freq.endTime; t += freq.headway) {
+                TripTimes tt = freq.tripTimes.timeShift(0, t, true);
+                if (today) {
+                    trips.add(tt);
+                }
+                if (yesterday && tt.getArrivalTime(lastStop) >= SECONDS_PER_DAY) {
+                    trips.add(tt.timeShift(0, t - SECONDS_PER_DAY, true));
+                }
+            }
+        }
+        Collections.sort(trips, new Comparator<TripTimes>() {
+            @Override
+            public int compare(TripTimes a, TripTimes b) {
+                return a.getDepartureTime(0) - b.getDepartureTime(0);
+            }
+        });
+        return trips;
+    }
+
+    private static boolean isSortedAtEveryStop(int[] times, int nStops) {
+        int nTrips = times.length / (nStops * 2);
+        for (int t = 1; t < nTrips; t++) {
+            for (int i = 0; i < nStops * 2; i++) {
+                if (times[t * nStops * 2 + i] < times[(t - 1) * nStops * 2 + i]) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+}
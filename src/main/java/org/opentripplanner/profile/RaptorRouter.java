@@ -0,0 +1,340 @@
+package org.opentripplanner.profile;
+
+import gnu.trove.iterator.TObjectIntIterator;
+import gnu.trove.map.TObjectIntMap;
+import gnu.trove.map.hash.TObjectIntHashMap;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.LocalDate;
+import org.opentripplanner.analyst.TimeSurface;
+import org.opentripplanner.routing.algorithm.EarliestArrivalSearch;
+import org.opentripplanner.routing.core.RoutingRequest;
+import org.opentripplanner.routing.core.State;
+import org.opentripplanner.routing.edgetype.TripPattern;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.graph.Vertex;
+import org.opentripplanner.routing.spt.ShortestPathTree;
+import org.opentripplanner.routing.vertextype.StreetVertex;
+import org.opentripplanner.routing.vertextype.TransitStop;
+import org.opentripplanner.util.monitoring.SearchMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * A one-to-many transit search in rounds, after RAPTOR (Delling, Pajor and Werneck, "Round-Based Public Transit
+ * Routing"). Round k finds the earliest arrival at each stop using k transit rides: every pattern serving a stop
+ * improved in round k-1 is scanned once from start to end, boarding the earliest trip that can be caught and
+ * alighting everywhere along it, then transfers are made from the stops it improved. There is no priority queue and
+ * all search state is kept in int arrays indexed by stop, over the flattened timetables of RaptorData.
+ *
+ * The search is seeded with the walking times from the origin to nearby stops, and the arrival times at stops are
+ * propagated back out to the street network with the StopTreeCache, giving a travel time to every vertex that
+ * TimeSurface can hold. The RoutingRequest must have a routing context.
+ *
+ * Create one instance per search. It is not threadsafe.
+ */
+public class RaptorRouter {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RaptorRouter.class);
+
+    public static final int UNREACHED = Integer.MAX_VALUE;
+
+    public final Graph graph;
+
+    public final RoutingRequest request;
+
+    public final RaptorData data;
+
+    /** The departure time of the search in seconds since midnight. */
+    public int departureTime;
+
+    /** The longest travel time to consider, in seconds. */
+    public int maxDuration = 90 * 60;
+
+    /** The longest walk to or from transit, in seconds. */
+    public int maxWalkTime = 20 * 60;
+
+    /** The maximum number of transit rides. */
+    public int maxRides = 4;
+
+    /** Walking times in seconds from the origin to the street vertices and stops around it. */
+    public final TObjectIntMap<Vertex> streetTimes = new TObjectIntHashMap<Vertex>(10000, 0.5f, UNREACHED);
+
+    /** The arrival time in seconds since midnight at each stop after each round. Round 0 is the walk from the origin. */
+    public final int[][] arrivalTimes;
+
+    /** The earliest arrival time at each stop over all rounds. */
+    public final int[] bestTimes;
+
+    /** Walking time to each stop from the origin, or UNREACHED. */
+    private final int[] accessTimes;
+
+    private BitSet touchedStops;
+
+    private final BitSet touchedPatterns;
+
+    public RaptorRouter(Graph graph, RoutingRequest request) {
+        this.graph = graph;
+        this.request = request;
+        DateTime dateTime = new DateTime(request.dateTime * 1000, DateTimeZone.forTimeZone(graph.getTimeZone()));
+        this.departureTime = dateTime.getSecondOfDay();
+        if (request.maxWalkDistance < Double.MAX_VALUE) {
+            maxWalkTime = (int) (request.maxWalkDistance / request.walkSpeed);
+        }
+        this.data = graph.index.getRaptorData(new LocalDate(dateTime));
+        int nStops = data.getStopCount();
+        arrivalTimes = new int[maxRides + 1][nStops];
+        for (int[] times : arrivalTimes) {
+            Arrays.fill(times, UNREACHED);
+        }
+        bestTimes = new int[nStops];
+        Arrays.fill(bestTimes, UNREACHED);
+        accessTimes = new int[nStops];
+        Arrays.fill(accessTimes, UNREACHED);
+        touchedPatterns = new BitSet(data.patterns.length);
+    }
+
+    /** Find the arrival times at all stops for the departure time of the request. */
+    public void route() {
+        long t0 = System.currentTimeMillis();
+        findAccessTimes();
+        runRounds(departureTime);
+        long searchTime = System.currentTimeMillis() - t0;
+        LOG.debug("RAPTOR search finished in {} msec.", searchTime);
+        int nReached = 0;
+        for (int time : bestTimes) {
+            if (time != UNREACHED) nReached++;
+        }
+        SearchMetrics.QueryClass metrics = graph.getSearchMetrics().forQueryClass("raptor");
+        metrics.searches.incrementAndGet();
+        metrics.searchTimeMsec.record(searchTime);
+        metrics.sptVertices.record(nReached);
+    }
+
+    /** Walk from the origin over the street network to find the access time to each nearby stop. */
+    void findAccessTimes() {
+        RoutingRequest walk = request.clone();
+        walk.modes = request.modes.getNonTransitSet();
+        EarliestArrivalSearch search = new EarliestArrivalSearch();
+        search.maxDuration = maxWalkTime;
+        ShortestPathTree spt = search.getShortestPathTree(walk);
+        for (State state : spt.getAllStates()) {
+            Vertex vertex = state.getVertex();
+            int time = (int) state.getElapsedTimeSeconds();
+            if (vertex instanceof StreetVertex || vertex instanceof TransitStop) {
+                if (time < streetTimes.get(vertex)) {
+                    streetTimes.put(vertex, time);
+                }
+            }
+            if (vertex instanceof TransitStop) {
+                int s = data.getStopIndex((TransitStop) vertex);
+                if (s >= 0 && time < accessTimes[s]) {
+                    accessTimes[s] = time;
+                }
+            }
+        }
+    }
+
+    /**
+     * Run all the rounds for the given departure time. Arrival times left from a previous call are kept, which is
+     * correct as long as each call is for an earlier departure than the last: a stop reached at some time when
+     * leaving later can still be reached at that time when leaving earlier.
+     */
+    void runRounds(int departure) {
+        touchedStops = new BitSet(data.getStopCount());
+        int[] round0 = arrivalTimes[0];
+        for (int s = 0; s < accessTimes.length; s++) {
+            if (accessTimes[s] == UNREACHED) continue;
+            int time = departure + accessTimes[s];
+            if (time < round0[s]) {
+                round0[s] = time;
+                touchedStops.set(s);
+            }
+            if (time < bestTimes[s]) {
+                bestTimes[s] = time;
+            }
+        }
+        int maxTime = departure + maxDuration;
+        for (int k = 1; k <= maxRides && !touchedStops.isEmpty(); k++) {
+            int[] previous = arrivalTimes[k - 1];
+            int[] current = arrivalTimes[k];
+            for (int s = 0; s < current.length; s++) {
+                if (previous[s] < current[s]) {
+                    current[s] = previous[s];
+                }
+            }
+            touchedPatterns.clear();
+            for (int s = touchedStops.nextSetBit(0); s >= 0; s = touchedStops.nextSetBit(s + 1)) {
+                for (int p : data.patternsForStop[s]) {
+                    touchedPatterns.set(p);
+                }
+            }
+            int slack = k == 1 ? request.boardSlack : request.transferSlack;
+            BitSet improved = new BitSet(data.getStopCount());
+            for (int p = touchedPatterns.nextSetBit(0); p >= 0; p = touchedPatterns.nextSetBit(p + 1)) {
+                scanPattern(p, previous, current, slack, maxTime, improved);
+            }
+            doTransfers(current, maxTime, improved);
+            touchedStops = improved;
+        }
+    }
+
+    /** Ride along one pattern, boarding at stops reached in the previous round and alighting everywhere else. */
+    private void scanPattern(int p, int[] previous, int[] current, int slack, int maxTime, BitSet improved) {
+        TripPattern pattern = data.patterns[p];
+        if (!request.modes.contains(pattern.mode)) return;
+        int[] stops = data.stopsForPattern[p];
+        int[] times = data.timesForPattern[p];
+        int width = stops.length * 2;
+        int trip = -1;
+        for (int pos = 0; pos < stops.length; pos++) {
+            int s = stops[pos];
+            if (trip >= 0 && pattern.canAlight(pos)) {
+                int arrival = times[trip * width + pos * 2];
+                if (arrival < current[s] && arrival < bestTimes[s] && arrival <= maxTime) {
+                    current[s] = arrival;
+                    bestTimes[s] = arrival;
+                    improved.set(s);
+                }
+            }
+            if (previous[s] != UNREACHED && pattern.canBoard(pos)) {
+                int readyTime = previous[s] + slack;
+                if (trip < 0 || readyTime <= times[trip * width + pos * 2 + 1]) {
+                    int earlier = earliestTrip(p, pos, readyTime);
+                    if (earlier >= 0 && (trip < 0
+                            || times[earlier * width + pos * 2 + 1] < times[trip * width + pos * 2 + 1])) {
+                        trip = earlier;
+                    }
+                }
+            }
+        }
+    }
+
+    /** @return the trip of the pattern departing first from the given position at or after the given time, or -1. */
+    private int earliestTrip(int p, int pos, int time) {
+        int[] times = data.timesForPattern[p];
+        int width = data.stopsForPattern[p].length * 2;
+        int nTrips = times.length / width;
+        if (data.sortedAtEveryStop[p]) {
+            int lo = 0, hi = nTrips;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (times[mid * width + pos * 2 + 1] < time) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo < nTrips ? lo : -1;
+        }
+        int best = -1;
+        for (int t = 0; t < nTrips; t++) {
+            int departure = times[t * width + pos * 2 + 1];
+            if (departure >= time && (best < 0 || departure < times[best * width + pos * 2 + 1])) {
+                best = t;
+            }
+        }
+        return best;
+    }
+
+    /** Walk from the stops improved in this round to the stops nearby, over the precomputed SimpleTransfers. */
+    private void doTransfers(int[] current, int maxTime, BitSet improved) {
+        BitSet sources = (BitSet) improved.clone();
+        for (int s = sources.nextSetBit(0); s >= 0; s = sources.nextSetBit(s + 1)) {
+            int[] transfers = data.transfersForStop[s];
+            for (int i = 0; i < transfers.length; i += 2) {
+                int target = transfers[i];
+                int time = current[s] + (int) (transfers[i + 1] / request.walkSpeed);
+                if (time < current[target] && time < bestTimes[target] && time <= maxTime) {
+                    current[target] = time;
+                    bestTimes[target] = time;
+                    improved.set(target);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the travel time in seconds from the departure time to every vertex reached, either by walking directly
+     *         from the origin or by walking from a stop after transit.
+     */
+    public TObjectIntMap<Vertex> getTravelTimes() {
+        return getTravelTimes(departureTime);
+    }
+
+    TObjectIntMap<Vertex> getTravelTimes(int departure) {
+        int[] times = new int[Vertex.getMaxIndex()];
+        Arrays.fill(times, UNREACHED);
+        List<Vertex> reached = new ArrayList<Vertex>();
+        propagateTravelTimes(departure, times, reached);
+        TObjectIntMap<Vertex> result = new TObjectIntHashMap<Vertex>(reached.size() * 2, 0.5f, UNREACHED);
+        for (Vertex vertex : reached) {
+            result.put(vertex, times[vertex.getIndex()]);
+        }
+        return result;
+    }
+
+    /**
+     * Find the travel time in seconds from the given departure time to every vertex reached, and store it in the
+     * given array at the index of the vertex. The array must hold UNREACHED for every vertex. Each vertex reached is
+     * added once to the given list, so that the caller can read and reset only the entries that were set.
+     */
+    void propagateTravelTimes(int departure, int[] times, List<Vertex> reached) {
+        for (TObjectIntIterator<Vertex> iter = streetTimes.iterator(); iter.hasNext(); ) {
+            iter.advance();
+            improve(iter.key(), iter.value(), times, reached);
+        }
+        StopTreeCache stopTreeCache = graph.index.getStopTreeCache();
+        for (int s = 0; s < bestTimes.length; s++) {
+            if (bestTimes[s] == UNREACHED) continue;
+            int timeAtStop = bestTimes[s] - departure;
+            // Reached within the maximum duration of a later departure, but not of this one.
+            if (timeAtStop > maxDuration) continue;
+            TransitStop tstop = data.stops[s];
+            improve(tstop, timeAtStop, times, reached);
+            IntBuffer tree = stopTreeCache.getTree(tstop);
+            for (int i = 0; i < tree.limit(); i += 2) {
+                Vertex vertex = stopTreeCache.getVertex(tree.get(i));
+                int egressTime = (int) (tree.get(i + 1) / request.walkSpeed);
+                if (vertex == null || egressTime > maxWalkTime) continue;
+                int time = timeAtStop + egressTime;
+                if (time <= maxDuration) {
+                    improve(vertex, time, times, reached);
+                }
+            }
+        }
+    }
+
+    private static void improve(Vertex vertex, int time, int[] times, List<Vertex> reached) {
+        int index = vertex.getIndex();
+        if (time < times[index]) {
+            if (times[index] == UNREACHED) {
+                reached.add(vertex);
+            }
+            times[index] = time;
+        }
+    }
+
+    /** Make a TimeSurface holding the travel times found by this search. */
+    public TimeSurface makeSurface() {
+        TimeSurface surface = makeEmptySurface();
+        TObjectIntMap<Vertex> times = getTravelTimes();
+        for (TObjectIntIterator<Vertex> iter = times.iterator(); iter.hasNext(); ) {
+            iter.advance();
+            surface.setTime(iter.key(), iter.value());
+        }
+        return surface;
+    }
+
+    /** Make a TimeSurface for the origin of this search, with no times in it. */
+    public TimeSurface makeEmptySurface() {
+        return new TimeSurface(this);
+    }
+
+}
@@ -1,7 +1,9 @@
 package org.opentripplanner.profile;
 
-import com.beust.jcommander.internal.Maps;
+import com.google.common.collect.Iterables;
+import gnu.trove.map.TIntIntMap;
 import gnu.trove.map.TObjectIntMap;
+import gnu.trove.map.hash.TIntIntHashMap;
 import gnu.trove.map.hash.TObjectIntHashMap;
 import org.opentripplanner.routing.algorithm.AStar;
 import org.opentripplanner.routing.core.RoutingRequest;
@@ -14,45 +16,318 @@ import org.opentripplanner.routing.vertextype.TransitStop;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Map;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * Keeps travel distances from all transit stops in a particular Graph to their nearby street nodes.
  * This allows us to propagate travel times out from transit to streets much faster in one-to-many analyst queries.
- * The StopTreeCache has a fixed distance cutoff, so will be unable to provide distance information for vertices beyond
- * that cutoff distance.
+ * The StopTreeCache has a fixed time cutoff, so will be unable to provide distance information for vertices beyond
+ * that cutoff.
+ *
+ * The tree of each stop is a run of int pairs (vertex position, walking distance in meters) sorted by vertex position,
+ * and vertex positions are resolved to vertices with getVertex(). The trees are either held on the heap, when they
+ * were computed in this JVM by build(), or read straight from a memory-mapped file written by the graph builder next
+ * to Graph.obj, when opened with open(). The file records the build id of the graph it was computed from, and is only
+ * opened with that graph. It contains the labels of the vertices and stops so that it can be bound to the vertices of
+ * the loaded graph. A single mapped buffer is used, which limits the file to 2GB.
  */
 public class StopTreeCache {
 
     private static final Logger LOG = LoggerFactory.getLogger(StopTreeCache.class);
+
+    public static final String FILENAME = "StopTrees.dat";
+
+    public static final int DEFAULT_TIME_CUTOFF_MINUTES = 20;
+
+    private static final int MAGIC = 0x4f545054; // "OTPT"
+
+    /** Increment this whenever the layout of the file changes. */
+    private static final int VERSION = 2;
+
+    private static final int HEADER_BYTES = 36;
+
+    private static final IntBuffer EMPTY = IntBuffer.allocate(0);
+
     final int timeCutoffMinutes;
-    private final Map<TransitStop, TObjectIntMap<Vertex>> distancesForStop = Maps.newHashMap();
 
-    public StopTreeCache (Graph graph, int timeCutoffMinutes) {
+    /** The build id of the graph the trees were computed from. */
+    private final UUID graphBuildId;
+
+    private final TObjectIntMap<TransitStop> indexForStop;
+
+    /** The vertex at each position. */
+    private final Vertex[] vertices;
+
+    /** The tree of each stop by stop index, when held on the heap. */
+    private final int[][] trees;
+
+    /** All trees one after the other, and the int offset of the tree of each stop, when mapped from a file. */
+    private final IntBuffer mappedTrees;
+    private final int[] treeStart;
+
+    private StopTreeCache(int timeCutoffMinutes, UUID graphBuildId, TObjectIntMap<TransitStop> indexForStop,
+            Vertex[] vertices, int[][] trees, IntBuffer mappedTrees, int[] treeStart) {
         this.timeCutoffMinutes = timeCutoffMinutes;
+        this.graphBuildId = graphBuildId;
+        this.indexForStop = indexForStop;
+        this.vertices = vertices;
+        this.trees = trees;
+        this.mappedTrees = mappedTrees;
+        this.treeStart = treeStart;
+    }
+
+    /**
+     * Find the distances from every transit stop of the graph with one walk search per stop, running the searches
+     * on all available processors.
+     */
+    public static StopTreeCache build(final Graph graph, final int timeCutoffMinutes) {
+        long startTime = System.currentTimeMillis();
         LOG.info("Caching distances to nearby street intersections from each transit stop...");
-        for (TransitStop tstop : graph.index.stopVertexForStop.values()) {
-            RoutingRequest rr = new RoutingRequest(TraverseMode.WALK);
-            rr.batch = (true);
-            rr.setRoutingContext(graph, tstop, tstop);
-            // RoutingReqeust dateTime defaults to currentTime.
-            // If elapsed time is not capped, searches are very slow.
-            rr.worstTime = (rr.dateTime + timeCutoffMinutes * 60);
-            AStar astar = new AStar();
-            rr.longDistance = true; // this will cause an earliest arrival tree to be used
-            rr.setNumItineraries(1);
-            ShortestPathTree spt = astar.getShortestPathTree(rr, 5); // timeout in seconds
-            TObjectIntMap<Vertex> distanceToVertex = new TObjectIntHashMap<>(1000, 0.5f, Integer.MAX_VALUE);
-            for (State state : spt.getAllStates()) {
-                distanceToVertex.put(state.getVertex(), (int)state.walkDistance);
-            }
-            distancesForStop.put(tstop, distanceToVertex);
-            rr.cleanup();
-        }
-        LOG.info("Done caching distances to nearby street intersections from each transit stop.");
-    }
-
-    public TObjectIntMap<Vertex> getDistancesForStop(TransitStop tstop) {
-        return distancesForStop.get(tstop);
+        List<TransitStop> stops = new ArrayList<TransitStop>();
+        Iterables.addAll(stops, Iterables.filter(graph.getVertices(), TransitStop.class));
+        int nThreads = Runtime.getRuntime().availableProcessors();
+        ExecutorService executor = Executors.newFixedThreadPool(nThreads);
+        List<Future<int[]>> futures = new ArrayList<Future<int[]>>(stops.size());
+        for (final TransitStop tstop : stops) {
+            futures.add(executor.submit(new Callable<int[]>() {
+                @Override
+                public int[] call() {
+                    return makeTree(graph, tstop, timeCutoffMinutes);
+                }
+            }));
+        }
+        int[][] trees = new int[stops.size()][];
+        try {
+            for (int s = 0; s < trees.length; s++) {
+                trees[s] = futures.get(s).get();
+            }
+        } catch (InterruptedException | ExecutionException e) {
+            throw new RuntimeException("Could not find the distances from the transit stops.", e);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // Trees hold vertex indexes so far. Number the vertices that appear in any of them densely, in index order
+        // so that the trees stay sorted.
+        Vertex[] vertexForIndex = new Vertex[Vertex.getMaxIndex()];
+        for (Vertex v : graph.getVertices()) {
+            vertexForIndex[v.getIndex()] = v;
+        }
+        int[] positionForIndex = new int[vertexForIndex.length];
+        Arrays.fill(positionForIndex, -1);
+        for (int[] tree : trees) {
+            for (int i = 0; i < tree.length; i += 2) {
+                positionForIndex[tree[i]] = 0;
+            }
+        }
+        List<Vertex> vertexList = new ArrayList<Vertex>();
+        for (int index = 0; index < positionForIndex.length; index++) {
+            if (positionForIndex[index] == 0) {
+                positionForIndex[index] = vertexList.size();
+                vertexList.add(vertexForIndex[index]);
+            }
+        }
+        TObjectIntMap<TransitStop> indexForStop = new TObjectIntHashMap<TransitStop>(stops.size(), 0.5f, -1);
+        long nPairs = 0;
+        for (int s = 0; s < trees.length; s++) {
+            indexForStop.put(stops.get(s), s);
+            int[] tree = trees[s];
+            for (int i = 0; i < tree.length; i += 2) {
+                tree[i] = positionForIndex[tree[i]];
+            }
+            nPairs += tree.length / 2;
+        }
+        LOG.info("Cached {} distances from {} transit stops on {} threads in {} seconds.", nPairs, trees.length,
+                nThreads, (System.currentTimeMillis() - startTime) / 1000);
+        return new StopTreeCache(timeCutoffMinutes, graph.buildId, indexForStop,
+                vertexList.toArray(new Vertex[vertexList.size()]), trees, null, null);
+    }
+
+    /** @return the distances from the given stop as (vertex index, distance) pairs sorted by vertex index. */
+    private static int[] makeTree(Graph graph, TransitStop tstop, int timeCutoffMinutes) {
+        RoutingRequest rr = new RoutingRequest(TraverseMode.WALK);
+        rr.batch = (true);
+        rr.setRoutingContext(graph, tstop, tstop);
+        // RoutingReqeust dateTime defaults to currentTime.
+        // If elapsed time is not capped, searches are very slow.
+        rr.worstTime = (rr.dateTime + timeCutoffMinutes * 60);
+        AStar astar = new AStar();
+        rr.longDistance = true; // this will cause an earliest arrival tree to be used
+        rr.setNumItineraries(1);
+        ShortestPathTree spt = astar.getShortestPathTree(rr, 5); // timeout in seconds
+        TIntIntMap distanceForIndex = new TIntIntHashMap(1000, 0.5f, -1, Integer.MAX_VALUE);
+        for (State state : spt.getAllStates()) {
+            int index = state.getVertex().getIndex();
+            int distance = (int) state.walkDistance;
+            if (distance < distanceForIndex.get(index)) {
+                distanceForIndex.put(index, distance);
+            }
+        }
+        rr.cleanup();
+        int[] indexes = distanceForIndex.keys();
+        Arrays.sort(indexes);
+        int[] tree = new int[indexes.length * 2];
+        for (int i = 0; i < indexes.length; i++) {
+            tree[i * 2] = indexes[i];
+            tree[i * 2 + 1] = distanceForIndex.get(indexes[i]);
+        }
+        return tree;
+    }
+
+    /**
+     * @return the tree of the given stop: pairs of a vertex position and a walking distance in meters, starting at
+     *         index 0 of the buffer and ending at its limit. The buffer is empty if the stop is not in this cache.
+     */
+    public IntBuffer getTree(TransitStop tstop) {
+        int s = indexForStop.get(tstop);
+        if (s < 0) {
+            return EMPTY;
+        }
+        if (trees != null) {
+            return IntBuffer.wrap(trees[s]);
+        }
+        IntBuffer tree = mappedTrees.duplicate();
+        tree.limit(treeStart[s + 1]);
+        tree.position(treeStart[s]);
+        return tree.slice();
+    }
+
+    /** @return the vertex at the given position of a tree. */
+    public Vertex getVertex(int position) {
+        return vertices[position];
+    }
+
+    /** Write the trees of this cache, which must have been built in this JVM, to a file that can be opened later. */
+    public void write(File file) throws IOException {
+        if (trees == null) {
+            throw new IllegalStateException("Only a cache built with build() can be written.");
+        }
+        TransitStop[] stops = new TransitStop[trees.length];
+        for (TransitStop tstop : indexForStop.keySet()) {
+            stops[indexForStop.get(tstop)] = tstop;
+        }
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(timeCutoffMinutes);
+            out.writeLong(graphBuildId.getMostSignificantBits());
+            out.writeLong(graphBuildId.getLeastSignificantBits());
+            out.writeInt(vertices.length);
+            out.writeInt(stops.length);
+            int start = 0;
+            for (int[] tree : trees) {
+                out.writeInt(start);
+                start += tree.length;
+            }
+            out.writeInt(start);
+            for (int[] tree : trees) {
+                for (int value : tree) {
+                    out.writeInt(value);
+                }
+            }
+            for (Vertex v : vertices) {
+                writeLabel(out, v.getLabel());
+            }
+            for (TransitStop tstop : stops) {
+                writeLabel(out, tstop.getLabel());
+            }
+        } finally {
+            out.close();
+        }
+        LOG.info("Wrote distances from {} transit stops to {}", stops.length, file);
+    }
+
+    private static void writeLabel(DataOutputStream out, String label) throws IOException {
+        byte[] bytes = label.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readLabel(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Map the given file, which must have been written by write(), and bind it to the vertices of the given graph.
+     * Vertices and stops are matched on their labels. The trees themselves are only paged in as they are read.
+     * @throws IOException if the file was not written from this build of the graph, which would give wrong distances
+     *         even when all the labels match.
+     */
+    public static StopTreeCache open(File file, Graph graph) throws IOException {
+        MappedByteBuffer buffer;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            FileChannel channel = raf.getChannel();
+            if (channel.size() > Integer.MAX_VALUE)
+                throw new IOException("Stop tree file is too large to be mapped: " + file);
+            // the mapping remains valid after the channel is closed
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (buffer.getInt(0) != MAGIC)
+            throw new IOException("Not a stop tree file.");
+        int version = buffer.getInt(4);
+        if (version != VERSION)
+            throw new IOException("Stop tree file version " + version + ", expected " + VERSION + ".");
+        int timeCutoffMinutes = buffer.getInt(8);
+        UUID graphBuildId = new UUID(buffer.getLong(12), buffer.getLong(20));
+        if (!graphBuildId.equals(graph.buildId))
+            throw new IOException("Stop tree file was written from graph build " + graphBuildId
+                    + ", not from the loaded graph build " + graph.buildId + ".");
+        int nVertices = buffer.getInt(28);
+        int nStops = buffer.getInt(32);
+        int[] treeStart = new int[nStops + 1];
+        for (int s = 0; s <= nStops; s++) {
+            treeStart[s] = buffer.getInt(HEADER_BYTES + 4 * s);
+        }
+        int treesOffset = HEADER_BYTES + 4 * (nStops + 1);
+        ByteBuffer data = buffer.duplicate();
+        data.position(treesOffset);
+        data.limit(treesOffset + 4 * treeStart[nStops]);
+        IntBuffer mappedTrees = data.slice().asIntBuffer();
+
+        ByteBuffer labels = buffer.duplicate();
+        labels.position(treesOffset + 4 * treeStart[nStops]);
+        int missing = 0;
+        Vertex[] vertices = new Vertex[nVertices];
+        for (int i = 0; i < nVertices; i++) {
+            vertices[i] = graph.getVertex(readLabel(labels));
+            if (vertices[i] == null) {
+                missing += 1;
+            }
+        }
+        TObjectIntMap<TransitStop> indexForStop = new TObjectIntHashMap<TransitStop>(nStops, 0.5f, -1);
+        for (int s = 0; s < nStops; s++) {
+            Vertex v = graph.getVertex(readLabel(labels));
+            if (v instanceof TransitStop) {
+                indexForStop.put((TransitStop) v, s);
+            } else {
+                missing += 1;
+            }
+        }
+        if (missing > 0)
+            throw new IOException(missing + " vertices of the stop tree file are not in the graph.");
+        return new StopTreeCache(timeCutoffMinutes, graphBuildId, indexForStop, vertices, null, mappedTrees,
+                treeStart);
     }
 }
@@ -16,7 +16,9 @@ package org.opentripplanner.routing.algorithm;
 import java.util.Collection;
 import java.util.List;
 
-import org.opentripplanner.common.pqueue.BinHeap;
+import org.opentripplanner.common.pqueue.IndexedFourAryHeap;
+import org.opentripplanner.common.pqueue.OTPPriorityQueue;
+import org.opentripplanner.common.pqueue.OTPPriorityQueueFactory;
 import org.opentripplanner.routing.algorithm.strategies.RemainingWeightHeuristic;
 import org.opentripplanner.routing.algorithm.strategies.SearchTerminationStrategy;
 import org.opentripplanner.routing.algorithm.strategies.TrivialRemainingWeightHeuristic;
@@ -27,13 +29,10 @@ import org.opentripplanner.routing.graph.Edge;
 import org.opentripplanner.routing.graph.Vertex;
 import org.opentripplanner.routing.spt.*;
 import org.opentripplanner.util.DateUtils;
-import org.opentripplanner.util.monitoring.MonitoringStore;
-import org.opentripplanner.util.monitoring.MonitoringStoreFactory;
+import org.opentripplanner.util.monitoring.SearchMetrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.beust.jcommander.internal.Lists;
-
 /**
  * Find the shortest path between graph vertices using A*.
  * A basic Dijkstra search is a special case of AStar where the heuristic is always zero.
@@ -44,14 +43,19 @@ import com.beust.jcommander.internal.Lists;
 public class AStar {
 
     private static final Logger LOG = LoggerFactory.getLogger(AStar.class);
-    // FIXME this is not really a factory, it's a way to fake a global variable. This should be stored at the OTPServer level.
-    private static final MonitoringStore store = MonitoringStoreFactory.getStore();
     private static final double OVERSEARCH_MULTIPLIER = 4.0;
 
     private boolean verbose = false;
 
     private TraverseVisitor traverseVisitor;
 
+    /*
+     * States are inserted without decrease-key: a vertex can hold several co-dominant states (different modes, rental
+     * or parking status, back edges under turn restrictions) so states cannot be identified by their vertex, and
+     * dominated states are dropped when they are extracted. The 4-ary heap is still cheaper than a binary heap here.
+     */
+    private OTPPriorityQueueFactory queueFactory = IndexedFourAryHeap.FACTORY;
+
     enum RunStatus {
         RUNNING, STOPPED
     }
@@ -61,16 +65,22 @@ public class AStar {
 
         public State u;
         public ShortestPathTree spt;
-        BinHeap<State> pq;
+        OTPPriorityQueue<State> pq;
         RemainingWeightHeuristic heuristic;
         public RoutingContext rctx;
         public int nVisited;
-        public List<Object> targetAcceptedStates;
+        public List<State> targetAcceptedStates;
+        SearchWorkspace workspace;
         public RunStatus status;
         private RoutingRequest options;
         private SearchTerminationStrategy terminationStrategy;
         public Vertex u_vertex;
         Double foundPathWeight = null;
+        /* Statistics recorded in the SearchMetrics of the graph when the search ends. */
+        long heuristicTime;
+        int nStates;
+        int queuePeakSize;
+        boolean timedOut = false;
 
         public RunState(RoutingRequest options, SearchTerminationStrategy terminationStrategy) {
             this.options = options;
@@ -100,7 +110,6 @@ public class AStar {
 
         runState = new RunState( options, terminationStrategy );
         runState.rctx = options.getRoutingContext();
-        runState.spt = options.getNewShortestPathTree();
 
         // We want to reuse the heuristic instance in a series of requests for the same target to avoid repeated work.
         runState.heuristic = options.batch ?
@@ -108,27 +117,34 @@ public class AStar {
                 runState.rctx.remainingWeightHeuristic;
 
         // Since initial states can be multiple, heuristic cannot depend on the initial state.
+        long heuristicStart = System.currentTimeMillis();
         runState.heuristic.initialize(runState.options, abortTime);
+        runState.heuristicTime = System.currentTimeMillis() - heuristicStart;
         if (abortTime < Long.MAX_VALUE  && System.currentTimeMillis() > abortTime) {
             LOG.warn("Timeout during initialization of goal direction heuristic.");
             options.rctx.debugOutput.timedOut = true;
-            runState = null; // Search timed out
+            runState.timedOut = true; // Search timed out, the queue is never created
             return;
         }
         State initialState = new State(options);
-        runState.spt.add(initialState);
 
         // Priority Queue.
         // NOTE(flamholz): the queue is self-resizing, so we initialize it to have 
         // size = O(sqrt(|V|)) << |V|. For reference, a random, undirected search
         // on a uniform 2d grid will examine roughly sqrt(|V|) vertices before
         // reaching its target. 
+        // The queue and target list come from a per-thread workspace, so they are only allocated the first time
+        // a search runs on a given thread and keep any capacity they have grown to in later searches. So do the
+        // arrays of an indexed shortest path tree, once the caller has released the tree of the previous search.
         int initialSize = runState.rctx.graph.getVertices().size();
         initialSize = (int) Math.ceil(2 * (Math.sqrt((double) initialSize + 1)));
-        runState.pq = new BinHeap<State>(initialSize);
+        runState.workspace = SearchWorkspace.acquire(queueFactory, initialSize);
+        runState.spt = SearchWorkspace.newShortestPathTree(options, options.dominanceFunction);
+        runState.spt.add(initialState);
+        runState.pq = runState.workspace.queue;
         runState.pq.insert(initialState, 0);
         runState.nVisited = 0;
-        runState.targetAcceptedStates = Lists.newArrayList();
+        runState.targetAcceptedStates = runState.workspace.targetAcceptedStates;
     }
 
     boolean iterate(){
@@ -163,7 +179,8 @@ public class AStar {
 
         runState.nVisited += 1;
         
-        Collection<Edge> edges = runState.options.arriveBy ? runState.u_vertex.getIncoming() : runState.u_vertex.getOutgoing();
+        Collection<Edge> edges = runState.options.arriveBy ? runState.rctx.getIncomingEdges(runState.u_vertex)
+                : runState.rctx.getOutgoingEdges(runState.u_vertex);
         for (Edge edge : edges) {
 
             // Iterate over traversal results. When an edge leads nowhere (as indicated by
@@ -216,6 +233,10 @@ public class AStar {
                         traverseVisitor.visitEnqueue(v);
                     
                     runState.pq.insert(v, estimate);
+                    runState.nStates += 1;
+                    if (runState.pq.size() > runState.queuePeakSize) {
+                        runState.queuePeakSize = runState.pq.size();
+                    }
                 } 
             }
         }
@@ -236,6 +257,7 @@ public class AStar {
                 // allows returning a partial list results even when a timeout occurs.
                 runState.options.rctx.aborted = true; // signal search cancellation up to higher stack frames
                 runState.options.rctx.debugOutput.timedOut = true; // signal timeout in debug output object
+                runState.timedOut = true;
 
                 break;
             }
@@ -288,26 +310,54 @@ public class AStar {
     public ShortestPathTree getShortestPathTree(RoutingRequest options, double relTimeoutSeconds,
             SearchTerminationStrategy terminationStrategy) {
         ShortestPathTree spt = null;
+        long startTime = System.currentTimeMillis();
         long abortTime = DateUtils.absoluteTimeout(relTimeoutSeconds);
+        // The absolute deadline of the whole request applies as well, whichever comes first.
+        long searchAbortTime = options.rctx.searchAbortTime;
+        if (searchAbortTime > 0 && searchAbortTime < abortTime) {
+            abortTime = searchAbortTime;
+        }
 
         startSearch (options, terminationStrategy, abortTime);
 
-        if (runState != null) {
-            runSearch(abortTime);
+        if (runState.pq != null) {
+            try {
+                runSearch(abortTime);
+            } finally {
+                // The workspace is shared with later searches on this thread, make sure it does not leak states.
+                runState.workspace.release();
+            }
             spt = runState.spt;
         }
         
-        storeMemory();
+        recordMetrics(System.currentTimeMillis() - startTime);
         return spt;
     }
 
-    private void storeMemory() {
-        if (store.isMonitoring("memoryUsed")) {
-            System.gc();
-            long memoryUsed = Runtime.getRuntime().totalMemory() -
-                    Runtime.getRuntime().freeMemory();
-            store.setLongMax("memoryUsed", memoryUsed);
+    /** Record the statistics of the search that just ended in the SearchMetrics of the graph. */
+    private void recordMetrics(long searchTime) {
+        SearchMetrics.QueryClass metrics = runState.rctx.graph.getSearchMetrics()
+                .forQueryClass(queryClass(runState.options));
+        metrics.searches.incrementAndGet();
+        if (runState.timedOut) {
+            metrics.timeouts.incrementAndGet();
         }
+        metrics.searchTimeMsec.record(searchTime);
+        metrics.heuristicTimeMsec.record(runState.heuristicTime);
+        if (runState.pq != null) {
+            metrics.verticesVisited.record(runState.nVisited);
+            metrics.statesCreated.record(runState.nStates);
+            metrics.queuePeakSize.record(runState.queuePeakSize);
+            metrics.sptVertices.record(runState.spt.getVertexCount());
+        }
+    }
+
+    /** @return the name of the query class the given search is recorded under, see SearchMetrics. */
+    static String queryClass(RoutingRequest options) {
+        if (options.batch) {
+            return "batch";
+        }
+        return options.modes.isTransit() ? "transit" : "street";
     }
 
     private boolean isWorstTimeExceeded(State v, RoutingRequest opt) {
@@ -320,4 +370,9 @@ public class AStar {
     public void setTraverseVisitor(TraverseVisitor traverseVisitor) {
         this.traverseVisitor = traverseVisitor;
     }
+
+    /** Set the priority queue implementation used by subsequent searches. The default is an IndexedFourAryHeap. */
+    public void setQueueFactory(OTPPriorityQueueFactory queueFactory) {
+        this.queueFactory = queueFactory;
+    }
 }
@@ -13,7 +13,9 @@
 
 package org.opentripplanner.routing.algorithm;
 
-import org.opentripplanner.common.pqueue.BinHeap;
+import org.opentripplanner.common.pqueue.OTPPriorityQueue;
+import org.opentripplanner.common.pqueue.OTPPriorityQueueFactory;
+import org.opentripplanner.common.pqueue.RadixHeap;
 import org.opentripplanner.routing.algorithm.strategies.SearchTerminationStrategy;
 import org.opentripplanner.routing.core.RoutingRequest;
 import org.opentripplanner.routing.core.State;
@@ -21,6 +23,7 @@ import org.opentripplanner.routing.graph.Edge;
 import org.opentripplanner.routing.graph.Vertex;
 import org.opentripplanner.routing.spt.DominanceFunction;
 import org.opentripplanner.routing.spt.ShortestPathTree;
+import org.opentripplanner.util.monitoring.SearchMetrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -40,6 +43,12 @@ public class EarliestArrivalSearch {
 
     public int maxDuration = 60 * 60 * 2;
 
+    /**
+     * Keys are whole seconds of active time that never decrease along a path, so a monotone radix heap can be used
+     * instead of a general binary heap.
+     */
+    public OTPPriorityQueueFactory queueFactory = RadixHeap.FACTORY;
+
     public ShortestPathTree getShortestPathTree(RoutingRequest req) {
         return getShortestPathTree(req, -1, null); // negative timeout means no timeout
     }
@@ -50,7 +59,8 @@ public class EarliestArrivalSearch {
 
     public ShortestPathTree getShortestPathTree(RoutingRequest options, double relTimeout,
             SearchTerminationStrategy terminationStrategy) {
-        
+        long startTime = System.currentTimeMillis();
+
         // clone options before modifying, otherwise disabling resource limiting will cause 
         // SPT cache misses for subsequent requests.
         options = options.clone();
@@ -67,30 +77,52 @@ public class EarliestArrivalSearch {
             
         // SPT cache does not look at routing request in SPT to perform lookup, 
         // so it's OK to construct with the local cloned one
-        ShortestPathTree spt = new DominanceFunction.EarliestArrival().getNewShortestPathTree(options);
+        // The queue and the arrays of an indexed tree come from the workspace of this thread, as in AStar.
+        SearchWorkspace workspace = SearchWorkspace.acquire(queueFactory, 1000);
+        ShortestPathTree spt = SearchWorkspace.newShortestPathTree(options, new DominanceFunction.EarliestArrival());
         State initialState = new State(options);
         spt.add(initialState);
 
-        BinHeap<State> pq = new BinHeap<State>();
-        pq.insert(initialState, 0);
-
-        while (!pq.empty()) {
-            State u = pq.extract_min();
-            Vertex u_vertex = u.getVertex();
-            if (!spt.visit(u))
-                continue;
-            Collection<Edge> edges = options.arriveBy ? u_vertex.getIncoming() : u_vertex.getOutgoing();
-            for (Edge edge : edges) {
-                for (State v = edge.traverse(u); v != null; v = v.getNextResult()) {
-                    if (isWorstTimeExceeded(v, options)) {
-                        continue;
+        int nVisited = 0;
+        int nStates = 1;
+        int queuePeakSize = 1;
+        OTPPriorityQueue<State> pq = workspace.queue;
+        try {
+            pq.insert(initialState, 0);
+            while (!pq.empty()) {
+                State u = pq.extract_min();
+                Vertex u_vertex = u.getVertex();
+                if (!spt.visit(u))
+                    continue;
+                nVisited += 1;
+                Collection<Edge> edges = options.arriveBy ? options.rctx.getIncomingEdges(u_vertex)
+                        : options.rctx.getOutgoingEdges(u_vertex);
+                for (Edge edge : edges) {
+                    for (State v = edge.traverse(u); v != null; v = v.getNextResult()) {
+                        if (isWorstTimeExceeded(v, options)) {
+                            continue;
+                        }
+                        if (spt.add(v)) {
+                            pq.insert(v, v.getActiveTime()); // activeTime?
+                            nStates += 1;
+                            if (pq.size() > queuePeakSize) {
+                                queuePeakSize = pq.size();
+                            }
+                        } 
                     }
-                    if (spt.add(v)) {
-                        pq.insert(v, v.getActiveTime()); // activeTime?
-                    } 
                 }
             }
+        } finally {
+            workspace.release();
         }
+
+        SearchMetrics.QueryClass metrics = options.rctx.graph.getSearchMetrics().forQueryClass("earliest_arrival");
+        metrics.searches.incrementAndGet();
+        metrics.searchTimeMsec.record(System.currentTimeMillis() - startTime);
+        metrics.verticesVisited.record(nVisited);
+        metrics.statesCreated.record(nStates);
+        metrics.queuePeakSize.record(queuePeakSize);
+        metrics.sptVertices.record(spt.getVertexCount());
         return spt;
     }
 
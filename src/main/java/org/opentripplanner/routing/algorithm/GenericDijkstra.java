@@ -23,9 +23,13 @@ import org.opentripplanner.routing.core.RoutingRequest;
 import org.opentripplanner.routing.graph.Edge;
 import org.opentripplanner.routing.graph.Vertex;
 import org.opentripplanner.common.pqueue.BinHeap;
+import org.opentripplanner.common.pqueue.OTPPriorityQueue;
+import org.opentripplanner.common.pqueue.OTPPriorityQueueFactory;
 import org.opentripplanner.routing.spt.DominanceFunction;
 import org.opentripplanner.routing.spt.ShortestPathTree;
 
+import java.util.Collection;
+
 /**
  * Find the shortest path between graph vertices using Dijkstra's algorithm.
  *
@@ -48,6 +52,8 @@ public class GenericDijkstra {
 
     private RemainingWeightHeuristic heuristic = new TrivialRemainingWeightHeuristic();
 
+    private OTPPriorityQueueFactory queueFactory = BinHeap.FACTORY;
+
     public GenericDijkstra(RoutingRequest options) {
         this.options = options;
     }
@@ -70,7 +76,7 @@ public class GenericDijkstra {
             target = initialState.getOptions().rctx.target;
         }
         ShortestPathTree spt = new DominanceFunction.MinimumWeight().getNewShortestPathTree(options);
-        BinHeap<State> queue = new BinHeap<State>(1000);
+        OTPPriorityQueue<State> queue = queueFactory.create(1000);
 
         spt.add(initialState);
         queue.insert(initialState, initialState.getWeight());
@@ -97,7 +103,14 @@ public class GenericDijkstra {
                 break;
             }
 
-            for (Edge edge : options.arriveBy ? u_vertex.getIncoming() : u_vertex.getOutgoing()) {
+            Collection<Edge> edges;
+            if (options.rctx == null) {
+                edges = options.arriveBy ? u_vertex.getIncoming() : u_vertex.getOutgoing();
+            } else {
+                edges = options.arriveBy ? options.rctx.getIncomingEdges(u_vertex)
+                        : options.rctx.getOutgoingEdges(u_vertex);
+            }
+            for (Edge edge : edges) {
                 if (skipEdgeStrategy != null &&
                     skipEdgeStrategy.shouldSkipEdge(initialState.getVertex(), null, u, edge, spt, options)) {
                     continue;
@@ -130,4 +143,8 @@ public class GenericDijkstra {
     public void setHeuristic(RemainingWeightHeuristic heuristic) {
         this.heuristic = heuristic;
     }
+
+    public void setQueueFactory(OTPPriorityQueueFactory queueFactory) {
+        this.queueFactory = queueFactory;
+    }
 }
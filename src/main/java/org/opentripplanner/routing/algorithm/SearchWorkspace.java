@@ -0,0 +1,170 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.routing.algorithm;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.opentripplanner.common.pqueue.OTPPriorityQueue;
+import org.opentripplanner.common.pqueue.OTPPriorityQueueFactory;
+import org.opentripplanner.routing.core.RoutingRequest;
+import org.opentripplanner.routing.core.State;
+import org.opentripplanner.routing.graph.Vertex;
+import org.opentripplanner.routing.spt.DominanceFunction;
+import org.opentripplanner.routing.spt.IndexedShortestPathTree;
+import org.opentripplanner.routing.spt.ShortestPathTree;
+
+/**
+ * The scratch space used by a single search: the priority queue and the list of states found at the target.
+ * One workspace is kept per thread and handed to each search run on that thread, so that a server answering many
+ * requests (each of which may run several searches) does not reallocate and regrow its queue every time.
+ * Releasing a workspace only clears the queue slots that were actually used.
+ *
+ * The arrays of an IndexedShortestPathTree are kept per thread as well. The tree outlives the search, so its arrays
+ * are only reused once the caller releases the tree with ShortestPathTree.release(). They are then cleared in time
+ * proportional to the number of vertices reached. Until then, searches on the same thread allocate new arrays.
+ *
+ * A search that starts while another one is already running on the same thread (e.g. a search started from within
+ * a heuristic or a visitor) gets a fresh workspace that is not retained. Workspaces whose queue has grown beyond
+ * MAX_RETAINED_CAPACITY are also dropped on release, so one huge analyst search does not pin memory forever.
+ *
+ * The static counters record how often workspaces and tree arrays are reused rather than allocated, and how much
+ * queue capacity had to be allocated, so the effect can be verified under load. They are reported by SearchMetrics.
+ */
+public class SearchWorkspace {
+
+    /** Do not keep queues holding more than this many elements alive between searches. */
+    private static final int MAX_RETAINED_CAPACITY = 1 << 20;
+
+    private static final ThreadLocal<SearchWorkspace> threadWorkspace = new ThreadLocal<SearchWorkspace>();
+
+    /**
+     * The arrays of the last indexed tree made on each thread, once that tree has been released. They are kept apart
+     * from the workspace, which is replaced when a search asks for another kind of queue.
+     */
+    private static final ThreadLocal<AtomicReference<IndexedShortestPathTree.Storage>> threadTreeStorage =
+            new ThreadLocal<AtomicReference<IndexedShortestPathTree.Storage>>() {
+                @Override
+                protected AtomicReference<IndexedShortestPathTree.Storage> initialValue() {
+                    return new AtomicReference<IndexedShortestPathTree.Storage>();
+                }
+            };
+
+    private static final AtomicLong workspacesAllocated = new AtomicLong();
+    private static final AtomicLong workspacesReused = new AtomicLong();
+    private static final AtomicLong queueSlotsAllocated = new AtomicLong();
+    private static final AtomicLong treeStoragesAllocated = new AtomicLong();
+    private static final AtomicLong treeStoragesReused = new AtomicLong();
+
+    final OTPPriorityQueue<State> queue;
+
+    private final OTPPriorityQueueFactory queueFactory;
+
+    final List<State> targetAcceptedStates = new ArrayList<State>();
+
+    private boolean inUse = false;
+
+    private int knownCapacity;
+
+    private SearchWorkspace(OTPPriorityQueueFactory queueFactory, int initialQueueCapacity) {
+        this.queueFactory = queueFactory;
+        queue = queueFactory.create(initialQueueCapacity);
+        knownCapacity = queue.getCapacity();
+        workspacesAllocated.incrementAndGet();
+        queueSlotsAllocated.addAndGet(knownCapacity);
+    }
+
+    /**
+     * @return an empty workspace for exclusive use by one search on the current thread. It must be handed back
+     * with release() when the search is finished.
+     */
+    static SearchWorkspace acquire(OTPPriorityQueueFactory queueFactory, int initialQueueCapacity) {
+        SearchWorkspace workspace = threadWorkspace.get();
+        if (workspace != null && workspace.inUse) {
+            // nested search on this thread, do not interfere with the outer one
+            return new SearchWorkspace(queueFactory, initialQueueCapacity);
+        } else if (workspace == null || workspace.queueFactory != queueFactory) {
+            workspace = new SearchWorkspace(queueFactory, initialQueueCapacity);
+            threadWorkspace.set(workspace);
+        } else {
+            workspacesReused.incrementAndGet();
+        }
+        workspace.inUse = true;
+        return workspace;
+    }
+
+    /**
+     * @return a new shortest path tree for the given request, using the given dominance function. An indexed tree
+     * reuses the arrays of the last indexed tree made on the current thread if that tree has been released.
+     */
+    static ShortestPathTree newShortestPathTree(RoutingRequest options, DominanceFunction dominanceFunction) {
+        if (!options.indexedShortestPathTree) {
+            return dominanceFunction.getNewShortestPathTree(options);
+        }
+        AtomicReference<IndexedShortestPathTree.Storage> treeStorage = threadTreeStorage.get();
+        IndexedShortestPathTree.Storage storage = treeStorage.getAndSet(null);
+        if (storage == null) {
+            storage = new IndexedShortestPathTree.Storage(Vertex.getMaxIndex());
+            treeStoragesAllocated.incrementAndGet();
+        } else {
+            treeStoragesReused.incrementAndGet();
+        }
+        return new IndexedShortestPathTree(options, dominanceFunction, storage, treeStorage);
+    }
+
+    /** Clear this workspace so that it holds no references to the states of the finished search. */
+    void release() {
+        int capacity = queue.getCapacity();
+        if (capacity > knownCapacity) {
+            queueSlotsAllocated.addAndGet(capacity - knownCapacity);
+            knownCapacity = capacity;
+        }
+        queue.clear();
+        targetAcceptedStates.clear();
+        if (inUse && threadWorkspace.get() == this) {
+            inUse = false;
+            if (capacity > MAX_RETAINED_CAPACITY) {
+                threadWorkspace.remove();
+            }
+        }
+    }
+
+    /** @return the number of workspaces that have been allocated since startup. */
+    public static long getWorkspacesAllocated() {
+        return workspacesAllocated.get();
+    }
+
+    /** @return the number of searches that reused an existing workspace since startup. */
+    public static long getWorkspacesReused() {
+        return workspacesReused.get();
+    }
+
+    /** @return the total number of priority queue slots allocated (including growth) since startup. */
+    public static long getQueueSlotsAllocated() {
+        return queueSlotsAllocated.get();
+    }
+
+    /** @return the number of indexed shortest path tree arrays that have been allocated since startup. */
+    public static long getTreeStoragesAllocated() {
+        return treeStoragesAllocated.get();
+    }
+
+    /** @return the number of indexed shortest path trees that reused the arrays of a released tree since startup. */
+    public static long getTreeStoragesReused() {
+        return treeStoragesReused.get();
+    }
+
+}
@@ -16,7 +16,8 @@ package org.opentripplanner.routing.algorithm.strategies;
 import com.google.common.collect.Lists;
 import gnu.trove.map.hash.TObjectDoubleHashMap;
 import org.opentripplanner.common.geometry.SphericalDistanceLibrary;
-import org.opentripplanner.common.pqueue.BinHeap;
+import org.opentripplanner.common.pqueue.IndexedFourAryHeap;
+import org.opentripplanner.common.pqueue.OTPPriorityQueue;
 import org.opentripplanner.routing.core.RoutingRequest;
 import org.opentripplanner.routing.core.State;
 import org.opentripplanner.routing.edgetype.StreetTransitLink;
@@ -77,7 +78,15 @@ public class InterleavedBidirectionalHeuristic implements RemainingWeightHeurist
     
     RoutingRequest options;
     
-    BinHeap<Vertex> q;
+    /** Vertices are keyed on their index, so that improved weights decrease their key instead of duplicating them. */
+    OTPPriorityQueue<Vertex> q;
+
+    private static final IndexedFourAryHeap.Indexer<Vertex> VERTEX_INDEXER = new IndexedFourAryHeap.Indexer<Vertex>() {
+        @Override
+        public int getIndex(Vertex vertex) {
+            return vertex.getIndex();
+        }
+    };
 
     boolean finished = false;
     
@@ -126,13 +135,13 @@ public class InterleavedBidirectionalHeuristic implements RemainingWeightHeurist
         if (search == null) return; // Search timed out
         LOG.debug("end foreward street search {} ms", System.currentTimeMillis() - start);
         // create a new priority queue
-        q = new BinHeap<Vertex>();
+        q = new IndexedFourAryHeap<Vertex>(VERTEX_INDEXER);
         // Save weight to reach street vertices around the destination.
         // Also enqueue states for each stop within walking distance of the destination.
         search = streetSearch(options, true, abortTime);
         if (search == null) return; // Search timed out
         for (State stopState : search) {
-            q.insert(stopState.getVertex(), stopState.getWeight());
+            q.insert_or_dec_key(stopState.getVertex(), stopState.getWeight());
         }
         LOG.debug("end backward street search {} ms", System.currentTimeMillis() - start);
         // once street searches are done, raise the limits to max
@@ -157,8 +166,6 @@ public class InterleavedBidirectionalHeuristic implements RemainingWeightHeurist
             double uw = q.peek_min_key();
             Vertex u = q.extract_min();
             //LOG.info("dequeued weight {} at {}", uw, u);
-//            // Ignore vertices that could be rekeyed (but are not rekeyed in this implementation).
-//            if (uw > weights.get(u)) continue;
             // The weight of the queue head is uniformly increasing. This is the highest ever seen.
             maxFound = uw;
             
@@ -166,7 +173,7 @@ public class InterleavedBidirectionalHeuristic implements RemainingWeightHeurist
 //                    Double.isInfinite(uw) ? -1.0 : uw);
 
             // OUTgoing for heuristic search when main search is arriveBy 
-            for (Edge e : options.arriveBy ? u.getOutgoing() : u.getIncoming()) {
+            for (Edge e : options.arriveBy ? options.rctx.getOutgoingEdges(u) : options.rctx.getIncomingEdges(u)) {
                 // Do not enter streets in this phase.
                 if (e instanceof StreetTransitLink) continue;
                 Vertex v = options.arriveBy ? e.getToVertex() : e.getFromVertex();
@@ -181,7 +188,7 @@ public class InterleavedBidirectionalHeuristic implements RemainingWeightHeurist
                 if (vw < old_vw) {
                     // including when old_vw is infinite because it is not yet touched
                     weights.put(v, vw);
-                    q.insert(v, vw); 
+                    q.insert_or_dec_key(v, vw);
                 }
             }
         }
@@ -271,7 +278,7 @@ public class InterleavedBidirectionalHeuristic implements RemainingWeightHeurist
             rr.setArriveBy( ! rr.arriveBy);
         List<State> stopStates = Lists.newArrayList();
         ShortestPathTree spt = new DominanceFunction.MinimumWeight().getNewShortestPathTree(rr);
-        BinHeap<State> pq = new BinHeap<State>();
+        OTPPriorityQueue<State> pq = IndexedFourAryHeap.FACTORY.create(1000);
         Vertex initVertex = fromTarget ? rr.rctx.target : rr.rctx.origin;
         State initState = new State(initVertex, rr);
         pq.insert(initState, 0);
@@ -314,7 +321,7 @@ public class InterleavedBidirectionalHeuristic implements RemainingWeightHeurist
                 }
             }
             // FIXME should only traverse when state is better than old_weight
-            for (Edge e : rr.arriveBy ? v.getIncoming() : v.getOutgoing()) {
+            for (Edge e : rr.arriveBy ? rr.rctx.getIncomingEdges(v) : rr.rctx.getOutgoingEdges(v)) {
                 // arriveBy has been set to match actual directional behavior in this subsearch
                 State s1 = e.traverse(s);
                 if (s1 == null)
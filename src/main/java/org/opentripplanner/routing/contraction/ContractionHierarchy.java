@@ -0,0 +1,252 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.routing.contraction;
+
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.TIntIntMap;
+import gnu.trove.map.hash.TIntIntHashMap;
+
+import java.io.Serializable;
+import java.util.List;
+
+import org.opentripplanner.routing.core.OptimizeType;
+import org.opentripplanner.routing.core.RoutingRequest;
+import org.opentripplanner.routing.core.State;
+import org.opentripplanner.routing.core.TraverseMode;
+import org.opentripplanner.routing.core.TraverseModeSet;
+import org.opentripplanner.routing.edgetype.TemporaryEdge;
+import org.opentripplanner.routing.graph.Edge;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.graph.Vertex;
+import org.opentripplanner.routing.vertextype.StreetVertex;
+import org.opentripplanner.routing.vertextype.TemporaryVertex;
+
+/**
+ * A contraction hierarchy over the street network for one fixed routing profile (a mode and an optimization type).
+ *
+ * Every street vertex is a node of the hierarchy, and the nodes are ordered by "importance" when the hierarchy is
+ * built. Contracting a node removes it from the network, adding shortcut arcs between its neighbors wherever the
+ * only shortest path between them went through it. A shortest path can then always be found by searching only
+ * upward in the order from the origin and only downward in the order into the destination, which settles a few
+ * hundred nodes where AStar settles hundreds of thousands.
+ *
+ * The weight of each edge is found once, when the hierarchy is built, by traversing it from a fresh State with a
+ * request holding the default parameters for the profile, so the hierarchy only serves requests that weigh streets
+ * exactly like that one. Turn costs and turn restrictions depend on the previous edge and cannot be taken into
+ * account, so the path found is the shortest one ignoring turns, whatever the turn reluctance of the request.
+ * ContractionHierarchySearch traverses its edges again with the actual request, so the weight of the path includes
+ * its turn costs, and it gives up in favor of a normal search when a turn restriction forbids the path.
+ *
+ * Arcs are stored in a column per field. An arc either stands for one edge of the graph or is a shortcut made of two
+ * other arcs, so a path is unpacked into graph edges recursively.
+ */
+public class ContractionHierarchy implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /** Weights are stored as integers, in hundredths of a unit of weight. */
+    static final int WEIGHT_SCALE = 100;
+
+    static final int NONE = -1;
+
+    public final TraverseMode mode;
+
+    public final OptimizeType optimize;
+
+    /** The vertex for each node. */
+    final Vertex[] nodes;
+
+    /** The graph edges that arcs stand for. */
+    final Edge[] edges;
+
+    /* The arcs. arcEdge is the index in edges of the edge an arc stands for, or NONE for a shortcut. */
+    final int[] arcFrom, arcTo, arcWeight, arcEdge;
+
+    /* The two arcs a shortcut is made of, in order, or NONE for an arc that is not a shortcut. */
+    final int[] arcFirst, arcSecond;
+
+    /** The arcs leaving each node toward a node contracted later. Those for node n are upArcs[upStart[n]] to upArcs[upStart[n+1]-1]. */
+    final int[] upStart, upArcs;
+
+    /** The arcs entering each node from a node contracted later, searched backward from the destination. */
+    final int[] downStart, downArcs;
+
+    /** Vertex indexes are not preserved when a graph is saved and loaded again, so this is rebuilt on first use. */
+    private transient volatile TIntIntMap nodeForVertex;
+
+    private transient volatile RoutingRequest profile;
+
+    ContractionHierarchy(TraverseMode mode, OptimizeType optimize, Vertex[] nodes, Edge[] edges,
+            int[] arcFrom, int[] arcTo, int[] arcWeight, int[] arcEdge, int[] arcFirst, int[] arcSecond,
+            int[] upStart, int[] upArcs, int[] downStart, int[] downArcs) {
+        this.mode = mode;
+        this.optimize = optimize;
+        this.nodes = nodes;
+        this.edges = edges;
+        this.arcFrom = arcFrom;
+        this.arcTo = arcTo;
+        this.arcWeight = arcWeight;
+        this.arcEdge = arcEdge;
+        this.arcFirst = arcFirst;
+        this.arcSecond = arcSecond;
+        this.upStart = upStart;
+        this.upArcs = upArcs;
+        this.downStart = downStart;
+        this.downArcs = downArcs;
+    }
+
+    /** Build a contraction hierarchy over the street network of the given graph for the given profile. */
+    public static ContractionHierarchy build(Graph graph, TraverseMode mode, OptimizeType optimize) {
+        return new ContractionHierarchyBuilder(mode, optimize).build(graph);
+    }
+
+    /**
+     * @return true if this hierarchy can be used to find a path for the given request. Requests that change mode
+     *         along the way (park and ride, bike rental...), that are not point to point or that would give any
+     *         street a different weight than the profile of this hierarchy cannot use it.
+     */
+    public boolean accepts(RoutingRequest options) {
+        TraverseModeSet modes = options.modes;
+        if (modes.isTransit() || options.optimize != optimize) {
+            return false;
+        }
+        if (mode == TraverseMode.CAR) {
+            if (!modes.getCar() || modes.getBicycle())
+                return false;
+        } else {
+            if (!modes.getBicycle() || modes.getCar())
+                return false;
+        }
+        if (options.batch || options.parkAndRide || options.kissAndRide || options.bikeParkAndRide
+                || options.allowBikeRental || options.wheelchairAccessible || options.reverseOptimizing
+                || options.startingTransitTripId != null) {
+            return false;
+        }
+        RoutingRequest profile = getProfile();
+        if (!sameWeights(options, profile))
+            return false;
+        // Cyclists walking their bike are weighted with separate options.
+        return mode != TraverseMode.BICYCLE || sameWeights(options.bikeWalkingOptions, profile.bikeWalkingOptions);
+    }
+
+    /**
+     * @return true if the given requests give every street edge the same weight. Only the parameters used in the
+     *         weight of a single street edge are compared. Turn costs are left out of the hierarchy, and walk limiting
+     *         (maxWalkDistance and the soft walk limiting parameters) only applies to requests using transit.
+     */
+    private static boolean sameWeights(RoutingRequest a, RoutingRequest b) {
+        return a.walkReluctance == b.walkReluctance
+                && a.stairsReluctance == b.stairsReluctance
+                && a.walkSpeed == b.walkSpeed
+                && a.bikeSpeed == b.bikeSpeed
+                && a.carSpeed == b.carSpeed
+                && a.bikeSwitchTime == b.bikeSwitchTime
+                && a.bikeSwitchCost == b.bikeSwitchCost
+                && a.elevatorBoardCost == b.elevatorBoardCost
+                && a.elevatorBoardTime == b.elevatorBoardTime
+                && a.elevatorHopCost == b.elevatorHopCost
+                && a.elevatorHopTime == b.elevatorHopTime
+                && a.triangleSafetyFactor == b.triangleSafetyFactor
+                && a.triangleSlopeFactor == b.triangleSlopeFactor
+                && a.triangleTimeFactor == b.triangleTimeFactor;
+    }
+
+    public int getNodeCount() {
+        return nodes.length;
+    }
+
+    public int getArcCount() {
+        return arcFrom.length;
+    }
+
+    /** @return the node for the given vertex, or NONE if it is not part of the hierarchy. */
+    int getNode(Vertex v) {
+        TIntIntMap map = nodeForVertex;
+        if (map == null) {
+            synchronized (this) {
+                map = nodeForVertex;
+                if (map == null) {
+                    map = new TIntIntHashMap(nodes.length, 0.5f, NONE, NONE);
+                    for (int n = 0; n < nodes.length; n++) {
+                        map.put(nodes[n].getIndex(), n);
+                    }
+                    nodeForVertex = map;
+                }
+            }
+        }
+        return map.get(v.getIndex());
+    }
+
+    /** @return the weight of the given edge for the profile of this hierarchy, or NONE if it cannot be traversed. */
+    int weight(Edge e) {
+        return weight(e, getProfile());
+    }
+
+    private RoutingRequest getProfile() {
+        RoutingRequest request = profile;
+        if (request == null) {
+            request = makeProfile(mode, optimize);
+            profile = request;
+        }
+        return request;
+    }
+
+    /** Add the graph edges that the given arc stands for to the given list, in order. */
+    void unpack(int arc, List<Edge> path) {
+        TIntArrayList stack = new TIntArrayList();
+        stack.add(arc);
+        while (!stack.isEmpty()) {
+            int a = stack.removeAt(stack.size() - 1);
+            if (arcEdge[a] != NONE) {
+                path.add(edges[arcEdge[a]]);
+            } else {
+                stack.add(arcSecond[a]);
+                stack.add(arcFirst[a]);
+            }
+        }
+    }
+
+    /** @return true if the given edge is part of the street network covered by contraction hierarchies. */
+    static boolean includes(Edge e) {
+        if (e instanceof TemporaryEdge)
+            return false;
+        Vertex from = e.getFromVertex();
+        Vertex to = e.getToVertex();
+        return from instanceof StreetVertex && to instanceof StreetVertex
+                && !(from instanceof TemporaryVertex) && !(to instanceof TemporaryVertex);
+    }
+
+    /**
+     * The request used to find edge weights, holding the defaults of RoutingRequest for everything but the modes and
+     * the optimization type. It has no routing context, so it is only used on street edges. Cyclists may walk their
+     * bike where cycling is not allowed, as with the usual BICYCLE,WALK request.
+     */
+    static RoutingRequest makeProfile(TraverseMode mode, OptimizeType optimize) {
+        TraverseModeSet modes = mode == TraverseMode.BICYCLE ? new TraverseModeSet(mode, TraverseMode.WALK)
+                : new TraverseModeSet(mode);
+        return new RoutingRequest(modes, optimize);
+    }
+
+    static int weight(Edge e, RoutingRequest profile) {
+        State s0 = new State(e.getFromVertex(), 0, profile);
+        double best = Double.POSITIVE_INFINITY;
+        for (State s1 = e.traverse(s0); s1 != null; s1 = s1.getNextResult()) {
+            best = Math.min(best, s1.getWeight());
+        }
+        if (best == Double.POSITIVE_INFINITY)
+            return NONE;
+        return (int) Math.round(best * WEIGHT_SCALE);
+    }
+
+}
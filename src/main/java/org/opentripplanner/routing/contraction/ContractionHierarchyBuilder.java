@@ -0,0 +1,333 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.routing.contraction;
+
+import static org.opentripplanner.routing.contraction.ContractionHierarchy.NONE;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.TIntIntMap;
+import gnu.trove.map.TLongIntMap;
+import gnu.trove.map.hash.TIntIntHashMap;
+import gnu.trove.map.hash.TLongIntHashMap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.opentripplanner.common.pqueue.BinHeap;
+import org.opentripplanner.routing.core.OptimizeType;
+import org.opentripplanner.routing.core.RoutingRequest;
+import org.opentripplanner.routing.core.TraverseMode;
+import org.opentripplanner.routing.graph.Edge;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.graph.Vertex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Contracts the nodes of the street network one by one to build a ContractionHierarchy.
+ *
+ * Nodes are contracted in order of priority, lowest first. The priority of a node is the number of shortcuts its
+ * contraction would add minus the number of arcs it would remove, plus the number of its neighbors already
+ * contracted, which spreads contraction evenly over the network. Priorities are updated lazily: a node taken from
+ * the queue is put back if its priority has risen above that of the next one.
+ *
+ * Before adding a shortcut u-v-x, a local Dijkstra search from u that avoids v looks for a "witness" path to x that
+ * is no longer than the shortcut. The search is limited in size, so it sometimes misses a witness and adds a
+ * shortcut that is not needed, which costs a little space but never correctness.
+ */
+class ContractionHierarchyBuilder {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ContractionHierarchyBuilder.class);
+
+    /** A witness search gives up after settling this many nodes. */
+    private static final int MAX_SETTLED = 500;
+
+    private final TraverseMode mode;
+
+    private final OptimizeType optimize;
+
+    private final RoutingRequest profile;
+
+    private final List<Vertex> nodes = new ArrayList<Vertex>();
+
+    private final TIntIntMap nodeForVertex = new TIntIntHashMap(1000, 0.5f, NONE, NONE);
+
+    private final List<Edge> edges = new ArrayList<Edge>();
+
+    private final TIntArrayList arcFrom = new TIntArrayList();
+    private final TIntArrayList arcTo = new TIntArrayList();
+    private final TIntArrayList arcWeight = new TIntArrayList();
+    private final TIntArrayList arcEdge = new TIntArrayList();
+    private final TIntArrayList arcFirst = new TIntArrayList();
+    private final TIntArrayList arcSecond = new TIntArrayList();
+
+    /** The arcs leaving and entering each node, pruned of those to contracted nodes as contraction proceeds. */
+    private final List<TIntArrayList> out = new ArrayList<TIntArrayList>();
+    private final List<TIntArrayList> in = new ArrayList<TIntArrayList>();
+
+    private boolean[] contracted;
+
+    private int[] rank;
+
+    private int[] contractedNeighbors;
+
+    /* Witness search workspace. Distances are reset after each search to avoid clearing the whole array. */
+    private int[] dist;
+    private final TIntArrayList touched = new TIntArrayList();
+    private final BinHeap<Integer> witnessQueue = new BinHeap<Integer>();
+
+    ContractionHierarchyBuilder(TraverseMode mode, OptimizeType optimize) {
+        this.mode = mode;
+        this.optimize = optimize;
+        this.profile = ContractionHierarchy.makeProfile(mode, optimize);
+    }
+
+    ContractionHierarchy build(Graph graph) {
+        long startTime = System.currentTimeMillis();
+        addEdges(graph);
+        int nOriginal = arcFrom.size();
+        contract();
+        ContractionHierarchy ch = makeHierarchy();
+        LOG.info("Built {} {} contraction hierarchy of {} nodes, {} arcs and {} shortcuts in {} seconds.", mode,
+                optimize, nodes.size(), nOriginal, arcFrom.size() - nOriginal,
+                (System.currentTimeMillis() - startTime) / 1000);
+        return ch;
+    }
+
+    /** Make an arc for each traversable street edge, keeping only the lightest of any parallel edges. */
+    private void addEdges(Graph graph) {
+        TLongIntMap arcForPair = new TLongIntHashMap(1000, 0.5f, NONE, NONE);
+        for (Vertex v : graph.getVertices()) {
+            for (Edge e : v.getOutgoing()) {
+                if (!ContractionHierarchy.includes(e))
+                    continue;
+                int weight = ContractionHierarchy.weight(e, profile);
+                if (weight == NONE)
+                    continue;
+                int from = getNode(e.getFromVertex());
+                int to = getNode(e.getToVertex());
+                if (from == to)
+                    continue;
+                long pair = ((long) from << 32) | to;
+                int arc = arcForPair.get(pair);
+                if (arc == NONE) {
+                    arcForPair.put(pair, addArc(from, to, weight, edges.size(), NONE, NONE));
+                    edges.add(e);
+                } else if (weight < arcWeight.get(arc)) {
+                    arcWeight.set(arc, weight);
+                    edges.set(arcEdge.get(arc), e);
+                }
+            }
+        }
+    }
+
+    private int getNode(Vertex v) {
+        int node = nodeForVertex.get(v.getIndex());
+        if (node == NONE) {
+            node = nodes.size();
+            nodes.add(v);
+            nodeForVertex.put(v.getIndex(), node);
+            out.add(new TIntArrayList(4));
+            in.add(new TIntArrayList(4));
+        }
+        return node;
+    }
+
+    private int addArc(int from, int to, int weight, int edge, int first, int second) {
+        int arc = arcFrom.size();
+        arcFrom.add(from);
+        arcTo.add(to);
+        arcWeight.add(weight);
+        arcEdge.add(edge);
+        arcFirst.add(first);
+        arcSecond.add(second);
+        out.get(from).add(arc);
+        in.get(to).add(arc);
+        return arc;
+    }
+
+    private void contract() {
+        int n = nodes.size();
+        contracted = new boolean[n];
+        rank = new int[n];
+        contractedNeighbors = new int[n];
+        dist = new int[n];
+        Arrays.fill(dist, Integer.MAX_VALUE);
+
+        BinHeap<Integer> queue = new BinHeap<Integer>(n);
+        for (int v = 0; v < n; v++) {
+            queue.insert(v, priority(v));
+        }
+        int order = 0;
+        while (!queue.empty()) {
+            int v = queue.extract_min();
+            int priority = priority(v);
+            if (!queue.empty() && priority > queue.peek_min_key()) {
+                queue.insert(v, priority);
+                continue;
+            }
+            contractNode(v, false);
+            contracted[v] = true;
+            rank[v] = order++;
+            TIntArrayList outArcs = out.get(v);
+            for (int i = 0; i < outArcs.size(); i++) {
+                int x = arcTo.get(outArcs.get(i));
+                contractedNeighbors[x]++;
+                prune(in.get(x), arcFrom);
+            }
+            TIntArrayList inArcs = in.get(v);
+            for (int i = 0; i < inArcs.size(); i++) {
+                int u = arcFrom.get(inArcs.get(i));
+                contractedNeighbors[u]++;
+                prune(out.get(u), arcTo);
+            }
+            if (order % 100000 == 0) {
+                LOG.info("Contracted {} of {} nodes, {} arcs", order, n, arcFrom.size());
+            }
+        }
+    }
+
+    /** Remove the arcs to or from contracted nodes from the given list. */
+    private void prune(TIntArrayList arcs, TIntArrayList otherEnd) {
+        int kept = 0;
+        for (int i = 0; i < arcs.size(); i++) {
+            int arc = arcs.get(i);
+            if (!contracted[otherEnd.get(arc)]) {
+                arcs.set(kept++, arc);
+            }
+        }
+        arcs.remove(kept, arcs.size() - kept);
+    }
+
+    private int priority(int v) {
+        int shortcuts = contractNode(v, true);
+        int removed = out.get(v).size() + in.get(v).size();
+        return shortcuts - removed + contractedNeighbors[v];
+    }
+
+    /**
+     * Add the shortcuts needed to contract the given node, or only count them when simulating.
+     * @return the number of shortcuts needed.
+     */
+    private int contractNode(int v, boolean simulate) {
+        int shortcuts = 0;
+        TIntArrayList inArcs = in.get(v);
+        TIntArrayList outArcs = out.get(v);
+        for (int i = 0; i < inArcs.size(); i++) {
+            int inArc = inArcs.get(i);
+            int u = arcFrom.get(inArc);
+            int inWeight = arcWeight.get(inArc);
+            int maxWeight = NONE;
+            for (int j = 0; j < outArcs.size(); j++) {
+                int outArc = outArcs.get(j);
+                if (arcTo.get(outArc) != u) {
+                    maxWeight = Math.max(maxWeight, inWeight + arcWeight.get(outArc));
+                }
+            }
+            if (maxWeight == NONE)
+                continue;
+            witnessSearch(u, v, maxWeight);
+            for (int j = 0; j < outArcs.size(); j++) {
+                int outArc = outArcs.get(j);
+                int x = arcTo.get(outArc);
+                int weight = inWeight + arcWeight.get(outArc);
+                if (x == u || dist[x] <= weight)
+                    continue;
+                shortcuts++;
+                if (!simulate) {
+                    addArc(u, x, weight, NONE, inArc, outArc);
+                }
+            }
+            resetWitnessSearch();
+        }
+        return shortcuts;
+    }
+
+    /** Find the distances from the source to the nodes around it, without going through the given node. */
+    private void witnessSearch(int source, int avoid, int maxWeight) {
+        BinHeap<Integer> queue = witnessQueue;
+        dist[source] = 0;
+        touched.add(source);
+        queue.insert(source, 0);
+        int settled = 0;
+        while (!queue.empty()) {
+            double key = queue.peek_min_key();
+            int u = queue.extract_min();
+            if (key > dist[u])
+                continue;
+            if (key > maxWeight || ++settled > MAX_SETTLED)
+                break;
+            TIntArrayList outArcs = out.get(u);
+            for (int i = 0; i < outArcs.size(); i++) {
+                int arc = outArcs.get(i);
+                int x = arcTo.get(arc);
+                if (x == avoid)
+                    continue;
+                int d = dist[u] + arcWeight.get(arc);
+                if (d < dist[x]) {
+                    if (dist[x] == Integer.MAX_VALUE)
+                        touched.add(x);
+                    dist[x] = d;
+                    queue.insert(x, d);
+                }
+            }
+        }
+        queue.clear();
+    }
+
+    private void resetWitnessSearch() {
+        for (int i = 0; i < touched.size(); i++) {
+            dist[touched.get(i)] = Integer.MAX_VALUE;
+        }
+        touched.resetQuick();
+    }
+
+    /** Sort the arcs into those going up and those going down the hierarchy. */
+    private ContractionHierarchy makeHierarchy() {
+        int n = nodes.size();
+        int m = arcFrom.size();
+        int[] upStart = new int[n + 1];
+        int[] downStart = new int[n + 1];
+        for (int a = 0; a < m; a++) {
+            int from = arcFrom.get(a);
+            int to = arcTo.get(a);
+            if (rank[from] < rank[to]) {
+                upStart[from + 1]++;
+            } else {
+                downStart[to + 1]++;
+            }
+        }
+        for (int v = 0; v < n; v++) {
+            upStart[v + 1] += upStart[v];
+            downStart[v + 1] += downStart[v];
+        }
+        int[] upArcs = new int[upStart[n]];
+        int[] downArcs = new int[downStart[n]];
+        int[] upNext = Arrays.copyOf(upStart, n);
+        int[] downNext = Arrays.copyOf(downStart, n);
+        for (int a = 0; a < m; a++) {
+            int from = arcFrom.get(a);
+            int to = arcTo.get(a);
+            if (rank[from] < rank[to]) {
+                upArcs[upNext[from]++] = a;
+            } else {
+                downArcs[downNext[to]++] = a;
+            }
+        }
+        return new ContractionHierarchy(mode, optimize, nodes.toArray(new Vertex[n]),
+                edges.toArray(new Edge[edges.size()]), arcFrom.toArray(), arcTo.toArray(), arcWeight.toArray(),
+                arcEdge.toArray(), arcFirst.toArray(), arcSecond.toArray(), upStart, upArcs, downStart, downArcs);
+    }
+
+}
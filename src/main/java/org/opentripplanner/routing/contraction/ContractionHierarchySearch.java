@@ -0,0 +1,241 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.routing.contraction;
+
+import static org.opentripplanner.routing.contraction.ContractionHierarchy.NONE;
+import gnu.trove.map.TIntIntMap;
+import gnu.trove.map.TIntObjectMap;
+import gnu.trove.map.hash.TIntIntHashMap;
+import gnu.trove.map.hash.TIntObjectHashMap;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.opentripplanner.common.pqueue.BinHeap;
+import org.opentripplanner.routing.core.RoutingContext;
+import org.opentripplanner.routing.core.RoutingRequest;
+import org.opentripplanner.routing.core.State;
+import org.opentripplanner.routing.graph.Edge;
+import org.opentripplanner.routing.graph.Vertex;
+import org.opentripplanner.routing.spt.GraphPath;
+import org.opentripplanner.util.monitoring.SearchMetrics;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Finds a shortest path through a ContractionHierarchy with a bidirectional Dijkstra search, upward from the origin
+ * and downward into the destination. The origin and destination are usually temporary vertices in the middle of a
+ * street, so each side of the search is seeded with the nodes reachable from them over a few edges.
+ *
+ * One instance of this class should be used per search.
+ */
+public class ContractionHierarchySearch {
+
+    /** How many edges to follow from the origin or destination to reach nodes of the hierarchy. */
+    private static final int MAX_ACCESS_DEPTH = 3;
+
+    private final ContractionHierarchy ch;
+
+    private final TIntIntMap forwardDist = new TIntIntHashMap(100, 0.5f, NONE, Integer.MAX_VALUE);
+    private final TIntIntMap backwardDist = new TIntIntHashMap(100, 0.5f, NONE, Integer.MAX_VALUE);
+
+    /** The arc by which each node was reached, or NONE for the nodes the search was seeded with. */
+    private final TIntIntMap forwardParent = new TIntIntHashMap(100, 0.5f, NONE, NONE);
+    private final TIntIntMap backwardParent = new TIntIntHashMap(100, 0.5f, NONE, NONE);
+
+    /** The graph edges leading from the origin to each seed node, and from each seed node to the destination. */
+    private final TIntObjectMap<List<Edge>> forwardAccess = new TIntObjectHashMap<List<Edge>>();
+    private final TIntObjectMap<List<Edge>> backwardAccess = new TIntObjectHashMap<List<Edge>>();
+
+    private final BinHeap<Integer> forwardQueue = new BinHeap<Integer>();
+    private final BinHeap<Integer> backwardQueue = new BinHeap<Integer>();
+
+    /** A path from the origin to the destination that does not reach the hierarchy, e.g. along a single street. */
+    private List<Edge> directPath;
+
+    private int directWeight = Integer.MAX_VALUE;
+
+    /** Statistics of the search recorded in the SearchMetrics of the graph, see getPath. */
+    private int nVisited;
+    private int nInserted;
+    private int queuePeakSize;
+
+    public ContractionHierarchySearch(ContractionHierarchy ch) {
+        this.ch = ch;
+    }
+
+    /**
+     * Find a path for the given request, which must have a routing context and be accepted by the hierarchy. The
+     * edges found are traversed with the request, so the path has the same times and weights as one found by AStar.
+     * @return the path, or null if there is none or the request forbids it (e.g. with a turn restriction).
+     */
+    public GraphPath getPath(RoutingRequest options) {
+        long startTime = System.currentTimeMillis();
+        RoutingContext rctx = options.rctx;
+        List<Edge> edges = route(rctx.fromVertex, rctx.toVertex);
+        SearchMetrics.QueryClass metrics = rctx.graph.getSearchMetrics().forQueryClass("contraction");
+        metrics.searches.incrementAndGet();
+        metrics.searchTimeMsec.record(System.currentTimeMillis() - startTime);
+        metrics.verticesVisited.record(nVisited);
+        metrics.statesCreated.record(nInserted);
+        metrics.queuePeakSize.record(queuePeakSize);
+        if (edges == null || edges.isEmpty()) {
+            return null;
+        }
+        if (options.arriveBy) {
+            edges = Lists.reverse(edges);
+        }
+        State state = new State(options);
+        for (Edge e : edges) {
+            State best = null;
+            for (State s = e.traverse(state); s != null; s = s.getNextResult()) {
+                if (best == null || s.getWeight() < best.getWeight())
+                    best = s;
+            }
+            if (best == null)
+                return null;
+            state = best;
+        }
+        return new GraphPath(state, true);
+    }
+
+    /** @return the graph edges of a shortest path from one vertex to another for the profile, or null if none. */
+    List<Edge> route(Vertex from, Vertex to) {
+        findAccess(from, to, 0, new LinkedList<Edge>(), true, 0);
+        findAccess(to, null, 0, new LinkedList<Edge>(), false, 0);
+
+        int best = directWeight;
+        int meeting = NONE;
+        for (int node : forwardDist.keys()) {
+            int dist = forwardDist.get(node);
+            forwardQueue.insert(node, dist);
+            nInserted += 1;
+            if (backwardDist.containsKey(node) && dist + backwardDist.get(node) < best) {
+                best = dist + backwardDist.get(node);
+                meeting = node;
+            }
+        }
+        for (int node : backwardDist.keys()) {
+            backwardQueue.insert(node, backwardDist.get(node));
+            nInserted += 1;
+        }
+        queuePeakSize = forwardQueue.size() + backwardQueue.size();
+
+        while (!forwardQueue.empty() || !backwardQueue.empty()) {
+            double forwardMin = forwardQueue.empty() ? Double.POSITIVE_INFINITY : forwardQueue.peek_min_key();
+            double backwardMin = backwardQueue.empty() ? Double.POSITIVE_INFINITY : backwardQueue.peek_min_key();
+            if (Math.min(forwardMin, backwardMin) >= best)
+                break;
+            boolean forward = forwardMin <= backwardMin;
+            BinHeap<Integer> queue = forward ? forwardQueue : backwardQueue;
+            TIntIntMap dist = forward ? forwardDist : backwardDist;
+            TIntIntMap parent = forward ? forwardParent : backwardParent;
+            TIntIntMap otherDist = forward ? backwardDist : forwardDist;
+            int[] start = forward ? ch.upStart : ch.downStart;
+            int[] arcs = forward ? ch.upArcs : ch.downArcs;
+            int[] next = forward ? ch.arcTo : ch.arcFrom;
+
+            int key = (int) queue.peek_min_key();
+            int u = queue.extract_min();
+            if (key > dist.get(u))
+                continue;
+            nVisited += 1;
+            for (int i = start[u]; i < start[u + 1]; i++) {
+                int arc = arcs[i];
+                int x = next[arc];
+                int d = key + ch.arcWeight[arc];
+                if (d < dist.get(x)) {
+                    dist.put(x, d);
+                    parent.put(x, arc);
+                    queue.insert(x, d);
+                    nInserted += 1;
+                    queuePeakSize = Math.max(queuePeakSize, forwardQueue.size() + backwardQueue.size());
+                    if (otherDist.containsKey(x) && d + otherDist.get(x) < best) {
+                        best = d + otherDist.get(x);
+                        meeting = x;
+                    }
+                }
+            }
+        }
+
+        if (meeting == NONE) {
+            return directPath;
+        }
+        return unpack(meeting);
+    }
+
+    private List<Edge> unpack(int meeting) {
+        List<Integer> upArcs = new ArrayList<Integer>();
+        int node = meeting;
+        for (int arc = forwardParent.get(node); arc != NONE; arc = forwardParent.get(node)) {
+            upArcs.add(arc);
+            node = ch.arcFrom[arc];
+        }
+        Collections.reverse(upArcs);
+        List<Edge> path = new ArrayList<Edge>(forwardAccess.get(node));
+        for (int arc : upArcs) {
+            ch.unpack(arc, path);
+        }
+        node = meeting;
+        for (int arc = backwardParent.get(node); arc != NONE; arc = backwardParent.get(node)) {
+            ch.unpack(arc, path);
+            node = ch.arcTo[arc];
+        }
+        path.addAll(backwardAccess.get(node));
+        return path;
+    }
+
+    /**
+     * Follow the edges out of the origin (forward) or into the destination (backward) until reaching nodes of the
+     * hierarchy, recording the cheapest way to reach each of them. Going forward, also record a direct path to the
+     * destination if one is found on the way.
+     */
+    private void findAccess(Vertex v, Vertex target, int weight, LinkedList<Edge> edges, boolean forward, int depth) {
+        if (v == target) {
+            if (weight < directWeight) {
+                directWeight = weight;
+                directPath = new ArrayList<Edge>(edges);
+            }
+            return;
+        }
+        int node = ch.getNode(v);
+        if (node != NONE) {
+            TIntIntMap dist = forward ? forwardDist : backwardDist;
+            if (weight < dist.get(node)) {
+                dist.put(node, weight);
+                (forward ? forwardAccess : backwardAccess).put(node, new ArrayList<Edge>(edges));
+            }
+            return;
+        }
+        if (depth == MAX_ACCESS_DEPTH)
+            return;
+        for (Edge e : forward ? v.getOutgoing() : v.getIncoming()) {
+            int w = ch.weight(e);
+            if (w == NONE)
+                continue;
+            if (forward) {
+                edges.addLast(e);
+                findAccess(e.getToVertex(), target, weight + w, edges, true, depth + 1);
+                edges.removeLast();
+            } else {
+                edges.addFirst(e);
+                findAccess(e.getFromVertex(), target, weight + w, edges, false, depth + 1);
+                edges.removeFirst();
+            }
+        }
+    }
+
+}
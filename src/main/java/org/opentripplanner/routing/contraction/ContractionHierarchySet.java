@@ -0,0 +1,50 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.routing.contraction;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.opentripplanner.routing.core.RoutingRequest;
+
+/**
+ * The contraction hierarchies built for a graph, one per profile. This is stored as a graph service by
+ * ContractionHierarchyModule.
+ */
+public class ContractionHierarchySet implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final List<ContractionHierarchy> hierarchies = new ArrayList<ContractionHierarchy>();
+
+    public void add(ContractionHierarchy ch) {
+        hierarchies.add(ch);
+    }
+
+    /** @return a hierarchy that can be used for the given request, or null if there is none. */
+    public ContractionHierarchy forRequest(RoutingRequest options) {
+        for (ContractionHierarchy ch : hierarchies) {
+            if (ch.accepts(options))
+                return ch;
+        }
+        return null;
+    }
+
+    public List<ContractionHierarchy> getHierarchies() {
+        return Collections.unmodifiableList(hierarchies);
+    }
+
+}
@@ -46,9 +46,11 @@ import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -84,6 +86,12 @@ public class RoutingContext implements Cloneable {
     // TODO(flamholz): figure out a better way.
     public Edge originBackEdge;
 
+    /**
+     * The temporary edges of this request that leave or reach a permanent vertex of the graph, keyed on that vertex.
+     * The permanent vertices do not hold these edges themselves so that the graph is never written to while routing.
+     */
+    public final OverlayGraph temporaryEdges = new OverlayGraph();
+
     // public final Calendar calendar;
     public final CalendarService calendarService;
 
@@ -280,6 +288,9 @@ public class RoutingContext implements Cloneable {
             TransitStop tstop = graph.index.stopVertexForStop.get(stop);
             startingStop = tstop.departVertex;
         }
+        addTemporaryEdges(fromVertex);
+        addTemporaryEdges(toVertex);
+
         origin = opt.arriveBy ? toVertex : fromVertex;
         originBackEdge = opt.arriveBy ? toBackEdge : fromBackEdge;
         target = opt.arriveBy ? fromVertex : toVertex;
@@ -301,8 +312,44 @@ public class RoutingContext implements Cloneable {
         }
     }
 
+    /**
+     * Record the temporary edges linking the given endpoint to permanent vertices, so that searches can reach the
+     * endpoint from the graph even though the graph vertices do not hold them.
+     */
+    private void addTemporaryEdges(Vertex vertex) {
+        if (!(vertex instanceof TemporaryVertex)) return;
+        for (Edge e : vertex.getOutgoing()) {
+            if (!(e.getToVertex() instanceof TemporaryVertex)) {
+                temporaryEdges.addIncoming(e.getToVertex(), e);
+            }
+        }
+        for (Edge e : vertex.getIncoming()) {
+            if (!(e.getFromVertex() instanceof TemporaryVertex)) {
+                temporaryEdges.addOutgoing(e.getFromVertex(), e);
+            }
+        }
+    }
+
     /* INSTANCE METHODS */
 
+    /** @return the edges leaving the given vertex in this search, including the temporary edges of this request. */
+    public Collection<Edge> getOutgoingEdges(Vertex vertex) {
+        List<Edge> extra = temporaryEdges.getOutgoing(vertex);
+        if (extra.isEmpty()) return vertex.getOutgoing();
+        List<Edge> edges = new ArrayList<Edge>(vertex.getOutgoing());
+        edges.addAll(extra);
+        return edges;
+    }
+
+    /** @return the edges reaching the given vertex in this search, including the temporary edges of this request. */
+    public Collection<Edge> getIncomingEdges(Vertex vertex) {
+        List<Edge> extra = temporaryEdges.getIncoming(vertex);
+        if (extra.isEmpty()) return vertex.getIncoming();
+        List<Edge> edges = new ArrayList<Edge>(vertex.getIncoming());
+        edges.addAll(extra);
+        return edges;
+    }
+
     public void check() {
         ArrayList<String> notFound = new ArrayList<String>();
 
@@ -381,10 +428,32 @@ public class RoutingContext implements Cloneable {
     }
 
     /**
-     * Tear down this routing context, removing any temporary edges.
+     * Tear down this routing context, disposing of the temporary endpoints. The graph itself was never modified.
      */
     public void destroy() {
         if (origin instanceof TemporaryVertex) ((TemporaryVertex) origin).dispose();
         if (target instanceof TemporaryVertex) ((TemporaryVertex) target).dispose();
     }
+
+    /**
+     * Make a copy of this context for another search over the same endpoints that will run concurrently with the
+     * searches using this one. The copy shares the origin and target vertices, timetable snapshot and service days,
+     * but has its own request, path parsers, debug output and abort flag. The caller must supply a new heuristic
+     * since heuristics are stateful. The copy must never be destroyed, as the temporary vertices belong to this one.
+     */
+    public RoutingContext cloneForConcurrentSearch(RoutingRequest opt) {
+        try {
+            RoutingContext clone = (RoutingContext) super.clone();
+            clone.opt = opt;
+            clone.pathParsers = pathParsers.clone();
+            clone.debugOutput = new DebugOutput();
+            clone.debugOutput.startedCalculating();
+            clone.remainingWeightHeuristic = null;
+            clone.aborted = false;
+            return clone;
+        } catch (CloneNotSupportedException e) {
+            /* this will never happen since our super is the cloneable object */
+            throw new RuntimeException(e);
+        }
+    }
 }
@@ -312,6 +312,12 @@ public class RoutingRequest implements Cloneable, Serializable {
     /** when true, do not use goal direction or stop at the target, build a full SPT */
     public boolean batch = false;
 
+    /**
+     * When true, store the shortest path tree in arrays indexed by vertex rather than in a map. This has a fixed cost
+     * proportional to the size of the graph, so it is only worthwhile for searches that reach a large part of it.
+     */
+    public boolean indexedShortestPathTree = false;
+
     /**
      * Whether or not bike rental availability information will be used to plan bike rental trips
      */
@@ -493,6 +499,7 @@ public class RoutingRequest implements Cloneable, Serializable {
             bikeWalkingOptions.bikeSwitchTime = bikeSwitchTime;
             bikeWalkingOptions.bikeSwitchCost = bikeSwitchCost;
             bikeWalkingOptions.stairsReluctance = stairsReluctance * 5; // carrying bikes on stairs is awful
+            bikeWalkingOptions.turnReluctance = turnReluctance;
         } else if (modes.getCar()) {
             bikeWalkingOptions = new RoutingRequest();
             bikeWalkingOptions.setArriveBy(this.arriveBy);
@@ -738,6 +745,11 @@ public class RoutingRequest implements Cloneable, Serializable {
         this.intermediatePlaces.add(location);
     }
 
+    public void setTurnReluctance(double turnReluctance) {
+        this.turnReluctance = turnReluctance;
+        bikeWalkingOptions.turnReluctance = turnReluctance;
+    }
+
     public void setTriangleSafetyFactor(double triangleSafetyFactor) {
         this.triangleSafetyFactor = triangleSafetyFactor;
         bikeWalkingOptions.triangleSafetyFactor = triangleSafetyFactor;
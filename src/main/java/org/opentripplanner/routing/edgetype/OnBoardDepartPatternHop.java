@@ -163,6 +163,6 @@ public class OnBoardDepartPatternHop extends Edge implements OnboardEdge, Tempor
 
     @Override
     public void dispose() {
-        tov.removeIncoming(this);
+        // Nothing to undo, the pattern stop vertex never held this edge.
     }
 }
@@ -76,6 +76,14 @@ public class PartialStreetEdge extends StreetWithElevationEdge {
         return parentEdge.getInAngle();
     }
 
+    /**
+     * Have the turn restrictions of  their parent.
+     */
+    @Override
+    public boolean hasTurnRestrictions() {
+        return parentEdge.hasTurnRestrictions();
+    }
+
     /**
      * Have the turn restrictions of  their parent.
      */
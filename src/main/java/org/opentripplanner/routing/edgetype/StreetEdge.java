@@ -77,6 +77,7 @@ public class StreetEdge extends Edge implements Cloneable {
     private static final int STAIRS_FLAG_INDEX = 4;
     private static final int SLOPEOVERRIDE_FLAG_INDEX = 5;
     private static final int WHEELCHAIR_ACCESSIBLE_FLAG_INDEX = 6;
+    private static final int HASTURNRESTRICTIONS_FLAG_INDEX = 7;
 
     /** back, roundabout, stairs, ... */
     private byte flags;
@@ -158,6 +159,27 @@ public class StreetEdge extends Edge implements Cloneable {
         }
     }
 
+    /**
+     * Restore an edge saved by StreetEdgeBlock. The fields are taken as they were saved, without recomputing the
+     * compacted geometry or the angles.
+     */
+    StreetEdge(StreetVertex v1, StreetVertex v2, int id, byte flags, int length_mm,
+               float bicycleSafetyFactor, int[] compactGeometry, String name,
+               StreetTraversalPermission permission, int streetClass, float carSpeed,
+               byte inAngle, byte outAngle) {
+        super(v1, v2, id);
+        this.flags = flags;
+        this.length_mm = length_mm;
+        this.bicycleSafetyFactor = bicycleSafetyFactor;
+        this.compactGeometry = compactGeometry;
+        this.name = name;
+        this.permission = permission;
+        this.streetClass = streetClass;
+        this.carSpeed = carSpeed;
+        this.inAngle = inAngle;
+        this.outAngle = outAngle;
+    }
+
     public boolean canTraverse(RoutingRequest options) {
         if (options.wheelchairAccessible) {
             if (!isWheelchairAccessible()) {
@@ -529,16 +551,27 @@ public class StreetEdge extends Edge implements Cloneable {
                 + " permission=" + this.getPermission() + ")";
     }
 
+    /**
+     * @return a copy of this edge with its own id and no turn restrictions. Restrictions are keyed by edge id, so a
+     *         copy sharing the id of the original would lose them when the original is removed from the graph. Use
+     *         Graph.copyTurnRestrictions to give the copy the restrictions of the original.
+     */
     @Override
     public StreetEdge clone() {
         try {
-            return (StreetEdge) super.clone();
+            StreetEdge clone = (StreetEdge) super.clone();
+            clone.takeNewId();
+            clone.setHasTurnRestrictions(false);
+            return clone;
         } catch (CloneNotSupportedException e) {
             throw new RuntimeException(e);
         }
     }
     
     public boolean canTurnOnto(Edge e, State state, TraverseMode mode) {
+        if (!hasTurnRestrictions()) {
+            return true;
+        }
         for (TurnRestriction turnRestriction : getTurnRestrictions(state.getOptions().rctx.graph)) {
             /* FIXME: This is wrong for trips that end in the middle of turnRestriction.to
              */
@@ -672,6 +705,19 @@ public class StreetEdge extends Edge implements Cloneable {
 	    flags = BitSetUtils.set(flags, SLOPEOVERRIDE_FLAG_INDEX, slopeOverride);
 	}
 
+    /**
+     * @return true if some turn restrictions start on this edge. This is kept up to date by the Graph, so that
+     *         routing only looks up the restrictions of the few edges that have some.
+     */
+    public boolean hasTurnRestrictions() {
+        return BitSetUtils.get(flags, HASTURNRESTRICTIONS_FLAG_INDEX);
+    }
+
+    /** Only to be called by Graph when turn restrictions are added or removed. */
+    public void setHasTurnRestrictions(boolean hasTurnRestrictions) {
+        flags = BitSetUtils.set(flags, HASTURNRESTRICTIONS_FLAG_INDEX, hasTurnRestrictions);
+    }
+
     /**
      * Return the azimuth of the first segment in this edge in integer degrees clockwise from South.
      * TODO change everything to clockwise from North
@@ -685,6 +731,28 @@ public class StreetEdge extends Edge implements Cloneable {
 		return this.outAngle * 180 / 128;
 	}
 
+    /* Raw internal representation, for StreetEdgeBlock. */
+
+    byte getFlags() {
+        return flags;
+    }
+
+    int getLengthMm() {
+        return length_mm;
+    }
+
+    int[] getCompactGeometry() {
+        return compactGeometry;
+    }
+
+    byte getInAngleBrads() {
+        return inAngle;
+    }
+
+    byte getOutAngleBrads() {
+        return outAngle;
+    }
+
     protected List<TurnRestriction> getTurnRestrictions(Graph graph) {
         return graph.getTurnRestrictions(this);
     }
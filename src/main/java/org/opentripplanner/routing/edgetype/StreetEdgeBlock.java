@@ -0,0 +1,273 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.routing.edgetype;
+
+import gnu.trove.map.TIntIntMap;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.opentripplanner.routing.graph.Edge;
+import org.opentripplanner.routing.graph.Vertex;
+import org.opentripplanner.routing.vertextype.StreetVertex;
+
+/**
+ * Writes and reads the street edges of a graph as a block of columns (one primitive array per field) rather than
+ * as individual serialized objects. This is where most of the size and loading time of a Java-serialized graph
+ * goes: a regional graph holds millions of street edges, and the Java serialization of each one records its
+ * class, its fields and a back-reference to each of its vertices and its geometry.
+ *
+ * Only edges whose class is exactly StreetEdge or StreetWithElevationEdge are stored here. Subclasses may have
+ * state of their own and are left to Java serialization. Vertices are referred to by their position in a vertex
+ * table saved separately. Street names are stored once in a string table, and packed geometries are concatenated
+ * into a single array. A geometry shared between an edge and its reverse (see StreetEdge.shareData) is stored once
+ * and is still shared after loading.
+ */
+public class StreetEdgeBlock {
+
+    private static final byte TYPE_STREET = 0;
+
+    private static final byte TYPE_ELEVATION = 1;
+
+    private static final int NONE = -1;
+
+    /** @return true if the given edge can be stored in a StreetEdgeBlock. */
+    public static boolean accepts(Edge e) {
+        Class<?> c = e.getClass();
+        return c == StreetEdge.class || c == StreetWithElevationEdge.class;
+    }
+
+    /**
+     * Write the given edges, which must all be accepted by this class.
+     * @param vertexPositions the position in the vertex table of each vertex, keyed on vertex index.
+     */
+    public static void write(List<StreetEdge> edges, TIntIntMap vertexPositions, DataOutput out)
+            throws IOException {
+        int n = edges.size();
+        out.writeInt(n);
+
+        // Endpoints, ids and types
+        for (StreetEdge e : edges) {
+            out.writeInt(vertexPositions.get(e.getFromVertex().getIndex()));
+        }
+        for (StreetEdge e : edges) {
+            out.writeInt(vertexPositions.get(e.getToVertex().getIndex()));
+        }
+        for (StreetEdge e : edges) {
+            out.writeInt(e.getId());
+        }
+        for (StreetEdge e : edges) {
+            out.writeByte(e instanceof StreetWithElevationEdge ? TYPE_ELEVATION : TYPE_STREET);
+        }
+
+        // Primitive fields
+        for (StreetEdge e : edges) {
+            out.writeByte(e.getFlags());
+        }
+        for (StreetEdge e : edges) {
+            out.writeInt(e.getLengthMm());
+        }
+        for (StreetEdge e : edges) {
+            out.writeFloat(e.getBicycleSafetyFactor());
+        }
+        for (StreetEdge e : edges) {
+            StreetTraversalPermission permission = e.getPermission();
+            out.writeInt(permission == null ? NONE : permission.code);
+        }
+        for (StreetEdge e : edges) {
+            out.writeInt(e.getStreetClass());
+        }
+        for (StreetEdge e : edges) {
+            out.writeFloat(e.getCarSpeed());
+        }
+        for (StreetEdge e : edges) {
+            out.writeByte(e.getInAngleBrads());
+        }
+        for (StreetEdge e : edges) {
+            out.writeByte(e.getOutAngleBrads());
+        }
+
+        // Street names, as indexes into a string table
+        Map<String, Integer> nameIndexes = new HashMap<String, Integer>();
+        List<String> names = new ArrayList<String>();
+        int[] nameColumn = new int[n];
+        for (int i = 0; i < n; i++) {
+            String name = edges.get(i).getName();
+            if (name == null) {
+                nameColumn[i] = NONE;
+                continue;
+            }
+            Integer nameIndex = nameIndexes.get(name);
+            if (nameIndex == null) {
+                nameIndex = names.size();
+                nameIndexes.put(name, nameIndex);
+                names.add(name);
+            }
+            nameColumn[i] = nameIndex;
+        }
+        out.writeInt(names.size());
+        for (String name : names) {
+            out.writeUTF(name);
+        }
+        for (int i = 0; i < n; i++) {
+            out.writeInt(nameColumn[i]);
+        }
+
+        // Packed geometries, concatenated. Geometry arrays are identified by reference to preserve sharing.
+        Map<int[], Integer> geometryIndexes = new IdentityHashMap<int[], Integer>();
+        List<int[]> geometries = new ArrayList<int[]>();
+        int[] geometryColumn = new int[n];
+        for (int i = 0; i < n; i++) {
+            int[] geometry = edges.get(i).getCompactGeometry();
+            if (geometry == null) {
+                geometryColumn[i] = NONE;
+                continue;
+            }
+            Integer geometryIndex = geometryIndexes.get(geometry);
+            if (geometryIndex == null) {
+                geometryIndex = geometries.size();
+                geometryIndexes.put(geometry, geometryIndex);
+                geometries.add(geometry);
+            }
+            geometryColumn[i] = geometryIndex;
+        }
+        out.writeInt(geometries.size());
+        for (int[] geometry : geometries) {
+            out.writeInt(geometry.length);
+        }
+        for (int[] geometry : geometries) {
+            for (int value : geometry) {
+                out.writeInt(value);
+            }
+        }
+        for (int i = 0; i < n; i++) {
+            out.writeInt(geometryColumn[i]);
+        }
+
+        // Elevation data, only for the edges that have it
+        for (StreetEdge e : edges) {
+            if (!(e instanceof StreetWithElevationEdge))
+                continue;
+            StreetWithElevationEdge ee = (StreetWithElevationEdge) e;
+            byte[] profile = ee.getPackedElevationProfile();
+            if (profile == null) {
+                out.writeInt(NONE);
+            } else {
+                out.writeInt(profile.length);
+                out.write(profile);
+            }
+            out.writeFloat(ee.getSlopeSpeedFactor());
+            out.writeFloat(ee.getSlopeWorkFactor());
+            out.writeFloat(ee.getMaxSlope());
+            out.writeBoolean(ee.isElevationFlattened());
+        }
+    }
+
+    /**
+     * Read edges written by write(), connecting them to the given vertices.
+     * @param vertices the vertex table, indexed on the positions used when writing.
+     * @return the edges in the order they were written.
+     */
+    public static List<StreetEdge> read(DataInput in, Vertex[] vertices) throws IOException {
+        int n = in.readInt();
+
+        int[] from = readInts(in, n);
+        int[] to = readInts(in, n);
+        int[] ids = readInts(in, n);
+        byte[] types = readBytes(in, n);
+
+        byte[] flags = readBytes(in, n);
+        int[] lengths = readInts(in, n);
+        float[] bicycleSafetyFactors = readFloats(in, n);
+        int[] permissions = readInts(in, n);
+        int[] streetClasses = readInts(in, n);
+        float[] carSpeeds = readFloats(in, n);
+        byte[] inAngles = readBytes(in, n);
+        byte[] outAngles = readBytes(in, n);
+
+        String[] names = new String[in.readInt()];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = in.readUTF();
+        }
+        int[] nameColumn = readInts(in, n);
+
+        int[][] geometries = new int[in.readInt()][];
+        int[] geometryLengths = readInts(in, geometries.length);
+        for (int g = 0; g < geometries.length; g++) {
+            geometries[g] = readInts(in, geometryLengths[g]);
+        }
+        int[] geometryColumn = readInts(in, n);
+
+        List<StreetEdge> edges = new ArrayList<StreetEdge>(n);
+        for (int i = 0; i < n; i++) {
+            StreetVertex v1 = (StreetVertex) vertices[from[i]];
+            StreetVertex v2 = (StreetVertex) vertices[to[i]];
+            String name = nameColumn[i] == NONE ? null : names[nameColumn[i]];
+            int[] geometry = geometryColumn[i] == NONE ? null : geometries[geometryColumn[i]];
+            StreetTraversalPermission permission = StreetTraversalPermission.get(permissions[i]);
+            StreetEdge e;
+            if (types[i] == TYPE_ELEVATION) {
+                int profileLength = in.readInt();
+                byte[] profile = null;
+                if (profileLength != NONE) {
+                    profile = new byte[profileLength];
+                    in.readFully(profile);
+                }
+                float slopeSpeedFactor = in.readFloat();
+                float slopeWorkFactor = in.readFloat();
+                float maxSlope = in.readFloat();
+                boolean flattened = in.readBoolean();
+                e = new StreetWithElevationEdge(v1, v2, ids[i], flags[i], lengths[i],
+                        bicycleSafetyFactors[i], geometry, name, permission, streetClasses[i],
+                        carSpeeds[i], inAngles[i], outAngles[i], profile, slopeSpeedFactor,
+                        slopeWorkFactor, maxSlope, flattened);
+            } else {
+                e = new StreetEdge(v1, v2, ids[i], flags[i], lengths[i], bicycleSafetyFactors[i],
+                        geometry, name, permission, streetClasses[i], carSpeeds[i], inAngles[i],
+                        outAngles[i]);
+            }
+            edges.add(e);
+        }
+        return edges;
+    }
+
+    private static int[] readInts(DataInput in, int n) throws IOException {
+        int[] values = new int[n];
+        for (int i = 0; i < n; i++) {
+            values[i] = in.readInt();
+        }
+        return values;
+    }
+
+    private static float[] readFloats(DataInput in, int n) throws IOException {
+        float[] values = new float[n];
+        for (int i = 0; i < n; i++) {
+            values[i] = in.readFloat();
+        }
+        return values;
+    }
+
+    private static byte[] readBytes(DataInput in, int n) throws IOException {
+        byte[] values = new byte[n];
+        in.readFully(values);
+        return values;
+    }
+
+}
@@ -45,6 +45,21 @@ public class StreetWithElevationEdge extends StreetEdge {
         super(v1, v2, geometry, name, length, permission, back);
     }
 
+    /** Restore an edge saved by StreetEdgeBlock, see the corresponding StreetEdge constructor. */
+    StreetWithElevationEdge(StreetVertex v1, StreetVertex v2, int id, byte flags, int length_mm,
+            float bicycleSafetyFactor, int[] compactGeometry, String name,
+            StreetTraversalPermission permission, int streetClass, float carSpeed,
+            byte inAngle, byte outAngle, byte[] packedElevationProfile, float slopeSpeedFactor,
+            float slopeWorkFactor, float maxSlope, boolean flattened) {
+        super(v1, v2, id, flags, length_mm, bicycleSafetyFactor, compactGeometry, name, permission,
+                streetClass, carSpeed, inAngle, outAngle);
+        this.packedElevationProfile = packedElevationProfile;
+        this.slopeSpeedFactor = slopeSpeedFactor;
+        this.slopeWorkFactor = slopeWorkFactor;
+        this.maxSlope = maxSlope;
+        this.flattened = flattened;
+    }
+
     @Override
     public StreetWithElevationEdge clone() {
         return (StreetWithElevationEdge) super.clone();
@@ -96,6 +111,18 @@ public class StreetWithElevationEdge extends StreetEdge {
         return slopeWorkFactor * getDistance();
     }
 
+    byte[] getPackedElevationProfile() {
+        return packedElevationProfile;
+    }
+
+    float getSlopeSpeedFactor() {
+        return slopeSpeedFactor;
+    }
+
+    float getSlopeWorkFactor() {
+        return slopeWorkFactor;
+    }
+
     @Override
     public String toString() {
         return "StreetWithElevationEdge(" + getId() + ", " + getName() + ", " + fromv + " -> "
@@ -88,7 +88,26 @@ public class Timetable implements Serializable {
      * Helps determine whether a particular pattern is worth searching for departures at a given time. 
      */
     private transient int minTime, maxTime;
-    
+
+    /**
+     * Timetables with fewer trips than this are always searched linearly, as an index would not pay for itself.
+     */
+    private static final int MIN_TRIPS_FOR_INDEX = 16;
+
+    /**
+     * For each stop, the indexes of the TripTimes in order of increasing departure time at that stop. Trips with the
+     * same departure time are in the order of the tripTimes list. Null if the timetable has not been indexed, or has
+     * been modified since it was last indexed.
+     */
+    private transient int[][] departureIndex;
+
+    /**
+     * For each stop, the indexes of the TripTimes in order of increasing arrival time at that stop. Trips with the
+     * same arrival time are in the reverse order of the tripTimes list, so that a backward scan sees them in list
+     * order. Null under the same conditions as departureIndex.
+     */
+    private transient int[][] arrivalIndex;
+
     /** Construct an empty Timetable. */
     public Timetable(TripPattern pattern) {
         this.pattern = pattern;
@@ -141,34 +160,39 @@ public class Timetable implements Serializable {
         // NOTE the time is sometimes negative here. That is fine, we search for the first trip of the day.
         TripTimes bestTrip = null;
         Stop currentStop = pattern.getStop(stopIndex);
-        // Linear search through the timetable looking for the best departure.
-        // We no longer use a binary search on Timetables because:
-        // 1. we allow combining trips from different service IDs on the same tripPattern.
-        // 2. We mix frequency-based and one-off TripTimes together on tripPatterns.
-        // 3. Stoptimes may change with realtime updates, and we cannot count on them being sorted.
-        //    The complexity of keeping sorted indexes up to date does not appear to be worth the
-        //    apparently minor speed improvement.
+        // Once the timetable has been indexed by finish(), a binary search on the departure (arrival) order at
+        // this stop finds the first candidate trip. Each stop has its own order, so trips that overtake one another
+        // and trips from different service IDs are handled correctly. Realtime updates drop the index until the
+        // updated timetable is finished again, and in the meantime we fall back on a linear search.
         int bestTime = boarding ? Integer.MAX_VALUE : Integer.MIN_VALUE;
-        // Hoping JVM JIT will distribute the loop over the if clauses as needed.
-        // We could invert this and skip some service days based on schedule overlap as in RRRR.
-        for (TripTimes tt : tripTimes) {
-            if ( ! serviceDay.serviceRunning(tt.serviceCode)) continue; // TODO merge into call on next line
-            if ( ! tt.tripAcceptable(s0, stopIndex)) continue;
-            int adjustedTime = adjustTimeForTransfer(s0, currentStop, tt.trip, boarding, serviceDay, time);
-            if (adjustedTime == -1) continue;
-            if (boarding) {
-                int depTime = tt.getDepartureTime(stopIndex);
-                if (depTime < 0) continue;
-                if (depTime >= adjustedTime && depTime < bestTime) {
-                    bestTrip = tt;
-                    bestTime = depTime;
-                }
-            } else {
-                int arvTime = tt.getArrivalTime(stopIndex);
-                if (arvTime < 0) continue;
-                if (arvTime <= adjustedTime && arvTime > bestTime) {
-                    bestTrip = tt;
-                    bestTime = arvTime;
+        int[][] index = boarding ? departureIndex : arrivalIndex;
+        if (index != null) {
+            bestTrip = getNextTripIndexed(index[stopIndex], s0, serviceDay, currentStop, stopIndex, boarding, time);
+            if (bestTrip != null) {
+                bestTime = boarding ? bestTrip.getDepartureTime(stopIndex) : bestTrip.getArrivalTime(stopIndex);
+            }
+        } else {
+            // Hoping JVM JIT will distribute the loop over the if clauses as needed.
+            // We could invert this and skip some service days based on schedule overlap as in RRRR.
+            for (TripTimes tt : tripTimes) {
+                if ( ! serviceDay.serviceRunning(tt.serviceCode)) continue; // TODO merge into call on next line
+                if ( ! tt.tripAcceptable(s0, stopIndex)) continue;
+                int adjustedTime = adjustTimeForTransfer(s0, currentStop, tt.trip, boarding, serviceDay, time);
+                if (adjustedTime == -1) continue;
+                if (boarding) {
+                    int depTime = tt.getDepartureTime(stopIndex);
+                    if (depTime < 0) continue;
+                    if (depTime >= adjustedTime && depTime < bestTime) {
+                        bestTrip = tt;
+                        bestTime = depTime;
+                    }
+                } else {
+                    int arvTime = tt.getArrivalTime(stopIndex);
+                    if (arvTime < 0) continue;
+                    if (arvTime <= adjustedTime && arvTime > bestTime) {
+                        bestTrip = tt;
+                        bestTime = arvTime;
+                    }
                 }
             }
         }
@@ -206,6 +230,62 @@ public class Timetable implements Serializable {
         return bestTrip;
     }
 
+    /**
+     * Find the best trip using one stop's sorted index. For boarding the index is scanned forward from the first
+     * departure at or after the search time; for alighting it is scanned backward from the last arrival at or before
+     * the search time. Transfer rules only ever move the adjusted time away from the search time, so the first
+     * trip found that satisfies all conditions is the best one.
+     */
+    private TripTimes getNextTripIndexed(int[] order, State s0, ServiceDay serviceDay, Stop currentStop,
+            int stopIndex, boolean boarding, int time) {
+        if (boarding) {
+            for (int i = firstTimeAtOrAfter(order, stopIndex, time); i < order.length; i++) {
+                TripTimes tt = tripTimes.get(order[i]);
+                int depTime = tt.getDepartureTime(stopIndex);
+                if (depTime < 0) continue;
+                if ( ! serviceDay.serviceRunning(tt.serviceCode)) continue;
+                if ( ! tt.tripAcceptable(s0, stopIndex)) continue;
+                int adjustedTime = adjustTimeForTransfer(s0, currentStop, tt.trip, boarding, serviceDay, time);
+                if (adjustedTime == -1) continue;
+                if (depTime >= adjustedTime) return tt;
+            }
+        } else {
+            for (int i = firstTimeAfter(order, stopIndex, time) - 1; i >= 0; i--) {
+                TripTimes tt = tripTimes.get(order[i]);
+                int arvTime = tt.getArrivalTime(stopIndex);
+                if (arvTime < 0) continue;
+                if ( ! serviceDay.serviceRunning(tt.serviceCode)) continue;
+                if ( ! tt.tripAcceptable(s0, stopIndex)) continue;
+                int adjustedTime = adjustTimeForTransfer(s0, currentStop, tt.trip, boarding, serviceDay, time);
+                if (adjustedTime == -1) continue;
+                if (arvTime <= adjustedTime) return tt;
+            }
+        }
+        return null;
+    }
+
+    /** @return the position in the departure order of the first trip departing at or after the given time. */
+    private int firstTimeAtOrAfter(int[] order, int stopIndex, int time) {
+        int lo = 0, hi = order.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (tripTimes.get(order[mid]).getDepartureTime(stopIndex) < time) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    /** @return the position in the arrival order of the first trip arriving strictly after the given time. */
+    private int firstTimeAfter(int[] order, int stopIndex, int time) {
+        int lo = 0, hi = order.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (tripTimes.get(order[mid]).getArrivalTime(stopIndex) <= time) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
     /**
      * Check transfer table rules. Given the last alight time from the State,
      * return the boarding time t0 adjusted for this particular trip's minimum transfer time,
@@ -286,6 +366,47 @@ public class Timetable implements Serializable {
             minTime = Math.min(minTime, freq.getMinDeparture());
             maxTime = Math.max(maxTime, freq.getMaxArrival());
         }
+        /* Sort the trips at each stop, so departure searches can use a binary search. */
+        if (tripTimes.size() >= MIN_TRIPS_FOR_INDEX) {
+            departureIndex = new int[nStops][];
+            arrivalIndex = new int[nStops][];
+            for (int s = 0; s < nStops; s++) {
+                departureIndex[s] = sortTrips(s, true);
+                arrivalIndex[s] = sortTrips(s, false);
+            }
+        } else {
+            departureIndex = null;
+            arrivalIndex = null;
+        }
+    }
+
+    /**
+     * @return the indexes of the trips in this timetable sorted on their departure (or arrival) time at the given
+     * stop. Ties are broken on the position in the tripTimes list, increasing for departures and decreasing for
+     * arrivals. Sorting packed longs avoids boxing and a comparator.
+     */
+    private int[] sortTrips(int stopIndex, boolean departures) {
+        int n = tripTimes.size();
+        long[] keys = new long[n];
+        for (int i = 0; i < n; i++) {
+            TripTimes tt = tripTimes.get(i);
+            int time = departures ? tt.getDepartureTime(stopIndex) : tt.getArrivalTime(stopIndex);
+            int tieBreak = departures ? i : Integer.MAX_VALUE - i;
+            keys[i] = ((long) time << 32) | tieBreak;
+        }
+        Arrays.sort(keys);
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++) {
+            int tieBreak = (int) keys[i];
+            order[i] = departures ? tieBreak : Integer.MAX_VALUE - tieBreak;
+        }
+        return order;
+    }
+
+    /** Drop the sorted indexes, which will only be rebuilt by the next call to finish(). */
+    private void invalidateIndex() {
+        departureIndex = null;
+        arrivalIndex = null;
     }
 
     /** @return the index of TripTimes for this trip ID in this particular Timetable */
@@ -484,6 +605,7 @@ public class Timetable implements Serializable {
 
             // Update succeeded, save the new TripTimes back into this Timetable.
             tripTimes.set(tripIndex, newTimes);
+            invalidateIndex();
         } catch (Exception e) { // prevent server from dying while debugging
             e.printStackTrace();
             return false;
@@ -502,6 +624,7 @@ public class Timetable implements Serializable {
      */
     public void addTripTimes(TripTimes tt) {
         tripTimes.add(tt);
+        invalidateIndex();
     }
 
     /**
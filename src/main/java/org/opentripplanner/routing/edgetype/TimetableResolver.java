@@ -13,15 +13,14 @@
 
 package org.opentripplanner.routing.edgetype;
 
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.ConcurrentModificationException;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
+import java.util.Map;
 import java.util.Set;
-import java.util.SortedSet;
 import java.util.TimeZone;
-import java.util.TreeSet;
 
 import org.onebusaway.gtfs.model.calendar.ServiceDate;
 import org.slf4j.Logger;
@@ -40,6 +39,12 @@ import com.google.transit.realtime.GtfsRealtime.TripUpdate;
  * for that duration to provide a consistent view not only of trips that have been boarded, but of
  * relative arrival and departure times of other trips that have not necessarily been boarded.
  *
+ * Snapshots share structure with the buffer they were committed from: the updated timetables of each pattern are
+ * held in a small immutable array sorted on service date, and committing hands the buffer's map to the snapshot
+ * without copying it. The buffer only copies the map (not the timetables) the next time it is modified, so
+ * committing is cheap no matter how many patterns have updates, and resolving a timetable is a single hash lookup
+ * followed by a scan of the few service dates that have updates for that pattern.
+ *
  * At this point, only one writing thread at a time is supported.
  */
 public class TimetableResolver {
@@ -51,14 +56,20 @@ public class TimetableResolver {
         }
     }
 
+    private static final SortedTimetableComparator COMPARATOR = new SortedTimetableComparator();
+
     private static final Logger LOG = LoggerFactory.getLogger(TimetableResolver.class);
 
-    // Use HashMap not Map so we can clone.
-    // if this turns out to be slow/spacious we can use an array with integer pattern indexes
-    // The SortedSet members are copy-on-write
-    // FIXME: this could be made into a flat hashtable with compound keys.
-    private HashMap<TripPattern, SortedSet<Timetable>> timetables =
-            new HashMap<TripPattern, SortedSet<Timetable>>();
+    /**
+     * The updated timetables for each pattern, sorted on service date. The arrays are never modified once they are
+     * in the map, a modified copy replaces them instead.
+     */
+    private Map<TripPattern, Timetable[]> timetables = new HashMap<TripPattern, Timetable[]>();
+
+    /**
+     * True when the timetables map is shared with a committed snapshot, and must be copied before it is modified.
+     */
+    private boolean shared = false;
 
     /** A set of all timetables which have been modified and are waiting to be indexed. */
     private Set<Timetable> dirty = new HashSet<Timetable>();
@@ -68,11 +79,11 @@ public class TimetableResolver {
      * or the originally scheduled timetable if there are no updates in this snapshot.
      */
     public Timetable resolve(TripPattern pattern, ServiceDate serviceDate) {
-        SortedSet<Timetable> sortedTimetables = timetables.get(pattern);
+        Timetable[] sortedTimetables = timetables.get(pattern);
 
         if(sortedTimetables != null && serviceDate != null) {
             for(Timetable timetable : sortedTimetables) {
-                if (timetable != null && timetable.isValidFor(serviceDate)) {
+                if (timetable.isValidFor(serviceDate)) {
                     LOG.trace("returning modified timetable");
                     return timetable;
                 }
@@ -97,19 +108,20 @@ public class TimetableResolver {
             if ( ! dirty.contains(tt)) {
                 Timetable old = tt;
                 tt = new Timetable(tt, serviceDate);
-                SortedSet<Timetable> sortedTimetables = timetables.get(pattern);
-                if(sortedTimetables == null) {
-                    sortedTimetables = new TreeSet<Timetable>(new SortedTimetableComparator());
+                Timetable[] sortedTimetables = timetables.get(pattern);
+                if (sortedTimetables == null) {
+                    sortedTimetables = new Timetable[] { tt };
+                } else if (old.serviceDate != null) {
+                    // replace the timetable for this date in a copy of the array
+                    sortedTimetables = sortedTimetables.clone();
+                    sortedTimetables[Arrays.asList(sortedTimetables).indexOf(old)] = tt;
                 } else {
-                    SortedSet<Timetable> temp =
-                            new TreeSet<Timetable>(new SortedTimetableComparator());
-                    temp.addAll(sortedTimetables);
-                    sortedTimetables = temp;
+                    // insert a timetable for a new date in a copy of the array
+                    sortedTimetables = Arrays.copyOf(sortedTimetables, sortedTimetables.length + 1);
+                    sortedTimetables[sortedTimetables.length - 1] = tt;
+                    Arrays.sort(sortedTimetables, COMPARATOR);
                 }
-                if(old.serviceDate != null)
-                    sortedTimetables.remove(old);
-                sortedTimetables.add(tt);
-                timetables.put(pattern, sortedTimetables);
+                putTimetables(pattern, sortedTimetables);
                 dirty.add(tt);
             }
             // Assume all trips in a pattern are from the same feed, which should be the case.
@@ -117,6 +129,19 @@ public class TimetableResolver {
         }
     }
 
+    /** Modify the timetables map, first copying it if it is shared with a snapshot. */
+    private void putTimetables(TripPattern pattern, Timetable[] sortedTimetables) {
+        if (shared) {
+            timetables = new HashMap<TripPattern, Timetable[]>(timetables);
+            shared = false;
+        }
+        if (sortedTimetables == null) {
+            timetables.remove(pattern);
+        } else {
+            timetables.put(pattern, sortedTimetables);
+        }
+    }
+
     /**
      * This produces a small delay of typically around 50ms, which is almost entirely due to
      * the indexing step. Cloning the map is much faster (2ms).
@@ -131,7 +156,6 @@ public class TimetableResolver {
         return commit(false);
     }
 
-    @SuppressWarnings("unchecked")
     public TimetableResolver commit(boolean force) {
         TimetableResolver ret = new TimetableResolver();
         // synchronization prevents updates while commit/snapshot in progress
@@ -143,8 +167,9 @@ public class TimetableResolver {
             for (Timetable tt : dirty) {
                 tt.finish(); // summarize, index, etc. the new timetables
             }
-            ret.timetables =
-                    (HashMap<TripPattern, SortedSet<Timetable>>) this.timetables.clone();
+            // Share the map with the snapshot rather than copying it, it will be copied on the next modification.
+            ret.timetables = this.timetables;
+            this.shared = true;
             this.dirty.clear();
         }
         ret.dirty = null; // mark the snapshot as henceforth immutable
@@ -160,28 +185,25 @@ public class TimetableResolver {
                 throw new ConcurrentModificationException("This TimetableResolver is read-only.");
             }
 
-            boolean modified = false;
-            for (Iterator<TripPattern> it = timetables.keySet().iterator(); it.hasNext();){
-                TripPattern pattern = it.next();
-                SortedSet<Timetable> sortedTimetables = timetables.get(pattern);
-                SortedSet<Timetable> toKeepTimetables =
-                        new TreeSet<Timetable>(new SortedTimetableComparator());
-                for(Timetable timetable : sortedTimetables) {
-                    if(serviceDate.compareTo(timetable.serviceDate) < 0) {
-                        toKeepTimetables.add(timetable);
-                    } else {
-                        modified = true;
-                    }
+            Map<TripPattern, Timetable[]> purged = new HashMap<TripPattern, Timetable[]>();
+            for (Map.Entry<TripPattern, Timetable[]> entry : timetables.entrySet()) {
+                Timetable[] sortedTimetables = entry.getValue();
+                // the arrays are sorted, so expired timetables are at the start
+                int firstKept = 0;
+                while (firstKept < sortedTimetables.length
+                        && serviceDate.compareTo(sortedTimetables[firstKept].serviceDate) >= 0) {
+                    firstKept++;
                 }
-
-                if(toKeepTimetables.isEmpty()) {
-                    it.remove();
-                } else {
-                    timetables.put(pattern, toKeepTimetables);
+                if (firstKept > 0) {
+                    purged.put(entry.getKey(), firstKept == sortedTimetables.length ? null :
+                            Arrays.copyOfRange(sortedTimetables, firstKept, sortedTimetables.length));
                 }
             }
+            for (Map.Entry<TripPattern, Timetable[]> entry : purged.entrySet()) {
+                putTimetables(entry.getKey(), entry.getValue());
+            }
 
-            return modified;
+            return !purged.isEmpty();
         }
     }
 
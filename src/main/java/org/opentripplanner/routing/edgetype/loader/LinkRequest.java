@@ -164,13 +164,17 @@ public class LinkRequest {
                     second = edge;
                 }
             }
+            // The clones have their own ids, so they keep their turn restrictions when the originals are removed.
             StreetEdge secondClone;
             if (second == null) {
                 secondClone = null;
             } else {
                 secondClone = ((StreetEdge) second).clone();
+                linker.graph.copyTurnRestrictions(second, secondClone);
             }
-            P2<StreetEdge> newEdges = new P2<StreetEdge>(((StreetEdge) first).clone(), secondClone);
+            StreetEdge firstClone = ((StreetEdge) first).clone();
+            linker.graph.copyTurnRestrictions(first, firstClone);
+            P2<StreetEdge> newEdges = new P2<StreetEdge>(firstClone, secondClone);
             replacement.add(newEdges);
             linker.replacements.put(edgeSet, replacement);
         }
@@ -297,6 +301,12 @@ public class LinkRequest {
         forward1.setBicycleSafetyFactor(e1.getBicycleSafetyFactor());
         forward2.setBicycleSafetyFactor(e1.getBicycleSafetyFactor());
 
+        // Turn restrictions apply when leaving an edge, so the halves ending where the split edges did take them.
+        linker.graph.copyTurnRestrictions(e1, forward2);
+        if (e2 != null) {
+            linker.graph.copyTurnRestrictions(e2, backward2);
+        }
+
         forward1.setElevationProfile(ElevationUtils.getPartialElevationProfile(
                 e1.getElevationProfile(), 0, lengthIn), false);
         forward2.setElevationProfile(ElevationUtils.getPartialElevationProfile(
@@ -0,0 +1,140 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.routing.graph;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.opentripplanner.routing.edgetype.StreetEdge;
+
+/**
+ * Constants and stream classes for the compact graph file format written by Graph.saveCompact.
+ *
+ * A compact graph file starts with a four byte magic number and a format version, followed by a single object
+ * stream containing, in order: the list of all vertices, the street edges as a StreetEdgeBlock, the Graph object
+ * itself, the list of all other edges, and optionally the debug data. Any reference to a street edge from the
+ * objects written after the block (turn restrictions, alert patches, notes...) is replaced by a small token giving
+ * its position in the block, so street edges are never Java-serialized.
+ *
+ * Java serialization streams always start with 0xACED, so the two formats can be told apart by their first bytes.
+ */
+public class CompactGraphFormat {
+
+    static final byte[] MAGIC = { 'O', 'T', 'P', 'G' };
+
+    /** Increment this whenever the layout of the file or of a StreetEdgeBlock changes. */
+    public static final int VERSION = 2;
+
+    /**
+     * @return true if the given stream is positioned at the start of a compact graph. The stream must support
+     *         mark(), and is reset to its initial position.
+     */
+    public static boolean isCompact(InputStream in) throws IOException {
+        byte[] header = new byte[MAGIC.length];
+        in.mark(header.length);
+        int n = 0;
+        while (n < header.length) {
+            int read = in.read(header, n, header.length - n);
+            if (read < 0)
+                break;
+            n += read;
+        }
+        in.reset();
+        return n == header.length && Arrays.equals(header, MAGIC);
+    }
+
+    /** Stands in for a street edge, giving its position in the StreetEdgeBlock. */
+    static class StreetEdgeReference implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        final int position;
+
+        StreetEdgeReference(int position) {
+            this.position = position;
+        }
+    }
+
+    /** Replaces references to the street edges saved in the StreetEdgeBlock with StreetEdgeReferences. */
+    static class GraphOutputStream extends ObjectOutputStream {
+
+        private final Map<StreetEdge, Integer> positions;
+
+        GraphOutputStream(OutputStream out, List<StreetEdge> streetEdges) throws IOException {
+            super(out);
+            positions = new IdentityHashMap<StreetEdge, Integer>(streetEdges.size());
+            for (int i = 0; i < streetEdges.size(); i++) {
+                positions.put(streetEdges.get(i), i);
+            }
+            enableReplaceObject(true);
+        }
+
+        @Override
+        protected Object replaceObject(Object obj) throws IOException {
+            if (obj instanceof StreetEdge) {
+                Integer position = positions.get(obj);
+                if (position != null)
+                    return new StreetEdgeReference(position);
+            }
+            return obj;
+        }
+    }
+
+    /** Resolves StreetEdgeReferences to the street edges read from the StreetEdgeBlock. */
+    static class GraphInputStream extends ObjectInputStream {
+
+        private final ClassLoader classLoader;
+
+        private List<StreetEdge> streetEdges;
+
+        /** @param classLoader used to resolve classes, or null to use the default. */
+        GraphInputStream(InputStream in, ClassLoader classLoader) throws IOException {
+            super(in);
+            this.classLoader = classLoader;
+            enableResolveObject(true);
+        }
+
+        void setStreetEdges(List<StreetEdge> streetEdges) {
+            this.streetEdges = streetEdges;
+        }
+
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass osc) throws IOException,
+                ClassNotFoundException {
+            if (classLoader == null)
+                return super.resolveClass(osc);
+            return Class.forName(osc.getName(), false, classLoader);
+        }
+
+        @Override
+        protected Object resolveObject(Object obj) throws IOException {
+            if (obj instanceof StreetEdgeReference) {
+                if (streetEdges == null)
+                    throw new InvalidObjectException("Street edge referenced before the street edges were read.");
+                return streetEdges.get(((StreetEdgeReference) obj).position);
+            }
+            return obj;
+        }
+    }
+
+}
@@ -24,8 +24,10 @@ import org.onebusaway.gtfs.model.Trip;
 import org.opentripplanner.common.MavenVersion;
 import org.opentripplanner.routing.core.RoutingRequest;
 import org.opentripplanner.routing.core.State;
+import org.opentripplanner.routing.edgetype.TemporaryEdge;
 import org.opentripplanner.routing.util.IncrementingIdGenerator;
 import org.opentripplanner.routing.util.UniqueIdGenerator;
+import org.opentripplanner.routing.vertextype.TemporaryVertex;
 
 import com.vividsolutions.jts.geom.LineString;
 
@@ -67,8 +69,38 @@ public abstract class Edge implements Serializable {
         // " constructed with bad vertex types");
         // }
 
-        fromv.addOutgoing(this);
-        tov.addIncoming(this);
+        attach();
+    }
+
+    /**
+     * Constructor used when an edge is restored from a saved graph other than by Java deserialization. The edge
+     * keeps the id it was saved with rather than taking a new one from the id generator.
+     */
+    protected Edge(Vertex v1, Vertex v2, int id) {
+        if (v1 == null || v2 == null) {
+            String err = String.format("%s restored with null vertex : %s %s", this.getClass(),
+                    v1, v2);
+            throw new IllegalStateException(err);
+        }
+        this.fromv = v1;
+        this.tov = v2;
+        this.id = id;
+        attach();
+    }
+
+    /**
+     * Add this edge to the edge lists of its vertices. A temporary edge is only added to its temporary vertex: the
+     * permanent vertex at its other end is shared by all concurrent searches and must never be written to while
+     * routing. The RoutingContext of the request that made the edge supplies it to the search as extra adjacency.
+     */
+    private void attach() {
+        boolean temporary = this instanceof TemporaryEdge;
+        if (!temporary || fromv instanceof TemporaryVertex) {
+            fromv.addOutgoing(this);
+        }
+        if (!temporary || tov instanceof TemporaryVertex) {
+            tov.addIncoming(this);
+        }
     }
 
     public Vertex getFromVertex() {
@@ -268,4 +300,12 @@ public abstract class Edge implements Serializable {
     	return this.id;
     }
 
+    /**
+     * Give this edge a new id from the id generator. A copy of an edge starts out with the id of the original, and
+     * must take its own before both are used, since ids key tables such as the turn restrictions of the graph.
+     */
+    protected void takeNewId() {
+        this.id = idGenerator.getId(this);
+    }
+
 }
@@ -15,6 +15,8 @@ package org.opentripplanner.routing.graph;
 
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
@@ -24,6 +26,7 @@ import java.io.InvalidClassException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.ObjectStreamClass;
+import java.io.OutputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -37,10 +40,16 @@ import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
 import java.util.TimeZone;
+import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.prefs.Preferences;
 
 import com.fasterxml.jackson.databind.JsonNode;
+import gnu.trove.map.TIntIntMap;
+import gnu.trove.map.TIntObjectMap;
+import gnu.trove.map.hash.TIntIntHashMap;
+import gnu.trove.map.hash.TIntObjectHashMap;
 import com.google.common.collect.*;
 import org.joda.time.DateTime;
 import org.onebusaway.gtfs.impl.calendar.CalendarServiceImpl;
@@ -63,7 +72,9 @@ import org.opentripplanner.routing.alertpatch.AlertPatch;
 import org.opentripplanner.routing.core.MortonVertexComparatorFactory;
 import org.opentripplanner.routing.core.TransferTable;
 import org.opentripplanner.routing.edgetype.EdgeWithCleanup;
+import org.opentripplanner.routing.edgetype.PartialStreetEdge;
 import org.opentripplanner.routing.edgetype.StreetEdge;
+import org.opentripplanner.routing.edgetype.StreetEdgeBlock;
 import org.opentripplanner.routing.edgetype.TripPattern;
 import org.opentripplanner.routing.impl.DefaultStreetVertexIndexFactory;
 import org.opentripplanner.routing.services.StreetVertexIndexFactory;
@@ -74,6 +85,7 @@ import org.opentripplanner.routing.vertextype.PatternArriveVertex;
 import org.opentripplanner.updater.GraphUpdaterConfigurator;
 import org.opentripplanner.updater.GraphUpdaterManager;
 import org.opentripplanner.updater.stoptime.TimetableSnapshotSource;
+import org.opentripplanner.util.monitoring.SearchMetrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -98,7 +110,12 @@ public class Graph implements Serializable {
 
     private final Map<Edge, Set<AlertPatch>> alertPatches = new HashMap<Edge, Set<AlertPatch>>(0);
 
-    private final Map<Edge, List<TurnRestriction>> turnRestrictions = Maps.newHashMap();
+    /**
+     * The turn restrictions starting on each street edge, as immutable lists keyed on the edge id. Only the edges
+     * flagged with StreetEdge.hasTurnRestrictions() have an entry, so routing never looks up the others.
+     */
+    private final TIntObjectMap<List<TurnRestriction>> turnRestrictions =
+            new TIntObjectHashMap<List<TurnRestriction>>();
 
     public final StreetNotesService streetNotesService = new StreetNotesService();
 
@@ -107,7 +124,8 @@ public class Graph implements Serializable {
 
     private long transitServiceEnds = 0;
 
-    private Map<Class<?>, Object> _services = new HashMap<Class<?>, Object>();
+    /** Concurrent, so that services can be looked up and registered by graph builder modules running in parallel. */
+    private ConcurrentMap<Class<?>, Object> _services = new ConcurrentHashMap<Class<?>, Object>();
 
     private TransferTable transferTable = new TransferTable();
 
@@ -129,10 +147,18 @@ public class Graph implements Serializable {
 
     public transient GraphIndex index;
 
+    /** Distances from each transit stop to the streets around it, when computed by the graph builder. */
+    public transient StopTreeCache stopTreeCache = null;
+
+    /** A stop tree file found next to the graph, which GraphIndex will map when the stop trees are first needed. */
+    public transient File stopTreeFile = null;
+
     private transient GeometryIndex geomIndex;
 
     private transient SampleFactory sampleFactory;
 
+    private transient volatile SearchMetrics searchMetrics;
+
     public final Deduplicator deduplicator = new Deduplicator();
 
     /**
@@ -182,6 +208,12 @@ public class Graph implements Serializable {
 
     public final Date buildTime = new Date();
 
+    /**
+     * Identifies this build of the graph. Files written next to the graph by the builder, such as the stop trees,
+     * record it so that they are not used with a graph built later.
+     */
+    public final UUID buildId = UUID.randomUUID();
+
     /** True if OSM data was loaded into this Graph. */
     public boolean hasStreets = false;
 
@@ -246,7 +278,9 @@ public class Graph implements Serializable {
                 alertPatches.remove(e);     // method isn't thread-safe anyway, but it is consistent
             }
 
-            turnRestrictions.remove(e);
+            if (hasTurnRestrictionEntry(e)) {
+                turnRestrictions.remove(e.getId());
+            }
             streetNotesService.removeStaticNotes(e);
             edgeById.remove(e.getId());
 
@@ -386,18 +420,31 @@ public class Graph implements Serializable {
 
     /**
      * Add a {@link TurnRestriction} to the {@link TurnRestriction} {@link List} belonging to an
-     * {@link Edge}. This method is not thread-safe.
+     * {@link Edge}. Turn restrictions are only applied when leaving a plain street edge, those added
+     * to other edges are ignored. This method is not thread-safe.
      * @param edge
      * @param turnRestriction
      */
     public void addTurnRestriction(Edge edge, TurnRestriction turnRestriction) {
         if (edge == null || turnRestriction == null) return;
-        List<TurnRestriction> turnRestrictions = this.turnRestrictions.get(edge);
-        if (turnRestrictions == null) {
-            turnRestrictions = Lists.newArrayList();
-            this.turnRestrictions.put(edge, turnRestrictions);
+        if (!(edge instanceof StreetEdge) || edge instanceof PartialStreetEdge) return;
+        List<TurnRestriction> turnRestrictions = getTurnRestrictions(edge);
+        this.turnRestrictions.put(edge.getId(), ImmutableList.<TurnRestriction>builder()
+                .addAll(turnRestrictions).add(turnRestriction).build());
+        ((StreetEdge) edge).setHasTurnRestrictions(true);
+    }
+
+    /**
+     * Give an edge the turn restrictions of another one, such as the edge it was copied or split from. The
+     * restrictions themselves are shared, so they still name the original as the edge they start on. This method
+     * is not thread-safe.
+     * @param original
+     * @param copy
+     */
+    public void copyTurnRestrictions(Edge original, Edge copy) {
+        for (TurnRestriction turnRestriction : getTurnRestrictions(original)) {
+            addTurnRestriction(copy, turnRestriction);
         }
-        turnRestrictions.add(turnRestriction);
     }
 
     /**
@@ -408,33 +455,46 @@ public class Graph implements Serializable {
      */
     public void removeTurnRestriction(Edge edge, TurnRestriction turnRestriction) {
         if (edge == null || turnRestriction == null) return;
-        List<TurnRestriction> turnRestrictions = this.turnRestrictions.get(edge);
-        if (turnRestrictions != null && turnRestrictions.contains(turnRestriction)) {
+        List<TurnRestriction> turnRestrictions = getTurnRestrictions(edge);
+        if (turnRestrictions.contains(turnRestriction)) {
             if (turnRestrictions.size() < 2) {
-                this.turnRestrictions.remove(edge);
+                this.turnRestrictions.remove(edge.getId());
+                ((StreetEdge) edge).setHasTurnRestrictions(false);
             } else {
-                turnRestrictions.remove(turnRestriction);
+                List<TurnRestriction> remaining = Lists.newArrayList(turnRestrictions);
+                remaining.remove(turnRestriction);
+                this.turnRestrictions.put(edge.getId(), ImmutableList.copyOf(remaining));
             }
         }
     }
 
     /**
-     * Get the {@link TurnRestriction} {@link List} that belongs to an {@link Edge} and return an
-     * immutable copy. This method is thread-safe when used by itself, but not if addTurnRestriction
-     * or removeTurnRestriction is called concurrently.
+     * Get the immutable {@link TurnRestriction} {@link List} that belongs to an {@link Edge}. The
+     * list is replaced rather than modified when restrictions are added or removed, so this method
+     * is thread-safe when used by itself, but the result may be stale if addTurnRestriction or
+     * removeTurnRestriction is called concurrently.
      * @param edge
      * @return The {@link TurnRestriction} {@link List} that belongs to the {@link Edge}
      */
     public List<TurnRestriction> getTurnRestrictions(Edge edge) {
-        if (edge != null) {
-            List<TurnRestriction> turnRestrictions = this.turnRestrictions.get(edge);
+        if (hasTurnRestrictionEntry(edge)) {
+            List<TurnRestriction> turnRestrictions = this.turnRestrictions.get(edge.getId());
             if (turnRestrictions != null) {
-                return ImmutableList.copyOf(turnRestrictions);
+                return turnRestrictions;
             }
         }
         return Collections.emptyList();
     }
 
+    /**
+     * @return true if the given edge has an entry in the turn restriction table. Partial street edges
+     *         share the id of their parent, but not its entry.
+     */
+    private static boolean hasTurnRestrictionEntry(Edge edge) {
+        return edge instanceof StreetEdge && !(edge instanceof PartialStreetEdge)
+                && ((StreetEdge) edge).hasTurnRestrictions();
+    }
+
     /**
      * Return only the StreetEdges in the graph.
      * @return
@@ -462,8 +522,8 @@ public class Graph implements Serializable {
         return (T) _services.get(serviceType);
     }
 
+    @SuppressWarnings("unchecked")
     public <T> T getService(Class<T> serviceType, boolean autoCreate) {
-        @SuppressWarnings("unchecked")
         T t = (T) _services.get(serviceType);
         if (t == null && autoCreate) {
             try {
@@ -473,7 +533,11 @@ public class Graph implements Serializable {
             } catch (IllegalAccessException e) {
                 throw new RuntimeException(e);
             }
-            _services.put(serviceType, t);
+            // Another thread may have created the service in the meantime, in which case that one is kept.
+            T existing = (T) _services.putIfAbsent(serviceType, t);
+            if (existing != null) {
+                t = existing;
+            }
         }
         return t;
     }
@@ -626,7 +690,7 @@ public class Graph implements Serializable {
      * If the graphBuilderAnnotations field of this graph is null, the annotation is not actually saved, but the message is still returned. This
      * allows annotation registration to be turned off, saving memory and disk space when the user is not interested in annotations.
      */
-    public String addBuilderAnnotation(GraphBuilderAnnotation gba) {
+    public synchronized String addBuilderAnnotation(GraphBuilderAnnotation gba) {
         String ret = gba.getMessage();
         if (this.graphBuilderAnnotations != null)
             this.graphBuilderAnnotations.add(gba);
@@ -645,22 +709,40 @@ public class Graph implements Serializable {
 
     public static Graph load(File file, LoadLevel level) throws IOException, ClassNotFoundException {
         LOG.info("Reading graph " + file.getAbsolutePath() + " ...");
-        // cannot use getClassLoader() in static context
-        ObjectInputStream in = new ObjectInputStream(new FileInputStream(file));
-        return load(in, level);
+        try (InputStream is = new FileInputStream(file)) {
+            return load(is, level, new DefaultStreetVertexIndexFactory());
+        }
     }
 
     public static Graph load(ClassLoader classLoader, File file, LoadLevel level)
             throws IOException, ClassNotFoundException {
         LOG.info("Reading graph " + file.getAbsolutePath() + " with alternate classloader ...");
-        ObjectInputStream in = new GraphObjectInputStream(new BufferedInputStream(
-                new FileInputStream(file)), classLoader);
-        return load(in, level);
+        try (InputStream is = new BufferedInputStream(new FileInputStream(file))) {
+            if (CompactGraphFormat.isCompact(is)) {
+                return loadCompact(is, level, new DefaultStreetVertexIndexFactory(), classLoader);
+            }
+            return load(new GraphObjectInputStream(is, classLoader), level);
+        }
     }
 
     public static Graph load(InputStream is, LoadLevel level) throws ClassNotFoundException,
             IOException {
-        return load(new ObjectInputStream(is), level);
+        return load(is, level, new DefaultStreetVertexIndexFactory());
+    }
+
+    /**
+     * Load a graph from a stream in either the compact format written by saveCompact or the Java serialization
+     * format written by save, telling them apart by their first bytes.
+     */
+    public static Graph load(InputStream is, LoadLevel level, StreetVertexIndexFactory indexFactory)
+            throws IOException, ClassNotFoundException {
+        if (!(is instanceof BufferedInputStream)) {
+            is = new BufferedInputStream(is);
+        }
+        if (CompactGraphFormat.isCompact(is)) {
+            return loadCompact(is, level, indexFactory, null);
+        }
+        return load(new ObjectInputStream(is), level, indexFactory);
     }
 
     /**
@@ -749,6 +831,65 @@ public class Graph implements Serializable {
         }
     }
 
+    /**
+     * Read a graph in the compact format written by saveCompact. The stream must be positioned at the magic number.
+     * @param classLoader used to resolve the classes of serialized objects, or null to use the default.
+     */
+    @SuppressWarnings("unchecked")
+    private static Graph loadCompact(InputStream is, LoadLevel level,
+            StreetVertexIndexFactory indexFactory, ClassLoader classLoader) throws IOException,
+            ClassNotFoundException {
+        DataInputStream header = new DataInputStream(is);
+        byte[] magic = new byte[CompactGraphFormat.MAGIC.length];
+        header.readFully(magic);
+        int version = header.readInt();
+        if (version != CompactGraphFormat.VERSION) {
+            LOG.error("Stored graph is in compact format version {}, this version of OTP reads version {}. "
+                    + "Please rebuild it.", version, CompactGraphFormat.VERSION);
+            throw new IllegalStateException("Stored Graph version error");
+        }
+        try {
+            CompactGraphFormat.GraphInputStream in = new CompactGraphFormat.GraphInputStream(is,
+                    classLoader);
+            List<Vertex> vertexList = (List<Vertex>) in.readObject();
+            LOG.debug("Vertices read.");
+            Vertex[] vertexTable = vertexList.toArray(new Vertex[vertexList.size()]);
+            List<StreetEdge> streetEdges = StreetEdgeBlock.read(in, vertexTable);
+            in.setStreetEdges(streetEdges);
+            LOG.debug("Street edges read.");
+            Graph graph = (Graph) in.readObject();
+            LOG.debug("Basic graph info read.");
+            if (graph.graphVersionMismatch())
+                throw new RuntimeException("Graph version mismatch detected.");
+            if (level == LoadLevel.BASIC)
+                return graph;
+            // the remaining edges reconnect themselves to their vertices upon deserialization
+            in.readObject();
+            graph.vertices = new HashMap<String, Vertex>(vertexTable.length);
+            for (Vertex v : vertexTable) {
+                graph.vertices.put(v.getLabel(), v);
+            }
+
+            LOG.info("Main graph read. |V|={} |E|={}", graph.countVertices(), graph.countEdges());
+            graph.index(indexFactory);
+
+            if (level == LoadLevel.FULL) {
+                return graph;
+            }
+
+            if (graph.debugData) {
+                graph.graphBuilderAnnotations = (List<GraphBuilderAnnotation>) in.readObject();
+                LOG.debug("Debug info read.");
+            } else {
+                LOG.warn("Graph file does not contain debug data.");
+            }
+            return graph;
+        } catch (InvalidClassException ex) {
+            LOG.error("Stored graph is incompatible with this version of OTP, please rebuild it.");
+            throw new IllegalStateException("Stored Graph version error", ex);
+        }
+    }
+
     /**
      * Compares the OTP version number stored in the graph with that of the currently running instance. Logs warnings explaining that mismatched
      * versions can cause problems.
@@ -797,6 +938,67 @@ public class Graph implements Serializable {
         }
     }
 
+    /**
+     * Write this graph to the given file in the compact format, which is smaller than the Java serialization format
+     * and much faster to load. See CompactGraphFormat.
+     */
+    public void saveCompact(File file) throws IOException {
+        LOG.info("Main graph size: |V|={} |E|={}", this.countVertices(), this.countEdges());
+        LOG.info("Writing graph " + file.getAbsolutePath() + " in compact format ...");
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(file));
+        try {
+            saveCompact(out);
+            out.close();
+        } catch (RuntimeException e) {
+            out.close();
+            file.delete(); // remove half-written file
+            throw e;
+        }
+    }
+
+    public void saveCompact(OutputStream os) throws IOException {
+        DataOutputStream header = new DataOutputStream(os);
+        header.write(CompactGraphFormat.MAGIC);
+        header.writeInt(CompactGraphFormat.VERSION);
+        header.flush();
+        LOG.debug("Assigning vertex/edge ID numbers...");
+        this.rebuildVertexAndEdgeIndices();
+        List<Vertex> vertexList = new ArrayList<Vertex>(getVertices());
+        TIntIntMap vertexPositions = new TIntIntHashMap(vertexList.size(), 0.5f, -1, -1);
+        for (int i = 0; i < vertexList.size(); i++) {
+            vertexPositions.put(vertexList.get(i).getIndex(), i);
+        }
+        LOG.debug("Sorting edges...");
+        List<StreetEdge> streetEdges = new ArrayList<StreetEdge>();
+        List<Edge> otherEdges = new ArrayList<Edge>();
+        for (Vertex v : vertexList) {
+            // there are assumed to be no edges in an incoming list that are not in an outgoing list
+            for (Edge e : v.getOutgoing()) {
+                if (StreetEdgeBlock.accepts(e) && vertexPositions.containsKey(e.getToVertex().getIndex())) {
+                    streetEdges.add((StreetEdge) e);
+                } else {
+                    otherEdges.add(e);
+                }
+            }
+        }
+        ObjectOutputStream out = new CompactGraphFormat.GraphOutputStream(os, streetEdges);
+        LOG.debug("Writing vertices...");
+        out.writeObject(vertexList);
+        LOG.debug("Writing {} street edges...", streetEdges.size());
+        StreetEdgeBlock.write(streetEdges, vertexPositions, out);
+        LOG.debug("Writing {} other edges...", otherEdges.size());
+        out.writeObject(this);
+        out.writeObject(otherEdges);
+        if (debugData) {
+            LOG.debug("Writing debug data...");
+            out.writeObject(this.graphBuilderAnnotations);
+        } else {
+            LOG.debug("Skipping debug data.");
+        }
+        out.flush();
+        LOG.info("Graph written.");
+    }
+
     public void save(ObjectOutputStream out) throws IOException {
         LOG.debug("Consolidating edges...");
         // this is not space efficient
@@ -970,6 +1172,20 @@ public class Graph implements Serializable {
     	
     	return this.sampleFactory;	
     }
+
+    /** @return the statistics of the searches run on this graph since it was loaded, created on first use. */
+    public SearchMetrics getSearchMetrics() {
+        SearchMetrics metrics = searchMetrics;
+        if (metrics == null) {
+            synchronized (this) {
+                if (searchMetrics == null) {
+                    searchMetrics = new SearchMetrics();
+                }
+                metrics = searchMetrics;
+            }
+        }
+        return metrics;
+    }
     
    
 }
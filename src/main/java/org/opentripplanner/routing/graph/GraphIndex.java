@@ -1,5 +1,6 @@
 package org.opentripplanner.routing.graph;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.BitSet;
 import java.util.Collection;
@@ -23,6 +24,7 @@ import org.opentripplanner.common.model.P2;
 import org.opentripplanner.index.model.StopTimesInPattern;
 import org.opentripplanner.index.model.TripTimeShort;
 import org.opentripplanner.profile.ProfileTransfer;
+import org.opentripplanner.profile.RaptorData;
 import org.opentripplanner.profile.StopCluster;
 import org.opentripplanner.profile.StopNameNormalizer;
 import org.opentripplanner.profile.StopTreeCache;
@@ -99,6 +101,11 @@ public class GraphIndex {
     /** Store distances from each stop to all nearby street intersections. Useful in speeding up analyst requests. */
     private transient StopTreeCache stopTreeCache = null;
 
+    /** Flattened timetables for RAPTOR searches, for the few most recently requested dates. */
+    private transient Map<LocalDate, RaptorData> raptorDataForDate = null;
+
+    private static final int MAX_RAPTOR_DATES = 4;
+
     public GraphIndex (Graph graph) {
         LOG.info("Indexing graph...");
         for (Agency a : graph.getAgencies()) {
@@ -430,16 +437,49 @@ public class GraphIndex {
         return ret;
     }
 
-    /** Fetch a cache of nearby intersection distances for every transit stop in this graph, lazy-building as needed. */
+    /**
+     * Fetch a cache of nearby intersection distances for every transit stop in this graph. It is taken from the
+     * graph builder when the graph was built in this JVM, or mapped from the stop tree file next to the graph on first
+     * use, and only lazy-built when neither is available.
+     */
     public StopTreeCache getStopTreeCache() {
         synchronized (this) {
             if (stopTreeCache == null) {
-                stopTreeCache = new StopTreeCache(graph, 20); // TODO make this max-distance variable
+                stopTreeCache = graph.stopTreeCache;
+            }
+            if (stopTreeCache == null && graph.stopTreeFile != null) {
+                try {
+                    stopTreeCache = StopTreeCache.open(graph.stopTreeFile, graph);
+                    LOG.info("Mapped stop trees from {}", graph.stopTreeFile);
+                } catch (IOException e) {
+                    LOG.warn("Could not map stop tree file {}: {}", graph.stopTreeFile, e);
+                }
+            }
+            if (stopTreeCache == null) {
+                // TODO make this max-distance variable
+                stopTreeCache = StopTreeCache.build(graph, StopTreeCache.DEFAULT_TIME_CUTOFF_MINUTES);
             }
         }
         return stopTreeCache;
     }
 
+    /** Fetch the flattened timetables of the given date for RAPTOR searches, building them as needed. */
+    public synchronized RaptorData getRaptorData(LocalDate date) {
+        if (raptorDataForDate == null) {
+            raptorDataForDate = Maps.newLinkedHashMap();
+        }
+        RaptorData data = raptorDataForDate.remove(date);
+        if (data == null) {
+            data = new RaptorData(graph, date);
+            if (raptorDataForDate.size() >= MAX_RAPTOR_DATES) {
+                // Evict the least recently used date
+                raptorDataForDate.remove(raptorDataForDate.keySet().iterator().next());
+            }
+        }
+        raptorDataForDate.put(date, data);
+        return data;
+    }
+
     /**
      * FIXME OBA parentStation field is a string, not an AgencyAndId, so it has no agency/feed scope
      * But the DC regional graph has no parent stations pre-defined, so no use dealing with them for now.
@@ -30,6 +30,9 @@ import org.opentripplanner.routing.algorithm.strategies.RemainingWeightHeuristic
 import org.opentripplanner.routing.algorithm.strategies.TrivialRemainingWeightHeuristic;
 import org.opentripplanner.routing.automata.DFA;
 import org.opentripplanner.routing.automata.Nonterminal;
+import org.opentripplanner.routing.contraction.ContractionHierarchy;
+import org.opentripplanner.routing.contraction.ContractionHierarchySearch;
+import org.opentripplanner.routing.contraction.ContractionHierarchySet;
 import org.opentripplanner.routing.core.RoutingRequest;
 import org.opentripplanner.routing.core.State;
 import org.opentripplanner.routing.edgetype.*;
@@ -48,10 +51,16 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * This class contains the logic for repeatedly building shortest path trees and accumulating paths through
- * the graph until the requested number of them have been found.
+ * the graph until the requested number of them have been found. If the router has an itinerarySearchExecutor,
+ * the searches after the first one are run concurrently.
  * It is used in point-to-point (i.e. not one-to-many / analyst) routing.
  *
  * Its exact behavior will depend on whether the routing request allows transit.
@@ -75,9 +84,17 @@ public class GraphPathFinder {
     private static final Logger LOG = LoggerFactory.getLogger(GraphPathFinder.class);
     private static final double DEFAULT_MAX_WALK = 2000;
     private static final double CLAMP_MAX_WALK = 15000;
+    /** Time shift in seconds between successive alternative searches when they are run in parallel. */
+    private static final long PARALLEL_TIME_OFFSET = 10 * 60;
 
     Router router;
 
+    /**
+     * The time after which no search for this request should still be running, in milliseconds since the epoch, on
+     * top of the router timeouts. Zero means no limit. It is copied into the routing context of every search.
+     */
+    public long searchAbortTime = 0;
+
     public GraphPathFinder(Router router) {
         this.router = router;
     }
@@ -104,6 +121,9 @@ public class GraphPathFinder {
             /* Use a pathparser that constrains the search to use SimpleTransfers. */
             options.rctx.pathParsers = new PathParser[] { new Parser() };
         }
+        if (searchAbortTime > 0) {
+            options.rctx.searchAbortTime = searchAbortTime;
+        }
         // If this Router has a GraphVisualizer attached to it, set it as a callback for the AStar search
         if (router.graphVisualizer != null) {
             aStar.setTraverseVisitor(router.graphVisualizer.traverseVisitor);
@@ -117,18 +137,7 @@ public class GraphPathFinder {
         options.dominanceFunction = new DominanceFunction.MinimumWeight(); // FORCING the dominance function to weight only
         LOG.debug("rreq={}", options);
 
-        RemainingWeightHeuristic heuristic;
-        if (options.disableRemainingWeightHeuristic) {
-            heuristic = new TrivialRemainingWeightHeuristic();
-        } else if (options.modes.isTransit()) {
-           // Only use the BiDi heuristic for transit.
-            heuristic = new InterleavedBidirectionalHeuristic(options.rctx.graph);
-        } else {
-            heuristic = new EuclideanRemainingWeightHeuristic();
-        }
-        // heuristic = new TrivialRemainingWeightHeuristic(); // DEBUG
-
-        options.rctx.remainingWeightHeuristic = heuristic;
+        options.rctx.remainingWeightHeuristic = makeHeuristic(options);
         /* In RoutingRequest, maxTransfers defaults to 2. Over long distances, we may see 
          * itineraries with far more transfers. We do not expect transfer limiting to improve
          * search times on the LongDistancePathService, so we set it to the maximum we ever expect
@@ -143,6 +152,12 @@ public class GraphPathFinder {
          * the whole graph walkable. */
         if (options.maxWalkDistance == Double.MAX_VALUE) options.maxWalkDistance = DEFAULT_MAX_WALK;
         if (options.maxWalkDistance > CLAMP_MAX_WALK) options.maxWalkDistance = CLAMP_MAX_WALK;
+        if (!options.modes.isTransit()) {
+            GraphPath path = getContractedPath(options);
+            if (path != null) {
+                return Lists.newArrayList(path);
+            }
+        }
         long searchBeginTime = System.currentTimeMillis();
         LOG.debug("BEGIN SEARCH");
         List<GraphPath> paths = Lists.newArrayList();
@@ -183,12 +198,137 @@ public class GraphPathFinder {
             }
             paths.addAll(newPaths);
             LOG.debug("we have {} paths", paths.size());
+            if (router.itinerarySearchExecutor != null && paths.size() < options.numItineraries) {
+                // Find all remaining itineraries at once rather than one after another.
+                paths.addAll(getAlternativePathsInParallel(options, paths, searchBeginTime));
+                break;
+            }
         }
         LOG.debug("END SEARCH ({} msec)", System.currentTimeMillis() - searchBeginTime);
         Collections.sort(paths, new PathWeightComparator());
         return paths;
     }
 
+    /**
+     * Find a street path with a contraction hierarchy, if one was built for the profile of the request.
+     * @return the path, or null if there is no hierarchy for the request or it did not find a usable path, in which
+     *         case the usual search should be run.
+     */
+    private static GraphPath getContractedPath(RoutingRequest options) {
+        ContractionHierarchySet hierarchies = options.rctx.graph.getService(ContractionHierarchySet.class);
+        if (hierarchies == null) {
+            return null;
+        }
+        ContractionHierarchy ch = hierarchies.forRequest(options);
+        if (ch == null) {
+            return null;
+        }
+        return new ContractionHierarchySearch(ch).getPath(options);
+    }
+
+    private static RemainingWeightHeuristic makeHeuristic(RoutingRequest options) {
+        RemainingWeightHeuristic heuristic;
+        if (options.disableRemainingWeightHeuristic) {
+            heuristic = new TrivialRemainingWeightHeuristic();
+        } else if (options.modes.isTransit()) {
+           // Only use the BiDi heuristic for transit.
+            heuristic = new InterleavedBidirectionalHeuristic(options.rctx.graph);
+        } else {
+            heuristic = new EuclideanRemainingWeightHeuristic();
+        }
+        // heuristic = new TrivialRemainingWeightHeuristic(); // DEBUG
+        return heuristic;
+    }
+
+    /**
+     * Search for all remaining itineraries concurrently on the router's executor, once the first search has found
+     * some paths. Every search bans the trips used in the paths found so far, as the next sequential search would.
+     * To make them find different itineraries from one another, the Nth search departs (or arrives, in arriveBy
+     * searches) N-1 times PARALLEL_TIME_OFFSET later (or earlier). Since they all run at the same time, every search
+     * is given the timeout that the sequential search would have for the second itinerary.
+     *
+     * @return the new paths that were found, without duplicates of each other or of the existing paths.
+     */
+    private List<GraphPath> getAlternativePathsInParallel(final RoutingRequest options, List<GraphPath> existingPaths,
+            long searchBeginTime) {
+        int nSearches = options.numItineraries - existingPaths.size();
+        int timeoutIndex = Math.min(existingPaths.size(), router.timeouts.length - 1);
+        long abortTime = searchBeginTime + (long) (router.timeouts[timeoutIndex] * 1000);
+        List<Future<List<GraphPath>>> futures = Lists.newArrayList();
+        List<RoutingRequest> branches = Lists.newArrayList();
+        for (int i = 0; i < nSearches; i++) {
+            final RoutingRequest branch = options.clone();
+            long offset = i * PARALLEL_TIME_OFFSET;
+            branch.dateTime += options.arriveBy ? -offset : offset;
+            branch.rctx = options.rctx.cloneForConcurrentSearch(branch);
+            branch.rctx.remainingWeightHeuristic = makeHeuristic(branch);
+            final double timeout = (abortTime - System.currentTimeMillis()) / 1000.0;
+            if (timeout <= 0) {
+                break;
+            }
+            branches.add(branch);
+            futures.add(router.itinerarySearchExecutor.submit(new Callable<List<GraphPath>>() {
+                @Override
+                public List<GraphPath> call() {
+                    ShortestPathTree spt = new AStar().getShortestPathTree(branch, timeout);
+                    if (spt == null) {
+                        return Collections.emptyList();
+                    }
+                    return spt.getPaths();
+                }
+            }));
+        }
+        // Keep the paths in the order of the searches that found them so the result does not depend on scheduling.
+        Set<List<Object>> seen = Sets.newHashSet();
+        for (GraphPath path : existingPaths) {
+            seen.add(pathKey(path));
+        }
+        List<GraphPath> newPaths = Lists.newArrayList();
+        for (int i = 0; i < futures.size(); i++) {
+            Future<List<GraphPath>> future = futures.get(i);
+            try {
+                long wait = Math.max(0, abortTime - System.currentTimeMillis());
+                for (GraphPath path : future.get(wait, TimeUnit.MILLISECONDS)) {
+                    if (seen.add(pathKey(path))) {
+                        newPaths.add(path);
+                    }
+                }
+                if (branches.get(i).rctx.aborted) {
+                    options.rctx.debugOutput.timedOut = true;
+                }
+            } catch (TimeoutException e) {
+                // The search will notice it has passed its own abort time and stop.
+                future.cancel(true);
+                options.rctx.debugOutput.timedOut = true;
+            } catch (InterruptedException e) {
+                future.cancel(true);
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                LOG.warn("Alternative itinerary search failed.", e.getCause());
+            }
+        }
+        Collections.sort(newPaths, new PathWeightComparator());
+        if (newPaths.size() > nSearches) {
+            newPaths = newPaths.subList(0, nSearches);
+        }
+        LOG.debug("found {} alternative paths in parallel", newPaths.size());
+        return newPaths;
+    }
+
+    /** Two paths are considered the same itinerary if they start and end at the same times using the same trips. */
+    private static List<Object> pathKey(GraphPath path) {
+        List<Object> key = Lists.newArrayList();
+        key.add(path.getStartTime());
+        key.add(path.getEndTime());
+        for (State state : path.states) {
+            AgencyAndId tripId = state.getTripId();
+            if (tripId != null && !tripId.equals(key.get(key.size() - 1))) {
+                key.add(tripId);
+            }
+        }
+        return key;
+    }
+
     /* TODO eliminate the need for pathparsers. They are theoretically efficient but arcane and problematic. */
 
     public static class Parser extends PathParser {
@@ -13,6 +13,7 @@
 
 package org.opentripplanner.routing.impl;
 
+import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
@@ -24,6 +25,7 @@ import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.MissingNode;
+import org.opentripplanner.profile.StopTreeCache;
 import org.opentripplanner.routing.graph.Graph;
 import org.opentripplanner.routing.graph.Graph.LoadLevel;
 import org.opentripplanner.routing.services.GraphSource;
@@ -61,6 +63,9 @@ public class InputStreamGraphSource implements GraphSource {
 
     private LoadLevel loadLevel;
 
+    /** If false, only graphs saved with Java serialization are accepted, see FileFactory.compactGraphFormat. */
+    private boolean compactGraphFormat = true;
+
     private Object preEvictMutex = new Boolean(false);
 
     /**
@@ -211,8 +216,12 @@ public class InputStreamGraphSource implements GraphSource {
         try (InputStream is = streams.getGraphInputStream()) {
             LOG.info("Loading graph...");
             try {
-                newGraph = Graph.load(new ObjectInputStream(is), loadLevel,
-                        streetVertexIndexFactory);
+                if (compactGraphFormat) {
+                    newGraph = Graph.load(is, loadLevel, streetVertexIndexFactory);
+                } else {
+                    newGraph = Graph.load(new ObjectInputStream(new BufferedInputStream(is)),
+                            loadLevel, streetVertexIndexFactory);
+                }
             } catch (Exception ex) {
                 LOG.error("Exception while loading graph '{}'.", routerId);
                 ex.printStackTrace();
@@ -225,6 +234,12 @@ public class InputStreamGraphSource implements GraphSource {
             return null;
         }
 
+        File stopTreeFile = streams.getStopTreeFile();
+        if (stopTreeFile != null && stopTreeFile.canRead()) {
+            // Mapped by GraphIndex the first time the stop trees are needed, as most routers never use them.
+            newGraph.stopTreeFile = stopTreeFile;
+        }
+
         // Decorate the graph TODO how are we "decorating" it? This appears to refer to loading its configuration.
         // Even if a config file is not present on disk one could be bundled inside.
         try (InputStream is = streams.getConfigInputStream()) {
@@ -258,6 +273,9 @@ public class InputStreamGraphSource implements GraphSource {
         public abstract InputStream getConfigInputStream() throws IOException;
 
         public abstract long getLastModified();
+
+        /** @return the stop tree file to map alongside the graph, or null if there cannot be one. */
+        public abstract File getStopTreeFile();
     }
 
     private static class FileStreams implements Streams {
@@ -291,6 +309,11 @@ public class InputStreamGraphSource implements GraphSource {
             // Note: this returns 0L if the file does not exists
             return new File(path, GRAPH_FILENAME).lastModified();
         }
+
+        @Override
+        public File getStopTreeFile() {
+            return new File(path, StopTreeCache.FILENAME);
+        }
     }
 
     private static class ClasspathStreams implements Streams {
@@ -325,6 +348,12 @@ public class InputStreamGraphSource implements GraphSource {
         public long getLastModified() {
             return 0L;
         }
+
+        /** Classpath resources cannot be memory-mapped. */
+        @Override
+        public File getStopTreeFile() {
+            return null;
+        }
     }
 
     /**
@@ -338,14 +367,22 @@ public class InputStreamGraphSource implements GraphSource {
 
         public LoadLevel loadLevel = LoadLevel.FULL;
 
+        /**
+         * Whether to use the fast loader for graphs saved in the compact format (see Graph.saveCompact). The format
+         * of each graph file is detected from its first bytes. If false, all graphs are read with Java serialization.
+         */
+        public boolean compactGraphFormat = true;
+
         public FileFactory(File basePath) {
             this.basePath = basePath;
         }
 
         @Override
         public GraphSource createGraphSource(String routerId) {
-            return InputStreamGraphSource.newFileGraphSource(routerId, getBasePath(routerId),
-                    loadLevel);
+            InputStreamGraphSource graphSource = InputStreamGraphSource.newFileGraphSource(routerId,
+                    getBasePath(routerId), loadLevel);
+            graphSource.compactGraphFormat = compactGraphFormat;
+            return graphSource;
         }
 
         @Override
@@ -3,7 +3,6 @@ package org.opentripplanner.routing.spt;
 import org.opentripplanner.routing.core.RoutingRequest;
 import org.opentripplanner.routing.core.State;
 import org.opentripplanner.routing.edgetype.StreetEdge;
-import org.opentripplanner.routing.graph.Graph;
 
 /**
  * A class that determines when one search branch prunes another at the same Vertex, and ultimately which solutions
@@ -40,7 +39,7 @@ public abstract class DominanceFunction {
         
         // Are the two states arriving at a vertex from two different directions where turn restrictions apply?
         if (a.backEdge != b.getBackEdge() && (a.backEdge instanceof StreetEdge)) {
-            if (! a.getOptions().getRoutingContext().graph.getTurnRestrictions(a.backEdge).isEmpty()) {
+            if (((StreetEdge) a.backEdge).hasTurnRestrictions()) {
                 return false;
             }
         }
@@ -53,8 +52,12 @@ public abstract class DominanceFunction {
     /**
      * Create a new shortest path tree using this function, considering whether it allows co-dominant States.
      * MultiShortestPathTree is the general case -- it will work with both single- and multi-state functions.
+     * Requests for searches that will reach a large part of the graph can ask for an IndexedShortestPathTree instead.
      */
      public ShortestPathTree getNewShortestPathTree(RoutingRequest routingRequest) {
+        if (routingRequest.indexedShortestPathTree) {
+            return new IndexedShortestPathTree(routingRequest, this);
+        }
         return new ShortestPathTree(routingRequest, this);
      }
 
@@ -96,9 +99,8 @@ public abstract class DominanceFunction {
             if (a.isBikeParked() != b.isBikeParked())
                 return false;
 
-            Graph graph = a.getOptions().rctx.graph;
             if (a.backEdge != b.getBackEdge() && ((a.backEdge instanceof StreetEdge)
-                    && (!graph.getTurnRestrictions(a.backEdge).isEmpty())))
+                    && ((StreetEdge) a.backEdge).hasTurnRestrictions()))
                 return false;
 
             if (a.routeSequenceSubset(b)) {
@@ -0,0 +1,283 @@
+/* This program is free software: you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public License
+as published by the Free Software Foundation, either version 3 of
+the License, or (at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.routing.spt;
+
+import gnu.trove.iterator.TIntObjectIterator;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.hash.TIntObjectHashMap;
+import org.opentripplanner.routing.core.RoutingRequest;
+import org.opentripplanner.routing.core.State;
+import org.opentripplanner.routing.graph.Vertex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A ShortestPathTree that stores states in flat arrays addressed by Vertex.getIndex() rather than in a map keyed on
+ * the Vertex objects themselves. This avoids hashing a Vertex and allocating a List for every vertex reached, which
+ * dominates both CPU and GC time when building very large trees (analyst one-to-many searches, long walk searches).
+ *
+ * Most vertices only ever hold a single state, which is kept directly in the states array. When a second co-dominant
+ * state appears at a vertex (bike rental, car parking, turn restrictions, Pareto searches) all the states for that
+ * vertex are moved to a small overflow map keyed on the vertex index.
+ *
+ * The arrays are sized according to Vertex.getMaxIndex() when the tree is created, so this implementation costs a
+ * fixed amount of memory proportional to the number of vertices in the graph. It is therefore only worthwhile for
+ * searches that are expected to reach a large part of the graph, and is selected by the DominanceFunction when the
+ * RoutingRequest sets indexedShortestPathTree. The arrays are held in a Storage, which a search can take from a pool
+ * and which is handed back to that pool, cleared, when the tree is released.
+ */
+public class IndexedShortestPathTree extends ShortestPathTree {
+
+    private static final Logger LOG = LoggerFactory.getLogger(IndexedShortestPathTree.class);
+
+    /**
+     * The arrays of an IndexedShortestPathTree. They can be reused by one tree after another, and are cleared in time
+     * proportional to the number of vertices the last tree reached rather than to the size of the graph.
+     */
+    public static class Storage {
+
+        /** The single state at each vertex, or null if the vertex has no states or has several states. */
+        private State[] states;
+
+        /** The vertices that have been reached, by index. */
+        private final BitSet reached = new BitSet();
+
+        /** Lists of co-dominant states for the (few) vertices that hold more than one state, keyed on vertex index. */
+        private final TIntObjectHashMap<List<State>> multiStates = new TIntObjectHashMap<List<State>>();
+
+        /** The indexes of all vertices that have been reached, in the order they were first reached. */
+        private final TIntArrayList reachedVertices = new TIntArrayList();
+
+        public Storage(int capacity) {
+            states = new State[capacity];
+        }
+
+        /** @return the number of vertices this storage can hold states for without growing. */
+        public int getCapacity() {
+            return states.length;
+        }
+
+        private void ensureCapacity(int capacity) {
+            if (capacity > states.length) {
+                // Vertices (usually temporary ones) were created after this storage. Grow the array as VertexMap does.
+                states = Arrays.copyOf(states, Math.max(capacity, (int) (states.length * 1.5)));
+            }
+        }
+
+        /** Remove all states, touching only the vertices that were reached. */
+        private void clear() {
+            for (int i = 0; i < reachedVertices.size(); i++) {
+                int index = reachedVertices.get(i);
+                states[index] = null;
+                reached.clear(index);
+            }
+            reachedVertices.resetQuick();
+            multiStates.clear();
+        }
+    }
+
+    private Storage storage;
+
+    /** The pool to hand the storage back to when this tree is released, or null if it is not reused. */
+    private final AtomicReference<Storage> pool;
+
+    public IndexedShortestPathTree (RoutingRequest options, DominanceFunction dominanceFunction) {
+        this(options, dominanceFunction, new Storage(Vertex.getMaxIndex()), null);
+    }
+
+    /**
+     * @param storage empty storage for the states of this tree.
+     * @param pool where to put the storage when this tree is released, or null to let it be garbage collected.
+     */
+    public IndexedShortestPathTree (RoutingRequest options, DominanceFunction dominanceFunction, Storage storage,
+            AtomicReference<Storage> pool) {
+        super(options, dominanceFunction);
+        storage.ensureCapacity(Vertex.getMaxIndex());
+        this.storage = storage;
+        this.pool = pool;
+    }
+
+    @Override
+    public boolean add(State newState) {
+        int index = newState.getVertex().getIndex();
+        storage.ensureCapacity(index + 1);
+        State[] states = storage.states;
+        State oldState = states[index];
+        if (oldState == null) {
+            if (!storage.reached.get(index)) {
+                // this is the first state at this vertex
+                states[index] = newState;
+                storage.reached.set(index);
+                storage.reachedVertices.add(index);
+                return true;
+            }
+            return addToList(storage.multiStates.get(index), newState);
+        }
+        // There is exactly one state at this vertex. Order is important, because in the case of a tie we want to
+        // reject the new state.
+        if (dominanceFunction.dominates(oldState, newState)) {
+            return false;
+        }
+        if (dominanceFunction.dominates(newState, oldState)) {
+            states[index] = newState;
+            return true;
+        }
+        // the states are co-dominant, move this vertex to the overflow map
+        List<State> stateList = new ArrayList<State>(2);
+        stateList.add(oldState);
+        stateList.add(newState);
+        states[index] = null;
+        storage.multiStates.put(index, stateList);
+        return true;
+    }
+
+    /** Same logic as the general ShortestPathTree, applied to the states at a multi-state vertex. */
+    private boolean addToList(List<State> stateList, State newState) {
+        Iterator<State> it = stateList.iterator();
+        while (it.hasNext()) {
+            State oldState = it.next();
+            if (dominanceFunction.dominates(oldState, newState))
+                return false;
+            if (dominanceFunction.dominates(newState, oldState))
+                it.remove();
+        }
+        stateList.add(newState);
+        return true;
+    }
+
+    @Override
+    public State getState(Vertex dest) {
+        int index = dest.getIndex();
+        if (!storage.reached.get(index)) {
+            return null;
+        }
+        State s = storage.states[index];
+        if (s != null) {
+            return (s.isFinal() && s.allPathParsersAccept()) ? s : null;
+        }
+        State ret = null;
+        for (State multiState : storage.multiStates.get(index)) {
+            if ((ret == null || multiState.weight < ret.weight) && multiState.isFinal()
+                    && multiState.allPathParsersAccept()) {
+                ret = multiState;
+            }
+        }
+        return ret;
+    }
+
+    @Override
+    public List<State> getStates(Vertex dest) {
+        int index = dest.getIndex();
+        if (!storage.reached.get(index)) {
+            return null;
+        }
+        State s = storage.states[index];
+        if (s != null) {
+            return Collections.singletonList(s);
+        }
+        return storage.multiStates.get(index);
+    }
+
+    @Override
+    public boolean visit(State state) {
+        int index = state.getVertex().getIndex();
+        if (!storage.reached.get(index)) {
+            return false;
+        }
+        State s = storage.states[index];
+        if (s != null) {
+            return s == state;
+        }
+        for (State multiState : storage.multiStates.get(index)) {
+            if (multiState == state) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public Set<Vertex> getVertices() {
+        TIntArrayList reachedVertices = storage.reachedVertices;
+        Set<Vertex> vertices = Collections.newSetFromMap(new IdentityHashMap<Vertex, Boolean>(reachedVertices.size()));
+        for (int i = 0; i < reachedVertices.size(); i++) {
+            int index = reachedVertices.get(i);
+            State s = storage.states[index];
+            if (s == null) {
+                s = storage.multiStates.get(index).get(0);
+            }
+            vertices.add(s.getVertex());
+        }
+        return vertices;
+    }
+
+    @Override
+    public int getVertexCount() {
+        return storage.reachedVertices.size();
+    }
+
+    @Override
+    public Collection<State> getAllStates() {
+        TIntArrayList reachedVertices = storage.reachedVertices;
+        ArrayList<State> allStates = new ArrayList<State>(reachedVertices.size());
+        for (int i = 0; i < reachedVertices.size(); i++) {
+            State s = storage.states[reachedVertices.get(i)];
+            if (s != null) {
+                allStates.add(s);
+            }
+        }
+        for (List<State> stateList : storage.multiStates.valueCollection()) {
+            allStates.addAll(stateList);
+        }
+        return allStates;
+    }
+
+    /** Clear the storage of this tree and hand it back to the pool it came from, if any. */
+    @Override
+    public void release() {
+        if (storage != null && pool != null) {
+            storage.clear();
+            pool.set(storage);
+        }
+        storage = null;
+    }
+
+    @Override
+    public void dump() {
+        TIntArrayList reachedVertices = storage.reachedVertices;
+        TIntObjectHashMap<List<State>> multiStates = storage.multiStates;
+        int statesCount = reachedVertices.size() - multiStates.size();
+        int maxSize = statesCount > 0 ? 1 : 0;
+        for (TIntObjectIterator<List<State>> it = multiStates.iterator(); it.hasNext(); ) {
+            it.advance();
+            int size = it.value().size();
+            statesCount += size;
+            if (size > maxSize) {
+                maxSize = size;
+            }
+        }
+        LOG.info("SPT: vertices: " + reachedVertices.size() + " states: total: "
+                + statesCount + " per vertex max: " + maxSize + " avg: "
+                + (statesCount * 1.0 / reachedVertices.size()) + " multi-state vertices: " + multiStates.size());
+    }
+
+    @Override
+    public String toString() {
+        return "IndexedSPT(" + storage.reachedVertices.size() + " vertices)";
+    }
+
+}
@@ -18,6 +18,7 @@ import java.util.HashSet;
 import java.util.Set;
 
 import org.opentripplanner.common.geometry.SphericalDistanceLibrary;
+import org.opentripplanner.routing.core.RoutingContext;
 import org.opentripplanner.routing.core.State;
 import org.opentripplanner.routing.core.TraverseMode;
 import org.opentripplanner.routing.edgetype.StreetEdge;
@@ -83,7 +84,9 @@ public class SPTWalker {
             State s0 = spt.getState(v);
             if (s0 == null || !s0.isFinal())
                 continue;
-            for (Edge e : s0.getVertex().getIncoming()) {
+            RoutingContext rctx = s0.getOptions().rctx;
+            Collection<Edge> incoming = rctx == null ? v.getIncoming() : rctx.getIncomingEdges(v);
+            for (Edge e : incoming) {
                 // Take only street
                 if (e != null && visitor.accept(e)) {
                     State s1 = spt.getState(e.getFromVertex());
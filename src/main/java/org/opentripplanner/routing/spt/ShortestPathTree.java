@@ -232,6 +232,13 @@ public class ShortestPathTree {
         return allStates;
     }
 
+    /**
+     * Signal that this tree is no longer needed, so that any storage it took from a pool can be reused by later
+     * searches. The tree must not be used afterwards. Trees that are never released are simply garbage collected.
+     */
+    public void release() {
+    }
+
     public String toString() {
         return "MultiSPT(" + this.stateSets.size() + " vertices)";
     }
@@ -0,0 +1,149 @@
+package org.opentripplanner.standalone;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.ws.rs.container.ContainerRequestContext;
+
+/**
+ * Limits how many expensive requests of each kind are computed at once, and turns away the ones that could not be
+ * answered in time anyway. OTP is CPU-bound: once every core is busy, accepting more searches only makes all of them
+ * slower, until they all run into their timeouts and nobody gets an answer. Instead, each kind of endpoint has a number
+ * of requests that may run concurrently and a bounded number that may wait for them, in arrival order. A request that
+ * cannot start before its deadline, or is expected not to, is rejected straight away so the client can retry or go
+ * elsewhere, and an admitted request carries its deadline down into the searches it runs.
+ *
+ * Endpoints are put under admission control with the Admitted annotation, see AdmissionFilter.
+ */
+public class AdmissionControl {
+
+    /** The request property holding the deadline of an admitted request, in milliseconds since the epoch. */
+    public static final String DEADLINE_PROPERTY = "org.opentripplanner.admission.deadline";
+
+    /** The kinds of endpoints, which have separate limits since their costs differ by orders of magnitude. */
+    public enum Endpoint {
+
+        /** Point to point trip planning. */
+        PLAN(10, 1),
+
+        /** Profile routing, including profile analyst requests. */
+        PROFILE(30, 0.5),
+
+        /** One-to-many searches producing surfaces, isochrones, tiles and rasters. */
+        ANALYST(60, 0.5);
+
+        /**
+         * The time a client can be expected to wait for a response, including the time waiting for admission, unless
+         * the router config sets another one in "admissionDeadlines", see Router.
+         */
+        public final int defaultDeadlineSeconds;
+
+        /** The fraction of the concurrent request limit these requests may use. */
+        final double share;
+
+        private Endpoint(int defaultDeadlineSeconds, double share) {
+            this.defaultDeadlineSeconds = defaultDeadlineSeconds;
+            this.share = share;
+        }
+
+    }
+
+    private final Map<Endpoint, Limiter> limiters = new EnumMap<Endpoint, Limiter>(Endpoint.class);
+
+    /**
+     * @param maxConcurrent the number of plan requests that may be computed at once. Other kinds of endpoints get
+     *                      their share of it, and at least one.
+     * @param maxQueued the number of requests of each kind that may wait for admission.
+     */
+    public AdmissionControl(int maxConcurrent, int maxQueued) {
+        for (Endpoint endpoint : Endpoint.values()) {
+            int concurrent = Math.max(1, (int) Math.round(maxConcurrent * endpoint.share));
+            limiters.put(endpoint, new Limiter(concurrent, maxQueued));
+        }
+    }
+
+    /**
+     * Wait for the given kind of endpoint to have room for one more request. The wait ends at the deadline, or
+     * immediately when too many requests are already waiting or they are not expected to be served in time.
+     * A successful call must be followed by a call to release().
+     *
+     * @param deadline the time by which the response should be complete, in milliseconds since the epoch.
+     * @return whether the request was admitted.
+     */
+    public boolean admit(Endpoint endpoint, long deadline) throws InterruptedException {
+        Limiter limiter = limiters.get(endpoint);
+        // Unlike the untimed tryAcquire, this does not jump ahead of the requests already waiting.
+        if (limiter.permits.tryAcquire(0, TimeUnit.MILLISECONDS)) {
+            return true;
+        }
+        int waiting = limiter.queued.incrementAndGet();
+        try {
+            if (waiting > limiter.maxQueued) {
+                return false;
+            }
+            long remaining = deadline - System.currentTimeMillis();
+            // The requests ahead of this one are served maxConcurrent at a time.
+            if (limiter.permits.availablePermits() == 0
+                    && waiting * limiter.meanServiceTime / limiter.maxConcurrent >= remaining) {
+                return false;
+            }
+            return limiter.permits.tryAcquire(remaining, TimeUnit.MILLISECONDS);
+        } finally {
+            limiter.queued.decrementAndGet();
+        }
+    }
+
+    /**
+     * Make room for another request of the given kind of endpoint.
+     * @param serviceTime the time the request took once admitted, in milliseconds.
+     */
+    public void release(Endpoint endpoint, long serviceTime) {
+        Limiter limiter = limiters.get(endpoint);
+        limiter.meanServiceTime += (serviceTime - limiter.meanServiceTime) / 8;
+        limiter.permits.release();
+    }
+
+    /** @return the largest number of requests that can be running or waiting for admission at the same time. */
+    public int getMaxAdmitted() {
+        int total = 0;
+        for (Limiter limiter : limiters.values()) {
+            total += limiter.maxConcurrent + limiter.maxQueued;
+        }
+        return total;
+    }
+
+    /** @return the deadline of an admitted request in milliseconds since the epoch, or 0 if it has none. */
+    public static long getDeadline(ContainerRequestContext requestContext) {
+        Long deadline = (Long) requestContext.getProperty(DEADLINE_PROPERTY);
+        return deadline == null ? 0 : deadline;
+    }
+
+    private static class Limiter {
+
+        final int maxConcurrent;
+
+        final int maxQueued;
+
+        /** Fair, so that waiting requests are admitted in arrival order. */
+        final Semaphore permits;
+
+        final AtomicInteger queued = new AtomicInteger();
+
+        /**
+         * A moving average of the time taken by admitted requests, in milliseconds. It is updated without locking, so
+         * concurrent updates can be lost, which does not matter for an estimate.
+         */
+        volatile long meanServiceTime = 0;
+
+        Limiter(int maxConcurrent, int maxQueued) {
+            this.maxConcurrent = maxConcurrent;
+            this.maxQueued = maxQueued;
+            this.permits = new Semaphore(maxConcurrent, true);
+        }
+
+    }
+
+}
@@ -0,0 +1,122 @@
+package org.opentripplanner.standalone;
+
+import java.io.IOException;
+
+import javax.annotation.Priority;
+import javax.ws.rs.Priorities;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.container.ContainerResponseFilter;
+import javax.ws.rs.container.ResourceInfo;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.ext.WriterInterceptor;
+import javax.ws.rs.ext.WriterInterceptorContext;
+
+import org.opentripplanner.routing.error.GraphNotFoundException;
+
+/**
+ * Applies the server's AdmissionControl to the resources annotated with Admitted. The request filter waits until the
+ * request is admitted, or answers 503 Service Unavailable at once if it is not, and records its deadline as a request
+ * property that resources pass on to their searches. The request keeps its place until its response has been written,
+ * since resources returning a StreamingOutput still do most of their work while the entity is written.
+ *
+ * This runs after authentication, so requests that are refused anyway do not take a place in the queue.
+ */
+@Priority(Priorities.USER)
+public class AdmissionFilter implements ContainerRequestFilter, ContainerResponseFilter, WriterInterceptor {
+
+    private static final String ENDPOINT_PROPERTY = "org.opentripplanner.admission.endpoint";
+
+    private static final String ADMITTED_AT_PROPERTY = "org.opentripplanner.admission.admittedAt";
+
+    /** Suggested delay before retrying a rejected request, in seconds. */
+    private static final int RETRY_AFTER_SECONDS = 1;
+
+    @Context
+    private ResourceInfo resourceInfo;
+
+    @Context
+    private OTPServer otpServer;
+
+    @Override
+    public void filter(ContainerRequestContext requestContext) throws IOException {
+        Admitted admitted = resourceInfo.getResourceMethod().getAnnotation(Admitted.class);
+        if (admitted == null) {
+            admitted = resourceInfo.getResourceClass().getAnnotation(Admitted.class);
+        }
+        if (admitted == null) {
+            return;
+        }
+        AdmissionControl.Endpoint endpoint = admitted.value();
+        long deadline = System.currentTimeMillis() + getDeadlineSeconds(requestContext, endpoint) * 1000L;
+        boolean admittedInTime;
+        try {
+            admittedInTime = otpServer.admissionControl.admit(endpoint, deadline);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            admittedInTime = false;
+        }
+        if (!admittedInTime) {
+            requestContext.abortWith(Response.status(Response.Status.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, RETRY_AFTER_SECONDS)
+                    .entity("OpenTripPlanner is too busy to answer this request in time. Please try again later.")
+                    .type(MediaType.TEXT_PLAIN)
+                    .build());
+            return;
+        }
+        requestContext.setProperty(ENDPOINT_PROPERTY, endpoint);
+        requestContext.setProperty(ADMITTED_AT_PROPERTY, System.currentTimeMillis());
+        requestContext.setProperty(AdmissionControl.DEADLINE_PROPERTY, deadline);
+    }
+
+    /**
+     * Release the place of an admitted request without a response entity. Exceptions thrown by resources are turned
+     * into responses by OTPExceptionMapper, so this runs for failed requests as well.
+     */
+    @Override
+    public void filter(ContainerRequestContext request, ContainerResponseContext response) throws IOException {
+        if (!response.hasEntity()) {
+            release(request.getProperty(ENDPOINT_PROPERTY), request.getProperty(ADMITTED_AT_PROPERTY));
+            request.removeProperty(ENDPOINT_PROPERTY);
+        }
+    }
+
+    /** Release the place of an admitted request once its response entity has been written, or failed to be. */
+    @Override
+    public void aroundWriteTo(WriterInterceptorContext context) throws IOException {
+        try {
+            context.proceed();
+        } finally {
+            release(context.getProperty(ENDPOINT_PROPERTY), context.getProperty(ADMITTED_AT_PROPERTY));
+            context.removeProperty(ENDPOINT_PROPERTY);
+        }
+    }
+
+    /**
+     * @return the deadline of the given kind of endpoint configured for the router of the request, or its default
+     *         when the request does not name a router.
+     */
+    private int getDeadlineSeconds(ContainerRequestContext requestContext, AdmissionControl.Endpoint endpoint) {
+        String routerId = requestContext.getUriInfo().getPathParameters().getFirst("routerId");
+        if (routerId != null) {
+            try {
+                return otpServer.getRouter(routerId).admissionDeadlines.get(endpoint);
+            } catch (GraphNotFoundException e) {
+                // The resource itself reports the missing router.
+            }
+        }
+        return endpoint.defaultDeadlineSeconds;
+    }
+
+    private void release(Object endpoint, Object admittedAt) {
+        if (endpoint != null) {
+            otpServer.admissionControl.release((AdmissionControl.Endpoint) endpoint,
+                    System.currentTimeMillis() - (Long) admittedAt);
+        }
+    }
+
+}
@@ -0,0 +1,18 @@
+package org.opentripplanner.standalone;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Puts a web resource class or method under admission control as the given kind of endpoint, see AdmissionControl.
+ * An annotation on a method takes precedence over one on its class.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.TYPE, ElementType.METHOD})
+public @interface Admitted {
+
+    AdmissionControl.Endpoint value();
+
+}
@@ -70,6 +70,10 @@ public class CommandLineParameters implements Cloneable {
             description = "Pass the graph to the server in-memory after building it, and saving to disk.")
     public boolean preFlight;
 
+    @Parameter(names = {"--compactGraph"},
+            description = "Save the graph in the compact binary format, which is smaller and faster to load.")
+    public boolean compactGraph;
+
     /* Options for the server sub-task. */
 
     @Parameter(names = {"--analyst"},
@@ -123,6 +127,14 @@ public class CommandLineParameters implements Cloneable {
             description = "Files for graph build.")
     public List<File> files = new ArrayList<File>();
 
+    @Parameter(names = {"--maxConcurrentRequests"},
+            description = "Number of trip planning requests computed at once. Analyst requests get half as many.")
+    public int maxConcurrentRequests = Runtime.getRuntime().availableProcessors();
+
+    @Parameter(names = {"--maxQueuedRequests"},
+            description = "Number of requests of each kind that may wait to be computed before more are rejected.")
+    public int maxQueuedRequests = 4 * Runtime.getRuntime().availableProcessors();
+
     @Parameter(names = {"--insecure"},
             description = "Allow unauthenticated access to sensitive API resources, e.g. /routers")
     public boolean insecure = false;
@@ -2,6 +2,10 @@ package org.opentripplanner.standalone;
 
 import com.fasterxml.jackson.databind.JsonNode;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
 /**
  * These are parameters that when changed, necessitate a Graph rebuild.
  * They are distinct from the RouterParameters which can be applied to a pre-built graph or on the fly at runtime.
@@ -74,6 +78,18 @@ public class GraphBuilderParameters {
      */
     public final boolean fetchElevationUS;
 
+    /**
+     * Profiles for which to build contraction hierarchies to speed up street routing, e.g. ["CAR", "BICYCLE:SAFE"].
+     * See ContractionHierarchyModule. None are built by default.
+     */
+    public final List<String> contractionHierarchies;
+
+    /**
+     * Find the walking distances from every transit stop to the streets around it for analyst searches, and save them
+     * in a file next to the graph that the server will memory-map. See StopTreeModule.
+     */
+    public final boolean stopTrees;
+
     /**
      * Set all parameters from the given Jackson JSON tree, applying defaults.
      * Supplying MissingNode.getInstance() will cause all the defaults to be applied.
@@ -93,6 +109,12 @@ public class GraphBuilderParameters {
         areaVisibility = config.path("areaVisibility").asBoolean(false);
         matchBusRoutesToStreets = config.path("matchBusRoutesToStreets").asBoolean(false);
         fetchElevationUS = config.path("fetchElevationUS").asBoolean(false);
+        List<String> profiles = new ArrayList<String>();
+        for (JsonNode profile : config.path("contractionHierarchies")) {
+            profiles.add(profile.asText());
+        }
+        contractionHierarchies = Collections.unmodifiableList(profiles);
+        stopTrees = config.path("stopTrees").asBoolean(false);
 
     }
 
@@ -57,14 +57,21 @@ public class GrizzlyServer {
         sslConfig.setKeyStoreFile(new File(params.basePath, "keystore").getAbsolutePath());
         sslConfig.setKeyStorePass("opentrip");
 
-        /* OTP is CPU-bound, so we want only as many worker threads as we have cores. */
+        /*
+         * OTP is CPU-bound, but the number of expensive requests computed at once is limited by AdmissionControl.
+         * The other worker threads only wait for admission or serve cheap requests, so the pool is sized to hold every
+         * admitted request on top of one thread per core. Beyond that, a bounded number of connections wait for a
+         * worker thread and the rest are refused.
+         */
+        int nCores = Runtime.getRuntime().availableProcessors();
         ThreadPoolConfig threadPoolConfig = ThreadPoolConfig.defaultConfig()
             .setCorePoolSize(1)
-            .setMaxPoolSize(Runtime.getRuntime().availableProcessors());
+            .setMaxPoolSize(nCores + server.admissionControl.getMaxAdmitted())
+            .setQueueLimit(params.maxQueuedRequests);
 
         /* HTTP (non-encrypted) listener */
         NetworkListener httpListener = new NetworkListener("otp_insecure", params.bindAddress, params.port);
-        // OTP is CPU-bound, we don't want more threads than cores. TODO: We should switch to async handling.
+        // TODO: We should switch to async handling.
         httpListener.setSecure(false);
 
         /* HTTPS listener */
@@ -94,8 +94,10 @@ public class OTPApplication extends Application {
             GraphInspectorTileResource.class,
             ScriptResource.class,
             UpdaterStatusResource.class,
+            SearchMetricsResource.class,
             /* Features and Filters: extend Jersey, manipulate requests and responses. */
             CorsFilter.class,
+            AdmissionFilter.class,
             MultiPartFeature.class
         ));
         
@@ -36,6 +36,9 @@ public class OTPServer {
 
     public CommandLineParameters params;
 
+    /** Limits the number of expensive API requests that are computed at once. */
+    public final AdmissionControl admissionControl;
+
     public OTPServer (CommandLineParameters params, GraphService gs) {
         LOG.info("Wiring up and configuring server.");
 
@@ -43,6 +46,7 @@ public class OTPServer {
 
         // Core OTP modules
         this.graphService = gs;
+        this.admissionControl = new AdmissionControl(params.maxConcurrentRequests, params.maxQueuedRequests);
 
         // Optional Analyst Modules.
         if (params.analyst) {
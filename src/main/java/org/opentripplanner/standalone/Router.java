@@ -1,8 +1,15 @@
 package org.opentripplanner.standalone;
 
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.prefs.Preferences;
 
 import com.fasterxml.jackson.databind.JsonNode;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.opentripplanner.analyst.request.*;
 import org.opentripplanner.inspector.TileRendererManager;
 import org.opentripplanner.reflect.ReflectiveInitializer;
@@ -45,9 +52,23 @@ public class Router {
     /** A graphical window that is used for visualizing search progress (debugging). */
     public GraphVisualizer graphVisualizer = null;
 
+    /**
+     * A bounded pool of threads used to search for alternative itineraries concurrently, or null if itineraries are
+     * searched for sequentially (the default). When all threads are busy and the queue is full, searches run on the
+     * requesting thread, so under heavy load this degrades to sequential searching rather than queueing work.
+     */
+    public ExecutorService itinerarySearchExecutor = null;
+
+    /** The deadline of each kind of endpoint under admission control for this router, in seconds. */
+    public final Map<AdmissionControl.Endpoint, Integer> admissionDeadlines =
+            new EnumMap<AdmissionControl.Endpoint, Integer>(AdmissionControl.Endpoint.class);
+
     public Router(String id, Graph graph) {
         this.id = id;
         this.graph = graph;
+        for (AdmissionControl.Endpoint endpoint : AdmissionControl.Endpoint.values()) {
+            admissionDeadlines.put(endpoint, endpoint.defaultDeadlineSeconds);
+        }
     }
 
 
@@ -109,6 +130,43 @@ public class Router {
         }
         LOG.info("Timeouts for router '{}': {}", this.id, this.timeouts);
 
+        /* Enable parallel searches for alternative itineraries. */
+        JsonNode parallelThreads = config.get("parallelItinerarySearchThreads");
+        if (parallelThreads != null) {
+            if (parallelThreads.isInt() && parallelThreads.intValue() > 0) {
+                int nThreads = parallelThreads.intValue();
+                this.itinerarySearchExecutor = new ThreadPoolExecutor(nThreads, nThreads, 0L, TimeUnit.MILLISECONDS,
+                        new ArrayBlockingQueue<Runnable>(nThreads * 4),
+                        new ThreadFactoryBuilder().setDaemon(true).setNameFormat("itinerary-search-" + id + "-%d").build(),
+                        new ThreadPoolExecutor.CallerRunsPolicy());
+                LOG.info("Searching for alternative itineraries on {} threads for router '{}'.", nThreads, this.id);
+            } else {
+                LOG.error("The 'parallelItinerarySearchThreads' configuration option should be a positive integer.");
+            }
+        }
+
+        /* Apply the deadlines of admission control, by lower case endpoint name, e.g. {"plan": 10}. */
+        JsonNode deadlines = config.get("admissionDeadlines");
+        if (deadlines != null) {
+            if (deadlines.isObject()) {
+                for (AdmissionControl.Endpoint endpoint : AdmissionControl.Endpoint.values()) {
+                    JsonNode deadline = deadlines.get(endpoint.name().toLowerCase());
+                    if (deadline == null) {
+                        continue;
+                    }
+                    if (deadline.isInt() && deadline.intValue() > 0) {
+                        admissionDeadlines.put(endpoint, deadline.intValue());
+                    } else {
+                        LOG.error("The '{}' admission deadline should be a positive number of seconds.",
+                                endpoint.name().toLowerCase());
+                    }
+                }
+            } else {
+                LOG.error("The 'admissionDeadlines' configuration option should be an object of seconds by endpoint.");
+            }
+        }
+        LOG.info("Admission deadlines for router '{}': {}", this.id, this.admissionDeadlines);
+
         /* Create Graph updater modules from JSON config. */
         GraphUpdaterConfigurator.setupGraph(this.graph, config);
 
@@ -117,6 +175,9 @@ public class Router {
     /** Shut down this router when evicted or (auto-)reloaded. Stop any real-time updater threads. */
     public void shutdown() {
         GraphUpdaterConfigurator.shutdownGraph(this.graph);
+        if (itinerarySearchExecutor != null) {
+            itinerarySearchExecutor.shutdownNow();
+        }
     }
 
 }
@@ -17,6 +17,7 @@ import java.text.ParseException;
 import java.util.List;
 import java.util.Map;
 import java.util.TimeZone;
+import java.util.concurrent.locks.ReentrantLock;
 
 import com.google.common.collect.Maps;
 import org.onebusaway.gtfs.model.Trip;
@@ -54,11 +55,17 @@ public class TimetableSnapshotSource {
      * The last committed snapshot that was handed off to a routing thread. This snapshot may be
      * given to more than one routing thread if the maximum snapshot frequency is exceeded.
      */
-    private TimetableResolver snapshot = null;
+    private volatile TimetableResolver snapshot = null;
 
     /** The working copy of the timetable resolver. Should not be visible to routing threads. */
     private TimetableResolver buffer = new TimetableResolver();
 
+    /**
+     * Held while updates are applied to the buffer and while it is committed. Routing threads never wait on this
+     * lock: if it is taken they are handed the last committed snapshot.
+     */
+    private final ReentrantLock bufferLock = new ReentrantLock();
+
     /** Should expired realtime data be purged from the graph. */
     public boolean purgeExpiredData = true;
 
@@ -82,10 +89,19 @@ public class TimetableSnapshotSource {
      *         release its reference to the snapshot to release resources.
      */
     public TimetableResolver getTimetableSnapshot() {
-        return getTimetableSnapshot(false);
+        if (bufferLock.tryLock()) {
+            try {
+                return getTimetableSnapshot(false);
+            } finally {
+                bufferLock.unlock();
+            }
+        }
+        // The updater thread is applying updates, do not wait for it.
+        return snapshot;
     }
 
-    protected synchronized TimetableResolver getTimetableSnapshot(boolean force) {
+    /** Must be called with the buffer lock held. */
+    protected TimetableResolver getTimetableSnapshot(boolean force) {
         long now = System.currentTimeMillis();
         if (force || now - lastSnapshotTime > maxSnapshotFrequency) {
             if (force || buffer.isDirty()) {
@@ -112,6 +128,15 @@ public class TimetableSnapshotSource {
             return;
         }
 
+        bufferLock.lock();
+        try {
+            applyTripUpdatesLocked(updates, feedId);
+        } finally {
+            bufferLock.unlock();
+        }
+    }
+
+    private void applyTripUpdatesLocked(List<TripUpdate> updates, String feedId) {
         LOG.debug("message contains {} trip updates", updates.size());
         int uIndex = 0;
         for (TripUpdate tripUpdate : updates) {
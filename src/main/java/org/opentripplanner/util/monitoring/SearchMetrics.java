@@ -0,0 +1,124 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.util.monitoring;
+
+import java.util.Collections;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.opentripplanner.routing.algorithm.SearchWorkspace;
+
+/**
+ * Statistics about the searches run on one graph, split by query class since their costs differ by orders of
+ * magnitude. AStar records its searches as "street", "transit" or "batch", EarliestArrivalSearch as
+ * "earliest_arrival", contraction hierarchy queries as "contraction", and the RAPTOR and range RAPTOR transit
+ * searches as "raptor" and "range_raptor". Every search records into a handful of lock-free counters and
+ * histograms, so this can stay enabled on a production server. It also reports how well the search workspaces are
+ * reused. See Graph.getSearchMetrics() and SearchMetricsResource.
+ */
+public class SearchMetrics {
+
+    private final long startTime = System.currentTimeMillis();
+
+    private final ConcurrentMap<String, QueryClass> queryClasses = new ConcurrentHashMap<String, QueryClass>();
+
+    /**
+     * The statistics of one class of queries. The public fields are serialized by Jackson. A search records only the
+     * statistics that apply to it: RAPTOR has no priority queue, for instance, so its queue histograms stay empty.
+     */
+    public static class QueryClass {
+
+        /** The number of searches run. */
+        public final AtomicLong searches = new AtomicLong();
+
+        /** The number of searches aborted by a timeout, including during heuristic initialization. */
+        public final AtomicLong timeouts = new AtomicLong();
+
+        /** The wall clock time of the whole search, including heuristic initialization, in milliseconds. */
+        public final Histogram searchTimeMsec = new Histogram();
+
+        /** The time spent initializing the remaining weight heuristic, in milliseconds. */
+        public final Histogram heuristicTimeMsec = new Histogram();
+
+        /** The number of states taken off the queue and not dominated. */
+        public final Histogram verticesVisited = new Histogram();
+
+        /** The number of states added to the queue. */
+        public final Histogram statesCreated = new Histogram();
+
+        /** The largest size of the priority queue during the search. */
+        public final Histogram queuePeakSize = new Histogram();
+
+        /** The number of vertices reached in the shortest path tree returned, or of stops reached by RAPTOR. */
+        public final Histogram sptVertices = new Histogram();
+
+    }
+
+    /** @return the statistics of the given query class, created on first use. */
+    public QueryClass forQueryClass(String name) {
+        QueryClass queryClass = queryClasses.get(name);
+        if (queryClass == null) {
+            QueryClass created = new QueryClass();
+            queryClass = queryClasses.putIfAbsent(name, created);
+            if (queryClass == null) {
+                queryClass = created;
+            }
+        }
+        return queryClass;
+    }
+
+    /** @return the statistics of each query class seen, by name. */
+    public SortedMap<String, QueryClass> getQueryClasses() {
+        return Collections.unmodifiableSortedMap(new TreeMap<String, QueryClass>(queryClasses));
+    }
+
+    /** @return the time these statistics started to be collected, in milliseconds since the epoch. */
+    public long getStartTime() {
+        return startTime;
+    }
+
+    /*
+     * The search workspaces are kept per thread rather than per graph, so the counters below are shared by all
+     * the routers of the server and count from its startup.
+     */
+
+    /** @return the number of search workspaces allocated, see SearchWorkspace. */
+    public long getWorkspacesAllocated() {
+        return SearchWorkspace.getWorkspacesAllocated();
+    }
+
+    /** @return the number of searches that reused the workspace of their thread instead of allocating one. */
+    public long getWorkspacesReused() {
+        return SearchWorkspace.getWorkspacesReused();
+    }
+
+    /** @return the number of priority queue slots allocated by search workspaces, including growth. */
+    public long getQueueSlotsAllocated() {
+        return SearchWorkspace.getQueueSlotsAllocated();
+    }
+
+    /** @return the number of indexed shortest path tree arrays allocated by search workspaces. */
+    public long getTreeStoragesAllocated() {
+        return SearchWorkspace.getTreeStoragesAllocated();
+    }
+
+    /** @return the number of indexed shortest path trees that reused the arrays of a released tree. */
+    public long getTreeStoragesReused() {
+        return SearchWorkspace.getTreeStoragesReused();
+    }
+
+}
@@ -0,0 +1,144 @@
+package org.opentripplanner.analyst;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.opentripplanner.analyst.core.GeometryIndex;
+import org.opentripplanner.analyst.core.Sample;
+import org.opentripplanner.analyst.request.SampleFactory;
+import org.opentripplanner.common.geometry.GeometryUtils;
+import org.opentripplanner.common.geometry.SphericalDistanceLibrary;
+import org.opentripplanner.profile.ProfileRequest;
+import org.opentripplanner.profile.ProfileRouter;
+import org.opentripplanner.routing.edgetype.StreetEdge;
+import org.opentripplanner.routing.edgetype.StreetTraversalPermission;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.graph.Vertex;
+import org.opentripplanner.routing.vertextype.IntersectionVertex;
+
+public class SampleSetTest extends TestCase {
+
+    private static final int GRID_SIZE = 6;
+
+    private static final double SPACING = 0.001;
+
+    /**
+     * Evaluating a sample set with the vertex-indexed times of a surface must give the same result as looking up the
+     * time of each sample's vertices in the surface, including for points that are not linked and for vertices
+     * that are not reached.
+     */
+    public void testEvalSameAsLookup() {
+        Graph graph = new Graph();
+        IntersectionVertex[][] vertices = new IntersectionVertex[GRID_SIZE][GRID_SIZE];
+        for (int i = 0; i < GRID_SIZE; i++) {
+            for (int j = 0; j < GRID_SIZE; j++) {
+                vertices[i][j] = new IntersectionVertex(graph, "v_" + i + "_" + j, -122.6 + i * SPACING,
+                        45.5 + j * SPACING);
+            }
+        }
+        for (int i = 0; i < GRID_SIZE; i++) {
+            for (int j = 0; j < GRID_SIZE; j++) {
+                if (i + 1 < GRID_SIZE) makeStreet(vertices[i][j], vertices[i + 1][j]);
+                if (j + 1 < GRID_SIZE) makeStreet(vertices[i][j], vertices[i][j + 1]);
+            }
+        }
+
+        ProfileRequest request = new ProfileRequest();
+        request.fromLat = 45.5;
+        request.fromLon = -122.6;
+        TimeSurface surface = new TimeSurface(new ProfileRouter(graph, request));
+        // Leave one vertex in five unreached.
+        int n = 0;
+        for (IntersectionVertex[] column : vertices) {
+            for (IntersectionVertex vertex : column) {
+                if (n % 5 != 4) {
+                    surface.setTime(vertex, 60 + n * 37);
+                }
+                n++;
+            }
+        }
+
+        // Random points over the grid and well beyond it, where many are too far from any street.
+        Random random = new Random(42);
+        PointSet points = new PointSet(500);
+        for (int p = 0; p < points.capacity; p++) {
+            points.lons[p] = -122.6 + (random.nextDouble() * 3 - 1) * GRID_SIZE * SPACING;
+            points.lats[p] = 45.5 + (random.nextDouble() * 3 - 1) * GRID_SIZE * SPACING;
+        }
+        SampleFactory sampleFactory = new SampleFactory(new GeometryIndex(graph));
+        SampleSet sampleSet = new SampleSet(points, sampleFactory);
+
+        int[] times = sampleSet.eval(surface);
+        int nUnlinked = 0;
+        for (int p = 0; p < points.capacity; p++) {
+            Sample sample = sampleFactory.getSample(points.lons[p], points.lats[p]);
+            if (sample == null) {
+                nUnlinked++;
+            }
+            assertEquals("point " + p, lookUp(sample, surface), times[p]);
+        }
+        // Make sure both linked and unlinked points were compared.
+        assertTrue(nUnlinked > 0);
+        assertTrue(nUnlinked < points.capacity);
+    }
+
+    /**
+     * A surface must treat vertices made after it as unreachable, and give them a time when asked to. Every vertex
+     * with a time must be listed once.
+     */
+    public void testVertexAddedAfterSurface() {
+        Graph graph = new Graph();
+        IntersectionVertex before = new IntersectionVertex(graph, "before", -122.6, 45.5);
+        ProfileRequest request = new ProfileRequest();
+        request.fromLat = 45.5;
+        request.fromLon = -122.6;
+        TimeSurface surface = new TimeSurface(new ProfileRouter(graph, request));
+        IntersectionVertex after = new IntersectionVertex(graph, "after", -122.6, 45.501);
+        assertEquals(TimeSurface.UNREACHABLE, surface.getTime(before));
+        assertEquals(TimeSurface.UNREACHABLE, surface.getTime(after));
+
+        surface.setTime(after, 120);
+        surface.setTime(before, 60);
+        surface.setTime(after, 90);
+        assertEquals(60, surface.getTime(before));
+        assertEquals(90, surface.getTime(after));
+        assertEquals(90, surface.getTimesByVertexIndex()[after.getIndex()]);
+        assertEquals(Arrays.<Vertex> asList(after, before), surface.getReachedVertices());
+    }
+
+    /** @return the time at a sample by looking up its vertices in the surface, as SampleSet did before. */
+    private static int lookUp(Sample sample, TimeSurface surface) {
+        final float WALK_SPEED = 1.3f;
+        int m0 = Integer.MAX_VALUE;
+        int m1 = Integer.MAX_VALUE;
+        if (sample == null) {
+            return m0;
+        }
+        if (sample.v0 != null) {
+            int s0 = surface.getTime(sample.v0);
+            if (s0 != TimeSurface.UNREACHABLE) {
+                m0 = (int) (s0 + (float) sample.t0 / WALK_SPEED);
+            }
+        }
+        if (sample.v1 != null) {
+            int s1 = surface.getTime(sample.v1);
+            if (s1 != TimeSurface.UNREACHABLE) {
+                m1 = (int) (s1 + (float) sample.t1 / WALK_SPEED);
+            }
+        }
+        return (m0 < m1) ? m0 : m1;
+    }
+
+    private static void makeStreet(IntersectionVertex v0, IntersectionVertex v1) {
+        double length = SphericalDistanceLibrary.distance(v0.getCoordinate(), v1.getCoordinate());
+        new StreetEdge(v0, v1,
+                GeometryUtils.makeLineString(v0.getX(), v0.getY(), v1.getX(), v1.getY()), "street", length,
+                StreetTraversalPermission.ALL, false);
+        new StreetEdge(v1, v0,
+                GeometryUtils.makeLineString(v1.getX(), v1.getY(), v0.getX(), v0.getY()), "street", length,
+                StreetTraversalPermission.ALL, false);
+    }
+
+}
@@ -17,10 +17,13 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
+import java.io.ByteArrayOutputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Set;
@@ -39,11 +42,15 @@ import org.onebusaway.gtfs.model.calendar.CalendarServiceData;
 import org.onebusaway.gtfs.model.calendar.ServiceDate;
 import org.opentripplanner.api.model.AbsoluteDirection;
 import org.opentripplanner.api.model.Itinerary;
+import org.opentripplanner.api.model.JSONObjectMapperProvider;
 import org.opentripplanner.api.model.Leg;
 import org.opentripplanner.api.model.Place;
 import org.opentripplanner.api.model.RelativeDirection;
+import org.opentripplanner.api.model.TripPlan;
 import org.opentripplanner.api.model.WalkStep;
+import org.opentripplanner.api.model.error.PlannerError;
 import org.opentripplanner.common.geometry.PackedCoordinateSequence;
+import org.opentripplanner.common.model.GenericLocation;
 import org.opentripplanner.gtfs.BikeAccess;
 import org.opentripplanner.model.StopPattern;
 import org.opentripplanner.routing.alertpatch.Alert;
@@ -60,6 +67,7 @@ import org.opentripplanner.routing.core.TraverseMode;
 import org.opentripplanner.routing.core.WrappedCurrency;
 import org.opentripplanner.routing.edgetype.*;
 import org.opentripplanner.routing.edgetype.StreetEdge;
+import org.opentripplanner.routing.error.TrivialPathException;
 import org.opentripplanner.routing.graph.Graph;
 import org.opentripplanner.routing.location.StreetLocation;
 import org.opentripplanner.routing.services.FareService;
@@ -79,6 +87,7 @@ import org.opentripplanner.routing.vertextype.TransitStopDepart;
 import org.opentripplanner.updater.stoptime.TimetableSnapshotSource;
 import org.opentripplanner.util.model.EncodedPolylineBean;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.transit.realtime.GtfsRealtime.TripDescriptor;
 import com.google.transit.realtime.GtfsRealtime.TripUpdate;
 import com.google.transit.realtime.GtfsRealtime.TripUpdate.StopTimeEvent;
@@ -133,6 +142,82 @@ public class GraphPathToTripPlanConverterTest {
         assertEquals("WALK", itinerary.legs.get(0).mode);
     }
 
+    /**
+     * Test that a plan written by StreamingPlanResponse is the same as the serialized Response holding the plan
+     * generated by generatePlan().
+     */
+    @Test
+    public void testStreamingPlanResponse() throws Exception {
+        GraphPath graphPath = buildPaths()[0];
+        RoutingRequest request = graphPath.states.getFirst().getOptions();
+        request.from = new GenericLocation("Origin", "0,0");
+        request.to = new GenericLocation("Destination", "1,1");
+        List<GraphPath> paths = Arrays.asList(graphPath, graphPath);
+
+        Response response = new Response(null);
+        response.setPlan(GraphPathToTripPlanConverter.generatePlan(paths, request));
+        String expected = new JSONObjectMapperProvider().getContext(Response.class).writeValueAsString(response);
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        TripPlan plan = GraphPathToTripPlanConverter.generateEmptyPlan(paths, request);
+        new StreamingPlanResponse(new Response(null), request, plan, paths).write(output);
+        assertEquals(expected, output.toString("UTF-8"));
+    }
+
+    /**
+     * Test that a trivial path is rejected before any itinerary is generated, so that PlannerResource reports the
+     * error without a plan, and that StreamingPlanResponse then writes the same error response as the plan method.
+     */
+    @Test
+    public void testStreamingPlanResponseTrivialPath() throws Exception {
+        GraphPath graphPath = buildPaths()[0];
+        RoutingRequest request = graphPath.states.getFirst().getOptions();
+        request.from = new GenericLocation("Origin", "0,0");
+        request.to = new GenericLocation("Destination", "1,1");
+        GraphPath trivialPath = new GraphPath(graphPath.states.getFirst(), false);
+        try {
+            GraphPathToTripPlanConverter.generateEmptyPlan(Arrays.asList(graphPath, trivialPath), request);
+            fail("trivial path accepted");
+        } catch (TrivialPathException e) {
+            // The plan is rejected as a whole.
+        }
+
+        Response response = new Response(null);
+        response.setError(new PlannerError(new TrivialPathException()));
+        String expected = new JSONObjectMapperProvider().getContext(Response.class).writeValueAsString(response);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        new StreamingPlanResponse(response, request, null, null).write(output);
+        assertEquals(expected, output.toString("UTF-8"));
+    }
+
+    /**
+     * Test that when an itinerary unexpectedly cannot be generated once the plan has started, StreamingPlanResponse
+     * still writes valid JSON: the plan with the itineraries written before it, followed by the error.
+     */
+    @Test
+    public void testStreamingPlanResponseError() throws Exception {
+        GraphPath graphPath = buildPaths()[0];
+        RoutingRequest request = graphPath.states.getFirst().getOptions();
+        request.from = new GenericLocation("Origin", "0,0");
+        request.to = new GenericLocation("Destination", "1,1");
+        // The plan is made for valid paths only, so the trivial one is first noticed while writing.
+        TripPlan plan = GraphPathToTripPlanConverter.generateEmptyPlan(Arrays.asList(graphPath), request);
+        GraphPath trivialPath = new GraphPath(graphPath.states.getFirst(), false);
+        List<GraphPath> paths = Arrays.asList(graphPath, trivialPath, graphPath);
+
+        Response response = new Response(null);
+        response.setPlan(GraphPathToTripPlanConverter.generatePlan(Arrays.asList(graphPath), request));
+        response.setError(new PlannerError(new TrivialPathException()));
+        ObjectMapper mapper = new JSONObjectMapperProvider().getContext(Response.class);
+        String expected = mapper.writeValueAsString(response);
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        new StreamingPlanResponse(new Response(null), request, plan, paths).write(output);
+        String actual = output.toString("UTF-8");
+        assertEquals(expected, actual);
+        assertEquals(1, mapper.readTree(actual).get("plan").get("itineraries").size());
+    }
+
     /**
      * Build three GraphPath objects that can be used for testing for forward, backward and onboard.
      * This method doesn't rely on any routing code.
@@ -16,6 +16,7 @@ package org.opentripplanner.common.pqueue;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.PriorityQueue;
+import java.util.Random;
 import junit.framework.TestCase;
 
 /*
@@ -25,7 +26,10 @@ import junit.framework.TestCase;
 public class TestPQueues extends TestCase { 
     private static final int N = 50000;
 
-    public void doQueue(BinHeap<Integer> q,
+    /** Seeded so that any failure can be reproduced. */
+    private final Random random = new Random(42);
+
+    public void doQueue(OTPPriorityQueue<Integer> q,
                         List<Integer> input, List<Integer> expected) {
         List<Integer> result = new ArrayList<Integer>(N);
         int expectedSum = 0;
@@ -58,7 +62,7 @@ public class TestPQueues extends TestCase {
         assertTrue(sum == expectedSum);
     }
     
-    public void fillQueue(BinHeap<Integer> q, List<Integer> input) {
+    public void fillQueue(OTPPriorityQueue<Integer> q, List<Integer> input) {
         for (Integer i : input) {
             q.insert(i, i * 0.5);
         }
@@ -77,7 +81,7 @@ public class TestPQueues extends TestCase {
     public void testCompareHeaps() throws InterruptedException {
         List<Integer> input, expected;
         input = new ArrayList<Integer>(N);
-        for (int i=0; i<N; i++) input.add((int) (Math.random() * 10000));
+        for (int i=0; i<N; i++) input.add(random.nextInt(10000));
         
         // First determine the expected results using a plain old PriorityQueue
         expected = new ArrayList<Integer>(N);
@@ -90,6 +94,8 @@ public class TestPQueues extends TestCase {
         }
         doQueue(new BinHeap<Integer>(), input, expected);
         fillQueue(new BinHeap<Integer>(), input);
+        doQueue(new IndexedFourAryHeap<Integer>(null), input, expected);
+        fillQueue(new IndexedFourAryHeap<Integer>(null), input);
     }
 
     /*
@@ -114,7 +120,7 @@ public class TestPQueues extends TestCase {
 
         	// fill both keys and values with random numbers
 		    for (int i=0; i<N; i++) {
-		    	keys.add(i, (Math.random() * 10000));
+		    	keys.add(i, (random.nextDouble() * 10000));
 		    	vals.add(i, (N - i) * 3);
 		    }        	
 		    
@@ -143,4 +149,131 @@ public class TestPQueues extends TestCase {
 
         }
     }    
+
+    /*
+     * Clearing a queue should leave it empty and usable, keeping any capacity it has grown to.
+     */
+    public void testClear() {
+        BinHeap<Integer> bh = new BinHeap<Integer>(10);
+        for (int i = 0; i < 100; i++) {
+            bh.insert(i, 100 - i);
+        }
+        int capacity = bh.getCapacity();
+        assertTrue(capacity >= 100);
+        bh.extract_min();
+        bh.clear();
+        assertTrue(bh.empty());
+        assertNull(bh.peek_min());
+        assertEquals(capacity, bh.getCapacity());
+        bh.insert(7, 7);
+        bh.insert(3, 3);
+        assertEquals(Integer.valueOf(3), bh.extract_min());
+        assertEquals(Integer.valueOf(7), bh.extract_min());
+        assertTrue(bh.empty());
+    }
+
+    /*
+     * A radix heap must return elements in key order as long as keys never drop below the last one extracted.
+     */
+    public void testRadixHeap() {
+        List<Integer> input = new ArrayList<Integer>(N);
+        for (int i = 0; i < N; i++) input.add(random.nextInt(10000));
+        RadixHeap<Integer> q = new RadixHeap<Integer>();
+        for (Integer i : input) {
+            q.insert(i, i);
+        }
+        int last = -1;
+        int count = 0;
+        while (!q.empty()) {
+            assertEquals(q.peek_min_key(), q.peek_min(), 0.0);
+            int i = q.extract_min();
+            assertTrue(i >= last);
+            // keep inserting increasing keys while extracting, as in a Dijkstra search
+            if (i < 5000) q.insert(i + 5000, i + 5000);
+            last = i;
+            count++;
+        }
+        assertTrue(count >= N);
+        assertNull(q.extract_min());
+        // a key lower than the last one extracted comes out next
+        q.insert(20000, 20000);
+        q.insert(3, 3);
+        assertEquals(Integer.valueOf(3), q.extract_min());
+        assertEquals(Integer.valueOf(20000), q.extract_min());
+    }
+
+    /*
+     * An indexed heap holds each element only once, and inserting it again with a lower key moves it up.
+     */
+    public void testDecreaseKey() {
+        IndexedFourAryHeap<Integer> q = new IndexedFourAryHeap<Integer>(new IndexedFourAryHeap.Indexer<Integer>() {
+            @Override
+            public int getIndex(Integer element) {
+                return element;
+            }
+        });
+        for (int i = 0; i < 1000; i++) {
+            q.insert(i, 1000 + i);
+        }
+        // lower the keys of the odd elements below all the even ones, and try to raise some even ones
+        for (int i = 0; i < 1000; i++) {
+            if (i % 2 == 1) {
+                q.insert_or_dec_key(i, i);
+            } else {
+                q.insert_or_dec_key(i, 5000);
+            }
+        }
+        assertEquals(1000, q.size());
+        for (int i = 1; i < 1000; i += 2) {
+            assertEquals(Integer.valueOf(i), q.extract_min());
+        }
+        for (int i = 0; i < 1000; i += 2) {
+            assertEquals(Integer.valueOf(i), q.extract_min());
+        }
+        assertTrue(q.empty());
+    }
+
+    /*
+     * An indexed radix heap also holds each element only once. Lowering a key moves the element to another bucket,
+     * which must keep the recorded positions of the elements left behind in the old bucket up to date.
+     */
+    public void testRadixHeapDecreaseKey() {
+        RadixHeap<Integer> q = new RadixHeap<Integer>(new IndexedFourAryHeap.Indexer<Integer>() {
+            @Override
+            public int getIndex(Integer element) {
+                return element;
+            }
+        });
+        for (int i = 0; i < 1000; i++) {
+            q.insert(i, 1000 + i);
+        }
+        for (int i = 0; i < 1000; i++) {
+            if (i % 2 == 1) {
+                q.insert_or_dec_key(i, i);
+            } else {
+                q.insert_or_dec_key(i, 5000);
+            }
+        }
+        assertEquals(1000, q.size());
+        for (int i = 1; i < 500; i += 2) {
+            assertEquals(Integer.valueOf(i), q.extract_min());
+        }
+        // decrease keys while the heap is partly drained, below the last key extracted, which clamps them to it
+        for (int i = 500; i < 1000; i += 2) {
+            q.insert_or_dec_key(i, 10);
+        }
+        for (int n = 0; n < 250; n++) {
+            assertEquals(499.0, q.peek_min_key(), 0.0);
+            int i = q.extract_min();
+            assertTrue(i >= 500 && i % 2 == 0);
+        }
+        for (int i = 501; i < 1000; i += 2) {
+            assertEquals(Integer.valueOf(i), q.extract_min());
+        }
+        for (int i = 0; i < 500; i += 2) {
+            assertEquals(Integer.valueOf(i), q.extract_min());
+        }
+        assertTrue(q.empty());
+        assertNull(q.extract_min());
+    }
 }
@@ -0,0 +1,126 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.graph_builder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.opentripplanner.graph_builder.services.ConcurrentGraphBuilderModule;
+import org.opentripplanner.graph_builder.services.GraphBuilderModule;
+import org.opentripplanner.routing.graph.Graph;
+
+public class GraphBuilderModuleSchedulerTest {
+
+    private final List<String> events = new CopyOnWriteArrayList<String>();
+
+    @Test
+    public void testConcurrentModulesOverlap() {
+        // Each of the two concurrent modules only finishes once the other one has started.
+        CountDownLatch started = new CountDownLatch(2);
+        List<GraphBuilderModule> modules = Arrays.<GraphBuilderModule>asList(
+                new Module("streets"),
+                new Concurrent("ch", started, Collections.<String>emptyList()),
+                new Concurrent("trees", started, Collections.<String>emptyList()),
+                new Module("config"));
+        new GraphBuilderModuleScheduler(modules).run(new Graph(), new HashMap<Class<?>, Object>());
+        assertEquals("streets", events.get(0));
+        assertTrue(events.containsAll(Arrays.asList("ch", "trees")));
+        assertEquals("config", events.get(3));
+    }
+
+    @Test
+    public void testPrerequisitesAreRespected() {
+        CountDownLatch started = new CountDownLatch(1);
+        List<GraphBuilderModule> modules = Arrays.<GraphBuilderModule>asList(
+                new Concurrent("ch", started, Collections.<String>emptyList()),
+                new Concurrent("uses ch", new CountDownLatch(0), Arrays.asList("ch")));
+        new GraphBuilderModuleScheduler(modules).run(new Graph(), new HashMap<Class<?>, Object>());
+        assertEquals(Arrays.asList("ch", "uses ch"), events);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testExceptionIsRethrown() {
+        GraphBuilderModule failing = new Concurrent("failing", new CountDownLatch(0),
+                Collections.<String>emptyList()) {
+            @Override
+            public void buildGraph(Graph graph, HashMap<Class<?>, Object> extra) {
+                throw new IllegalStateException();
+            }
+        };
+        List<GraphBuilderModule> modules = Arrays.asList(new Module("streets"), failing, new Module("config"));
+        new GraphBuilderModuleScheduler(modules).run(new Graph(), new HashMap<Class<?>, Object>());
+    }
+
+    private class Module implements GraphBuilderModule {
+
+        final String name;
+
+        Module(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public void buildGraph(Graph graph, HashMap<Class<?>, Object> extra) {
+            events.add(name);
+        }
+
+        @Override
+        public void checkInputs() {
+        }
+    }
+
+    private class Concurrent extends Module implements ConcurrentGraphBuilderModule {
+
+        final CountDownLatch started;
+
+        final List<String> prerequisites;
+
+        Concurrent(String name, CountDownLatch started, List<String> prerequisites) {
+            super(name);
+            this.started = started;
+            this.prerequisites = prerequisites;
+        }
+
+        @Override
+        public void buildGraph(Graph graph, HashMap<Class<?>, Object> extra) {
+            started.countDown();
+            try {
+                assertTrue(started.await(10, TimeUnit.SECONDS));
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            super.buildGraph(graph, extra);
+        }
+
+        @Override
+        public List<String> provides() {
+            return Arrays.asList(name);
+        }
+
+        @Override
+        public List<String> getPrerequisites() {
+            return prerequisites;
+        }
+    }
+
+}
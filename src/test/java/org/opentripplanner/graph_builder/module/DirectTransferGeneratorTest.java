@@ -0,0 +1,63 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.graph_builder.module;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+import org.junit.Test;
+import org.opentripplanner.ConstantsForTests;
+import org.opentripplanner.graph_builder.model.GtfsBundle;
+import org.opentripplanner.routing.edgetype.SimpleTransfer;
+import org.opentripplanner.routing.graph.Edge;
+import org.opentripplanner.routing.graph.Graph;
+
+public class DirectTransferGeneratorTest {
+
+    /** Searching from the stops in parallel must make the same transfers as searching from one stop at a time. */
+    @Test
+    public void testParallelSameAsSerial() {
+        List<String> serial = makeTransfers(1);
+        assertFalse(serial.isEmpty());
+        assertEquals(serial, makeTransfers(4));
+    }
+
+    /** @return a description of each transfer made on a fresh graph with the given number of threads, sorted. */
+    private List<String> makeTransfers(int nThreads) {
+        Graph graph = new Graph();
+        GtfsBundle bundle = new GtfsBundle(new File(ConstantsForTests.CALTRAIN_GTFS));
+        new GtfsModule(Collections.singletonList(bundle)).buildGraph(graph, new HashMap<Class<?>, Object>());
+        DirectTransferGenerator generator = new DirectTransferGenerator();
+        // The stations are far apart, use a large radius to get a fair number of transfers.
+        generator.maxDuration = 10000;
+        generator.nThreads = nThreads;
+        generator.buildGraph(graph, new HashMap<Class<?>, Object>());
+        List<String> transfers = new ArrayList<String>();
+        for (Edge edge : graph.getEdges()) {
+            if (edge instanceof SimpleTransfer) {
+                transfers.add(String.format("%s %s %.3f", edge.getFromVertex().getLabel(),
+                        edge.getToVertex().getLabel(), edge.getDistance()));
+            }
+        }
+        Collections.sort(transfers);
+        return transfers;
+    }
+
+}
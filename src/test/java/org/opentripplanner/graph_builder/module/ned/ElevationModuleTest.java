@@ -0,0 +1,158 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.graph_builder.module.ned;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import org.geotools.coverage.grid.GridCoverage2D;
+import org.geotools.coverage.grid.GridCoverageFactory;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.referencing.crs.DefaultGeographicCRS;
+import org.junit.Test;
+import org.opengis.coverage.Coverage;
+import org.opentripplanner.common.geometry.GeometryUtils;
+import org.opentripplanner.common.geometry.SphericalDistanceLibrary;
+import org.opentripplanner.graph_builder.annotation.GraphBuilderAnnotation;
+import org.opentripplanner.graph_builder.services.ned.ElevationGridCoverageFactory;
+import org.opentripplanner.routing.edgetype.StreetTraversalPermission;
+import org.opentripplanner.routing.edgetype.StreetWithElevationEdge;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.vertextype.IntersectionVertex;
+
+import com.vividsolutions.jts.geom.LineString;
+
+public class ElevationModuleTest {
+
+    private static final int GRID_SIZE = 8;
+
+    /**
+     * Sampling the edges in small batches on several threads must give the same profiles and the same annotations,
+     * in the same order, as sampling them all on one thread.
+     */
+    @Test
+    public void testTiledSameAsSerial() {
+        GridCoverage2D dem = makeDem();
+
+        Graph serialGraph = new Graph();
+        List<StreetWithElevationEdge> serialEdges = makeStreets(serialGraph);
+        ElevationModule serial = new ElevationModule(new FixedCoverageFactory(dem));
+        serial.nThreads = 1;
+        serial.buildGraph(serialGraph, new HashMap<Class<?>, Object>());
+
+        Graph tiledGraph = new Graph();
+        List<StreetWithElevationEdge> tiledEdges = makeStreets(tiledGraph);
+        ElevationModule tiled = new ElevationModule(new FixedCoverageFactory(dem));
+        tiled.nThreads = 4;
+        tiled.batchSize = 5;
+        tiled.buildGraph(tiledGraph, new HashMap<Class<?>, Object>());
+
+        for (int i = 0; i < serialEdges.size(); i++) {
+            StreetWithElevationEdge expected = serialEdges.get(i);
+            StreetWithElevationEdge actual = tiledEdges.get(i);
+            assertArrayEquals(expected.getName(), expected.getElevationProfile().toCoordinateArray(),
+                    actual.getElevationProfile().toCoordinateArray());
+            assertEquals(expected.getName(), expected.isElevationFlattened(), actual.isElevationFlattened());
+        }
+        List<String> serialAnnotations = annotationMessages(serialGraph);
+        // Make sure the cliff did get some edges flattened, so that their annotations are compared.
+        assertFalse(serialAnnotations.isEmpty());
+        assertEquals(serialAnnotations, annotationMessages(tiledGraph));
+    }
+
+    /**
+     * @return a DEM rising gently to the east, with a cliff halfway that is too steep for some of the edges crossing
+     *         it.
+     */
+    private GridCoverage2D makeDem() {
+        float[][] elevations = new float[20][20];
+        for (int row = 0; row < 20; row++) {
+            for (int col = 0; col < 20; col++) {
+                elevations[row][col] = 10 * col + (col >= 10 ? 40 : 0);
+            }
+        }
+        ReferencedEnvelope envelope = new ReferencedEnvelope(5.00, 5.02, 52.00, 52.02, DefaultGeographicCRS.WGS84);
+        return new GridCoverageFactory().create("dem", elevations, envelope);
+    }
+
+    /** @return the edges of a grid of streets in both directions, in the order they were made. */
+    private List<StreetWithElevationEdge> makeStreets(Graph graph) {
+        IntersectionVertex[][] vertices = new IntersectionVertex[GRID_SIZE][GRID_SIZE];
+        for (int i = 0; i < GRID_SIZE; i++) {
+            for (int j = 0; j < GRID_SIZE; j++) {
+                vertices[i][j] = new IntersectionVertex(graph, "v_" + i + "_" + j, 5.001 + i * 0.0025,
+                        52.001 + j * 0.0025);
+            }
+        }
+        List<StreetWithElevationEdge> edges = new ArrayList<StreetWithElevationEdge>();
+        for (int i = 0; i < GRID_SIZE; i++) {
+            for (int j = 0; j < GRID_SIZE; j++) {
+                if (i + 1 < GRID_SIZE) {
+                    makeStreet(vertices[i][j], vertices[i + 1][j], edges);
+                    makeStreet(vertices[i + 1][j], vertices[i][j], edges);
+                }
+                if (j + 1 < GRID_SIZE) {
+                    makeStreet(vertices[i][j], vertices[i][j + 1], edges);
+                    makeStreet(vertices[i][j + 1], vertices[i][j], edges);
+                }
+            }
+        }
+        return edges;
+    }
+
+    private void makeStreet(IntersectionVertex v0, IntersectionVertex v1, List<StreetWithElevationEdge> edges) {
+        LineString geometry = GeometryUtils.makeLineString(v0.getX(), v0.getY(), v1.getX(), v1.getY());
+        double length = SphericalDistanceLibrary.distance(v0.getCoordinate(), v1.getCoordinate());
+        edges.add(new StreetWithElevationEdge(v0, v1, geometry, v0.getLabel() + "-" + v1.getLabel(), length,
+                StreetTraversalPermission.ALL, false));
+    }
+
+    /** @return the messages of the builder annotations of the graph, without the edge ids that differ by graph. */
+    private List<String> annotationMessages(Graph graph) {
+        List<String> messages = new ArrayList<String>();
+        for (GraphBuilderAnnotation annotation : graph.getBuilderAnnotations()) {
+            messages.add(annotation.getMessage().replaceAll("StreetEdge\\(\\d+, ", "StreetEdge("));
+        }
+        return messages;
+    }
+
+    private static class FixedCoverageFactory implements ElevationGridCoverageFactory {
+
+        private final Coverage coverage;
+
+        FixedCoverageFactory(Coverage coverage) {
+            this.coverage = coverage;
+        }
+
+        @Override
+        public Coverage getGridCoverage() {
+            return coverage;
+        }
+
+        @Override
+        public void checkInputs() {
+        }
+
+        @Override
+        public void setGraph(Graph graph) {
+        }
+
+    }
+
+}
@@ -0,0 +1,106 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.graph_builder.module.osm;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.opentripplanner.openstreetmap.model.OSMNode;
+import org.opentripplanner.openstreetmap.model.OSMWay;
+
+public class OSMDatabaseTest {
+
+    @Test
+    public void testNodeRefsKeepOrder() {
+        OSMWay way = new OSMWay();
+        way.addNodeRef(1);
+        way.addNodeRef(3);
+        way.addNodeRef(2, 1);
+        assertArrayEquals(new long[] { 1, 2, 3 }, way.getNodeRefs().toArray());
+    }
+
+    /**
+     * Only the nodes of kept ways and areas should reach the store, and areas should be built from the very node
+     * instances the store returns.
+     */
+    @Test
+    public void testNodesGoThroughStore() {
+        OSMNodeStore store = new InMemoryOSMNodeStore();
+        OSMDatabase osmdb = new OSMDatabase(store);
+
+        OSMWay street = makeWay(1, 1, 2, 3);
+        street.addTag("highway", "residential");
+        OSMWay plaza = makeWay(2, 10, 11, 12, 13, 10);
+        plaza.addTag("highway", "pedestrian");
+        plaza.addTag("area", "yes");
+
+        osmdb.doneFirstPhaseRelations();
+        osmdb.addWay(street);
+        osmdb.addWay(plaza);
+        osmdb.doneSecondPhaseWays();
+        // the street runs along the south edge of the plaza, which is a square
+        OSMNode[] nodes = new OSMNode[14];
+        nodes[1] = makeNode(1, 45.0, -122.002);
+        nodes[2] = makeNode(2, 45.0, -122.001);
+        nodes[3] = makeNode(3, 45.0, -122.0);
+        nodes[10] = makeNode(10, 45.001, -122.002);
+        nodes[11] = makeNode(11, 45.001, -122.0);
+        nodes[12] = makeNode(12, 45.002, -122.0);
+        nodes[13] = makeNode(13, 45.002, -122.002);
+        for (OSMNode node : nodes) {
+            if (node != null) {
+                osmdb.addNode(node);
+            }
+        }
+        osmdb.addNode(makeNode(99, 0, 0));
+        osmdb.doneThirdPhaseNodes();
+
+        assertEquals(7, store.size());
+        assertFalse(store.contains(99));
+        assertTrue(store.contains(12));
+        assertSame(nodes[2], osmdb.getNode(2L));
+        assertEquals(1, osmdb.getWays().size());
+
+        assertEquals(1, osmdb.getWalkableAreas().size());
+        Area area = osmdb.getWalkableAreas().iterator().next();
+        assertEquals(1, area.outermostRings.size());
+        Ring ring = area.outermostRings.get(0);
+        assertEquals(4, ring.nodes.size());
+        for (OSMNode node : ring.nodes) {
+            assertSame(nodes[(int) node.getId()], node);
+        }
+    }
+
+    private static OSMWay makeWay(long id, long... nodeIds) {
+        OSMWay way = new OSMWay();
+        way.setId(id);
+        for (long nodeId : nodeIds) {
+            way.addNodeRef(nodeId);
+        }
+        return way;
+    }
+
+    private static OSMNode makeNode(long id, double lat, double lon) {
+        OSMNode node = new OSMNode();
+        node.setId(id);
+        node.lat = lat;
+        node.lon = lon;
+        return node;
+    }
+
+}
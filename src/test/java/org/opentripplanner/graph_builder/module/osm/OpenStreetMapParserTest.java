@@ -18,8 +18,9 @@ import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
 
+import gnu.trove.list.TLongList;
+
 import java.io.InputStream;
-import java.util.List;
 import java.util.Map;
 import java.io.File;
 import java.util.zip.GZIPInputStream;
@@ -133,10 +134,10 @@ public class OpenStreetMapParserTest {
 
         OSMWay wayA = map.getWayForId(13490353);
         assertEquals(13490353, wayA.getId());
-        List<Long> nodeRefsA = wayA.getNodeRefs();
+        TLongList nodeRefsA = wayA.getNodeRefs();
         assertEquals(2, nodeRefsA.size());
-        assertEquals(123978834, nodeRefsA.get(0).longValue());
-        assertEquals(123980465, nodeRefsA.get(1).longValue());
+        assertEquals(123978834, nodeRefsA.get(0));
+        assertEquals(123980465, nodeRefsA.get(1));
         tags = wayA.getTags();
         assertEquals("Potlatch 0.9a", tags.get("created_by"));
         assertEquals("secondary", tags.get("highway"));
@@ -0,0 +1,116 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.openstreetmap.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.Test;
+import org.opentripplanner.openstreetmap.model.OSMNode;
+import org.opentripplanner.openstreetmap.model.OSMRelation;
+import org.opentripplanner.openstreetmap.model.OSMRelationMember;
+import org.opentripplanner.openstreetmap.model.OSMWay;
+import org.opentripplanner.openstreetmap.model.OSMWithTags;
+import org.opentripplanner.openstreetmap.services.OpenStreetMapEntityHandler;
+
+import crosby.binary.file.BlockInputStream;
+
+public class ParallelBinaryOpenStreetMapReaderTest {
+
+    private static final String OSM_DIR = "/org/opentripplanner/graph_builder/module/osm/";
+
+    /**
+     * Decoding the blocks on several threads must hand the same entities to the handler, in the same order, as
+     * decoding them one after the other with the parser on the calling thread.
+     */
+    @Test
+    public void testSameOrderAsSerial() throws Exception {
+        for (String name : new String[] { "map.osm.pbf", "bridge_construction.osm.pbf" }) {
+            File file = new File(URLDecoder.decode(getClass().getResource(OSM_DIR + name).getPath(), "UTF-8"));
+            for (boolean[] phase : new boolean[][] {
+                    { true, false, false }, { false, true, false }, { false, false, true } }) {
+                List<String> serial = readSerial(file, phase[0], phase[1], phase[2]);
+                // Not every file has relations, but all of them have ways and nodes.
+                if (!phase[0]) {
+                    assertFalse(name, serial.isEmpty());
+                }
+                for (int nThreads : new int[] { 1, 4 }) {
+                    RecordingHandler parallel = new RecordingHandler();
+                    ParallelBinaryOpenStreetMapReader reader = new ParallelBinaryOpenStreetMapReader(file, parallel);
+                    reader.nThreads = nThreads;
+                    reader.read(phase[0], phase[1], phase[2]);
+                    assertEquals(name, serial, parallel.entities);
+                }
+            }
+        }
+    }
+
+    private List<String> readSerial(File file, boolean parseRelations, boolean parseWays, boolean parseNodes)
+            throws Exception {
+        RecordingHandler handler = new RecordingHandler();
+        BinaryOpenStreetMapParser parser = new BinaryOpenStreetMapParser(handler,
+                new ConcurrentHashMap<String, String>());
+        parser.setParseRelations(parseRelations);
+        parser.setParseWays(parseWays);
+        parser.setParseNodes(parseNodes);
+        try (FileInputStream input = new FileInputStream(file)) {
+            new BlockInputStream(input, parser).process();
+        }
+        return handler.entities;
+    }
+
+    /** Describes every entity it is handed, in order. */
+    private static class RecordingHandler implements OpenStreetMapEntityHandler {
+
+        final List<String> entities = new ArrayList<String>();
+
+        @Override
+        public void addNode(OSMNode node) {
+            entities.add("node " + node.getId() + " " + node.lat + " " + node.lon + " "
+                    + tags(node));
+        }
+
+        @Override
+        public void addWay(OSMWay way) {
+            entities.add("way " + way.getId() + " " + way.getNodeRefs() + " "
+                    + tags(way));
+        }
+
+        @Override
+        public void addRelation(OSMRelation relation) {
+            StringBuilder members = new StringBuilder();
+            for (OSMRelationMember member : relation.getMembers()) {
+                members.append(member.getType()).append(member.getRef()).append(member.getRole()).append(',');
+            }
+            entities.add("relation " + relation.getId() + " " + members + " "
+                    + tags(relation));
+        }
+
+        private static String tags(OSMWithTags entity) {
+            if (entity.getTags() == null) {
+                return "{}";
+            }
+            return new TreeMap<String, String>(entity.getTags()).toString();
+        }
+    }
+
+}
@@ -0,0 +1,97 @@
+package org.opentripplanner.osm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+public class NodeStoreTest {
+
+    /**
+     * Check the NodeStore against a stock TreeMap, putting nodes out of order and more than once, with IDs greater
+     * than 2^32.
+     */
+    @Test
+    public void testAgainstMap() {
+        NodeStore store = new NodeStore();
+        assertSameAsMap(fill(store), store);
+    }
+
+    /** The same, after saving the nodes to a file and loading them back, as an OSM stored on disk does. */
+    @Test
+    public void testSaveAndLoad() throws IOException {
+        NodeStore store = new NodeStore();
+        Map<Long, Node> reference = fill(store);
+        File file = File.createTempFile("nodes", ".dat");
+        try {
+            store.save(file);
+            NodeStore loaded = NodeStore.load(file);
+            assertSameAsMap(reference, loaded);
+            // the loaded store must still accept nodes
+            loaded.put(5, new Node(5, 5));
+            assertTrue(loaded.contains(5));
+            assertEquals(reference.size() + 1, loaded.size());
+        } finally {
+            file.delete();
+        }
+    }
+
+    private Map<Long, Node> fill(NodeStore store) {
+        Map<Long, Node> reference = new TreeMap<Long, Node>();
+        for (int i = 0; i < 5000; i++) {
+            long id = (1L << 34) + (i * 7919L) % 3001;
+            Node node = new Node(45 + i * 1e-4, -122 - i * 1e-4);
+            if (i % 10 == 0) {
+                node.tags = "highway=crossing;i=" + i;
+            }
+            reference.put(id, node);
+            store.put(id, node);
+        }
+        return reference;
+    }
+
+    private void assertSameAsMap(Map<Long, Node> reference, NodeStore store) {
+        assertEquals(reference.size(), store.size());
+        Iterator<Map.Entry<Long, Node>> stored = store.entries().iterator();
+        for (Map.Entry<Long, Node> entry : reference.entrySet()) {
+            Map.Entry<Long, Node> storedEntry = stored.next();
+            assertEquals(entry.getKey(), storedEntry.getKey());
+            assertSameNode(entry.getValue(), storedEntry.getValue());
+            assertSameNode(entry.getValue(), store.get(entry.getKey()));
+        }
+        assertFalse(stored.hasNext());
+        assertFalse(store.contains(1L << 33));
+        assertNull(store.get(1L << 33));
+    }
+
+    @Test
+    public void testAppendAfterLookup() {
+        NodeStore store = new NodeStore();
+        store.put(3, new Node(1, 1));
+        store.put(1, new Node(2, 2));
+        assertTrue(store.contains(3));
+        store.put(2, new Node(3, 3));
+        store.put(4, new Node(4, 4));
+        assertEquals(4, store.size());
+        assertEquals(3, store.get(2).getLat(), 0);
+        Iterator<Map.Entry<Long, Node>> entries = store.entries().iterator();
+        for (long id = 1; id <= 4; id++) {
+            assertEquals(id, (long) entries.next().getKey());
+        }
+    }
+
+    private static void assertSameNode(Node expected, Node actual) {
+        assertEquals(expected.fixedLat, actual.fixedLat);
+        assertEquals(expected.fixedLon, actual.fixedLon);
+        assertEquals(expected.tags, actual.tags);
+    }
+
+}
@@ -0,0 +1,46 @@
+package org.opentripplanner.osm;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import org.junit.Test;
+
+import com.google.common.io.Files;
+
+public class OSMTest {
+
+    /** An OSM stored in a file must get its nodes and tile index back when it is reopened. */
+    @Test
+    public void testReopenStoredOSM() {
+        File dir = Files.createTempDir();
+        String path = new File(dir, "osm").getPath();
+        try {
+            OSM osm = new OSM(path);
+            osm.nodes.put(2, new Node(45.5, -122.6));
+            osm.nodes.put(1, new Node(45.4, -122.7));
+            Way way = new Way();
+            way.nodes = new long[] { 1, 2 };
+            osm.ways.put(7L, way);
+            osm.index.add(2600, 5800, 7);
+            osm.commit();
+            osm.db.close();
+
+            OSM reopened = new OSM(path);
+            assertEquals(2, reopened.nodes.size());
+            assertEquals(45.4, reopened.nodes.get(1).getLat(), 1e-6);
+            assertEquals(-122.6, reopened.nodes.get(2).getLon(), 1e-6);
+            assertTrue(reopened.ways.containsKey(7L));
+            assertArrayEquals(new long[] { 7 }, reopened.index.query(2599, 5799, 2601, 5801).toArray());
+            reopened.db.close();
+        } finally {
+            for (File file : dir.listFiles()) {
+                file.delete();
+            }
+            dir.delete();
+        }
+    }
+
+}
@@ -0,0 +1,184 @@
+package org.opentripplanner.profile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+
+import org.joda.time.DateTimeZone;
+import org.joda.time.LocalDate;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.opentripplanner.analyst.TimeSurface;
+import org.opentripplanner.common.model.GenericLocation;
+import org.opentripplanner.graph_builder.model.GtfsBundle;
+import org.opentripplanner.graph_builder.module.GtfsModule;
+import org.opentripplanner.routing.algorithm.EarliestArrivalSearch;
+import org.opentripplanner.routing.core.RoutingRequest;
+import org.opentripplanner.routing.core.State;
+import org.opentripplanner.routing.core.TraverseMode;
+import org.opentripplanner.routing.core.TraverseModeSet;
+import org.opentripplanner.routing.edgetype.StreetEdge;
+import org.opentripplanner.routing.edgetype.StreetTransitLink;
+import org.opentripplanner.routing.edgetype.StreetTraversalPermission;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.graph.Vertex;
+import org.opentripplanner.routing.impl.DefaultStreetVertexIndexFactory;
+import org.opentripplanner.routing.spt.ShortestPathTree;
+import org.opentripplanner.routing.vertextype.IntersectionVertex;
+import org.opentripplanner.routing.vertextype.TransitStop;
+
+/**
+ * Checks the surfaces made by range RAPTOR against an earliest arrival search for every departure minute of the time
+ * window, which is how travel time surfaces are found for a single departure time.
+ */
+public class RangeRaptorRouterTest {
+
+    private static final LocalDate DATE = new LocalDate(2015, 6, 10);
+
+    private static final double ORIGIN_LAT = 52.0;
+
+    private static final double ORIGIN_LON = 5.0005;
+
+    private static Graph graph;
+
+    @BeforeClass
+    public static void buildGraph() {
+        graph = new Graph();
+        GtfsBundle bundle = new GtfsBundle(new File("src/test/resources/raptor"));
+        new GtfsModule(Collections.singletonList(bundle)).buildGraph(graph, null);
+        // A street leading to the first stop only, so that the only way to the other stops is by transit.
+        IntersectionVertex origin = new IntersectionVertex(graph, "origin", ORIGIN_LON, ORIGIN_LAT);
+        IntersectionVertex other = new IntersectionVertex(graph, "other", 5.0015, 52.0);
+        new StreetEdge(origin, other, null, "street", 70, StreetTraversalPermission.ALL, false);
+        new StreetEdge(other, origin, null, "street", 70, StreetTraversalPermission.ALL, false);
+        TransitStop stop = stopVertex("S1");
+        new StreetTransitLink(origin, stop, true);
+        new StreetTransitLink(stop, origin, true);
+        graph.index(new DefaultStreetVertexIndexFactory());
+    }
+
+    @Test
+    public void testAccepts() {
+        Graph graph = new Graph();
+        ProfileRequest request = makeRequest();
+        assertFalse(RangeRaptorRouter.accepts(graph, request));
+        graph.hasDirectTransfers = true;
+        assertTrue(RangeRaptorRouter.accepts(graph, request));
+        request.egressModes = new TraverseModeSet(TraverseMode.WALK, TraverseMode.BICYCLE);
+        assertFalse(RangeRaptorRouter.accepts(graph, request));
+        request.egressModes = new TraverseModeSet(TraverseMode.WALK);
+        request.accessModes = new TraverseModeSet(TraverseMode.CAR);
+        assertFalse(RangeRaptorRouter.accepts(graph, request));
+    }
+
+    @Test
+    public void testSameAsEarliestArrivalSearch() {
+        ProfileRequest request = makeRequest();
+        RangeRaptorRouter router = new RangeRaptorRouter(graph, request);
+        TimeSurface.RangeSet surfaces;
+        try {
+            router.route();
+            surfaces = router.makeSurfaces();
+        } finally {
+            router.cleanup();
+        }
+
+        int nDepartures = (request.toTime - request.fromTime) / RangeRaptorRouter.STEP;
+        for (TransitStop stop : graph.index.stopVertexForStop.values()) {
+            int min = Integer.MAX_VALUE;
+            int max = 0;
+            long sum = 0;
+            for (int i = 0; i < nDepartures; i++) {
+                int time = earliestArrival(request, request.fromTime + i * RangeRaptorRouter.STEP, stop);
+                min = Math.min(min, time);
+                max = Math.max(max, time);
+                sum += time;
+            }
+            String label = stop.getLabel();
+            if (min == Integer.MAX_VALUE) {
+                assertEquals(label, TimeSurface.UNREACHABLE, surfaces.min.getTime(stop));
+            } else {
+                assertEquals(label, min, surfaces.min.getTime(stop));
+            }
+            if (max == Integer.MAX_VALUE) {
+                assertEquals(label, TimeSurface.UNREACHABLE, surfaces.max.getTime(stop));
+                assertEquals(label, TimeSurface.UNREACHABLE, surfaces.avg.getTime(stop));
+            } else {
+                assertEquals(label, max, surfaces.max.getTime(stop));
+                assertEquals(label, (int) (sum / nDepartures), surfaces.avg.getTime(stop));
+            }
+        }
+        // Make sure there is something to compare: the last stop is reached, faster from some minutes than others.
+        TransitStop last = stopVertex("S6");
+        assertTrue(surfaces.min.getTime(last) > 0);
+        assertTrue(surfaces.min.getTime(last) < surfaces.max.getTime(last));
+    }
+
+    /**
+     * @return the travel time to the given stop found by an earliest arrival search leaving at the given time, or
+     *         Integer.MAX_VALUE if it is not reached within the maximum duration of a profile search.
+     */
+    private int earliestArrival(ProfileRequest profileRequest, int departure, TransitStop stop) {
+        RoutingRequest request = new RoutingRequest();
+        TraverseModeSet modes = profileRequest.transitModes.clone();
+        modes.setWalk(true);
+        request.modes = modes;
+        request.walkSpeed = profileRequest.walkSpeed;
+        request.batch = true;
+        // Rank states by the time since departure, so the search finds the earliest arrival at every stop.
+        request.clampInitialWait = 0;
+        long departureTime = DATE.toDateTimeAtStartOfDay(DateTimeZone.forTimeZone(graph.getTimeZone()))
+                .plusSeconds(departure).getMillis() / 1000;
+        request.dateTime = departureTime;
+        request.from = new GenericLocation(profileRequest.fromLat, profileRequest.fromLon);
+        request.to = request.from;
+        request.setRoutingContext(graph);
+        try {
+            ShortestPathTree spt = new EarliestArrivalSearch().getShortestPathTree(request);
+            int best = Integer.MAX_VALUE;
+            List<State> states = spt.getStates(stop);
+            if (states == null) return best;
+            for (State state : states) {
+                int time = (int) (state.getTimeSeconds() - departureTime);
+                if (time <= ProfileRouter.MAX_DURATION && time < best) {
+                    best = time;
+                }
+            }
+            return best;
+        } finally {
+            request.cleanup();
+        }
+    }
+
+    /** @return a profile request from the origin over ten minutes of the morning, walking only. */
+    private static ProfileRequest makeRequest() {
+        ProfileRequest request = new ProfileRequest();
+        request.fromLat = request.toLat = ORIGIN_LAT;
+        request.fromLon = request.toLon = ORIGIN_LON;
+        request.fromTime = 7 * 3600 + 58 * 60;
+        request.toTime = 8 * 3600 + 8 * 60;
+        request.date = DATE;
+        request.walkSpeed = 1.3f;
+        request.maxWalkTime = 20;
+        request.accessModes = new TraverseModeSet(TraverseMode.WALK);
+        request.egressModes = new TraverseModeSet(TraverseMode.WALK);
+        request.directModes = new TraverseModeSet(TraverseMode.WALK);
+        request.transitModes = new TraverseModeSet(TraverseMode.BUS);
+        request.analyst = true;
+        return request;
+    }
+
+    private static TransitStop stopVertex(String id) {
+        for (Vertex vertex : graph.getVertices()) {
+            if (vertex instanceof TransitStop && ((TransitStop) vertex).getStopId().getId().equals(id)) {
+                return (TransitStop) vertex;
+            }
+        }
+        throw new IllegalArgumentException(id);
+    }
+
+}
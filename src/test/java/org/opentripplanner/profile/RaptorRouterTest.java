@@ -0,0 +1,110 @@
+package org.opentripplanner.profile;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.onebusaway.gtfs.model.Stop;
+import org.opentripplanner.graph_builder.model.GtfsBundle;
+import org.opentripplanner.graph_builder.module.GtfsModule;
+import org.opentripplanner.routing.algorithm.EarliestArrivalSearch;
+import org.opentripplanner.routing.core.RoutingRequest;
+import org.opentripplanner.routing.core.State;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.impl.DefaultStreetVertexIndexFactory;
+import org.opentripplanner.routing.spt.ShortestPathTree;
+import org.opentripplanner.routing.vertextype.TransitStop;
+import org.opentripplanner.util.monitoring.SearchMetrics;
+
+/**
+ * Checks that the arrival times found by RAPTOR are those of an earliest arrival search over the graph, on a small
+ * feed with transfers, an express route that is overtaken by a connection and a night route running past midnight.
+ */
+public class RaptorRouterTest {
+
+    private static final DateTimeZone TIME_ZONE = DateTimeZone.forID("Europe/Amsterdam");
+
+    private static Graph graph;
+
+    @BeforeClass
+    public static void buildGraph() {
+        graph = new Graph();
+        GtfsBundle bundle = new GtfsBundle(new File("src/test/resources/raptor"));
+        new GtfsModule(Collections.singletonList(bundle)).buildGraph(graph, null);
+        graph.index(new DefaultStreetVertexIndexFactory());
+    }
+
+    @Test
+    public void testMorning() {
+        RaptorRouter raptor = assertSameTimes("S1", new DateTime(2015, 6, 10, 7, 58, TIME_ZONE));
+        // The connection from route 1 to route 2 arrives before the express.
+        assertEquals(8 * 3600 + 35 * 60, raptor.bestTimes[raptor.data.getStopIndex(stopVertex("S5"))]);
+    }
+
+    @Test
+    public void testAfterMidnight() {
+        RaptorRouter raptor = assertSameTimes("S4", new DateTime(2015, 6, 10, 0, 0, TIME_ZONE));
+        // Only the night trip of the previous day gets there.
+        assertEquals(20 * 60, raptor.bestTimes[raptor.data.getStopIndex(stopVertex("S6"))]);
+    }
+
+    @Test
+    public void testRecordsSearchMetrics() {
+        SearchMetrics metrics = graph.getSearchMetrics();
+        long raptorSearches = metrics.forQueryClass("raptor").searches.get();
+        long accessSearches = metrics.forQueryClass("earliest_arrival").searches.get();
+        assertSameTimes("S1", new DateTime(2015, 6, 10, 7, 58, TIME_ZONE));
+        assertEquals(raptorSearches + 1, metrics.forQueryClass("raptor").searches.get());
+        // One search for the access times and one for the expected times.
+        assertEquals(accessSearches + 2, metrics.forQueryClass("earliest_arrival").searches.get());
+    }
+
+    /**
+     * Route from the given stop with RAPTOR and with an earliest arrival search, and check that both give the same
+     * arrival time at every stop within the maximum duration of the RAPTOR search.
+     */
+    private RaptorRouter assertSameTimes(String origin, DateTime departure) {
+        RoutingRequest request = new RoutingRequest();
+        request.dateTime = departure.getMillis() / 1000;
+        request.batch = true;
+        // Rank states by the time since departure, so the search finds the earliest arrival at every stop.
+        request.clampInitialWait = 0;
+        request.setRoutingContext(graph, stopVertex(origin), null);
+
+        RaptorRouter raptor = new RaptorRouter(graph, request);
+        raptor.route();
+        ShortestPathTree spt = new EarliestArrivalSearch().getShortestPathTree(request);
+
+        long midnight = departure.withTimeAtStartOfDay().getMillis() / 1000;
+        int[] expected = new int[raptor.data.getStopCount()];
+        Arrays.fill(expected, RaptorRouter.UNREACHED);
+        for (State state : spt.getAllStates()) {
+            if (!(state.getVertex() instanceof TransitStop)) continue;
+            int s = raptor.data.getStopIndex((TransitStop) state.getVertex());
+            int time = (int) (state.getTimeSeconds() - midnight);
+            if (time <= raptor.departureTime + raptor.maxDuration && time < expected[s]) {
+                expected[s] = time;
+            }
+        }
+        for (int s = 0; s < expected.length; s++) {
+            assertEquals(raptor.data.stops[s].getLabel(), expected[s], raptor.bestTimes[s]);
+        }
+        return raptor;
+    }
+
+    private TransitStop stopVertex(String id) {
+        for (Stop stop : graph.index.stopForId.values()) {
+            if (stop.getId().getId().equals(id)) {
+                return graph.index.stopVertexForStop.get(stop);
+            }
+        }
+        throw new IllegalArgumentException(id);
+    }
+
+}
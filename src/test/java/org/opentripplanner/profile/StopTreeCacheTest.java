@@ -0,0 +1,110 @@
+package org.opentripplanner.profile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import gnu.trove.map.TObjectIntMap;
+import gnu.trove.map.hash.TObjectIntHashMap;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.IntBuffer;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.onebusaway.gtfs.model.AgencyAndId;
+import org.onebusaway.gtfs.model.Stop;
+import org.opentripplanner.routing.edgetype.StreetEdge;
+import org.opentripplanner.routing.edgetype.StreetTraversalPermission;
+import org.opentripplanner.routing.edgetype.StreetTransitLink;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.graph.Vertex;
+import org.opentripplanner.routing.vertextype.IntersectionVertex;
+import org.opentripplanner.routing.vertextype.TransitStop;
+
+public class StopTreeCacheTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testBuildWriteAndMap() throws Exception {
+        Graph graph = new Graph();
+        IntersectionVertex a = new IntersectionVertex(graph, "a", -122.6, 45.5);
+        IntersectionVertex b = new IntersectionVertex(graph, "b", -122.599, 45.5);
+        IntersectionVertex c = new IntersectionVertex(graph, "c", -122.598, 45.5);
+        IntersectionVertex far = new IntersectionVertex(graph, "far", -122.5, 45.5);
+        new StreetEdge(a, b, null, "ab", 100, StreetTraversalPermission.ALL, false);
+        new StreetEdge(b, a, null, "ab", 100, StreetTraversalPermission.ALL, false);
+        new StreetEdge(b, c, null, "bc", 150, StreetTraversalPermission.CAR, false);
+        new StreetEdge(b, far, null, "bfar", 5000, StreetTraversalPermission.ALL, false);
+        Stop stop = new Stop();
+        stop.setId(new AgencyAndId("A", "1"));
+        stop.setLat(45.5);
+        stop.setLon(-122.6);
+        TransitStop tstop = new TransitStop(graph, stop);
+        new StreetTransitLink(tstop, a, true);
+        new StreetTransitLink(a, tstop, true);
+
+        StopTreeCache built = StopTreeCache.build(graph, StopTreeCache.DEFAULT_TIME_CUTOFF_MINUTES);
+        TObjectIntMap<Vertex> distances = distances(built, tstop);
+        assertEquals(0, distances.get(a));
+        assertEquals(100, distances.get(b));
+        assertFalse(distances.containsKey(c));
+        assertFalse(distances.containsKey(far));
+
+        File file = new File(temporaryFolder.getRoot(), StopTreeCache.FILENAME);
+        built.write(file);
+        StopTreeCache mapped = StopTreeCache.open(file, graph);
+        assertEquals(distances, distances(mapped, tstop));
+        assertEquals(StopTreeCache.DEFAULT_TIME_CUTOFF_MINUTES, mapped.timeCutoffMinutes);
+    }
+
+    /** A file written from another build of a graph must not be opened, even when all the labels match. */
+    @Test
+    public void testRefuseFileFromAnotherBuild() throws Exception {
+        Graph graph = makeGraph();
+        File file = new File(temporaryFolder.getRoot(), StopTreeCache.FILENAME);
+        StopTreeCache.build(graph, StopTreeCache.DEFAULT_TIME_CUTOFF_MINUTES).write(file);
+        Graph rebuilt = makeGraph();
+        try {
+            StopTreeCache.open(file, rebuilt);
+            fail("A stop tree file from another graph build was opened.");
+        } catch (IOException e) {
+            // expected
+        }
+        assertNotNull(StopTreeCache.open(file, graph));
+    }
+
+    private static Graph makeGraph() {
+        Graph graph = new Graph();
+        IntersectionVertex a = new IntersectionVertex(graph, "a", -122.6, 45.5);
+        IntersectionVertex b = new IntersectionVertex(graph, "b", -122.599, 45.5);
+        new StreetEdge(a, b, null, "ab", 100, StreetTraversalPermission.ALL, false);
+        new StreetEdge(b, a, null, "ab", 100, StreetTraversalPermission.ALL, false);
+        Stop stop = new Stop();
+        stop.setId(new AgencyAndId("A", "1"));
+        stop.setLat(45.5);
+        stop.setLon(-122.6);
+        TransitStop tstop = new TransitStop(graph, stop);
+        new StreetTransitLink(tstop, a, true);
+        new StreetTransitLink(a, tstop, true);
+        return graph;
+    }
+
+    private static TObjectIntMap<Vertex> distances(StopTreeCache cache, TransitStop tstop) {
+        TObjectIntMap<Vertex> distances = new TObjectIntHashMap<Vertex>();
+        IntBuffer tree = cache.getTree(tstop);
+        int lastPosition = -1;
+        for (int i = 0; i < tree.limit(); i += 2) {
+            assertTrue(tree.get(i) > lastPosition);
+            lastPosition = tree.get(i);
+            distances.put(cache.getVertex(tree.get(i)), tree.get(i + 1));
+        }
+        return distances;
+    }
+
+}
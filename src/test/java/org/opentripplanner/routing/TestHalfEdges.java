@@ -155,6 +155,8 @@ public class TestHalfEdges extends TestCase {
         Collection<Edge> edges = end.getIncoming();
 
         assertEquals(2, edges.size());
+        // The temporary edges are only held by the temporary locations, the graph itself is left untouched
+        assertEquals(nEdges, graph.getEdges().size());
 
         long startTime = TestUtils.dateInSeconds("America/New_York", 2009, 11, 1, 12, 34, 25);
         options.dateTime = startTime;
@@ -23,6 +23,8 @@ import java.util.Set;
 
 import org.junit.Before;
 import org.junit.Test;
+import org.opentripplanner.common.pqueue.BinHeap;
+import org.opentripplanner.common.pqueue.IndexedFourAryHeap;
 import org.opentripplanner.routing.algorithm.strategies.MultiTargetTerminationStrategy;
 import org.opentripplanner.routing.algorithm.strategies.SearchTerminationStrategy;
 import org.opentripplanner.routing.core.State;
@@ -34,6 +36,7 @@ import org.opentripplanner.routing.graph.TemporaryConcreteEdge;
 import org.opentripplanner.routing.graph.Vertex;
 import org.opentripplanner.routing.location.TemporaryStreetLocation;
 import org.opentripplanner.routing.spt.GraphPath;
+import org.opentripplanner.routing.spt.IndexedShortestPathTree;
 import org.opentripplanner.routing.spt.ShortestPathTree;
 
 import com.vividsolutions.jts.geom.Coordinate;
@@ -221,6 +224,94 @@ public class AStarTest {
         assertEquals("near_56th_20th", states.get(8).getVertex().getLabel());
     }
 
+    @Test
+    public void testIndexedShortestPathTree() {
+        RoutingRequest options = new RoutingRequest();
+        options.walkSpeed = 1.0;
+        options.batch = true;
+        options.setRoutingContext(_graph, _graph.getVertex("56th_24th"), _graph.getVertex("leary_20th"));
+        ShortestPathTree mapTree = new AStar().getShortestPathTree(options);
+
+        options.indexedShortestPathTree = true;
+        ShortestPathTree indexedTree = new AStar().getShortestPathTree(options);
+        assertTrue(indexedTree instanceof IndexedShortestPathTree);
+
+        assertEquals(mapTree.getVertexCount(), indexedTree.getVertexCount());
+        assertEquals(mapTree.getAllStates().size(), indexedTree.getAllStates().size());
+        assertEquals(mapTree.getVertices(), indexedTree.getVertices());
+        for (Vertex v : _graph.getVertices()) {
+            assertEquals(mapTree.getState(v).getWeight(), indexedTree.getState(v).getWeight(), 0.0);
+            assertTrue(indexedTree.visit(indexedTree.getState(v)));
+        }
+    }
+
+    /**
+     * The 4-ary heap used by default must find the same tree as a binary heap.
+     */
+    @Test
+    public void testQueueImplementations() {
+        RoutingRequest options = new RoutingRequest();
+        options.walkSpeed = 1.0;
+        options.batch = true;
+        options.setRoutingContext(_graph, _graph.getVertex("56th_24th"), _graph.getVertex("leary_20th"));
+        AStar binHeapSearch = new AStar();
+        binHeapSearch.setQueueFactory(BinHeap.FACTORY);
+        ShortestPathTree binHeapTree = binHeapSearch.getShortestPathTree(options);
+        AStar fourAryHeapSearch = new AStar();
+        fourAryHeapSearch.setQueueFactory(IndexedFourAryHeap.FACTORY);
+        ShortestPathTree fourAryHeapTree = fourAryHeapSearch.getShortestPathTree(options);
+        ShortestPathTree defaultTree = new AStar().getShortestPathTree(options);
+        options.cleanup();
+
+        assertEquals(binHeapTree.getVertexCount(), fourAryHeapTree.getVertexCount());
+        assertEquals(binHeapTree.getAllStates().size(), fourAryHeapTree.getAllStates().size());
+        for (Vertex v : _graph.getVertices()) {
+            assertEquals(binHeapTree.getState(v).getWeight(), fourAryHeapTree.getState(v).getWeight(), 0.0);
+            assertEquals(fourAryHeapTree.getState(v).getWeight(), defaultTree.getState(v).getWeight(), 0.0);
+        }
+    }
+
+    /**
+     * Once an indexed tree is released, the next indexed search on the same thread must reuse its arrays and must
+     * not see any of its states.
+     */
+    @Test
+    public void testIndexedShortestPathTreeReuse() {
+        RoutingRequest options = new RoutingRequest();
+        options.walkSpeed = 1.0;
+        options.batch = true;
+        options.indexedShortestPathTree = true;
+        options.setRoutingContext(_graph, _graph.getVertex("56th_24th"), _graph.getVertex("leary_20th"));
+        ShortestPathTree first = new AStar().getShortestPathTree(options);
+        options.cleanup();
+        long allocated = SearchWorkspace.getTreeStoragesAllocated();
+        long reused = SearchWorkspace.getTreeStoragesReused();
+        first.release();
+
+        // Search from the other end, so states left behind by the first search would show.
+        RoutingRequest reverse = options.clone();
+        reverse.setRoutingContext(_graph, _graph.getVertex("shilshole_20th"), _graph.getVertex("56th_24th"));
+        ShortestPathTree second = new AStar().getShortestPathTree(reverse);
+        assertEquals(allocated, SearchWorkspace.getTreeStoragesAllocated());
+        assertEquals(reused + 1, SearchWorkspace.getTreeStoragesReused());
+
+        reverse.indexedShortestPathTree = false;
+        ShortestPathTree mapTree = new AStar().getShortestPathTree(reverse);
+        reverse.cleanup();
+        assertEquals(mapTree.getVertexCount(), second.getVertexCount());
+        assertEquals(mapTree.getAllStates().size(), second.getAllStates().size());
+        for (Vertex v : _graph.getVertices()) {
+            assertEquals(mapTree.getState(v).getWeight(), second.getState(v).getWeight(), 0.0);
+        }
+
+        // The second tree still holds the arrays, so another search must allocate new ones.
+        reverse.indexedShortestPathTree = true;
+        reverse.setRoutingContext(_graph, _graph.getVertex("shilshole_20th"), _graph.getVertex("56th_24th"));
+        new AStar().getShortestPathTree(reverse);
+        reverse.cleanup();
+        assertEquals(allocated + 1, SearchWorkspace.getTreeStoragesAllocated());
+    }
+
     @Test
     public void testMultipleTargets() {
         RoutingRequest options = new RoutingRequest();
@@ -0,0 +1,246 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.routing.contraction;
+
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.opentripplanner.common.geometry.GeometryUtils;
+import org.opentripplanner.common.pqueue.BinHeap;
+import org.opentripplanner.routing.algorithm.AStar;
+import org.opentripplanner.routing.core.OptimizeType;
+import org.opentripplanner.routing.core.RoutingRequest;
+import org.opentripplanner.routing.core.TraverseMode;
+import org.opentripplanner.routing.edgetype.StreetEdge;
+import org.opentripplanner.routing.edgetype.StreetTraversalPermission;
+import org.opentripplanner.routing.graph.Edge;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.graph.Vertex;
+import org.opentripplanner.routing.impl.GraphPathFinder;
+import org.opentripplanner.routing.spt.GraphPath;
+import org.opentripplanner.routing.spt.ShortestPathTree;
+import org.opentripplanner.routing.vertextype.IntersectionVertex;
+import org.opentripplanner.standalone.Router;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.LineString;
+
+public class ContractionHierarchyTest {
+
+    private static final int SIDE = 6;
+
+    private Graph graph;
+
+    private IntersectionVertex[] vertices;
+
+    private ContractionHierarchy ch;
+
+    private RoutingRequest profile;
+
+    /** A grid of streets of random lengths, some of them one way, and one intersection with no way out. */
+    @Before
+    public void setUp() {
+        graph = new Graph();
+        Random random = new Random(42);
+        vertices = new IntersectionVertex[SIDE * SIDE];
+        for (int y = 0; y < SIDE; y++) {
+            for (int x = 0; x < SIDE; x++) {
+                vertices[y * SIDE + x] = new IntersectionVertex(graph, "v" + x + "_" + y, x * 0.001, y * 0.001);
+            }
+        }
+        for (int y = 0; y < SIDE; y++) {
+            for (int x = 0; x < SIDE; x++) {
+                IntersectionVertex v = vertices[y * SIDE + x];
+                if (x + 1 < SIDE) {
+                    street(v, vertices[y * SIDE + x + 1], 50 + random.nextInt(100), random.nextInt(4) > 0);
+                }
+                if (y + 1 < SIDE) {
+                    street(v, vertices[(y + 1) * SIDE + x], 50 + random.nextInt(100), random.nextInt(4) > 0);
+                }
+            }
+        }
+        // A dead end that can be entered but not left
+        IntersectionVertex trap = new IntersectionVertex(graph, "trap", -0.001, 0);
+        street(vertices[0], trap, 100, false);
+
+        ch = ContractionHierarchy.build(graph, TraverseMode.CAR, OptimizeType.QUICK);
+        profile = ContractionHierarchy.makeProfile(TraverseMode.CAR, OptimizeType.QUICK);
+    }
+
+    @Test
+    public void testShortestPaths() {
+        assertEquals(SIDE * SIDE + 1, ch.getNodeCount());
+        for (Vertex from : graph.getVertices()) {
+            Map<Vertex, Integer> expected = dijkstra(from);
+            for (Vertex to : graph.getVertices()) {
+                if (from == to)
+                    continue;
+                List<Edge> path = new ContractionHierarchySearch(ch).route(from, to);
+                if (!expected.containsKey(to)) {
+                    assertNull(from + " to " + to, path);
+                    continue;
+                }
+                assertNotNull(from + " to " + to, path);
+                Vertex v = from;
+                int weight = 0;
+                for (Edge e : path) {
+                    assertEquals(v, e.getFromVertex());
+                    weight += ContractionHierarchy.weight(e, profile);
+                    v = e.getToVertex();
+                }
+                assertEquals(to, v);
+                assertEquals(from + " to " + to, (int) expected.get(to), weight);
+            }
+        }
+    }
+
+    @Test
+    public void testGetPath() {
+        Vertex from = vertices[0];
+        Vertex to = vertices[SIDE * SIDE - 1];
+        RoutingRequest options = new RoutingRequest(TraverseMode.CAR);
+        options.setRoutingContext(graph, from, to);
+        assertTrue(ch.accepts(options));
+        GraphPath path = new ContractionHierarchySearch(ch).getPath(options);
+        assertNotNull(path);
+        assertEquals(from, path.states.getFirst().getVertex());
+        assertEquals(to, path.states.getLast().getVertex());
+
+        options = new RoutingRequest(TraverseMode.BICYCLE);
+        assertFalse(ch.accepts(options));
+    }
+
+    /**
+     * Requests that weigh streets differently from the profile must not use the hierarchy, and those that are accepted
+     * get a path as good as the one AStar finds, apart from turn costs which the hierarchy ignores.
+     */
+    @Test
+    public void testAgreesWithAStar() {
+        RoutingRequest options = new RoutingRequest(TraverseMode.CAR);
+        assertTrue("the default request uses the hierarchy", ch.accepts(options));
+        options.setTurnReluctance(0);
+        assertTrue("turn costs are not part of the hierarchy", ch.accepts(options));
+        options.setMaxWalkDistance(1000);
+        assertTrue("walk limiting does not apply without transit", ch.accepts(options));
+        options.carSpeed = 5;
+        assertFalse(ch.accepts(options));
+        options = new RoutingRequest(TraverseMode.CAR);
+        options.setWalkReluctance(10);
+        assertFalse(ch.accepts(options));
+
+        for (int i = 0; i < SIDE * SIDE; i += 5) {
+            Vertex from = vertices[i];
+            Vertex to = vertices[SIDE * SIDE - 1 - i];
+            options = new RoutingRequest(TraverseMode.CAR);
+            options.setTurnReluctance(0);
+            options.setRoutingContext(graph, from, to);
+            GraphPath expected = aStar(options);
+            GraphPath path = new ContractionHierarchySearch(ch).getPath(options);
+            assertEquals(from + " to " + to, expected == null, path == null);
+            if (expected != null) {
+                // Weights are rounded to hundredths in the hierarchy
+                assertEquals(from + " to " + to, expected.getWeight(), path.getWeight(), 0.01 * path.edges.size());
+            }
+
+            // The weight of the path includes turn costs, which AStar takes into account when choosing its path
+            options = new RoutingRequest(TraverseMode.CAR);
+            options.setRoutingContext(graph, from, to);
+            expected = aStar(options);
+            path = new ContractionHierarchySearch(ch).getPath(options);
+            assertEquals(from + " to " + to, expected == null, path == null);
+            if (expected != null) {
+                assertTrue(from + " to " + to, path.getWeight() >= expected.getWeight() - 0.01 * path.edges.size());
+            }
+        }
+    }
+
+    /**
+     * GraphPathFinder must answer a street request with the default parameters from the hierarchy, without running
+     * AStar, even though it limits the walk distance of every request.
+     */
+    @Test
+    public void testUsedByGraphPathFinder() {
+        ContractionHierarchySet hierarchies = new ContractionHierarchySet();
+        hierarchies.add(ch);
+        graph.putService(ContractionHierarchySet.class, hierarchies);
+        Vertex from = vertices[1];
+        Vertex to = vertices[SIDE * SIDE - 2];
+        RoutingRequest options = new RoutingRequest(TraverseMode.CAR);
+        options.setRoutingContext(graph, from, to);
+        List<GraphPath> paths = new GraphPathFinder(new Router("TEST", graph)).getPaths(options);
+        assertEquals(1, paths.size());
+        assertEquals(from, paths.get(0).states.getFirst().getVertex());
+        assertEquals(to, paths.get(0).states.getLast().getVertex());
+        assertFalse("no AStar search was run", graph.getSearchMetrics().getQueryClasses().containsKey("street"));
+        assertEquals(1, graph.getSearchMetrics().forQueryClass("contraction").searches.get());
+
+        graph.putService(ContractionHierarchySet.class, new ContractionHierarchySet());
+        options = new RoutingRequest(TraverseMode.CAR);
+        options.setRoutingContext(graph, from, to);
+        List<GraphPath> aStarPaths = new GraphPathFinder(new Router("TEST", graph)).getPaths(options);
+        assertTrue(graph.getSearchMetrics().getQueryClasses().containsKey("street"));
+        assertTrue(paths.get(0).getWeight() >= aStarPaths.get(0).getWeight() - 0.01 * paths.get(0).edges.size());
+    }
+
+    private GraphPath aStar(RoutingRequest options) {
+        ShortestPathTree spt = new AStar().getShortestPathTree(options);
+        return spt.getPath(options.rctx.target, false);
+    }
+
+    /** A plain Dijkstra search over the same weights, for reference. */
+    private Map<Vertex, Integer> dijkstra(Vertex origin) {
+        Map<Vertex, Integer> dist = new HashMap<Vertex, Integer>();
+        BinHeap<Vertex> queue = new BinHeap<Vertex>();
+        dist.put(origin, 0);
+        queue.insert(origin, 0);
+        while (!queue.empty()) {
+            int d = (int) queue.peek_min_key();
+            Vertex v = queue.extract_min();
+            if (d > dist.get(v))
+                continue;
+            for (Edge e : v.getOutgoing()) {
+                int w = ContractionHierarchy.weight(e, profile);
+                if (w == ContractionHierarchy.NONE)
+                    continue;
+                Integer old = dist.get(e.getToVertex());
+                if (old == null || d + w < old) {
+                    dist.put(e.getToVertex(), d + w);
+                    queue.insert(e.getToVertex(), d + w);
+                }
+            }
+        }
+        return dist;
+    }
+
+    private void street(IntersectionVertex a, IntersectionVertex b, double length, boolean twoWay) {
+        edge(a, b, length, false);
+        if (twoWay) {
+            edge(b, a, length, true);
+        }
+    }
+
+    private StreetEdge edge(IntersectionVertex a, IntersectionVertex b, double length, boolean back) {
+        LineString geom = GeometryUtils.getGeometryFactory().createLineString(
+                new Coordinate[] { a.getCoordinate(), b.getCoordinate() });
+        String name = String.format("%s_%s", a.getLabel(), b.getLabel());
+        return new StreetEdge(a, b, geom, name, length, StreetTraversalPermission.ALL, back);
+    }
+
+}
@@ -18,6 +18,7 @@ import static org.junit.Assert.*;
 import org.junit.Before;
 import org.junit.Test;
 import org.opentripplanner.common.TurnRestriction;
+import org.opentripplanner.common.TurnRestrictionType;
 import org.opentripplanner.common.geometry.GeometryUtils;
 import org.opentripplanner.routing.core.RoutingRequest;
 import org.opentripplanner.routing.core.State;
@@ -265,6 +266,29 @@ public class PlainStreetEdgeTest {
         assertNotNull(e0.traverse(e1.traverse(state)));
     }
 
+    @Test
+    public void testTurnRestrictionFlag() {
+        StreetEdge e0 = edge(v0, v1, 50.0, StreetTraversalPermission.ALL);
+        StreetEdge e1 = edge(v1, v2, 18.4, StreetTraversalPermission.ALL);
+        PartialStreetEdge partial = new PartialStreetEdge(e1, v1, v2, e1.getGeometry(), "partial", 9.2);
+        assertFalse(e1.hasTurnRestrictions());
+        assertFalse(partial.hasTurnRestrictions());
+
+        TurnRestriction restriction = new TurnRestriction(e1, e0, TurnRestrictionType.NO_TURN,
+                TraverseModeSet.allModes());
+        _graph.addTurnRestriction(e1, restriction);
+        assertTrue(e1.hasTurnRestrictions());
+        assertTrue(partial.hasTurnRestrictions());
+        assertFalse(e0.hasTurnRestrictions());
+        assertEquals(1, _graph.getTurnRestrictions(e1).size());
+        assertTrue(_graph.getTurnRestrictions(e0).isEmpty());
+
+        _graph.removeTurnRestriction(e1, restriction);
+        assertFalse(e1.hasTurnRestrictions());
+        assertFalse(partial.hasTurnRestrictions());
+        assertTrue(_graph.getTurnRestrictions(e1).isEmpty());
+    }
+
     /****
      * Private Methods
      ****/
@@ -0,0 +1,223 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.routing.edgetype;
+
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.TimeZone;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.onebusaway.gtfs.model.AgencyAndId;
+import org.onebusaway.gtfs.model.Route;
+import org.onebusaway.gtfs.model.Stop;
+import org.onebusaway.gtfs.model.StopTime;
+import org.onebusaway.gtfs.model.Trip;
+import org.onebusaway.gtfs.model.calendar.ServiceDate;
+import org.onebusaway.gtfs.services.calendar.CalendarService;
+import org.opentripplanner.model.StopPattern;
+import org.opentripplanner.routing.core.RoutingContext;
+import org.opentripplanner.routing.core.RoutingRequest;
+import org.opentripplanner.routing.core.ServiceDay;
+import org.opentripplanner.routing.core.State;
+import org.opentripplanner.routing.core.StopTransfer;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.trippattern.Deduplicator;
+import org.opentripplanner.routing.trippattern.TripTimes;
+import org.opentripplanner.routing.vertextype.PatternArriveVertex;
+import org.opentripplanner.routing.vertextype.PatternDepartVertex;
+
+import com.google.common.collect.Sets;
+
+/**
+ * Checks that the sorted per-stop indexes built by Timetable.finish() pick the same trip as the linear scan used for
+ * timetables that have not been indexed, including the choice between trips with equal times.
+ */
+public class TimetableIndexTest {
+
+    private static final int N_STOPS = 5;
+
+    /** Well above the number of trips for which a timetable is indexed. */
+    private static final int N_TRIPS = 40;
+
+    private static final AgencyAndId RUNNING = new AgencyAndId("agency", "running");
+
+    private static final AgencyAndId NOT_RUNNING = new AgencyAndId("agency", "not_running");
+
+    /** Seeded so that any failure can be reproduced. */
+    private final Random random = new Random(42);
+
+    private Graph graph;
+
+    private Route route;
+
+    private Stop[] stops;
+
+    private TripPattern pattern;
+
+    private ServiceDay serviceDay;
+
+    private RoutingRequest options;
+
+    private Trip previousTrip;
+
+    @Before
+    public void setUp() {
+        graph = new Graph();
+        graph.serviceCodes.put(RUNNING, 0);
+        graph.serviceCodes.put(NOT_RUNNING, 1);
+
+        route = new Route();
+        route.setId(new AgencyAndId("agency", "route"));
+        route.setType(3);
+        stops = new Stop[N_STOPS];
+        List<StopTime> stopTimes = new ArrayList<StopTime>();
+        for (int s = 0; s < N_STOPS; s++) {
+            stops[s] = new Stop();
+            stops[s].setId(new AgencyAndId("agency", "stop" + s));
+            StopTime stopTime = new StopTime();
+            stopTime.setStop(stops[s]);
+            stopTimes.add(stopTime);
+        }
+        pattern = new TripPattern(route, new StopPattern(stopTimes));
+        for (int s = 0; s < N_STOPS - 1; s++) {
+            new PatternHop(new PatternDepartVertex(graph, pattern, s), new PatternArriveVertex(graph, pattern, s + 1),
+                    stops[s], stops[s + 1], s);
+        }
+
+        CalendarService calendarService = mock(CalendarService.class);
+        when(calendarService.getTimeZoneForAgencyId("agency")).thenReturn(TimeZone.getTimeZone("GMT"));
+        when(calendarService.getServiceIds()).thenReturn(Sets.newHashSet(RUNNING, NOT_RUNNING));
+        when(calendarService.getServiceIdsOnDate(any(ServiceDate.class))).thenReturn(Collections.singleton(RUNNING));
+        serviceDay = new ServiceDay(graph, new ServiceDate(2015, 3, 2), calendarService, "agency");
+
+        // Every transfer at a stop of the pattern takes two minutes, except those to two particular trips.
+        Route previousRoute = new Route();
+        previousRoute.setId(new AgencyAndId("agency", "previous"));
+        previousTrip = new Trip();
+        previousTrip.setId(new AgencyAndId("agency", "previous"));
+        previousTrip.setRoute(previousRoute);
+        for (Stop stop : stops) {
+            graph.getTransferTable().addTransferTime(stop, stop, null, null, null, null, 120);
+            graph.getTransferTable().addTransferTime(stop, stop, null, null, null, makeTrip(7),
+                    StopTransfer.FORBIDDEN_TRANSFER);
+            graph.getTransferTable().addTransferTime(stop, stop, null, null, null, makeTrip(11), 900);
+        }
+
+        options = new RoutingRequest();
+        options.rctx = new RoutingContext(options, graph, null, null);
+    }
+
+    /** Groups of trips run at exactly the same times, so the order among equal times decides the result. */
+    @Test
+    public void testEqualTimes() {
+        Timetable indexed = makeTimetable(false);
+        assertSameTrips(indexed, false);
+        assertSameTrips(indexed, true);
+    }
+
+    /** Trips have different running times, so they overtake one another and their order differs by stop. */
+    @Test
+    public void testOvertaking() {
+        Timetable indexed = makeTimetable(true);
+        assertSameTrips(indexed, false);
+        assertSameTrips(indexed, true);
+    }
+
+    /** Trips not meeting the request's criteria are skipped by the indexed search as well. */
+    @Test
+    public void testWheelchairAccessible() {
+        options.wheelchairAccessible = true;
+        Timetable indexed = makeTimetable(true);
+        assertSameTrips(indexed, false);
+        assertSameTrips(indexed, true);
+    }
+
+    /** Make a timetable of trips with a service running on the service day and one that is not. */
+    private Timetable makeTimetable(boolean overtaking) {
+        Timetable timetable = new Timetable(pattern);
+        for (int i = 0; i < N_TRIPS; i++) {
+            // Three trips leave the first stop at the same time every five minutes.
+            int time = 7 * 3600 + (i / 3) * 300;
+            List<StopTime> stopTimes = new ArrayList<StopTime>();
+            for (int s = 0; s < N_STOPS; s++) {
+                StopTime stopTime = new StopTime();
+                stopTime.setStop(stops[s]);
+                stopTime.setStopSequence(s);
+                stopTime.setArrivalTime(time);
+                if (overtaking) {
+                    time += random.nextInt(3) * 30;
+                }
+                stopTime.setDepartureTime(time);
+                time += overtaking ? 120 + random.nextInt(1200) : 300;
+                stopTimes.add(stopTime);
+            }
+            TripTimes tripTimes = new TripTimes(makeTrip(i), stopTimes, new Deduplicator());
+            tripTimes.serviceCode = graph.serviceCodes.get(tripTimes.trip.getServiceId());
+            timetable.addTripTimes(tripTimes);
+        }
+        timetable.finish();
+        return timetable;
+    }
+
+    /** @return a trip with the given number, accessible and running for some of the numbers only. */
+    private Trip makeTrip(int i) {
+        Trip trip = new Trip();
+        trip.setId(new AgencyAndId("agency", "trip" + i));
+        trip.setRoute(route);
+        trip.setServiceId(i % 5 == 4 ? NOT_RUNNING : RUNNING);
+        trip.setWheelchairAccessible(i % 4 == 0 ? 1 : 0);
+        return trip;
+    }
+
+    /**
+     * Search boarding and alighting at every stop over the whole service period, and check that the indexed timetable
+     * returns the very same trips as an unindexed copy of it. Alighting searches are those of arriveBy requests.
+     * @param transfer whether the searches come from another trip, applying the transfer slack and forbidden
+     *                 transfers of the transfer table.
+     */
+    private void assertSameTrips(Timetable indexed, boolean transfer) {
+        Timetable linear = new Timetable(indexed, null);
+        int found = 0;
+        for (int time = 6 * 3600; time < 12 * 3600; time += 37) {
+            State s0 = mock(State.class);
+            when(s0.getTimeSeconds()).thenReturn(serviceDay.time(time));
+            when(s0.getOptions()).thenReturn(options);
+            when(s0.isEverBoarded()).thenReturn(transfer);
+            when(s0.getPreviousTrip()).thenReturn(previousTrip);
+            when(s0.getLastAlightedTimeSeconds()).thenReturn(serviceDay.time(time));
+            for (int stop = 0; stop < N_STOPS; stop++) {
+                when(s0.getPreviousStop()).thenReturn(stops[stop]);
+                for (boolean boarding : new boolean[] {true, false}) {
+                    TripTimes expected = linear.getNextTrip(s0, serviceDay, stop, boarding);
+                    TripTimes actual = indexed.getNextTrip(s0, serviceDay, stop, boarding);
+                    assertSame(String.format("%s at stop %d at %d", boarding ? "boarding" : "alighting", stop, time),
+                            expected, actual);
+                    if (expected != null) found++;
+                }
+            }
+        }
+        // Make sure the searches did find trips, rather than agreeing on finding none.
+        assertTrue(found > 0);
+    }
+
+}
@@ -18,6 +18,7 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import java.io.File;
@@ -241,4 +242,42 @@ public class TimetableResolverTest {
         assertNull(resolver.commit());
         assertFalse(resolver.isDirty());
     }
+
+    @Test
+    public void testSnapshotIsolation() {
+        ServiceDate today = new ServiceDate();
+        ServiceDate yesterday = today.previous();
+        TripPattern pattern = patternIndex.get(new AgencyAndId("agency", "1.1"));
+
+        TripDescriptor.Builder tripDescriptorBuilder = TripDescriptor.newBuilder();
+
+        tripDescriptorBuilder.setTripId("1.1");
+        tripDescriptorBuilder.setScheduleRelationship(ScheduleRelationship.CANCELED);
+
+        TripUpdate.Builder tripUpdateBuilder = TripUpdate.newBuilder();
+
+        tripUpdateBuilder.setTrip(tripDescriptorBuilder);
+
+        TripUpdate tripUpdate = tripUpdateBuilder.build();
+
+        TimetableResolver resolver = new TimetableResolver();
+        resolver.update(pattern, tripUpdate, "agency", timeZone, today);
+        TimetableResolver snapshot = resolver.commit();
+        Timetable forToday = snapshot.resolve(pattern, today);
+
+        // modifying the buffer after a commit must not be visible in the snapshot
+        resolver.update(pattern, tripUpdate, "agency", timeZone, yesterday);
+        assertEquals(pattern.scheduledTimetable, snapshot.resolve(pattern, yesterday));
+        assertNotSame(pattern.scheduledTimetable, resolver.resolve(pattern, yesterday));
+        // timetables that were not modified are shared
+        assertSame(forToday, resolver.resolve(pattern, today));
+
+        resolver.update(pattern, tripUpdate, "agency", timeZone, today);
+        assertNotSame(forToday, resolver.resolve(pattern, today));
+        assertSame(forToday, snapshot.resolve(pattern, today));
+
+        assertTrue(resolver.purgeExpiredData(today));
+        assertEquals(pattern.scheduledTimetable, resolver.resolve(pattern, today));
+        assertSame(forToday, snapshot.resolve(pattern, today));
+    }
 }
@@ -0,0 +1,97 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.routing.edgetype.loader;
+
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.opentripplanner.common.TurnRestriction;
+import org.opentripplanner.common.TurnRestrictionType;
+import org.opentripplanner.common.geometry.GeometryUtils;
+import org.opentripplanner.common.geometry.SphericalDistanceLibrary;
+import org.opentripplanner.common.model.P2;
+import org.opentripplanner.routing.bike_park.BikePark;
+import org.opentripplanner.routing.core.TraverseMode;
+import org.opentripplanner.routing.core.TraverseModeSet;
+import org.opentripplanner.routing.edgetype.StreetEdge;
+import org.opentripplanner.routing.edgetype.StreetTraversalPermission;
+import org.opentripplanner.routing.graph.Edge;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.vertextype.BikeParkVertex;
+import org.opentripplanner.routing.vertextype.IntersectionVertex;
+
+public class LinkRequestTest extends TestCase {
+
+    /**
+     * Link a bike park to the middle of a street with a turn restriction at its end. The restriction must move to
+     * the half of the split street that ends at the restricted intersection, and must survive the removal of the
+     * original street from the graph.
+     */
+    public void testSplitRestrictedEdge() {
+        Graph graph = new Graph();
+        IntersectionVertex a = new IntersectionVertex(graph, "a", -122.0, 45.0);
+        IntersectionVertex b = new IntersectionVertex(graph, "b", -122.0, 45.002);
+        IntersectionVertex c = new IntersectionVertex(graph, "c", -121.998, 45.002);
+        StreetEdge ab = makeStreet(a, b);
+        makeStreet(b, a);
+        StreetEdge bc = makeStreet(b, c);
+        makeStreet(c, b);
+        TurnRestriction noLeft = new TurnRestriction(ab, bc, TurnRestrictionType.NO_TURN,
+                new TraverseModeSet(TraverseMode.WALK, TraverseMode.BICYCLE, TraverseMode.CAR));
+        graph.addTurnRestriction(ab, noLeft);
+
+        BikePark bikePark = new BikePark();
+        bikePark.id = "P";
+        bikePark.x = -122.00005;
+        bikePark.y = 45.001;
+        BikeParkVertex bikeParkVertex = new BikeParkVertex(graph, bikePark);
+
+        NetworkLinkerLibrary linker = new NetworkLinkerLibrary(graph, new HashMap<Class<?>, Object>());
+        assertTrue(linker.connectVertexToStreets(bikeParkVertex).getResult());
+
+        // No edge standing in for the original streets may share the id of the one it replaces.
+        for (LinkedList<P2<StreetEdge>> replacement : linker.replacements.values()) {
+            for (P2<StreetEdge> pair : replacement) {
+                assertFalse(pair.first.getId() == ab.getId());
+                assertFalse(pair.second != null && pair.second.getId() == ab.getId());
+            }
+        }
+
+        graph.removeEdge(ab);
+        assertTrue(graph.getTurnRestrictions(ab).isEmpty());
+
+        StreetEdge secondHalf = null;
+        for (Edge edge : b.getIncoming()) {
+            if (edge instanceof StreetEdge && edge.getFromVertex().getLabel().startsWith("split ")
+                    && edge.getFromVertex().getY() < b.getY()) {
+                secondHalf = (StreetEdge) edge;
+            }
+        }
+        assertNotNull(secondHalf);
+        List<TurnRestriction> restrictions = graph.getTurnRestrictions(secondHalf);
+        assertEquals(1, restrictions.size());
+        assertSame(bc, restrictions.get(0).to);
+        assertTrue(secondHalf.hasTurnRestrictions());
+    }
+
+    private static StreetEdge makeStreet(IntersectionVertex v0, IntersectionVertex v1) {
+        double length = SphericalDistanceLibrary.distance(v0.getCoordinate(), v1.getCoordinate());
+        return new StreetEdge(v0, v1, GeometryUtils.makeLineString(v0.getX(), v0.getY(), v1.getX(), v1.getY()),
+                "street", length, StreetTraversalPermission.ALL, false);
+    }
+
+}
@@ -0,0 +1,133 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.routing.graph;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectOutputStream;
+import java.util.List;
+
+import org.junit.Test;
+import org.opentripplanner.common.TurnRestriction;
+import org.opentripplanner.common.TurnRestrictionType;
+import org.opentripplanner.common.geometry.GeometryUtils;
+import org.opentripplanner.common.geometry.PackedCoordinateSequence;
+import org.opentripplanner.routing.core.TraverseModeSet;
+import org.opentripplanner.routing.edgetype.StreetEdge;
+import org.opentripplanner.routing.edgetype.StreetTraversalPermission;
+import org.opentripplanner.routing.edgetype.StreetWithElevationEdge;
+import org.opentripplanner.routing.graph.Graph.LoadLevel;
+import org.opentripplanner.routing.vertextype.IntersectionVertex;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.LineString;
+
+public class CompactGraphFormatTest {
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        Graph graph = new Graph();
+        IntersectionVertex a = new IntersectionVertex(graph, "a", 0.0, 0.0);
+        IntersectionVertex b = new IntersectionVertex(graph, "b", 0.01, 0.0);
+        IntersectionVertex c = new IntersectionVertex(graph, "c", 0.01, 0.01);
+        Vertex d = new SimpleConcreteVertex(graph, "d", 0.0, 0.01);
+
+        LineString geometry = GeometryUtils.getGeometryFactory().createLineString(new Coordinate[] {
+                new Coordinate(0.0, 0.0), new Coordinate(0.005, 0.001), new Coordinate(0.01, 0.0) });
+        StreetEdge ab = new StreetEdge(a, b, geometry, "Main Street", 1113.2,
+                StreetTraversalPermission.ALL, false);
+        StreetEdge ba = new StreetEdge(b, a, (LineString) geometry.reverse(), "Main Street", 1113.2,
+                StreetTraversalPermission.ALL, true);
+        ba.shareData(ab);
+        ab.setCarSpeed(20.0f);
+        ab.setStairs(true);
+        StreetWithElevationEdge bc = new StreetWithElevationEdge(b, c, GeometryUtils
+                .getGeometryFactory().createLineString(new Coordinate[] {
+                        new Coordinate(0.01, 0.0), new Coordinate(0.01, 0.01) }), null, 1111.9,
+                StreetTraversalPermission.PEDESTRIAN_AND_BICYCLE, false);
+        bc.setElevationProfile(new PackedCoordinateSequence.Double(new Coordinate[] {
+                new Coordinate(0, 10), new Coordinate(1111.9, 30) }), false);
+        new SimpleConcreteEdge(c, d);
+        graph.addTurnRestriction(ab, new TurnRestriction(ab, bc, TurnRestrictionType.NO_TURN,
+                TraverseModeSet.allModes()));
+
+        ByteArrayOutputStream compact = new ByteArrayOutputStream();
+        graph.saveCompact(compact);
+        ByteArrayOutputStream serialized = new ByteArrayOutputStream();
+        graph.save(new ObjectOutputStream(serialized));
+        assertTrue(compact.size() < serialized.size());
+
+        Graph loaded = Graph.load(new ByteArrayInputStream(compact.toByteArray()), LoadLevel.FULL);
+        assertEquals(4, loaded.countVertices());
+        assertEquals(4, loaded.countEdges());
+
+        StreetEdge ab2 = (StreetEdge) outgoingTo(loaded.getVertex("a"), "b");
+        StreetEdge ba2 = (StreetEdge) outgoingTo(loaded.getVertex("b"), "a");
+        StreetWithElevationEdge bc2 = (StreetWithElevationEdge) outgoingTo(loaded.getVertex("b"), "c");
+        assertNotNull(outgoingTo(loaded.getVertex("c"), "d"));
+
+        assertEquals(ab.getId(), ab2.getId());
+        assertEquals("Main Street", ab2.getName());
+        assertEquals(ab.getDistance(), ab2.getDistance(), 0.0);
+        assertEquals(20.0f, ab2.getCarSpeed(), 0.0f);
+        assertTrue(ab2.isStairs());
+        assertTrue(ba2.isBack());
+        assertEquals(ab.getInAngle(), ab2.getInAngle());
+        assertEquals(ab.getOutAngle(), ab2.getOutAngle());
+        assertEquals(ab.getGeometry(), ab2.getGeometry());
+        assertEquals(ba.getGeometry(), ba2.getGeometry());
+
+        assertEquals(null, bc2.getName());
+        assertEquals(StreetTraversalPermission.PEDESTRIAN_AND_BICYCLE, bc2.getPermission());
+        assertEquals(bc.getMaxSlope(), bc2.getMaxSlope(), 0.0f);
+        assertEquals(bc.getBicycleSafetyFactor(), bc2.getBicycleSafetyFactor(), 0.0f);
+        assertEquals(bc.getElevationProfile().size(), bc2.getElevationProfile().size());
+
+        assertTrue(ab2.hasTurnRestrictions());
+        assertFalse(bc2.hasTurnRestrictions());
+        List<TurnRestriction> restrictions = loaded.getTurnRestrictions(ab2);
+        assertEquals(1, restrictions.size());
+        assertSame(ab2, restrictions.get(0).from);
+        assertSame(bc2, restrictions.get(0).to);
+    }
+
+    @Test
+    public void testLoadSerializedGraph() throws Exception {
+        Graph graph = new Graph();
+        IntersectionVertex a = new IntersectionVertex(graph, "a", 0.0, 0.0);
+        IntersectionVertex b = new IntersectionVertex(graph, "b", 0.01, 0.0);
+        new StreetEdge(a, b, null, "ab", 1113.2, StreetTraversalPermission.ALL, false);
+        ByteArrayOutputStream serialized = new ByteArrayOutputStream();
+        graph.save(new ObjectOutputStream(serialized));
+
+        Graph loaded = Graph.load(new ByteArrayInputStream(serialized.toByteArray()), LoadLevel.FULL);
+        assertEquals(1, loaded.countEdges());
+        assertEquals("ab", outgoingTo(loaded.getVertex("a"), "b").getName());
+    }
+
+    private static Edge outgoingTo(Vertex from, String toLabel) {
+        for (Edge e : from.getOutgoing()) {
+            if (e.getToVertex().getLabel().equals(toLabel))
+                return e;
+        }
+        return null;
+    }
+
+}
@@ -0,0 +1,55 @@
+package org.opentripplanner.standalone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.opentripplanner.standalone.AdmissionControl.Endpoint;
+
+public class AdmissionControlTest {
+
+    @Test
+    public void testConcurrencyLimits() throws Exception {
+        AdmissionControl admissionControl = new AdmissionControl(2, 0);
+        long deadline = System.currentTimeMillis() + 1000;
+        assertTrue(admissionControl.admit(Endpoint.PLAN, deadline));
+        assertTrue(admissionControl.admit(Endpoint.PLAN, deadline));
+        // Nothing may wait, so the third request is turned away at once.
+        assertFalse(admissionControl.admit(Endpoint.PLAN, deadline));
+        // Analyst requests have their own, smaller limit.
+        assertTrue(admissionControl.admit(Endpoint.ANALYST, deadline));
+        assertFalse(admissionControl.admit(Endpoint.ANALYST, deadline));
+        admissionControl.release(Endpoint.PLAN, 10);
+        assertTrue(admissionControl.admit(Endpoint.PLAN, deadline));
+        assertEquals(2 + 1 + 1, admissionControl.getMaxAdmitted());
+    }
+
+    @Test
+    public void testDeadline() throws Exception {
+        AdmissionControl admissionControl = new AdmissionControl(1, 10);
+        assertTrue(admissionControl.admit(Endpoint.PLAN, System.currentTimeMillis() + 1000));
+        // The only place is taken until after the deadline.
+        long start = System.currentTimeMillis();
+        assertFalse(admissionControl.admit(Endpoint.PLAN, start + 50));
+        assertTrue(System.currentTimeMillis() - start >= 40);
+        // A deadline that has already passed is not waited for.
+        assertFalse(admissionControl.admit(Endpoint.PLAN, start - 1));
+    }
+
+    @Test
+    public void testExpectedWait() throws Exception {
+        AdmissionControl admissionControl = new AdmissionControl(1, 10);
+        long deadline = System.currentTimeMillis() + 60000;
+        for (int i = 0; i < 50; i++) {
+            assertTrue(admissionControl.admit(Endpoint.PLAN, deadline));
+            admissionControl.release(Endpoint.PLAN, 10000);
+        }
+        assertTrue(admissionControl.admit(Endpoint.PLAN, deadline));
+        // Requests have been taking about ten seconds, so one cannot be expected to start within one second.
+        long start = System.currentTimeMillis();
+        assertFalse(admissionControl.admit(Endpoint.PLAN, start + 1000));
+        assertTrue(System.currentTimeMillis() - start < 1000);
+    }
+
+}
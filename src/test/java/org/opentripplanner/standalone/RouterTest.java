@@ -0,0 +1,29 @@
+package org.opentripplanner.standalone;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.standalone.AdmissionControl.Endpoint;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class RouterTest {
+
+    @Test
+    public void testAdmissionDeadlines() throws Exception {
+        JsonNode config = new ObjectMapper().readTree("{\"admissionDeadlines\": {\"plan\": 5, \"analyst\": -1}}");
+        Router router = new Router("TEST", new Graph());
+        router.startup(config);
+        try {
+            assertEquals(5, (int) router.admissionDeadlines.get(Endpoint.PLAN));
+            // Deadlines that are not set, or not valid, keep their defaults.
+            assertEquals(Endpoint.PROFILE.defaultDeadlineSeconds, (int) router.admissionDeadlines.get(Endpoint.PROFILE));
+            assertEquals(Endpoint.ANALYST.defaultDeadlineSeconds, (int) router.admissionDeadlines.get(Endpoint.ANALYST));
+        } finally {
+            router.shutdown();
+        }
+    }
+
+}
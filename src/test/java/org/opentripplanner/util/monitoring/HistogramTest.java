@@ -0,0 +1,48 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+
+package org.opentripplanner.util.monitoring;
+
+import junit.framework.TestCase;
+
+public class HistogramTest extends TestCase {
+
+    public void testBuckets() {
+        for (long value : new long[] { 0, 1, 3, 4, 7, 8, 15, 16, 1000, 123456789, Long.MAX_VALUE }) {
+            int bucket = Histogram.bucketFor(value);
+            assertTrue(bucket < Histogram.N_BUCKETS);
+            assertTrue(Histogram.lowerBound(bucket) <= value);
+            assertTrue(Histogram.upperBound(bucket) >= value);
+        }
+        for (int b = 1; b < Histogram.N_BUCKETS; b++) {
+            assertEquals(Histogram.upperBound(b - 1) + 1, Histogram.lowerBound(b));
+            assertEquals(b, Histogram.bucketFor(Histogram.lowerBound(b)));
+        }
+    }
+
+    public void testPercentiles() {
+        Histogram histogram = new Histogram();
+        assertEquals(0, histogram.getP50());
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i);
+        }
+        assertEquals(1000, histogram.getCount());
+        assertEquals(1000, histogram.getMax());
+        assertEquals(500.5, histogram.getMean(), 1e-9);
+        assertTrue(histogram.getP50() >= 500 && histogram.getP50() < 500 * 1.25);
+        assertTrue(histogram.getP90() >= 900 && histogram.getP90() < 900 * 1.25);
+        assertEquals(1000, histogram.getPercentile(100));
+    }
+
+}